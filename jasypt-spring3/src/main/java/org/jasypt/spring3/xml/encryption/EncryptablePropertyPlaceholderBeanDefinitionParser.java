@@ -36,6 +36,7 @@ final class EncryptablePropertyPlaceholderBeanDefinitionParser
 
 
     private static final String ENCRYPTOR_ATTRIBUTE = "encryptor";
+    private static final String DECRYPTION_PARALLELISM_ATTRIBUTE = "decryption-parallelism";
     
     
     EncryptablePropertyPlaceholderBeanDefinitionParser() {
@@ -62,6 +63,11 @@ final class EncryptablePropertyPlaceholderBeanDefinitionParser
             builder.addPropertyValue("systemPropertiesModeName", "SYSTEM_PROPERTIES_MODE_"+systemPropertiesModeName);
         }
 
+        final String decryptionParallelism = element.getAttribute(DECRYPTION_PARALLELISM_ATTRIBUTE);
+        if (StringUtils.hasLength(decryptionParallelism)) {
+            builder.addPropertyValue("decryptionParallelism", Integer.valueOf(decryptionParallelism));
+        }
+
         final String encryptorBeanName = element.getAttribute(ENCRYPTOR_ATTRIBUTE);
         if (StringUtils.hasText(encryptorBeanName)) {
             builder.addConstructorArgReference(encryptorBeanName);
@@ -19,6 +19,9 @@
  */
 package org.jasypt.spring31.properties;
 
+import java.util.Map;
+import java.util.Properties;
+
 import org.jasypt.commons.CommonUtils;
 import org.jasypt.encryption.StringEncryptor;
 import org.jasypt.properties.PropertyValueEncryptionUtils;
@@ -59,6 +62,13 @@ public final class EncryptablePropertyPlaceholderConfigurer
 	private final StringEncryptor stringEncryptor;
 	private final TextEncryptor textEncryptor;
 
+	/*
+	 * Maximum number of threads used for decrypting values in bulk, and the
+	 * values decrypted during the current execution of convertProperties()
+	 */
+	private int decryptionParallelism = 1;
+	private Map<String,String> decryptedValues = null;
+
 	/**
 	 * <p>
 	 * Creates an <tt>EncryptablePropertyPlaceholderConfigurer</tt> instance
@@ -95,6 +105,48 @@ public final class EncryptablePropertyPlaceholderConfigurer
 		this.textEncryptor = textEncryptor;
 	}
 
+	/**
+	 * <p>
+	 * Sets the maximum number of threads (including the calling one) to be
+	 * used for decrypting encrypted values when this configurer is applied.
+	 * All the encrypted values in the loaded properties are collected first, 
+	 * and each distinct value is decrypted only once.
+	 * </p>
+	 * <p>
+	 * Default value is <tt>1</tt>. A value of <tt>0</tt> means one thread
+	 * per available processor. Note that, in order to actually decrypt in
+	 * parallel, the encryptor must be able to perform several decryptions
+	 * at the same time (e.g. a pooled encryptor with an adequate pool size).
+	 * </p>
+	 * 
+	 * @since 1.9.4
+	 * 
+	 * @param decryptionParallelism the maximum number of decryption threads.
+	 */
+	public void setDecryptionParallelism(final int decryptionParallelism) {
+		CommonUtils.validateIsTrue(decryptionParallelism >= 0, 
+		        "Decryption parallelism cannot be negative");
+		this.decryptionParallelism = decryptionParallelism;
+	}
+
+
+	/*
+	 * Encrypted bundles are expanded, and encrypted values are decrypted in
+	 * bulk before being substituted.
+	 */
+	@Override
+	protected void convertProperties(final Properties props) {
+		BulkPropertyValueDecryptor.expandBundles(props, this.stringEncryptor, this.textEncryptor);
+		this.decryptedValues = 
+		    BulkPropertyValueDecryptor.decryptAll(
+		            props, this.stringEncryptor, this.textEncryptor, this.decryptionParallelism);
+		try {
+			super.convertProperties(props);
+		} finally {
+			this.decryptedValues = null;
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -105,6 +157,10 @@ public final class EncryptablePropertyPlaceholderConfigurer
 		if (!PropertyValueEncryptionUtils.isEncryptedValue(originalValue)) {
 			return originalValue;
 		}
+		final Map<String,String> bulkDecryptedValues = this.decryptedValues;
+		if (bulkDecryptedValues != null && bulkDecryptedValues.containsKey(originalValue)) {
+			return bulkDecryptedValues.get(originalValue);
+		}
 		if (this.stringEncryptor != null) {
 			return PropertyValueEncryptionUtils.decrypt(originalValue,
 					this.stringEncryptor);
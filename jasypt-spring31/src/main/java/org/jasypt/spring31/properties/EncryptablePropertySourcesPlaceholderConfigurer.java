@@ -20,6 +20,7 @@
 package org.jasypt.spring31.properties;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.Properties;
 
 import org.jasypt.commons.CommonUtils;
@@ -47,6 +48,13 @@ public final class EncryptablePropertySourcesPlaceholderConfigurer
 	private final StringEncryptor stringEncryptor;
 	private final TextEncryptor textEncryptor;
 
+	/*
+	 * Maximum number of threads used for decrypting values in bulk, and the
+	 * values decrypted during the current execution of convertProperties()
+	 */
+	private int decryptionParallelism = 1;
+	private Map<String,String> decryptedValues = null;
+
 	
 	/*
 	 * This flag will keep track of whether the "convertProperties()" method
@@ -98,6 +106,30 @@ public final class EncryptablePropertySourcesPlaceholderConfigurer
 		this.textEncryptor = textEncryptor;
 	}
 
+	/**
+	 * <p>
+	 * Sets the maximum number of threads (including the calling one) to be
+	 * used for decrypting encrypted values when this configurer is applied.
+	 * All the encrypted values in the loaded properties are collected first, 
+	 * and each distinct value is decrypted only once.
+	 * </p>
+	 * <p>
+	 * Default value is <tt>1</tt>. A value of <tt>0</tt> means one thread
+	 * per available processor. Note that, in order to actually decrypt in
+	 * parallel, the encryptor must be able to perform several decryptions
+	 * at the same time (e.g. a pooled encryptor with an adequate pool size).
+	 * </p>
+	 * 
+	 * @since 1.9.4
+	 * 
+	 * @param decryptionParallelism the maximum number of decryption threads.
+	 */
+	public void setDecryptionParallelism(final int decryptionParallelism) {
+		CommonUtils.validateIsTrue(decryptionParallelism >= 0, 
+		        "Decryption parallelism cannot be negative");
+		this.decryptionParallelism = decryptionParallelism;
+	}
+
 	
 	
 	
@@ -122,7 +154,17 @@ public final class EncryptablePropertySourcesPlaceholderConfigurer
     @Override
     protected void convertProperties(final Properties props) {
         if (!this.alreadyConverted) {
-            super.convertProperties(props);
+            // Encrypted bundles are expanded, and encrypted values are 
+            // decrypted in bulk before being substituted
+            BulkPropertyValueDecryptor.expandBundles(props, this.stringEncryptor, this.textEncryptor);
+            this.decryptedValues = 
+                BulkPropertyValueDecryptor.decryptAll(
+                        props, this.stringEncryptor, this.textEncryptor, this.decryptionParallelism);
+            try {
+                super.convertProperties(props);
+            } finally {
+                this.decryptedValues = null;
+            }
             this.alreadyConverted = true;
         }
     }
@@ -139,6 +181,10 @@ public final class EncryptablePropertySourcesPlaceholderConfigurer
 		if (!PropertyValueEncryptionUtils.isEncryptedValue(originalValue)) {
 			return originalValue;
 		}
+		final Map<String,String> bulkDecryptedValues = this.decryptedValues;
+		if (bulkDecryptedValues != null && bulkDecryptedValues.containsKey(originalValue)) {
+			return bulkDecryptedValues.get(originalValue);
+		}
 		if (this.stringEncryptor != null) {
 			return PropertyValueEncryptionUtils.decrypt(originalValue,
 					this.stringEncryptor);
@@ -5,6 +5,8 @@ import junit.framework.TestCase;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jasypt.encryption.StringEncryptor;
 import org.jasypt.util.text.TextEncryptor;
@@ -104,6 +106,53 @@ public class EncryptablePropertyPlaceholderConfigurerTest extends TestCase {
         assertEquals(unencryptedEnvVarValue, ppc.resolveSystemProperty(unencryptedEnvVarKey));
     }
 
+    public void testConvertPropertiesDecryptsDistinctValuesOnce() {
+        StubStringEncryptor stringEncryptor = new StubStringEncryptor();
+        Properties props = new Properties();
+        for (int i = 0; i < 20; i++) {
+            stringEncryptor.addDecryption(encryptedValue + i, expectedDecryptedValue + i);
+            props.setProperty("key" + i, 
+                    ENCRYPTED_VALUE_PREFIX + encryptedValue + i + ENCRYPTED_VALUE_SUFFIX);
+            props.setProperty("duplicatedKey" + i, 
+                    ENCRYPTED_VALUE_PREFIX + encryptedValue + i + ENCRYPTED_VALUE_SUFFIX);
+        }
+        props.setProperty("unencryptedKey", unencryptedValue);
+
+        EncryptablePropertyPlaceholderConfigurer eppc = 
+            new EncryptablePropertyPlaceholderConfigurer(stringEncryptor);
+        eppc.setDecryptionParallelism(4);
+        eppc.convertProperties(props);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(expectedDecryptedValue + i, props.getProperty("key" + i));
+            assertEquals(expectedDecryptedValue + i, props.getProperty("duplicatedKey" + i));
+        }
+        assertEquals(unencryptedValue, props.getProperty("unencryptedKey"));
+        assertEquals(20, stringEncryptor.getDecryptionCount());
+    }
+
+    public void testConvertPropertiesExpandsBundles() {
+        StubStringEncryptor stringEncryptor = new StubStringEncryptor();
+        stringEncryptor.addDecryption("bundle", 
+                "bundledKey=bundledValue\n" +
+                "encryptedBundledKey=" + encryptedValueWithDelimiters + "\n");
+        stringEncryptor.addDecryption(encryptedValue, expectedDecryptedValue);
+        Properties props = new Properties();
+        props.setProperty("jasypt.bundle.test", ENCRYPTED_VALUE_PREFIX + "bundle" + ENCRYPTED_VALUE_SUFFIX);
+        props.setProperty("bundledKey", "overridden");
+        props.setProperty("unencryptedKey", unencryptedValue);
+
+        EncryptablePropertyPlaceholderConfigurer eppc = 
+            new EncryptablePropertyPlaceholderConfigurer(stringEncryptor);
+        eppc.convertProperties(props);
+
+        assertEquals(3, props.size());
+        assertEquals("bundledValue", props.getProperty("bundledKey"));
+        assertEquals(expectedDecryptedValue, props.getProperty("encryptedBundledKey"));
+        assertEquals(unencryptedValue, props.getProperty("unencryptedKey"));
+        assertEquals(2, stringEncryptor.getDecryptionCount());
+    }
+
     private EncryptablePropertyPlaceholderConfigurer createPPCWithTextEncryptor() {
         StubTextEncryptor textEncryptor = new StubTextEncryptor();
         textEncryptor.addDecryption(encryptedValue, expectedDecryptedValue);
@@ -121,10 +170,17 @@ public class EncryptablePropertyPlaceholderConfigurerTest extends TestCase {
 
         private Map decryptMap = new HashMap();
 
+        private AtomicInteger decryptionCount = new AtomicInteger(0);
+
         public String decrypt(String encryptedMessage) {
+            this.decryptionCount.incrementAndGet();
             return (String)this.decryptMap.get(encryptedMessage);
         }
 
+        public int getDecryptionCount() {
+            return this.decryptionCount.get();
+        }
+
         public String encrypt(String message) {
             throw new UnsupportedOperationException();
         }
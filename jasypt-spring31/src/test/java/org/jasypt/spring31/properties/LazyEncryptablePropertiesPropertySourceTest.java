@@ -0,0 +1,109 @@
+package org.jasypt.spring31.properties;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import org.jasypt.properties.EncryptableProperties;
+import org.jasypt.properties.PropertyValueEncryptionUtils;
+
+
+public class LazyEncryptablePropertiesPropertySourceTest extends TestCase {
+
+    
+    public void testDecryptsOnlyRequestedValuesOnce() {
+        
+        final StandardPBEStringEncryptor encryptor = createEncryptor();
+        final Properties props = new Properties();
+        props.setProperty("first", PropertyValueEncryptionUtils.encrypt("one", encryptor));
+        props.setProperty("second", PropertyValueEncryptionUtils.encrypt("two", encryptor));
+        props.setProperty("plain", "three");
+        
+        final LazyEncryptablePropertiesPropertySource propertySource = 
+            new LazyEncryptablePropertiesPropertySource("test", props, encryptor);
+        
+        assertEquals(0, propertySource.getDecryptedValueCount());
+        assertEquals("three", propertySource.getProperty("plain"));
+        assertEquals("one", propertySource.getProperty("first"));
+        assertEquals("one", propertySource.getProperty("first"));
+        assertNull(propertySource.getProperty("unknown"));
+        assertTrue(propertySource.containsProperty("second"));
+        assertFalse(propertySource.containsProperty("unknown"));
+        
+        final String[] propertyNames = propertySource.getPropertyNames();
+        Arrays.sort(propertyNames);
+        assertTrue(Arrays.equals(new String[] {"first", "plain", "second"}, propertyNames));
+        
+        assertEquals(1, propertySource.getDecryptedValueCount());
+        
+        // Changed values are decrypted again
+        props.setProperty("first", PropertyValueEncryptionUtils.encrypt("four", encryptor));
+        assertEquals("four", propertySource.getProperty("first"));
+        assertEquals(2, propertySource.getDecryptedValueCount());
+        
+    }
+    
+    
+    public void testConcurrentAccessDecryptsOnce() throws Exception {
+        
+        final StandardPBEStringEncryptor encryptor = createEncryptor();
+        final Properties props = new Properties();
+        props.setProperty("key", PropertyValueEncryptionUtils.encrypt("value", encryptor));
+        
+        final LazyEncryptablePropertiesPropertySource propertySource = 
+            new LazyEncryptablePropertiesPropertySource("test", props, encryptor);
+        
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger errors = new AtomicInteger(0);
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        if (!"value".equals(propertySource.getProperty("key"))) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (final InterruptedException e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        
+        assertEquals(0, errors.get());
+        assertEquals(1, propertySource.getDecryptedValueCount());
+        
+    }
+    
+    
+    public void testEncryptablePropertiesNotAllowed() {
+        try {
+            new LazyEncryptablePropertiesPropertySource(
+                    "test", new EncryptableProperties(createEncryptor()), 
+                    createEncryptor());
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+    
+    
+    
+    private static StandardPBEStringEncryptor createEncryptor() {
+        final StandardPBEStringEncryptor encryptor = new StandardPBEStringEncryptor();
+        encryptor.setPassword("A PASSWORD BEING SET");
+        return encryptor;
+    }
+    
+}
@@ -0,0 +1,235 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.spring4.properties;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jasypt.encryption.StringEncryptor;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.properties.PropertyValueEncryptionUtils;
+import org.jasypt.util.text.TextEncryptor;
+
+/*
+ * Decrypts, in bulk, all the distinct encrypted values (ENC(...)) contained
+ * in a set of properties, so that configurers can then substitute them
+ * without decrypting the same value more than once. Decryption can be
+ * performed in parallel, in which case the encryptor will be used 
+ * concurrently (a pooled encryptor will be needed for actually 
+ * decrypting in parallel).
+ * 
+ * Also expands encrypted property bundles (jasypt.bundle[.section]=ENC(...)),
+ * each of which contains several properties encrypted together.
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ */
+final class BulkPropertyValueDecryptor {
+
+    
+    private static final String BUNDLE_KEY = "jasypt.bundle";
+    private static final String BUNDLE_KEY_SECTION_PREFIX = BUNDLE_KEY + ".";
+    
+    
+    static boolean isBundleKey(final String key) {
+        return (key.equals(BUNDLE_KEY) || 
+                (key.startsWith(BUNDLE_KEY_SECTION_PREFIX) && 
+                        key.length() > BUNDLE_KEY_SECTION_PREFIX.length()));
+    }
+    
+    
+    /*
+     * Replaces each encrypted bundle with the properties it contains, which
+     * take precedence over non-bundled ones. Each bundle is decrypted with 
+     * a single operation, whatever the number of properties it contains.
+     */
+    static void expandBundles(final Properties props, 
+            final StringEncryptor stringEncryptor, final TextEncryptor textEncryptor) {
+        
+        final List<String> bundleKeys = new ArrayList<String>();
+        for (final String key : props.stringPropertyNames()) {
+            if (isBundleKey(key) && 
+                    PropertyValueEncryptionUtils.isEncryptedValue(props.getProperty(key))) {
+                bundleKeys.add(key);
+            }
+        }
+        if (bundleKeys.isEmpty()) {
+            return;
+        }
+        
+        final Properties bundledProperties = new Properties();
+        for (final String bundleKey : bundleKeys) {
+            final String bundle = 
+                decrypt(props.getProperty(bundleKey), stringEncryptor, textEncryptor);
+            try {
+                bundledProperties.load(new StringReader(bundle));
+            } catch (final IOException e) {
+                throw new EncryptionOperationNotPossibleException();
+            }
+            props.remove(bundleKey);
+        }
+        props.putAll(bundledProperties);
+        
+    }
+    
+    
+    static String decrypt(final String encryptedValue, 
+            final StringEncryptor stringEncryptor, final TextEncryptor textEncryptor) {
+        if (stringEncryptor != null) {
+            return PropertyValueEncryptionUtils.decrypt(encryptedValue, stringEncryptor);
+        }
+        return PropertyValueEncryptionUtils.decrypt(encryptedValue, textEncryptor);
+    }
+    
+    
+    /*
+     * Returns a map from each distinct encrypted value to its decrypted value.
+     * Parallelism is the maximum number of threads to be used (including the
+     * calling one), 0 meaning one per available processor.
+     */
+    static Map<String,String> decryptAll(final Properties props, 
+            final StringEncryptor stringEncryptor, final TextEncryptor textEncryptor,
+            final int parallelism) {
+        
+        final Set<String> distinctValues = new LinkedHashSet<String>();
+        final Enumeration<?> propertyNames = props.propertyNames();
+        while (propertyNames.hasMoreElements()) {
+            final String value = props.getProperty((String) propertyNames.nextElement());
+            if (PropertyValueEncryptionUtils.isEncryptedValue(value)) {
+                distinctValues.add(value);
+            }
+        }
+        
+        final String[] encryptedValues = distinctValues.toArray(new String[distinctValues.size()]);
+        final String[] decryptedValues = new String[encryptedValues.length];
+        
+        final int threads = 
+            Math.min(
+                encryptedValues.length,
+                (parallelism > 0? parallelism : Runtime.getRuntime().availableProcessors()));
+        
+        final AtomicInteger nextIndex = new AtomicInteger(0);
+        final Runnable worker = 
+            new Runnable() {
+                public void run() {
+                    int index;
+                    while ((index = nextIndex.getAndIncrement()) < encryptedValues.length) {
+                        decryptedValues[index] = 
+                            decrypt(encryptedValues[index], stringEncryptor, textEncryptor);
+                    }
+                }
+            };
+        
+        if (threads <= 1) {
+            worker.run();
+        } else {
+            executeInParallel(worker, threads, nextIndex, encryptedValues.length);
+        }
+        
+        final Map<String,String> result = new HashMap<String,String>(encryptedValues.length * 2);
+        for (int i = 0; i < encryptedValues.length; i++) {
+            result.put(encryptedValues[i], decryptedValues[i]);
+        }
+        return result;
+        
+    }
+    
+    
+    private static void executeInParallel(final Runnable worker, final int threads,
+            final AtomicInteger nextIndex, final int size) {
+        
+        // The calling thread also works, so one thread less is needed
+        final ExecutorService executor = 
+            Executors.newFixedThreadPool(threads - 1, new DecryptionThreadFactory());
+        try {
+            
+            final List<Future<?>> futures = new ArrayList<Future<?>>(threads - 1);
+            for (int i = 0; i < threads - 1; i++) {
+                futures.add(executor.submit(worker));
+            }
+            
+            try {
+                worker.run();
+            } catch (final RuntimeException e) {
+                // Stop the rest of the workers as soon as possible
+                nextIndex.set(size);
+                throw e;
+            }
+            
+            for (final Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (final ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    throw new EncryptionOperationNotPossibleException();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EncryptionOperationNotPossibleException(
+                            "Interrupted while decrypting property values");
+                }
+            }
+            
+        } finally {
+            executor.shutdownNow();
+        }
+        
+    }
+    
+    
+    private BulkPropertyValueDecryptor() {
+        super();
+    }
+    
+    
+    
+    private static final class DecryptionThreadFactory implements ThreadFactory {
+        
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = 
+                new Thread(runnable, "jasypt-property-decryption-" + this.threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,217 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.spring4.properties;
+
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jasypt.commons.CommonUtils;
+import org.jasypt.encryption.StringEncryptor;
+import org.jasypt.properties.EncryptableProperties;
+import org.jasypt.properties.PropertyValueEncryptionUtils;
+import org.jasypt.util.text.TextEncryptor;
+import org.springframework.core.env.EnumerablePropertySource;
+
+/**
+ * <p>
+ * Property source backed by a <tt>java.util.Properties</tt> object which
+ * can contain encrypted values (surrounded by <tt>ENC(...)</tt>), and which
+ * decrypts each of these values only the first time its property is 
+ * requested.
+ * </p>
+ * <p>
+ * Unlike {@link EncryptablePropertySourcesPlaceholderConfigurer}, which
+ * decrypts all the encrypted values of its properties when it is applied,
+ * this property source never decrypts values that are not read (for 
+ * example, those belonging to non-active profiles). Decrypted values are
+ * cached, so each value is decrypted at most once even if it is requested
+ * concurrently from several threads. The number of values actually 
+ * decrypted can be obtained by calling {@link #getDecryptedValueCount()}.
+ * </p>
+ * <p>
+ * This property source is meant to be added to the environment's
+ * <tt>MutablePropertySources</tt>, so that placeholders are resolved 
+ * against it by a standard <tt>PropertySourcesPlaceholderConfigurer</tt>
+ * (or by <tt>Environment.getProperty(...)</tt>).
+ * </p>
+ * <p>
+ * This class is <i>thread-safe</i>.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class LazyEncryptablePropertiesPropertySource 
+        extends EnumerablePropertySource<Properties> {
+
+    /*
+     * Only one of these instances will be initialized, the other one will be
+     * null.
+     */
+    private final StringEncryptor stringEncryptor;
+    private final TextEncryptor textEncryptor;
+    
+    private final ConcurrentMap<String,DecryptedValue> decryptedValues = 
+        new ConcurrentHashMap<String,DecryptedValue>();
+    private final AtomicInteger decryptedValueCount = new AtomicInteger(0);
+    
+    
+    
+    /**
+     * <p>
+     * Creates a property source which will use the passed 
+     * {@link StringEncryptor} object to decrypt encrypted values.
+     * </p>
+     * 
+     * @param name the name of the property source.
+     * @param props the properties, containing (possibly) encrypted values.
+     * @param encryptor the {@link StringEncryptor} to be used do decrypt 
+     *        values. It can not be null.
+     */
+    public LazyEncryptablePropertiesPropertySource(final String name, 
+            final Properties props, final StringEncryptor encryptor) {
+        super(name, validateProperties(props));
+        CommonUtils.validateNotNull(encryptor, "Encryptor cannot be null");
+        this.stringEncryptor = encryptor;
+        this.textEncryptor = null;
+    }
+    
+    
+    /**
+     * <p>
+     * Creates a property source which will use the passed 
+     * {@link TextEncryptor} object to decrypt encrypted values.
+     * </p>
+     * 
+     * @param name the name of the property source.
+     * @param props the properties, containing (possibly) encrypted values.
+     * @param encryptor the {@link TextEncryptor} to be used do decrypt 
+     *        values. It can not be null.
+     */
+    public LazyEncryptablePropertiesPropertySource(final String name, 
+            final Properties props, final TextEncryptor encryptor) {
+        super(name, validateProperties(props));
+        CommonUtils.validateNotNull(encryptor, "Encryptor cannot be null");
+        this.stringEncryptor = null;
+        this.textEncryptor = encryptor;
+    }
+
+    
+    private static Properties validateProperties(final Properties props) {
+        CommonUtils.validateNotNull(props, "Properties cannot be null");
+        if (props instanceof EncryptableProperties) {
+            throw new IllegalArgumentException(
+                    "Properties object already is an " + EncryptableProperties.class.getName() + 
+                    " object. No encryptor should be specified.");
+        }
+        return props;
+    }
+    
+    
+    
+    @Override
+    public String[] getPropertyNames() {
+        final Set<String> propertyNames = this.source.stringPropertyNames();
+        return propertyNames.toArray(new String[propertyNames.size()]);
+    }
+    
+    
+    @Override
+    public boolean containsProperty(final String name) {
+        return (this.source.getProperty(name) != null);
+    }
+    
+    
+    @Override
+    public Object getProperty(final String name) {
+        
+        final String value = this.source.getProperty(name);
+        if (!PropertyValueEncryptionUtils.isEncryptedValue(value)) {
+            return value;
+        }
+        
+        // Entries are replaced if the encrypted value has changed since
+        // it was decrypted
+        while (true) {
+            final DecryptedValue decryptedValue = this.decryptedValues.get(name);
+            if (decryptedValue != null && decryptedValue.encryptedValue.equals(value)) {
+                return decryptedValue.getValue();
+            }
+            final DecryptedValue newDecryptedValue = new DecryptedValue(value);
+            final boolean added =
+                (decryptedValue == null? 
+                        this.decryptedValues.putIfAbsent(name, newDecryptedValue) == null :
+                        this.decryptedValues.replace(name, decryptedValue, newDecryptedValue));
+            if (added) {
+                return newDecryptedValue.getValue();
+            }
+        }
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Returns the number of values that have been decrypted by this 
+     * property source.
+     * </p>
+     * 
+     * @return the number of decrypted values.
+     */
+    public int getDecryptedValueCount() {
+        return this.decryptedValueCount.get();
+    }
+    
+    
+    
+    /*
+     * Decrypts its encrypted value (only once) the first time it is requested.
+     */
+    private final class DecryptedValue {
+        
+        private final String encryptedValue;
+        private String value = null;
+        private boolean decrypted = false;
+        
+        DecryptedValue(final String encryptedValue) {
+            super();
+            this.encryptedValue = encryptedValue;
+        }
+        
+        synchronized String getValue() {
+            if (!this.decrypted) {
+                this.value = 
+                    (stringEncryptor != null?
+                            PropertyValueEncryptionUtils.decrypt(this.encryptedValue, stringEncryptor) :
+                            PropertyValueEncryptionUtils.decrypt(this.encryptedValue, textEncryptor));
+                this.decrypted = true;
+                decryptedValueCount.incrementAndGet();
+            }
+            return this.value;
+        }
+        
+    }
+    
+}
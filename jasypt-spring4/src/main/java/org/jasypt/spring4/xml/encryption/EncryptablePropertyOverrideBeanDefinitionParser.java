@@ -36,6 +36,7 @@ final class EncryptablePropertyOverrideBeanDefinitionParser
 
 
     private static final String ENCRYPTOR_ATTRIBUTE = "encryptor";
+    private static final String DECRYPTION_PARALLELISM_ATTRIBUTE = "decryption-parallelism";
     
     
     EncryptablePropertyOverrideBeanDefinitionParser() {
@@ -56,6 +57,11 @@ final class EncryptablePropertyOverrideBeanDefinitionParser
         builder.addPropertyValue("ignoreInvalidKeys",
                 Boolean.valueOf(element.getAttribute("ignore-unresolvable")));
 
+        final String decryptionParallelism = element.getAttribute(DECRYPTION_PARALLELISM_ATTRIBUTE);
+        if (StringUtils.hasLength(decryptionParallelism)) {
+            builder.addPropertyValue("decryptionParallelism", Integer.valueOf(decryptionParallelism));
+        }
+
         final String encryptorBeanName = element.getAttribute(ENCRYPTOR_ATTRIBUTE);
         if (StringUtils.hasText(encryptorBeanName)) {
             builder.addConstructorArgReference(encryptorBeanName);
@@ -37,6 +37,7 @@ final class EncryptablePropertyPlaceholderBeanDefinitionParser
 
     private static final String SYSTEM_PROPERTIES_MODE_ATTRIBUTE = "system-properties-mode";
     private static final String ENCRYPTOR_ATTRIBUTE = "encryptor";
+    private static final String DECRYPTION_PARALLELISM_ATTRIBUTE = "decryption-parallelism";
 
     private static final String SYSTEM_PROPERTIES_MODE_DEFAULT = "ENVIRONMENT";
     
@@ -77,6 +78,11 @@ final class EncryptablePropertyPlaceholderBeanDefinitionParser
             builder.addPropertyValue("systemPropertiesModeName", "SYSTEM_PROPERTIES_MODE_"+systemPropertiesModeName);
         }
 
+        final String decryptionParallelism = element.getAttribute(DECRYPTION_PARALLELISM_ATTRIBUTE);
+        if (StringUtils.hasLength(decryptionParallelism)) {
+            builder.addPropertyValue("decryptionParallelism", Integer.valueOf(decryptionParallelism));
+        }
+
         final String encryptorBeanName = element.getAttribute(ENCRYPTOR_ATTRIBUTE);
         if (StringUtils.hasText(encryptorBeanName)) {
             builder.addConstructorArgReference(encryptorBeanName);
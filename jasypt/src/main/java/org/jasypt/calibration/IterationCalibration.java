@@ -0,0 +1,146 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.calibration;
+
+
+/**
+ * <p>
+ * Result of an iteration count calibration performed by an 
+ * {@link IterationCalibrator}: the chosen iteration count along with the 
+ * measurements it was computed from.
+ * </p>
+ * <p>
+ * The iteration count can be directly set into config objects, like:
+ * </p>
+ * <pre>
+ *   digesterConfig.setIterations(calibration.getIterations());
+ *   pbeConfig.setKeyObtentionIterations(calibration.getIterations());
+ * </pre>
+ * <p>
+ * Objects of this class are immutable.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class IterationCalibration {
+
+    private final String algorithm;
+    private final int iterations;
+    private final double nanosPerIteration;
+    private final long overheadNanos;
+    private final long targetLatencyNanos;
+    
+    
+    IterationCalibration(final String algorithm, final int iterations, 
+            final double nanosPerIteration, final long overheadNanos, 
+            final long targetLatencyNanos) {
+        super();
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+        this.nanosPerIteration = nanosPerIteration;
+        this.overheadNanos = overheadNanos;
+        this.targetLatencyNanos = targetLatencyNanos;
+    }
+
+    
+    /**
+     * Returns the algorithm for which the calibration was performed.
+     * 
+     * @return the algorithm name.
+     */
+    public String getAlgorithm() {
+        return this.algorithm;
+    }
+    
+    /**
+     * Returns the chosen iteration count: the greatest one (and never less
+     * than one) for which the estimated latency of an operation does not 
+     * exceed the target.
+     * 
+     * @return the iteration count.
+     */
+    public Integer getIterations() {
+        return Integer.valueOf(this.iterations);
+    }
+    
+    /**
+     * Returns the measured cost of each iteration, in nanoseconds.
+     * 
+     * @return the cost of each iteration.
+     */
+    public double getNanosPerIteration() {
+        return this.nanosPerIteration;
+    }
+    
+    /**
+     * Returns the measured fixed cost of each operation (salt generation, 
+     * cipher initialization...), not depending on the number of iterations,
+     * in nanoseconds.
+     * 
+     * @return the fixed cost of each operation.
+     */
+    public long getOverheadNanos() {
+        return this.overheadNanos;
+    }
+    
+    /**
+     * Returns the target latency the calibration was performed for, in 
+     * nanoseconds.
+     * 
+     * @return the target latency.
+     */
+    public long getTargetLatencyNanos() {
+        return this.targetLatencyNanos;
+    }
+    
+    /**
+     * Returns the estimated latency of each operation (in a single thread) 
+     * when using the chosen iteration count, in nanoseconds.
+     * 
+     * @return the estimated latency.
+     */
+    public long getEstimatedLatencyNanos() {
+        return this.overheadNanos + Math.round(this.nanosPerIteration * this.iterations);
+    }
+    
+    /**
+     * Returns the estimated number of operations per second that a single
+     * thread will be able to perform when using the chosen iteration count.
+     * 
+     * @return the estimated throughput of a thread.
+     */
+    public double getEstimatedOperationsPerSecond() {
+        return 1000000000.0d / Math.max(1L, getEstimatedLatencyNanos());
+    }
+    
+    
+    public String toString() {
+        return "IterationCalibration[algorithm=" + this.algorithm + 
+               ", iterations=" + this.iterations + 
+               ", nanosPerIteration=" + this.nanosPerIteration + 
+               ", overheadNanos=" + this.overheadNanos + 
+               ", targetLatencyNanos=" + this.targetLatencyNanos + 
+               ", estimatedLatencyNanos=" + getEstimatedLatencyNanos() + "]";
+    }
+    
+}
@@ -0,0 +1,336 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.calibration;
+
+import java.util.Arrays;
+
+import org.jasypt.commons.CommonUtils;
+import org.jasypt.digest.StandardByteDigester;
+import org.jasypt.digest.config.DigesterConfig;
+import org.jasypt.encryption.pbe.StandardPBEByteEncryptor;
+import org.jasypt.encryption.pbe.config.PBEConfig;
+import org.jasypt.salt.RandomSaltGenerator;
+
+
+/**
+ * <p>
+ * Computes the number of hashing iterations (for digesters) or key obtention
+ * iterations (for PBE encryptors) which makes each operation take a target 
+ * amount of time on the running JVM and hardware, for a specific 
+ * algorithm and provider.
+ * </p>
+ * <p>
+ * Calibration works as follows:
+ * </p>
+ * <ol>
+ *   <li>The operation is executed repeatedly during a warm-up period, so that
+ *       the JIT compiler has the chance to optimize the involved code.</li>
+ *   <li>The time taken by an operation is measured (as the median of several
+ *       samples) for two different iteration counts, which allows computing 
+ *       both the cost of each iteration and the fixed cost of each operation
+ *       (salt generation, cipher initialization...).</li>
+ *   <li>The greatest iteration count for which the estimated latency does
+ *       not exceed the target is chosen.</li>
+ * </ol>
+ * <p>
+ * The target can be specified either as a latency 
+ * ({@link #setTargetLatencyMillis(long)}) or as a number of operations per 
+ * second to be performed by each thread 
+ * ({@link #setTargetOperationsPerSecond(int)}). Default is 
+ * {@value #DEFAULT_TARGET_LATENCY_MILLIS} milliseconds per operation.
+ * </p>
+ * <p>
+ * Measurements are done on the calling thread and take (roughly) the 
+ * warm-up period plus a few times the target latency. Results depend on 
+ * the load of the machine at the moment of calibration, so calibration 
+ * should be performed when the application is idle (for example, at 
+ * start-up) or on a representative machine.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class IterationCalibrator {
+
+    /**
+     * Default target latency will be 100 milliseconds per operation
+     */
+    public static final long DEFAULT_TARGET_LATENCY_MILLIS = 100L;
+    /**
+     * Default warm-up period will be 500 milliseconds
+     */
+    public static final long DEFAULT_WARMUP_MILLIS = 500L;
+    /**
+     * Default number of samples for each measurement will be 5
+     */
+    public static final int DEFAULT_SAMPLES = 5;
+    
+    // Minimum time an operation must take for it to be considered measurable
+    private static final long MIN_PROBE_NANOS = 2000000L;
+    // Iteration counts used for the warm-up and the first measurement
+    private static final int INITIAL_PROBE_ITERATIONS = 1000;
+    private static final int MAX_PROBE_ITERATIONS = 1 << 26;
+    // Maximum ratio between the average cost of each iteration in a 
+    // measurement (overhead included) and the estimated cost of each one
+    private static final double MAX_OVERHEAD_RATIO = 16.0d;
+    
+    private static final byte[] MESSAGE = new byte[32];
+    private static final String PASSWORD = "jasypt-calibration";
+    
+    private long targetLatencyNanos = DEFAULT_TARGET_LATENCY_MILLIS * 1000000L;
+    private long warmupNanos = DEFAULT_WARMUP_MILLIS * 1000000L;
+    private int samples = DEFAULT_SAMPLES;
+    
+    
+    
+    /**
+     * Creates a new instance of <tt>IterationCalibrator</tt>.
+     */
+    public IterationCalibrator() {
+        super();
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the target latency of each operation, in milliseconds.
+     * </p>
+     * 
+     * @param targetLatencyMillis the target latency.
+     */
+    public void setTargetLatencyMillis(final long targetLatencyMillis) {
+        CommonUtils.validateIsTrue(targetLatencyMillis > 0, 
+                "Target latency must be greater than zero");
+        this.targetLatencyNanos = targetLatencyMillis * 1000000L;
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the target number of operations per second that each thread 
+     * should be able to perform (which is equivalent to setting a target 
+     * latency of 1/<tt>targetOperationsPerSecond</tt> seconds).
+     * </p>
+     * 
+     * @param targetOperationsPerSecond the target throughput of each thread.
+     */
+    public void setTargetOperationsPerSecond(final int targetOperationsPerSecond) {
+        CommonUtils.validateIsTrue(targetOperationsPerSecond > 0, 
+                "Target operations per second must be greater than zero");
+        this.targetLatencyNanos = 1000000000L / targetOperationsPerSecond;
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the duration of the warm-up period, in milliseconds.
+     * </p>
+     * 
+     * @param warmupMillis the duration of the warm-up period.
+     */
+    public void setWarmupMillis(final long warmupMillis) {
+        CommonUtils.validateIsTrue(warmupMillis >= 0, 
+                "Warm-up period cannot be negative");
+        this.warmupNanos = warmupMillis * 1000000L;
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the number of samples (timed operations) of each measurement. 
+     * The median of the samples is used.
+     * </p>
+     * 
+     * @param samples the number of samples.
+     */
+    public void setSamples(final int samples) {
+        CommonUtils.validateIsTrue(samples > 0, 
+                "Number of samples must be greater than zero");
+        this.samples = samples;
+    }
+    
+    
+    /**
+     * <p>
+     * Calibrates the number of hashing iterations for digesters configured
+     * with the specified config object (algorithm, provider, salt...). The
+     * iteration count set in the config object, if any, is ignored.
+     * </p>
+     * 
+     * @param config the digester configuration (can be null, in which case
+     *        the default digester configuration is calibrated).
+     * @return the result of the calibration.
+     */
+    public IterationCalibration calibrateDigester(final DigesterConfig config) {
+        
+        final String algorithm = 
+            (config != null && config.getAlgorithm() != null? 
+                    config.getAlgorithm() : StandardByteDigester.DEFAULT_ALGORITHM);
+        
+        return calibrate(algorithm, 
+                new CalibratedOperation() {
+                    private StandardByteDigester digester = null;
+                    void prepare(final int iterations) {
+                        final StandardByteDigester newDigester = new StandardByteDigester();
+                        if (config != null) {
+                            newDigester.setConfig(config);
+                        }
+                        newDigester.setIterations(iterations);
+                        newDigester.initialize();
+                        this.digester = newDigester;
+                    }
+                    void execute() {
+                        this.digester.digest(MESSAGE);
+                    }
+                });
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Calibrates the number of key obtention iterations for PBE encryptors
+     * configured with the specified config object (algorithm, provider...).
+     * The key obtention iteration count and password set in the config
+     * object, if any, are ignored.
+     * </p>
+     * <p>
+     * Operations are measured using random salts (and no derived key caching
+     * or salt reuse), so that the key is derived for every operation.
+     * </p>
+     * 
+     * @param config the PBE configuration (can be null, in which case
+     *        the default encryptor configuration is calibrated).
+     * @return the result of the calibration.
+     */
+    public IterationCalibration calibratePBE(final PBEConfig config) {
+        
+        final String algorithm = 
+            (config != null && config.getAlgorithm() != null? 
+                    config.getAlgorithm() : StandardPBEByteEncryptor.DEFAULT_ALGORITHM);
+        
+        return calibrate(algorithm, 
+                new CalibratedOperation() {
+                    private StandardPBEByteEncryptor encryptor = null;
+                    void prepare(final int iterations) {
+                        final StandardPBEByteEncryptor newEncryptor = new StandardPBEByteEncryptor();
+                        if (config != null) {
+                            newEncryptor.setConfig(config);
+                        }
+                        newEncryptor.setPassword(PASSWORD);
+                        newEncryptor.setKeyObtentionIterations(iterations);
+                        newEncryptor.setSaltGenerator(new RandomSaltGenerator());
+                        newEncryptor.setDerivedKeyCacheSize(0);
+                        newEncryptor.setSaltReuseMaxMessages(0);
+                        newEncryptor.setSaltReuseMaxTime(0L);
+                        newEncryptor.initialize();
+                        this.encryptor = newEncryptor;
+                    }
+                    void execute() {
+                        this.encryptor.encrypt(MESSAGE);
+                    }
+                });
+        
+    }
+    
+    
+    
+    private IterationCalibration calibrate(final String algorithm, 
+            final CalibratedOperation operation) {
+        
+        // Warm-up
+        operation.prepare(INITIAL_PROBE_ITERATIONS);
+        final long warmupStart = System.nanoTime();
+        do {
+            operation.execute();
+        } while (System.nanoTime() - warmupStart < this.warmupNanos);
+        
+        // Look for an iteration count which makes operations take long
+        // enough to be accurately measured
+        int probeIterations = INITIAL_PROBE_ITERATIONS;
+        long probeNanos = measure(operation, probeIterations);
+        while (probeNanos < MIN_PROBE_NANOS && probeIterations < MAX_PROBE_ITERATIONS) {
+            probeIterations *= 2;
+            probeNanos = measure(operation, probeIterations);
+        }
+        
+        // Doubling the iterations tells the cost of each of them. Measurement
+        // noise can make this cost look much smaller than it is (even zero),
+        // so it is never considered smaller than a fraction of the average
+        // cost (which includes the overhead): erring on the side of fewer
+        // iterations is preferable to choosing a huge, useless count.
+        final long doubleProbeNanos = measure(operation, 2 * probeIterations);
+        final double averageNanosPerIteration =
+            Math.max(probeNanos, 1L) / (double) probeIterations;
+        final double nanosPerIteration =
+            Math.max((doubleProbeNanos - probeNanos) / (double) probeIterations,
+                    averageNanosPerIteration / MAX_OVERHEAD_RATIO);
+        final long overheadNanos = 
+            Math.max(0L, Math.round(probeNanos - (nanosPerIteration * probeIterations)));
+        
+        final double iterations = 
+            Math.floor((this.targetLatencyNanos - overheadNanos) / nanosPerIteration);
+        final int chosenIterations = 
+            (int) Math.max(1.0d, Math.min(Integer.MAX_VALUE, iterations));
+        
+        return new IterationCalibration(algorithm, chosenIterations, 
+                nanosPerIteration, overheadNanos, this.targetLatencyNanos);
+        
+    }
+    
+    
+    /*
+     * Returns the median of the time taken by the operation in several
+     * executions (samples).
+     */
+    private long measure(final CalibratedOperation operation, final int iterations) {
+        
+        operation.prepare(iterations);
+        // The first execution is not timed (lazily initialized objects)
+        operation.execute();
+        
+        final long[] times = new long[this.samples];
+        for (int i = 0; i < this.samples; i++) {
+            final long start = System.nanoTime();
+            operation.execute();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[this.samples / 2];
+        
+    }
+    
+    
+    
+    /*
+     * An operation (digest, encryption...) which can be configured with a 
+     * number of iterations.
+     */
+    private abstract static class CalibratedOperation {
+        
+        abstract void prepare(final int iterations);
+        
+        abstract void execute();
+        
+    }
+    
+}
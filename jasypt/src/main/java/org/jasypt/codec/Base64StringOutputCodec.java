@@ -0,0 +1,207 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.codec;
+
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+
+/**
+ * <p>
+ * BASE64 (RFC 4648) implementation of {@link StringOutputCodec}, which can 
+ * use both the standard and the URL and filename safe alphabets, with or 
+ * without padding. Data is encoded directly into a <tt>char[]</tt> (and 
+ * decoded directly from the String) without any intermediate byte arrays.
+ * </p>
+ * <p>
+ * Decoding is lenient in the same way the BASE64 codec formerly used by 
+ * jasypt was: characters not belonging to the alphabet (like whitespace 
+ * or line breaks) and padding are ignored. Both alphabets are accepted 
+ * when decoding, whichever is used for encoding.
+ * </p>
+ * <p>
+ * This class is <i>thread-safe</i>.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class Base64StringOutputCodec implements StringOutputCodec {
+
+    private static final char[] STANDARD_ALPHABET = 
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final char[] URL_SAFE_ALPHABET = 
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final char PAD = '=';
+    
+    // Values of every ASCII char (-1 if it does not belong to any alphabet)
+    private static final byte[] DECODING_TABLE = createDecodingTable();
+    
+    private final char[] alphabet;
+    private final boolean padded;
+    
+    
+    /**
+     * Creates a new instance of <tt>Base64StringOutputCodec</tt> which
+     * uses the standard alphabet and padding.
+     */
+    public Base64StringOutputCodec() {
+        this(false, true);
+    }
+    
+    
+    /**
+     * Creates a new instance of <tt>Base64StringOutputCodec</tt>.
+     * 
+     * @param urlSafe whether the URL and filename safe alphabet 
+     *        (using <tt>-</tt> and <tt>_</tt> instead of <tt>+</tt> and 
+     *        <tt>/</tt>) should be used.
+     * @param padded whether encoded Strings should be padded with 
+     *        <tt>=</tt> characters to a multiple of four characters.
+     */
+    public Base64StringOutputCodec(final boolean urlSafe, final boolean padded) {
+        super();
+        this.alphabet = (urlSafe? URL_SAFE_ALPHABET : STANDARD_ALPHABET);
+        this.padded = padded;
+    }
+
+    
+    public String encode(final byte[] data) {
+        
+        if (data == null) {
+            return null;
+        }
+        
+        final int fullGroups = data.length / 3;
+        final int remainder = data.length - (fullGroups * 3);
+        final int encodedLength = 
+            (fullGroups * 4) + 
+            (remainder == 0? 0 : (this.padded? 4 : remainder + 1));
+        
+        final char[] encoded = new char[encodedLength];
+        final char[] chars = this.alphabet;
+        
+        int in = 0;
+        int out = 0;
+        for (int i = 0; i < fullGroups; i++) {
+            final int group = 
+                ((data[in++] & 0xff) << 16) | ((data[in++] & 0xff) << 8) | (data[in++] & 0xff);
+            encoded[out++] = chars[(group >>> 18) & 0x3f];
+            encoded[out++] = chars[(group >>> 12) & 0x3f];
+            encoded[out++] = chars[(group >>> 6) & 0x3f];
+            encoded[out++] = chars[group & 0x3f];
+        }
+        
+        if (remainder > 0) {
+            final int group = 
+                ((data[in] & 0xff) << 16) | (remainder == 2? ((data[in + 1] & 0xff) << 8) : 0);
+            encoded[out++] = chars[(group >>> 18) & 0x3f];
+            encoded[out++] = chars[(group >>> 12) & 0x3f];
+            if (remainder == 2) {
+                encoded[out++] = chars[(group >>> 6) & 0x3f];
+            }
+            while (out < encodedLength) {
+                encoded[out++] = PAD;
+            }
+        }
+        
+        return new String(encoded);
+        
+    }
+
+    
+    public byte[] decode(final String encodedData) {
+        
+        if (encodedData == null) {
+            return null;
+        }
+        
+        final int length = encodedData.length();
+        
+        // Chars not belonging to the alphabet are ignored
+        int validChars = 0;
+        for (int i = 0; i < length; i++) {
+            if (valueOf(encodedData.charAt(i)) >= 0) {
+                validChars++;
+            }
+        }
+        
+        // A single char left cannot encode a byte: it is ignored
+        final int fullQuads = validChars / 4;
+        final int remainder = validChars - (fullQuads * 4);
+        final int decodedLength = 
+            (fullQuads * 3) + (remainder == 3? 2 : (remainder == 2? 1 : 0));
+        
+        final byte[] decoded = new byte[decodedLength];
+        
+        int group = 0;
+        int groupChars = 0;
+        int out = 0;
+        for (int i = 0; i < length && out < decodedLength; i++) {
+            final int value = valueOf(encodedData.charAt(i));
+            if (value < 0) {
+                continue;
+            }
+            group = (group << 6) | value;
+            if (++groupChars == 4) {
+                decoded[out++] = (byte) (group >>> 16);
+                decoded[out++] = (byte) (group >>> 8);
+                decoded[out++] = (byte) group;
+                group = 0;
+                groupChars = 0;
+            }
+        }
+        
+        if (out < decodedLength) {
+            // Last (partial) group: two or three chars
+            if (groupChars == 3) {
+                decoded[out++] = (byte) (group >>> 10);
+                decoded[out++] = (byte) (group >>> 2);
+            } else if (groupChars == 2) {
+                decoded[out++] = (byte) (group >>> 4);
+            } else {
+                throw new EncryptionOperationNotPossibleException();
+            }
+        }
+        
+        return decoded;
+        
+    }
+    
+    
+    private static int valueOf(final char c) {
+        return (c < DECODING_TABLE.length? DECODING_TABLE[c] : -1);
+    }
+    
+    
+    private static byte[] createDecodingTable() {
+        final byte[] table = new byte[128];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = -1;
+        }
+        for (int i = 0; i < STANDARD_ALPHABET.length; i++) {
+            table[STANDARD_ALPHABET[i]] = (byte) i;
+            table[URL_SAFE_ALPHABET[i]] = (byte) i;
+        }
+        return table;
+    }
+    
+}
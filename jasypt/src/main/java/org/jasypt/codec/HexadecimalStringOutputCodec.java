@@ -0,0 +1,59 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.codec;
+
+import org.jasypt.commons.CommonUtils;
+
+
+/**
+ * <p>
+ * Hexadecimal (upper-case) implementation of {@link StringOutputCodec}. 
+ * Decoding accepts both upper and lower-case digits.
+ * </p>
+ * <p>
+ * This class is <i>thread-safe</i>.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class HexadecimalStringOutputCodec implements StringOutputCodec {
+
+    
+    /**
+     * Creates a new instance of <tt>HexadecimalStringOutputCodec</tt>.
+     */
+    public HexadecimalStringOutputCodec() {
+        super();
+    }
+
+    
+    public String encode(final byte[] data) {
+        return CommonUtils.toHexadecimal(data);
+    }
+
+    
+    public byte[] decode(final String encodedData) {
+        return CommonUtils.fromHexadecimal(encodedData);
+    }
+    
+}
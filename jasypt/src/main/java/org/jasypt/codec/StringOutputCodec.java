@@ -0,0 +1,66 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.codec;
+
+
+/**
+ * <p>
+ * Common interface for all the codecs which can be used for converting
+ * the binary results of String encryptors and digesters into Strings 
+ * (and back). Codecs are selected by means of the <tt>stringOutputType</tt> 
+ * configuration parameter (see {@link StringOutputCodecs}).
+ * </p>
+ * <p>
+ * Implementations of this interface must be <b>thread-safe</b>.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public interface StringOutputCodec {
+
+    
+    /**
+     * <p>
+     * Encodes binary data into a String.
+     * </p>
+     * 
+     * @param data the data to be encoded.
+     * @return the resulting String.
+     */
+    public String encode(byte[] data);
+    
+    
+    /**
+     * <p>
+     * Decodes a String (previously created by {@link #encode(byte[])}) into
+     * binary data.
+     * </p>
+     * 
+     * @param encodedData the String to be decoded.
+     * @return the decoded data.
+     * @throws org.jasypt.exceptions.EncryptionOperationNotPossibleException 
+     *         if the String cannot be decoded.
+     */
+    public byte[] decode(String encodedData);
+    
+}
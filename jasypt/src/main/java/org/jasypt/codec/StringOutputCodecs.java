@@ -0,0 +1,156 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.codec;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jasypt.commons.CommonUtils;
+
+
+/**
+ * <p>
+ * Registry of the {@link StringOutputCodec} implementations available as
+ * values of the <tt>stringOutputType</tt> configuration parameter of
+ * String encryptors and digesters. Names are case-insensitive. The 
+ * following codecs are registered by default:
+ * </p>
+ * <ul>
+ *   <li><tt><b>base64</b></tt>: BASE64 with the standard alphabet and padding
+ *       (the default output type).</li>
+ *   <li><tt><b>base64-unpadded</b></tt>: BASE64 with the standard alphabet
+ *       and no padding.</li>
+ *   <li><tt><b>base64url</b></tt>: BASE64 with the URL and filename safe 
+ *       alphabet and padding.</li>
+ *   <li><tt><b>base64url-unpadded</b></tt>: BASE64 with the URL and filename 
+ *       safe alphabet and no padding.</li>
+ *   <li><tt><b>hexadecimal</b></tt> (also <tt>hexa</tt>, <tt>hex</tt>...): 
+ *       upper-case hexadecimal.</li>
+ * </ul>
+ * <p>
+ * Additional codecs can be registered by means of 
+ * {@link #registerCodec(String, StringOutputCodec)}. Registration should
+ * happen before any encryptor or digester using the new name is 
+ * initialized (unknown names are treated as <tt>base64</tt>).
+ * </p>
+ * <p>
+ * This class is <i>thread-safe</i>.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class StringOutputCodecs {
+
+    
+    private static final Map<String,StringOutputCodec> CODECS = 
+        new ConcurrentHashMap<String,StringOutputCodec>();
+    
+    static {
+        CODECS.put(CommonUtils.STRING_OUTPUT_TYPE_BASE64, 
+                new Base64StringOutputCodec(false, true));
+        CODECS.put(CommonUtils.STRING_OUTPUT_TYPE_BASE64_UNPADDED, 
+                new Base64StringOutputCodec(false, false));
+        CODECS.put(CommonUtils.STRING_OUTPUT_TYPE_BASE64_URL, 
+                new Base64StringOutputCodec(true, true));
+        CODECS.put(CommonUtils.STRING_OUTPUT_TYPE_BASE64_URL_UNPADDED, 
+                new Base64StringOutputCodec(true, false));
+        CODECS.put(CommonUtils.STRING_OUTPUT_TYPE_HEXADECIMAL, 
+                new HexadecimalStringOutputCodec());
+    }
+    
+    
+    /**
+     * <p>
+     * Registers a codec, which will be usable as <tt>stringOutputType</tt>
+     * by its name. Codecs registered by default cannot be replaced.
+     * </p>
+     * 
+     * @param name the name of the codec (case-insensitive).
+     * @param codec the codec.
+     */
+    public static void registerCodec(final String name, final StringOutputCodec codec) {
+        CommonUtils.validateNotEmpty(name, "Codec name cannot be empty");
+        CommonUtils.validateNotNull(codec, "Codec cannot be null");
+        final String normalizedName = normalizeName(name);
+        CommonUtils.validateIsTrue(
+                !CommonUtils.STRING_OUTPUT_TYPE_HEXADECIMAL.equals(
+                        CommonUtils.getStandardStringOutputType(normalizedName)) &&
+                !isDefaultCodecName(normalizedName), 
+                "Default codec \"" + name + "\" cannot be replaced");
+        CODECS.put(normalizedName, codec);
+    }
+    
+    
+    /**
+     * <p>
+     * Returns whether a codec has been registered with the specified name.
+     * </p>
+     * 
+     * @param name the name of the codec (case-insensitive).
+     * @return true if the codec exists, false if not.
+     */
+    public static boolean isCodecRegistered(final String name) {
+        return (name != null && CODECS.containsKey(normalizeName(name)));
+    }
+    
+    
+    /**
+     * <p>
+     * Returns the codec for the specified String output type, as normalized
+     * by String encryptors and digesters (unknown output types correspond
+     * to <tt>base64</tt>, and all the hexadecimal aliases to 
+     * <tt>hexadecimal</tt>).
+     * </p>
+     * 
+     * @param stringOutputType the String output type.
+     * @return the codec.
+     */
+    public static StringOutputCodec getCodec(final String stringOutputType) {
+        final String standardType = 
+            CommonUtils.getStandardStringOutputType(stringOutputType);
+        final StringOutputCodec codec = 
+            (standardType == null? null : CODECS.get(standardType));
+        return (codec != null? codec : CODECS.get(CommonUtils.STRING_OUTPUT_TYPE_BASE64));
+    }
+    
+    
+    static String normalizeName(final String name) {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+    
+    
+    private static boolean isDefaultCodecName(final String normalizedName) {
+        return CommonUtils.STRING_OUTPUT_TYPE_BASE64.equals(normalizedName) ||
+               CommonUtils.STRING_OUTPUT_TYPE_BASE64_UNPADDED.equals(normalizedName) ||
+               CommonUtils.STRING_OUTPUT_TYPE_BASE64_URL.equals(normalizedName) ||
+               CommonUtils.STRING_OUTPUT_TYPE_BASE64_URL_UNPADDED.equals(normalizedName) ||
+               CommonUtils.STRING_OUTPUT_TYPE_HEXADECIMAL.equals(normalizedName);
+    }
+    
+    
+    private StringOutputCodecs() {
+        super();
+    }
+    
+}
@@ -0,0 +1,258 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.commons;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * <p>
+ * Executes batches of independent operations (for example, digesting or
+ * matching a large number of messages) in parallel, using the calling
+ * thread and a shared set of daemon worker threads (one per available
+ * processor).
+ * </p>
+ * <p>
+ * Items are not assigned to workers beforehand: each worker (including 
+ * the calling thread) repeatedly takes the next unprocessed item until 
+ * there are none left, so that long and short operations are balanced 
+ * automatically. As the calling thread also processes items, batches are
+ * always completed even if all the worker threads are busy with other 
+ * batches. 
+ * </p>
+ * <p>
+ * Each worker can create a <i>context</i> object (for example, a 
+ * <tt>MessageDigest</tt>) which is then used for all the items it
+ * processes without any synchronization.
+ * </p>
+ * <p>
+ * <b>This class is for internal use only</b>. 
+ * </p> 
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class BatchExecutor {
+
+    
+    private static final int WORKER_COUNT = 
+        Runtime.getRuntime().availableProcessors();
+    
+    private static final ThreadPoolExecutor WORKERS = createWorkers();
+    
+    
+    
+    /**
+     * <p>
+     * A batch of independent operations, identified by their index.
+     * </p>
+     * 
+     * @param <C> the type of the per-worker context.
+     */
+    public abstract static class Batch<C> {
+        
+        protected Batch() {
+            super();
+        }
+        
+        /**
+         * Creates the context that a worker will use for all the items
+         * it processes. By default, no context is created.
+         * <p>
+         * If this method fails in a worker thread, that worker takes no 
+         * items, leaving them to the rest of workers. If it fails in the
+         * calling thread, the items not yet taken are not processed and
+         * the exception is rethrown once the batch finishes.
+         * </p>
+         * 
+         * @return the context (can be null).
+         */
+        protected C createWorkerContext() {
+            return null;
+        }
+        
+        /**
+         * Processes an item. Implementations are responsible for isolating
+         * failures of single items (exceptions thrown from this method will 
+         * be ignored).
+         * 
+         * @param index the index of the item.
+         * @param workerContext the context of the worker processing the item.
+         */
+        protected abstract void process(final int index, final C workerContext);
+        
+    }
+    
+    
+
+    /**
+     * <p>
+     * Processes all the items in the batch, returning only once all
+     * of them have been processed.
+     * </p>
+     * 
+     * @param size the number of items in the batch.
+     * @param batch the batch.
+     * @throws RuntimeException the exception thrown when creating the context
+     *         of the calling thread, if some items could not be processed 
+     *         because of it.
+     */
+    public static <C> void execute(final int size, final Batch<C> batch) {
+        execute(size, WORKER_COUNT, batch);
+    }
+    
+    
+
+    /**
+     * <p>
+     * Processes all the items in the batch, using at most the specified
+     * number of threads (including the calling one), and returning only once 
+     * all of them have been processed.
+     * </p>
+     * 
+     * @param size the number of items in the batch.
+     * @param parallelism the maximum number of threads to be used.
+     * @param batch the batch.
+     * @throws RuntimeException the exception thrown when creating the context
+     *         of the calling thread, if some items could not be processed 
+     *         because of it.
+     */
+    public static <C> void execute(final int size, final int parallelism, final Batch<C> batch) {
+        
+        CommonUtils.validateIsTrue(size >= 0, "Batch size cannot be negative");
+        CommonUtils.validateIsTrue(parallelism > 0, "Parallelism must be greater than zero");
+        CommonUtils.validateNotNull(batch, "Batch cannot be null");
+        
+        if (size == 0) {
+            return;
+        }
+        
+        final AtomicInteger nextIndex = new AtomicInteger(0);
+        final CountDownLatch pendingItems = new CountDownLatch(size);
+        
+        final Runnable worker = 
+            new Runnable() {
+                public void run() {
+                    processItems(batch, nextIndex, pendingItems, size, false);
+                }
+            };
+            
+        // One item is left for the calling thread, which also works
+        final int helpers = Math.min(Math.min(WORKER_COUNT, parallelism), size) - 1;
+        for (int i = 0; i < helpers; i++) {
+            WORKERS.execute(worker);
+        }
+        
+        final RuntimeException contextFailure = 
+            processItems(batch, nextIndex, pendingItems, size, true);
+        
+        boolean interrupted = false;
+        while (true) {
+            try {
+                pendingItems.await();
+                break;
+            } catch (final InterruptedException e) {
+                // Items taken by other threads must finish before returning
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (contextFailure != null) {
+            throw contextFailure;
+        }
+        
+    }
+    
+    
+    private static <C> RuntimeException processItems(final Batch<C> batch, 
+            final AtomicInteger nextIndex, final CountDownLatch pendingItems, 
+            final int size, final boolean callingThread) {
+        if (nextIndex.get() >= size) {
+            // Nothing left to do: avoid creating a context
+            return null;
+        }
+        final C workerContext;
+        try {
+            workerContext = batch.createWorkerContext();
+        } catch (final RuntimeException e) {
+            if (!callingThread) {
+                // Remaining items are left to the other workers and the 
+                // calling thread, which will always take them
+                return null;
+            }
+            // Nobody else is guaranteed to take the remaining items: they 
+            // are discarded so that the batch can finish, and the failure 
+            // is reported if any of them could not be processed
+            boolean discarded = false;
+            while (nextIndex.getAndIncrement() < size) {
+                discarded = true;
+                pendingItems.countDown();
+            }
+            return (discarded ? e : null);
+        }
+        int index;
+        while ((index = nextIndex.getAndIncrement()) < size) {
+            try {
+                batch.process(index, workerContext);
+            } catch (final RuntimeException e) {
+                // Failures of single items are isolated
+            } finally {
+                pendingItems.countDown();
+            }
+        }
+        return null;
+    }
+    
+    
+    private static ThreadPoolExecutor createWorkers() {
+        
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        final ThreadPoolExecutor executor =
+            new ThreadPoolExecutor(
+                    WORKER_COUNT, WORKER_COUNT, 30L, TimeUnit.SECONDS, 
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = 
+                                new Thread(runnable, "jasypt-batch-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+        
+    }
+    
+    
+    private BatchExecutor() {
+        super();
+    }
+    
+}
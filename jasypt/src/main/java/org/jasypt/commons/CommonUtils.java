@@ -22,7 +22,9 @@ package org.jasypt.commons;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
+import org.jasypt.codec.StringOutputCodecs;
 import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
 
 /**
@@ -40,6 +42,9 @@ public final class CommonUtils {
 
     public static final String STRING_OUTPUT_TYPE_BASE64 = "base64"; 
     public static final String STRING_OUTPUT_TYPE_HEXADECIMAL = "hexadecimal"; 
+    public static final String STRING_OUTPUT_TYPE_BASE64_UNPADDED = "base64-unpadded"; 
+    public static final String STRING_OUTPUT_TYPE_BASE64_URL = "base64url"; 
+    public static final String STRING_OUTPUT_TYPE_BASE64_URL_UNPADDED = "base64url-unpadded"; 
     
     private static final List STRING_OUTPUT_TYPE_HEXADECIMAL_NAMES =
         Arrays.asList(
@@ -51,6 +56,9 @@ public final class CommonUtils {
     private static char[] hexDigits = 
         {'0','1','2','3','4','5','6','7','8','9','A','B','C','D','E','F'};
     
+    // Values of every ASCII char as an hexadecimal digit (-1 if not a digit)
+    private static final byte[] HEX_DIGIT_VALUES = createHexDigitValues();
+    
 
     
     
@@ -76,6 +84,9 @@ public final class CommonUtils {
         if (STRING_OUTPUT_TYPE_HEXADECIMAL_NAMES.contains(valueStr.toUpperCase())) {
             return STRING_OUTPUT_TYPE_HEXADECIMAL;
         }
+        if (StringOutputCodecs.isCodecRegistered(valueStr)) {
+            return valueStr.toLowerCase(Locale.ENGLISH);
+        }
         return STRING_OUTPUT_TYPE_BASE64;
     }
 
@@ -84,13 +95,13 @@ public final class CommonUtils {
         if (message == null) {
             return null;
         }
-        final StringBuffer buffer = new StringBuffer();
+        final char[] result = new char[message.length * 2];
         for (int i = 0; i < message.length; i++) {
-            int curByte = message[i] & 0xff;
-            buffer.append(hexDigits[(curByte >> 4)]);
-            buffer.append(hexDigits[curByte & 0xf]);
+            final int curByte = message[i] & 0xff;
+            result[2 * i] = hexDigits[(curByte >> 4)];
+            result[(2 * i) + 1] = hexDigits[curByte & 0xf];
         }
-        return buffer.toString();
+        return new String(result);
     }
     
     
@@ -101,17 +112,35 @@ public final class CommonUtils {
         if ((message.length() % 2) != 0) {
             throw new EncryptionOperationNotPossibleException();
         }
-        try {
-            final byte[] result = new byte[message.length() / 2];
-            for (int i = 0; i < message.length(); i = i + 2) {
-                final int first = Integer.parseInt("" + message.charAt(i), 16);
-                final int second = Integer.parseInt("" + message.charAt(i + 1), 16);
-                result[i/2] = (byte) (0x0 + ((first & 0xff) << 4) + (second & 0xff));
+        final byte[] result = new byte[message.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            final int first = hexDigitValue(message.charAt(2 * i));
+            final int second = hexDigitValue(message.charAt((2 * i) + 1));
+            if (first < 0 || second < 0) {
+                throw new EncryptionOperationNotPossibleException();
             }
-            return result;
-        } catch (Exception e) {
-            throw new EncryptionOperationNotPossibleException();
+            result[i] = (byte) ((first << 4) | second);
+        }
+        return result;
+    }
+    
+    
+    private static int hexDigitValue(final char c) {
+        return (c < HEX_DIGIT_VALUES.length? HEX_DIGIT_VALUES[c] : -1);
+    }
+    
+    
+    private static byte[] createHexDigitValues() {
+        final byte[] values = new byte[128];
+        Arrays.fill(values, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            values['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            values['A' + i] = (byte) (10 + i);
+            values['a' + i] = (byte) (10 + i);
         }
+        return values;
     }
     
     
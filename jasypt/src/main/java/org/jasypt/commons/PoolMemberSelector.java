@@ -0,0 +1,166 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.commons;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * <p>
+ * Selects the member of a pool (of encryptors or digesters) that will be 
+ * used for each operation, without acquiring any pool-wide lock. 
+ * Available selection strategies are:
+ * </p>
+ * <ul>
+ *   <li><tt><b>round-robin</b></tt> (default): members are selected in 
+ *       turn by means of an atomic counter.</li>
+ *   <li><tt><b>thread</b></tt>: each thread is always assigned the same
+ *       member (threads are striped across the pool).</li>
+ *   <li><tt><b>least-busy</b></tt>: members which are being used by other
+ *       threads are skipped, and only if all of them are busy will the
+ *       caller wait for one.</li>
+ * </ul>
+ * <p>
+ * Every call to {@link #acquire()} must be followed by a call to
+ * {@link #release(int)} with the returned position, once the operation
+ * on the pool member has finished.
+ * </p>
+ * <p>
+ * <b>This class is for internal use only</b>. 
+ * </p> 
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class PoolMemberSelector {
+
+    public static final String STRATEGY_ROUND_ROBIN = "round-robin"; 
+    public static final String STRATEGY_THREAD = "thread"; 
+    public static final String STRATEGY_LEAST_BUSY = "least-busy"; 
+    
+    
+    private final int size;
+    private final boolean thread;
+    private final AtomicInteger counter = new AtomicInteger(0);
+    
+    // Only used with the least-busy strategy
+    private final ReentrantLock[] locks;
+    
+    
+    
+    /**
+     * Returns the standard name of the selection strategy specified, 
+     * or null if it is null.
+     * 
+     * @param valueStr the name of the strategy
+     * @return the standard name of the strategy
+     * @throws IllegalArgumentException if the strategy is not known
+     */
+    public static String getStandardStrategy(final String valueStr) {
+        if (valueStr == null) {
+            return null;
+        }
+        final String value = valueStr.trim().toLowerCase().replace('_', '-');
+        if (STRATEGY_ROUND_ROBIN.equals(value) || "roundrobin".equals(value)) {
+            return STRATEGY_ROUND_ROBIN;
+        }
+        if (STRATEGY_THREAD.equals(value)) {
+            return STRATEGY_THREAD;
+        }
+        if (STRATEGY_LEAST_BUSY.equals(value) || "leastbusy".equals(value)) {
+            return STRATEGY_LEAST_BUSY;
+        }
+        throw new IllegalArgumentException(
+                "Unknown pool selection strategy: \"" + valueStr + "\"");
+    }
+    
+    
+    
+    /**
+     * Creates a selector for a pool of the specified size.
+     * 
+     * @param size the size of the pool
+     * @param strategy the selection strategy (null for round-robin)
+     */
+    public PoolMemberSelector(final int size, final String strategy) {
+        super();
+        CommonUtils.validateIsTrue(size > 0, "Pool size be > 0");
+        final String standardStrategy = 
+            (strategy == null? STRATEGY_ROUND_ROBIN : getStandardStrategy(strategy));
+        this.size = size;
+        this.thread = STRATEGY_THREAD.equals(standardStrategy);
+        if (STRATEGY_LEAST_BUSY.equals(standardStrategy)) {
+            this.locks = new ReentrantLock[size];
+            for (int i = 0; i < size; i++) {
+                this.locks[i] = new ReentrantLock();
+            }
+        } else {
+            this.locks = null;
+        }
+    }
+    
+    
+    
+    /**
+     * Selects a pool member.
+     * 
+     * @return the position of the selected member in the pool
+     */
+    public int acquire() {
+        
+        if (this.thread) {
+            return (int) (Thread.currentThread().getId() % this.size);
+        }
+        
+        final int start = (this.counter.getAndIncrement() & Integer.MAX_VALUE) % this.size;
+        if (this.locks == null) {
+            return start;
+        }
+        
+        for (int i = 0; i < this.size; i++) {
+            final int position = (start + i) % this.size;
+            if (this.locks[position].tryLock()) {
+                return position;
+            }
+        }
+        
+        // All members are busy: wait for the one we were assigned
+        this.locks[start].lock();
+        return start;
+        
+    }
+    
+    
+    /**
+     * Signals that the operation on a previously selected member has
+     * finished.
+     * 
+     * @param position the position returned by {@link #acquire()}
+     */
+    public void release(final int position) {
+        if (this.locks != null) {
+            this.locks[position].unlock();
+        }
+    }
+    
+}
@@ -0,0 +1,214 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.commons;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.jasypt.exceptions.EncryptionInitializationException;
+
+
+/**
+ * <p>
+ * Source of secure random bytes for high-throughput scenarios. Instead of
+ * a single <tt>SecureRandom</tt> shared by all threads, it holds a set
+ * of <i>stripes</i>, each one with its own <tt>SecureRandom</tt>, and each
+ * thread is always assigned the same stripe.
+ * </p>
+ * <p>
+ * Optionally, each stripe can <i>prefetch</i> random bytes in bulk into a
+ * buffer, so that obtaining random bytes is usually just an array copy.
+ * When a buffer is exhausted, it is replaced by a spare one which is
+ * refilled by a background thread.
+ * </p>
+ * <p>
+ * <b>This class is for internal use only</b>. 
+ * </p> 
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class StripedSecureRandom {
+
+    // Background thread will finish after this time without work
+    private static final long REFILL_THREAD_KEEP_ALIVE_SECONDS = 30L;
+    
+    private final Stripe[] stripes;
+    private final int prefetchSize;
+    private final Executor refillExecutor;
+    
+    
+    
+    /**
+     * Creates a new instance.
+     * 
+     * @param secureRandomAlgorithm the algorithm of the <tt>SecureRandom</tt>
+     *        instances to be created, or null for the default algorithm of
+     *        the platform.
+     * @param stripes the number of stripes (<tt>SecureRandom</tt> instances).
+     * @param prefetchSize the size in bytes of the prefetch buffers of each
+     *        stripe, or 0 for no prefetching.
+     */
+    public StripedSecureRandom(final String secureRandomAlgorithm, 
+            final int stripes, final int prefetchSize) {
+        
+        super();
+        
+        CommonUtils.validateIsTrue(stripes > 0, "Number of stripes must be > 0");
+        CommonUtils.validateIsTrue(prefetchSize >= 0, "Prefetch size cannot be negative");
+        
+        this.prefetchSize = prefetchSize;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(createSecureRandom(secureRandomAlgorithm), prefetchSize);
+        }
+        
+        if (prefetchSize > 0) {
+            this.refillExecutor =
+                new ThreadPoolExecutor(
+                        0, 1, REFILL_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory() {
+                            public Thread newThread(final Runnable runnable) {
+                                final Thread thread = new Thread(runnable, "jasypt-random-prefetch");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+        } else {
+            this.refillExecutor = null;
+        }
+        
+    }
+    
+    
+    private static SecureRandom createSecureRandom(final String secureRandomAlgorithm) {
+        if (secureRandomAlgorithm == null) {
+            return new SecureRandom();
+        }
+        try {
+            return SecureRandom.getInstance(secureRandomAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new EncryptionInitializationException(e);
+        }
+    }
+    
+    
+    
+    /**
+     * Fills the specified array with random bytes.
+     * 
+     * @param bytes the array to be filled.
+     */
+    public void nextBytes(final byte[] bytes) {
+        
+        final Stripe stripe = 
+            this.stripes[(int) (Thread.currentThread().getId() % this.stripes.length)];
+        
+        if (this.prefetchSize == 0 || bytes.length > this.prefetchSize) {
+            stripe.random.nextBytes(bytes);
+            return;
+        }
+        
+        synchronized (stripe) {
+            
+            if (this.prefetchSize - stripe.position < bytes.length) {
+                
+                if (stripe.spareReady) {
+                    // Use the spare buffer, and have the exhausted one refilled
+                    final byte[] exhausted = stripe.buffer;
+                    stripe.buffer = stripe.spare;
+                    stripe.spare = exhausted;
+                    stripe.spareReady = false;
+                    stripe.spareRefilling = true;
+                    this.refillExecutor.execute(stripe);
+                } else {
+                    // Spare buffer is not available yet: refill ourselves
+                    stripe.random.nextBytes(stripe.buffer);
+                    if (!stripe.spareRefilling) {
+                        stripe.spareRefilling = true;
+                        this.refillExecutor.execute(stripe);
+                    }
+                }
+                stripe.position = 0;
+                
+            }
+            
+            System.arraycopy(stripe.buffer, stripe.position, bytes, 0, bytes.length);
+            stripe.position += bytes.length;
+            
+        }
+        
+    }
+    
+    
+    
+    private static final class Stripe implements Runnable {
+        
+        final SecureRandom random;
+        
+        // Guarded by the stripe itself
+        byte[] buffer;
+        int position;
+        byte[] spare;
+        boolean spareReady;
+        boolean spareRefilling;
+        
+        Stripe(final SecureRandom random, final int prefetchSize) {
+            super();
+            this.random = random;
+            if (prefetchSize > 0) {
+                this.buffer = new byte[prefetchSize];
+                this.spare = new byte[prefetchSize];
+                // Buffer starts exhausted and spare not ready, so that the 
+                // first use fills the buffer and starts refilling the spare
+                this.position = prefetchSize;
+                this.spareReady = false;
+                this.spareRefilling = false;
+            }
+        }
+        
+        /*
+         * Refills the spare buffer (executed in background)
+         */
+        public void run() {
+            final byte[] toBeFilled;
+            synchronized (this) {
+                toBeFilled = this.spare;
+            }
+            // SecureRandom is thread-safe, so there is no need to hold 
+            // the stripe lock while generating.
+            this.random.nextBytes(toBeFilled);
+            synchronized (this) {
+                this.spareReady = true;
+                this.spareRefilling = false;
+            }
+        }
+        
+    }
+    
+}
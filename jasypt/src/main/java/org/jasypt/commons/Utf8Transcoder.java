@@ -0,0 +1,266 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.commons;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+
+/**
+ * <p>
+ * Converter between character sequences and their UTF-8 bytes, which
+ * works on reusable per-thread buffers instead of creating new
+ * <tt>String</tt> objects and arrays for each conversion.
+ * </p>
+ * <p>
+ * Instances are obtained by calling {@link #acquire()} and must be
+ * given back by calling {@link #release()} (in a <tt>finally</tt> block)
+ * once the contents of their buffers are not needed anymore. Releasing an
+ * instance cleans its buffers, as they can contain sensitive data.
+ * </p>
+ * <p>
+ * Malformed input is replaced in the same way as
+ * <tt>String.getBytes("UTF-8")</tt> and <tt>new String(bytes, "UTF-8")</tt>
+ * do, so results are always equivalent to those of these methods.
+ * </p>
+ * <p>
+ * <b>This class is for internal use only</b>.
+ * </p>
+ *
+ * @since 1.9.4
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ */
+public final class Utf8Transcoder {
+
+    // Buffers bigger than this are not kept for reuse after being released
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final ThreadLocal<Utf8Transcoder> TRANSCODERS =
+        new ThreadLocal<Utf8Transcoder>() {
+            @Override
+            protected Utf8Transcoder initialValue() {
+                return new Utf8Transcoder();
+            }
+        };
+
+    private final CharsetEncoder encoder;
+    private final CharsetDecoder decoder;
+
+    private byte[] bytes = new byte[0];
+    private int bytesUsed = 0;
+    private char[] chars = new char[0];
+    private int charsUsed = 0;
+
+    private boolean acquired = false;
+
+
+
+    /**
+     * Obtains the transcoder of the current thread. If it is already
+     * in use (i.e. when called reentrantly), a new one is returned.
+     *
+     * @return the transcoder, which must be released after use.
+     */
+    public static Utf8Transcoder acquire() {
+        Utf8Transcoder transcoder = TRANSCODERS.get();
+        if (transcoder.acquired) {
+            transcoder = new Utf8Transcoder();
+        }
+        transcoder.acquired = true;
+        return transcoder;
+    }
+
+
+
+    private Utf8Transcoder() {
+        super();
+        this.encoder =
+            UTF_8.newEncoder().
+                onMalformedInput(CodingErrorAction.REPLACE).
+                onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.decoder =
+            UTF_8.newDecoder().
+                onMalformedInput(CodingErrorAction.REPLACE).
+                onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+
+
+    /**
+     * Encodes the message as UTF-8 into the byte buffer of this transcoder
+     * (see {@link #getBytes()}).
+     *
+     * @param message the message to be encoded.
+     * @return the number of bytes written at the beginning of the buffer.
+     * @throws CharacterCodingException if encoding fails.
+     */
+    public int encode(final CharSequence message)
+            throws CharacterCodingException {
+
+        final long maxLength =
+            (long) Math.ceil(message.length() * (double) this.encoder.maxBytesPerChar());
+        CommonUtils.validateIsTrue(maxLength <= Integer.MAX_VALUE, "Message is too long");
+        if (this.bytes.length < maxLength) {
+            cleanBytes();
+            this.bytes = new byte[(int) maxLength];
+        }
+
+        // Array-backed CharBuffers are duplicated, so that the encoder
+        // can directly access their arrays
+        final CharBuffer in =
+            (message instanceof CharBuffer?
+                    ((CharBuffer) message).duplicate() : CharBuffer.wrap(message));
+        final ByteBuffer out = ByteBuffer.wrap(this.bytes);
+
+        try {
+            this.encoder.reset();
+            checkResult(this.encoder.encode(in, out, true));
+            checkResult(this.encoder.flush(out));
+        } finally {
+            this.bytesUsed = Math.max(this.bytesUsed, out.position());
+        }
+        return out.position();
+
+    }
+
+
+    /**
+     * Returns the byte buffer of this transcoder, which contains the
+     * result of the last {@link #encode(CharSequence)} operation.
+     *
+     * @return the byte buffer.
+     */
+    public byte[] getBytes() {
+        return this.bytes;
+    }
+
+
+    /**
+     * Decodes UTF-8 bytes into the specified portion of a char array.
+     *
+     * @param message the array containing the bytes to be decoded.
+     * @param offset the offset at which the bytes start.
+     * @param length the number of bytes.
+     * @param output the array the decoded chars will be written to.
+     * @param outputOffset the offset at which chars will be written.
+     * @return the number of chars written.
+     * @throws CharacterCodingException if decoding fails, for example
+     *         because the output array is not big enough.
+     */
+    public int decode(final byte[] message, final int offset, final int length,
+            final char[] output, final int outputOffset)
+            throws CharacterCodingException {
+
+        final CharBuffer out =
+            CharBuffer.wrap(output, outputOffset, output.length - outputOffset);
+        decode(ByteBuffer.wrap(message, offset, length), out);
+        return out.position() - outputOffset;
+
+    }
+
+
+    /**
+     * Decodes UTF-8 bytes into the char buffer of this transcoder.
+     *
+     * @param message the array containing the bytes to be decoded.
+     * @param offset the offset at which the bytes start.
+     * @param length the number of bytes.
+     * @return a buffer containing (between its position and its limit)
+     *         the decoded chars, only valid until this transcoder
+     *         is released.
+     * @throws CharacterCodingException if decoding fails.
+     */
+    public CharBuffer decode(final byte[] message, final int offset, final int length)
+            throws CharacterCodingException {
+
+        // Each UTF-8 byte produces at most one char
+        if (this.chars.length < length) {
+            cleanChars();
+            this.chars = new char[length];
+        }
+
+        final CharBuffer out = CharBuffer.wrap(this.chars);
+        try {
+            decode(ByteBuffer.wrap(message, offset, length), out);
+        } finally {
+            this.charsUsed = Math.max(this.charsUsed, out.position());
+        }
+        out.flip();
+        return out;
+
+    }
+
+
+    private void decode(final ByteBuffer in, final CharBuffer out)
+            throws CharacterCodingException {
+        this.decoder.reset();
+        checkResult(this.decoder.decode(in, out, true));
+        checkResult(this.decoder.flush(out));
+    }
+
+
+    private static void checkResult(final CoderResult result)
+            throws CharacterCodingException {
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+    }
+
+
+    /**
+     * Cleans the buffers of this transcoder and makes it available again
+     * for the current thread.
+     */
+    public void release() {
+        cleanBytes();
+        cleanChars();
+        if (this.bytes.length > MAX_RETAINED_BUFFER_SIZE) {
+            this.bytes = new byte[0];
+        }
+        if (this.chars.length > MAX_RETAINED_BUFFER_SIZE) {
+            this.chars = new char[0];
+        }
+        this.acquired = false;
+    }
+
+
+    private void cleanBytes() {
+        Arrays.fill(this.bytes, 0, this.bytesUsed, (byte)0);
+        this.bytesUsed = 0;
+    }
+
+
+    private void cleanChars() {
+        Arrays.fill(this.chars, 0, this.charsUsed, (char)0);
+        this.charsUsed = 0;
+    }
+
+}
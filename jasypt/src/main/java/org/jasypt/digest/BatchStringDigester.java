@@ -0,0 +1,70 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest;
+
+/**
+ * <p>
+ * Common interface for all StringDigesters which can also digest and match 
+ * a batch of independent String messages at once, processing them in parallel.
+ * </p>
+ * <p>
+ * Results are returned in the same order as the received messages. The
+ * failure of the operation for a single message does not affect the rest.
+ * </p>
+ * <p>
+ * For a default implementation, see {@link StandardStringDigester}.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public interface BatchStringDigester extends StringDigester {
+
+
+    /**
+     * <p>
+     * Create a digest of each of the input messages.
+     * </p>
+     * 
+     * @param messages the messages to be digested
+     * @return the digests, in the same order as the messages. If the 
+     *         digest operation fails for a message (or the message is null), 
+     *         its digest will be null.
+     */
+    public String[] digestAll(String[] messages);
+    
+    
+    /**
+     * <p>
+     * Check whether each of the messages matches the digest at the same
+     * position, managing aspects like salt, hashing iterations, etc. 
+     * (if applicable).
+     * </p>
+     * 
+     * @param messages the messages to check
+     * @param digests the digests to check (same length as messages)
+     * @return for each message, TRUE if it matches its digest, FALSE if not
+     *         (or if the operation fails for it).
+     */
+    public boolean[] matchesAll(String[] messages, String[] digests);
+
+}
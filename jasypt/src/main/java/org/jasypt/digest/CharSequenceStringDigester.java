@@ -0,0 +1,69 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest;
+
+/**
+ * <p>
+ * Common interface for all StringDigesters which, besides receiving
+ * <tt>String</tt> messages, are able to digest and match any 
+ * <tt>CharSequence</tt> (for example, a <tt>StringBuilder</tt>, or a
+ * portion of a <tt>char[]</tt> wrapped into a <tt>CharBuffer</tt>) 
+ * without converting it into a <tt>String</tt>.
+ * </p>
+ * <p>
+ * Results are exactly the same as those obtained by converting the
+ * messages into <tt>String</tt> objects and calling 
+ * {@link #digest(String)} and {@link #matches(String, String)}.
+ * </p>
+ * <p>
+ * For a default implementation, see {@link StandardStringDigester}.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public interface CharSequenceStringDigester extends StringDigester {
+
+    /**
+     * <p>
+     * Create a digest of the input message.
+     * </p>
+     * 
+     * @param message the message to be digested
+     * @return the digest
+     */
+    public String digest(CharSequence message);
+    
+    
+    /**
+     * <p>
+     * Check whether a message matches a digest, managing aspects like
+     * salt, hashing iterations, etc. (if applicable).
+     * </p>
+     * 
+     * @param message the message to check
+     * @param digest the digest to check
+     * @return TRUE if the message matches the digest, FALSE if not.
+     */
+    public boolean matches(CharSequence message, String digest);
+
+}
@@ -0,0 +1,101 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest;
+
+
+/**
+ * <p>
+ * Result of a tree digest operation performed by a {@link TreeByteDigester}
+ * on a file. Besides the digest itself, it keeps the hashes of each of the 
+ * chunks of the file, so that the digest of a modified version of the file 
+ * can be computed by re-reading only the chunks that changed (see 
+ * {@link TreeByteDigester#updateTree(java.io.File, ChunkDigestTree, int[])}).
+ * </p>
+ * <p>
+ * Objects of this class are immutable.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class ChunkDigestTree {
+
+    private final int chunkSizeBytes;
+    private final long messageLength;
+    private final byte[][] chunkDigests;
+    private final byte[] digest;
+    
+    
+    ChunkDigestTree(final int chunkSizeBytes, final long messageLength, 
+            final byte[][] chunkDigests, final byte[] digest) {
+        super();
+        this.chunkSizeBytes = chunkSizeBytes;
+        this.messageLength = messageLength;
+        this.chunkDigests = chunkDigests;
+        this.digest = digest;
+    }
+
+    
+    /**
+     * Returns the (self-describing) digest of the whole file, as would be 
+     * returned by {@link TreeByteDigester#digestFile(java.io.File)}.
+     * 
+     * @return the digest.
+     */
+    public byte[] getDigest() {
+        return (byte[]) this.digest.clone();
+    }
+    
+    /**
+     * Returns the size of the chunks in which the file was split.
+     * 
+     * @return the chunk size, in bytes.
+     */
+    public int getChunkSizeBytes() {
+        return this.chunkSizeBytes;
+    }
+    
+    /**
+     * Returns the length of the digested file.
+     * 
+     * @return the length of the file, in bytes.
+     */
+    public long getMessageLength() {
+        return this.messageLength;
+    }
+    
+    /**
+     * Returns the number of chunks in which the file was split (an empty
+     * file is considered to have one empty chunk).
+     * 
+     * @return the number of chunks.
+     */
+    public int getChunkCount() {
+        return this.chunkDigests.length;
+    }
+    
+    
+    byte[][] getChunkDigests() {
+        return this.chunkDigests;
+    }
+    
+}
@@ -0,0 +1,462 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest;
+
+import java.util.Locale;
+
+
+/**
+ * <p>
+ * Pure-Java implementation of the iterated re-hashing step of digesters 
+ * (<tt>digest = H(digest)</tt>, applied a number of times) for the 
+ * SHA-1 and SHA-2 algorithms.
+ * </p>
+ * <p>
+ * As the input for every iteration is always a previous digest (and therefore
+ * has a fixed length which is smaller than the algorithm's block size), 
+ * message padding can be precomputed and each iteration reduces to a single
+ * call to the compression function, working on the hash state words directly 
+ * and without creating any objects. Results are bit-identical to those 
+ * of calling <tt>MessageDigest.digest(byte[])</tt> on the previous digest.
+ * </p>
+ * <p>
+ * This class is <i>thread-safe</i>. Intended only for internal use within 
+ * jasypt.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ *
+ */
+abstract class FixedLengthRehashKernel {
+
+    
+    private static final int[] SHA1_IV = 
+        new int[] { 0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476, 0xc3d2e1f0 };
+    
+    private static final int[] SHA224_IV = 
+        new int[] { 0xc1059ed8, 0x367cd507, 0x3070dd17, 0xf70e5939, 
+                    0xffc00b31, 0x68581511, 0x64f98fa7, 0xbefa4fa4 };
+    
+    private static final int[] SHA256_IV = 
+        new int[] { 0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 
+                    0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19 };
+    
+    private static final long[] SHA384_IV = 
+        new long[] { 0xcbbb9d5dc1059ed8L, 0x629a292a367cd507L, 0x9159015a3070dd17L, 0x152fecd8f70e5939L,
+                     0x67332667ffc00b31L, 0x8eb44a8768581511L, 0xdb0c2e0d64f98fa7L, 0x47b5481dbefa4fa4L };
+    
+    private static final long[] SHA512_IV = 
+        new long[] { 0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+                     0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L };
+    
+    private static final int[] SHA256_K = 
+        new int[] {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2 };
+    
+    private static final long[] SHA512_K = 
+        new long[] {
+            0x428a2f98d728ae22L, 0x7137449123ef65cdL, 0xb5c0fbcfec4d3b2fL, 0xe9b5dba58189dbbcL,
+            0x3956c25bf348b538L, 0x59f111f1b605d019L, 0x923f82a4af194f9bL, 0xab1c5ed5da6d8118L,
+            0xd807aa98a3030242L, 0x12835b0145706fbeL, 0x243185be4ee4b28cL, 0x550c7dc3d5ffb4e2L,
+            0x72be5d74f27b896fL, 0x80deb1fe3b1696b1L, 0x9bdc06a725c71235L, 0xc19bf174cf692694L,
+            0xe49b69c19ef14ad2L, 0xefbe4786384f25e3L, 0x0fc19dc68b8cd5b5L, 0x240ca1cc77ac9c65L,
+            0x2de92c6f592b0275L, 0x4a7484aa6ea6e483L, 0x5cb0a9dcbd41fbd4L, 0x76f988da831153b5L,
+            0x983e5152ee66dfabL, 0xa831c66d2db43210L, 0xb00327c898fb213fL, 0xbf597fc7beef0ee4L,
+            0xc6e00bf33da88fc2L, 0xd5a79147930aa725L, 0x06ca6351e003826fL, 0x142929670a0e6e70L,
+            0x27b70a8546d22ffcL, 0x2e1b21385c26c926L, 0x4d2c6dfc5ac42aedL, 0x53380d139d95b3dfL,
+            0x650a73548baf63deL, 0x766a0abb3c77b2a8L, 0x81c2c92e47edaee6L, 0x92722c851482353bL,
+            0xa2bfe8a14cf10364L, 0xa81a664bbc423001L, 0xc24b8b70d0f89791L, 0xc76c51a30654be30L,
+            0xd192e819d6ef5218L, 0xd69906245565a910L, 0xf40e35855771202aL, 0x106aa07032bbd1b8L,
+            0x19a4c116b8d2d0c8L, 0x1e376c085141ab53L, 0x2748774cdf8eeb99L, 0x34b0bcb5e19b48a8L,
+            0x391c0cb3c5c95a63L, 0x4ed8aa4ae3418acbL, 0x5b9cca4f7763e373L, 0x682e6ff3d6b2b8a3L,
+            0x748f82ee5defb2fcL, 0x78a5636f43172f60L, 0x84c87814a1f0ab72L, 0x8cc702081a6439ecL,
+            0x90befffa23631e28L, 0xa4506cebde82bde9L, 0xbef9a3f7b2c67915L, 0xc67178f2e372532bL,
+            0xca273eceea26619cL, 0xd186b8c721c0c207L, 0xeada7dd6cde0eb1eL, 0xf57d4f7fee6ed178L,
+            0x06f067aa72176fbaL, 0x0a637dc5a2c898a6L, 0x113f9804bef90daeL, 0x1b710b35131c471bL,
+            0x28db77f523047d84L, 0x32caab7b40c72493L, 0x3c9ebe0a15c9bebcL, 0x431d67c49c100d4cL,
+            0x4cc5d4becb3e42b6L, 0x597f299cfc657e2aL, 0x5fcb6fab3ad6faecL, 0x6c44198c4a475817L };
+    
+    
+    
+    /*
+     * From Java 9 on, the JVM can replace the compression functions of the
+     * standard MessageDigest implementations with CPU intrinsics, which are
+     * faster than this pure-Java code. Kernels are only worth using on
+     * older JVMs.
+     */
+    private static final boolean PREFERABLE_TO_MESSAGE_DIGEST =
+        System.getProperty("java.specification.version", "").startsWith("1.");
+    
+    
+    
+    /**
+     * Returns whether, in the running JVM, kernels are expected to perform 
+     * better than iterating on standard <tt>MessageDigest</tt> objects.
+     * 
+     * @return true if kernels should be used, false if not.
+     */
+    static boolean isPreferableToMessageDigest() {
+        return PREFERABLE_TO_MESSAGE_DIGEST;
+    }
+    
+    
+    /**
+     * Returns the kernel for the specified algorithm, or null if there is
+     * no specific implementation for it.
+     * 
+     * @param algorithm the digest algorithm name.
+     * @return the kernel, or null if the algorithm is not supported.
+     */
+    static FixedLengthRehashKernel forAlgorithm(final String algorithm) {
+        
+        if (algorithm == null) {
+            return null;
+        }
+        final String normalizedAlgorithm = algorithm.toUpperCase(Locale.ENGLISH).replace("-", "");
+        if ("SHA".equals(normalizedAlgorithm) || "SHA1".equals(normalizedAlgorithm)) {
+            return new Sha1Kernel();
+        } else if ("SHA224".equals(normalizedAlgorithm)) {
+            return new Sha256Kernel(SHA224_IV, 7);
+        } else if ("SHA256".equals(normalizedAlgorithm)) {
+            return new Sha256Kernel(SHA256_IV, 8);
+        } else if ("SHA384".equals(normalizedAlgorithm)) {
+            return new Sha512Kernel(SHA384_IV, 6);
+        } else if ("SHA512".equals(normalizedAlgorithm)) {
+            return new Sha512Kernel(SHA512_IV, 8);
+        }
+        return null;
+        
+    }
+    
+    
+    
+    FixedLengthRehashKernel() {
+        super();
+    }
+    
+    
+    /**
+     * Returns the length in bytes of the digests this kernel works with.
+     * 
+     * @return the digest length.
+     */
+    abstract int getDigestLength();
+    
+    
+    /**
+     * Replaces the contents of the specified digest with the result of 
+     * hashing it as many times as specified.
+     * 
+     * @param digest the digest to be re-hashed (will be overwritten).
+     * @param times the number of times the hash function will be applied.
+     */
+    abstract void rehash(final byte[] digest, final int times);
+    
+    
+    
+    private static final class Sha1Kernel extends FixedLengthRehashKernel {
+
+        Sha1Kernel() {
+            super();
+        }
+        
+        int getDigestLength() {
+            return 20;
+        }
+        
+        void rehash(final byte[] digest, final int times) {
+
+            final int[] state = new int[5];
+            final int[] w = new int[80];
+            readInts(digest, state, 5);
+            
+            for (int n = 0; n < times; n++) {
+                
+                // One block: the 5-word message, the 0x80 padding byte 
+                // and the message length in bits (160)
+                System.arraycopy(state, 0, w, 0, 5);
+                w[5] = 0x80000000;
+                for (int i = 6; i < 15; i++) {
+                    w[i] = 0;
+                }
+                w[15] = 160;
+                for (int i = 16; i < 80; i++) {
+                    w[i] = Integer.rotateLeft(w[i - 3] ^ w[i - 8] ^ w[i - 14] ^ w[i - 16], 1);
+                }
+                
+                int a = SHA1_IV[0];
+                int b = SHA1_IV[1];
+                int c = SHA1_IV[2];
+                int d = SHA1_IV[3];
+                int e = SHA1_IV[4];
+                for (int i = 0; i < 80; i++) {
+                    final int f;
+                    final int k;
+                    if (i < 20) {
+                        f = (b & c) | (~b & d);
+                        k = 0x5a827999;
+                    } else if (i < 40) {
+                        f = b ^ c ^ d;
+                        k = 0x6ed9eba1;
+                    } else if (i < 60) {
+                        f = (b & c) | (b & d) | (c & d);
+                        k = 0x8f1bbcdc;
+                    } else {
+                        f = b ^ c ^ d;
+                        k = 0xca62c1d6;
+                    }
+                    final int t = Integer.rotateLeft(a, 5) + f + e + k + w[i];
+                    e = d;
+                    d = c;
+                    c = Integer.rotateLeft(b, 30);
+                    b = a;
+                    a = t;
+                }
+                state[0] = SHA1_IV[0] + a;
+                state[1] = SHA1_IV[1] + b;
+                state[2] = SHA1_IV[2] + c;
+                state[3] = SHA1_IV[3] + d;
+                state[4] = SHA1_IV[4] + e;
+                
+            }
+            
+            writeInts(state, digest, 5);
+            
+        }
+        
+    }
+    
+    
+    
+    private static final class Sha256Kernel extends FixedLengthRehashKernel {
+
+        private final int[] iv;
+        private final int digestWords;
+        
+        Sha256Kernel(final int[] iv, final int digestWords) {
+            super();
+            this.iv = iv;
+            this.digestWords = digestWords;
+        }
+        
+        int getDigestLength() {
+            return this.digestWords * 4;
+        }
+        
+        void rehash(final byte[] digest, final int times) {
+
+            final int[] iv = this.iv;
+            final int digestWords = this.digestWords;
+            final int[] state = new int[8];
+            final int[] w = new int[64];
+            readInts(digest, state, digestWords);
+            
+            for (int n = 0; n < times; n++) {
+                
+                // One block: the digest words, the 0x80 padding byte 
+                // and the message length in bits
+                System.arraycopy(state, 0, w, 0, digestWords);
+                w[digestWords] = 0x80000000;
+                for (int i = digestWords + 1; i < 15; i++) {
+                    w[i] = 0;
+                }
+                w[15] = digestWords * 32;
+                for (int i = 16; i < 64; i++) {
+                    final int w15 = w[i - 15];
+                    final int w2 = w[i - 2];
+                    final int s0 = Integer.rotateRight(w15, 7) ^ Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+                    final int s1 = Integer.rotateRight(w2, 17) ^ Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+                    w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+                }
+                
+                int a = iv[0];
+                int b = iv[1];
+                int c = iv[2];
+                int d = iv[3];
+                int e = iv[4];
+                int f = iv[5];
+                int g = iv[6];
+                int h = iv[7];
+                for (int i = 0; i < 64; i++) {
+                    final int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+                    final int ch = (e & f) ^ (~e & g);
+                    final int t1 = h + s1 + ch + SHA256_K[i] + w[i];
+                    final int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+                    final int maj = (a & b) ^ (a & c) ^ (b & c);
+                    final int t2 = s0 + maj;
+                    h = g;
+                    g = f;
+                    f = e;
+                    e = d + t1;
+                    d = c;
+                    c = b;
+                    b = a;
+                    a = t1 + t2;
+                }
+                state[0] = iv[0] + a;
+                state[1] = iv[1] + b;
+                state[2] = iv[2] + c;
+                state[3] = iv[3] + d;
+                state[4] = iv[4] + e;
+                state[5] = iv[5] + f;
+                state[6] = iv[6] + g;
+                state[7] = iv[7] + h;
+                
+            }
+            
+            writeInts(state, digest, digestWords);
+            
+        }
+        
+    }
+    
+    
+    
+    private static final class Sha512Kernel extends FixedLengthRehashKernel {
+
+        private final long[] iv;
+        private final int digestWords;
+        
+        Sha512Kernel(final long[] iv, final int digestWords) {
+            super();
+            this.iv = iv;
+            this.digestWords = digestWords;
+        }
+        
+        int getDigestLength() {
+            return this.digestWords * 8;
+        }
+        
+        void rehash(final byte[] digest, final int times) {
+
+            final long[] iv = this.iv;
+            final int digestWords = this.digestWords;
+            final long[] state = new long[8];
+            final long[] w = new long[80];
+            readLongs(digest, state, digestWords);
+            
+            for (int n = 0; n < times; n++) {
+                
+                // One block: the digest words, the 0x80 padding byte 
+                // and the message length in bits (128-bit length field)
+                System.arraycopy(state, 0, w, 0, digestWords);
+                w[digestWords] = 0x8000000000000000L;
+                for (int i = digestWords + 1; i < 15; i++) {
+                    w[i] = 0L;
+                }
+                w[15] = digestWords * 64L;
+                for (int i = 16; i < 80; i++) {
+                    final long w15 = w[i - 15];
+                    final long w2 = w[i - 2];
+                    final long s0 = Long.rotateRight(w15, 1) ^ Long.rotateRight(w15, 8) ^ (w15 >>> 7);
+                    final long s1 = Long.rotateRight(w2, 19) ^ Long.rotateRight(w2, 61) ^ (w2 >>> 6);
+                    w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+                }
+                
+                long a = iv[0];
+                long b = iv[1];
+                long c = iv[2];
+                long d = iv[3];
+                long e = iv[4];
+                long f = iv[5];
+                long g = iv[6];
+                long h = iv[7];
+                for (int i = 0; i < 80; i++) {
+                    final long s1 = Long.rotateRight(e, 14) ^ Long.rotateRight(e, 18) ^ Long.rotateRight(e, 41);
+                    final long ch = (e & f) ^ (~e & g);
+                    final long t1 = h + s1 + ch + SHA512_K[i] + w[i];
+                    final long s0 = Long.rotateRight(a, 28) ^ Long.rotateRight(a, 34) ^ Long.rotateRight(a, 39);
+                    final long maj = (a & b) ^ (a & c) ^ (b & c);
+                    final long t2 = s0 + maj;
+                    h = g;
+                    g = f;
+                    f = e;
+                    e = d + t1;
+                    d = c;
+                    c = b;
+                    b = a;
+                    a = t1 + t2;
+                }
+                state[0] = iv[0] + a;
+                state[1] = iv[1] + b;
+                state[2] = iv[2] + c;
+                state[3] = iv[3] + d;
+                state[4] = iv[4] + e;
+                state[5] = iv[5] + f;
+                state[6] = iv[6] + g;
+                state[7] = iv[7] + h;
+                
+            }
+            
+            writeLongs(state, digest, digestWords);
+            
+        }
+        
+    }
+    
+    
+    
+    private static void readInts(final byte[] bytes, final int[] ints, final int count) {
+        for (int i = 0, j = 0; i < count; i++, j += 4) {
+            ints[i] = ((bytes[j] & 0xff) << 24) | ((bytes[j + 1] & 0xff) << 16) | 
+                      ((bytes[j + 2] & 0xff) << 8) | (bytes[j + 3] & 0xff);
+        }
+    }
+    
+    
+    private static void writeInts(final int[] ints, final byte[] bytes, final int count) {
+        for (int i = 0, j = 0; i < count; i++, j += 4) {
+            bytes[j] = (byte) (ints[i] >>> 24);
+            bytes[j + 1] = (byte) (ints[i] >>> 16);
+            bytes[j + 2] = (byte) (ints[i] >>> 8);
+            bytes[j + 3] = (byte) ints[i];
+        }
+    }
+    
+    
+    private static void readLongs(final byte[] bytes, final long[] longs, final int count) {
+        for (int i = 0, j = 0; i < count; i++, j += 8) {
+            long value = 0L;
+            for (int k = 0; k < 8; k++) {
+                value = (value << 8) | (bytes[j + k] & 0xffL);
+            }
+            longs[i] = value;
+        }
+    }
+    
+    
+    private static void writeLongs(final long[] longs, final byte[] bytes, final int count) {
+        for (int i = 0, j = 0; i < count; i++, j += 8) {
+            for (int k = 0; k < 8; k++) {
+                bytes[j + k] = (byte) (longs[i] >>> (56 - (8 * k)));
+            }
+        }
+    }
+    
+}
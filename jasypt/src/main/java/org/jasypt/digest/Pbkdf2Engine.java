@@ -0,0 +1,175 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest;
+
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.util.Locale;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+
+
+/**
+ * <p>
+ * Implementation of the PBKDF2 key derivation function (PKCS #5 v2.0, 
+ * RFC 2898) used by digesters configured with algorithms like 
+ * <tt>PBKDF2WithHmacSHA256</tt> or <tt>PBKDF2WithHmacSHA512</tt>. The 
+ * message is used as password and the derived key (of the same length as
+ * the HMAC output) is the digest.
+ * </p>
+ * <p>
+ * Derivation is performed with a <tt>javax.crypto.Mac</tt> object exactly
+ * as <tt>SecretKeyFactory</tt> implementations of these algorithms do, but 
+ * using the message bytes directly as HMAC key, so that any byte array can 
+ * be digested. For passwords coming from Strings (UTF-8 encoded), results 
+ * are identical to those of <tt>SecretKeyFactory</tt>.
+ * </p>
+ * <p>
+ * This class is <i>thread-safe</i> (each thread uses its own <tt>Mac</tt>). 
+ * Intended only for internal use within jasypt.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ *
+ */
+final class Pbkdf2Engine {
+    
+    private static final String ALGORITHM_PREFIX = "PBKDF2WITH";
+    
+    // Only one block is derived: its index is always 1
+    private static final byte[] FIRST_BLOCK_INDEX = new byte[] { 0, 0, 0, 1 };
+    
+    private final String macAlgorithm;
+    private final Provider provider;
+    private final String providerName;
+    private final int digestLength;
+    private final ThreadLocal<Mac> threadMac;
+    
+    
+    static boolean isPbkdf2Algorithm(final String algorithm) {
+        return (algorithm.length() > ALGORITHM_PREFIX.length() &&
+                algorithm.toUpperCase(Locale.ENGLISH).startsWith(ALGORITHM_PREFIX));
+    }
+    
+    
+    Pbkdf2Engine(final String algorithm, final Provider provider, final String providerName) 
+            throws NoSuchAlgorithmException, NoSuchProviderException {
+        super();
+        // "PBKDF2WithHmacSHA256" -> "HmacSHA256"
+        this.macAlgorithm = algorithm.substring(ALGORITHM_PREFIX.length());
+        this.provider = provider;
+        this.providerName = providerName;
+        this.digestLength = createMac().getMacLength();
+        this.threadMac = 
+            new ThreadLocal<Mac>() {
+                protected Mac initialValue() {
+                    try {
+                        return createMac();
+                    } catch (final GeneralSecurityException e) {
+                        throw new EncryptionOperationNotPossibleException();
+                    }
+                }
+            };
+    }
+    
+    
+    int getDigestLength() {
+        return this.digestLength;
+    }
+    
+    
+    byte[] derive(final byte[] password, final byte[] salt, final int iterations) 
+            throws GeneralSecurityException {
+        
+        final Mac mac = this.threadMac.get();
+        mac.init(new PasswordKey(password, this.macAlgorithm));
+        
+        // U1 = PRF(password, salt || INT(1))
+        if (salt != null) {
+            mac.update(salt);
+        }
+        mac.update(FIRST_BLOCK_INDEX);
+        final byte[] u = mac.doFinal();
+        
+        // T = U1 ^ U2 ^ ... ^ Uc, with Ui = PRF(password, Ui-1)
+        final byte[] result = (byte[]) u.clone();
+        for (int i = 1; i < iterations; i++) {
+            mac.update(u);
+            mac.doFinal(u, 0);
+            for (int j = 0; j < result.length; j++) {
+                result[j] ^= u[j];
+            }
+        }
+        return result;
+        
+    }
+    
+    
+    private Mac createMac() throws NoSuchAlgorithmException, NoSuchProviderException {
+        if (this.provider != null) {
+            return Mac.getInstance(this.macAlgorithm, this.provider);
+        } else if (this.providerName != null) {
+            return Mac.getInstance(this.macAlgorithm, this.providerName);
+        }
+        return Mac.getInstance(this.macAlgorithm);
+    }
+    
+    
+    
+    /*
+     * Raw HMAC key containing the password bytes (which, unlike 
+     * SecretKeySpec, can be empty).
+     */
+    private static final class PasswordKey implements SecretKey {
+
+        private static final long serialVersionUID = -6027340734632734585L;
+        
+        private final byte[] password;
+        private final String algorithm;
+        
+        PasswordKey(final byte[] password, final String algorithm) {
+            super();
+            this.password = password;
+            this.algorithm = algorithm;
+        }
+        
+        public String getAlgorithm() {
+            return this.algorithm;
+        }
+
+        public String getFormat() {
+            return "RAW";
+        }
+
+        public byte[] getEncoded() {
+            return (byte[]) this.password.clone();
+        }
+        
+    }
+    
+}
@@ -19,9 +19,14 @@
  */
 package org.jasypt.digest;
 
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.security.Provider;
 
 import org.jasypt.commons.CommonUtils;
+import org.jasypt.commons.PoolMemberSelector;
 import org.jasypt.digest.config.DigesterConfig;
 import org.jasypt.exceptions.AlreadyInitializedException;
 import org.jasypt.salt.SaltGenerator;
@@ -32,7 +37,8 @@ import org.jasypt.salt.SaltGenerator;
  * <p>
  * Pooled implementation of {@link ByteDigester} that in fact contains
  * an array of {@link StandardByteDigester} objects which are used
- * to attend digest and match requests in round-robin. This should
+ * to attend digest and match requests in round-robin (or following the
+ * configured pool selection strategy). This should
  * result in higher performance in multiprocessor systems.
  * </p>
  * <p>
@@ -49,16 +55,19 @@ import org.jasypt.salt.SaltGenerator;
  * @author Daniel Fern&aacute;ndez
  *
  */
-public class PooledByteDigester implements ByteDigester {
+public class PooledByteDigester 
+        implements BatchByteDigester, StreamingByteDigester {
     
     private final StandardByteDigester firstDigester;
     
     private DigesterConfig config = null;
     private int poolSize = 0;
     private boolean poolSizeSet = false;
+    private String poolSelectionStrategy = null;
+    private boolean poolSelectionStrategySet = false;
     
     private StandardByteDigester[] pool;
-    private int roundRobin = 0;
+    private PoolMemberSelector poolMemberSelector = null;
 
 
     /*
@@ -360,6 +369,38 @@ public class PooledByteDigester implements ByteDigester {
         this.poolSizeSet = true;
     }
 
+    
+    /**
+     * <p>
+     * Sets the strategy used for selecting the pool member that will attend
+     * each request. Available strategies are:
+     * </p>
+     * <ul>
+     *   <li><tt><b>round-robin</b></tt> (default)</li>
+     *   <li><tt><b>thread</b></tt>: each thread is always attended by the
+     *       same digester.</li>
+     *   <li><tt><b>least-busy</b></tt>: digesters being used by other threads
+     *       are skipped if possible.</li>
+     * </ul>
+     * <p>
+     * None of these strategies acquire a pool-wide lock.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param poolSelectionStrategy the pool selection strategy
+     */
+    public synchronized void setPoolSelectionStrategy(final String poolSelectionStrategy) {
+        CommonUtils.validateNotEmpty(poolSelectionStrategy, 
+                "Pool selection strategy cannot be set empty");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.poolSelectionStrategy = 
+            PoolMemberSelector.getStandardStrategy(poolSelectionStrategy);
+        this.poolSelectionStrategySet = true;
+    }
+
 
 
     
@@ -436,6 +477,13 @@ public class PooledByteDigester implements ByteDigester {
                     ((this.poolSizeSet) || (configPoolSize == null))?
                             this.poolSize : configPoolSize.intValue();
                 
+                final String configPoolSelectionStrategy = 
+                    this.config.getPoolSelectionStrategy();
+                
+                this.poolSelectionStrategy = 
+                    ((this.poolSelectionStrategySet) || (configPoolSelectionStrategy == null))?
+                            this.poolSelectionStrategy : configPoolSelectionStrategy;
+                
             }
             
             if (this.poolSize <= 0) {
@@ -449,6 +497,9 @@ public class PooledByteDigester implements ByteDigester {
                 this.pool[i] = this.pool[i - 1].cloneDigester();
             }
             
+            this.poolMemberSelector = 
+                new PoolMemberSelector(this.poolSize, this.poolSelectionStrategy);
+            
             this.initialized = true;
             
         }
@@ -536,14 +587,13 @@ public class PooledByteDigester implements ByteDigester {
             initialize();
         }
         
-        int poolPosition;
-        synchronized(this) {
-            poolPosition = this.roundRobin;
-            this.roundRobin = (this.roundRobin + 1) % this.poolSize;
+        final int poolPosition = this.poolMemberSelector.acquire();
+        try {
+            return this.pool[poolPosition].digest(message);
+        } finally {
+            this.poolMemberSelector.release(poolPosition);
         }
         
-        return this.pool[poolPosition].digest(message);
-        
     }
     
     
@@ -585,13 +635,214 @@ public class PooledByteDigester implements ByteDigester {
             initialize();
         }
         
-        int poolPosition;
-        synchronized(this) {
-            poolPosition = this.roundRobin;
-            this.roundRobin = (this.roundRobin + 1) % this.poolSize;
+        final int poolPosition = this.poolMemberSelector.acquire();
+        try {
+            return this.pool[poolPosition].matches(message, digest);
+        } finally {
+            this.poolMemberSelector.release(poolPosition);
+        }
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Creates a digest for each of the messages, processing them in parallel
+     * (one thread per available processor, including the calling thread).
+     * </p>
+     * <p>
+     * Digests are created exactly as in {@link #digest(byte[])}, and 
+     * returned in the same order as the messages. If the digest operation 
+     * fails for a message (or the message is null), its digest will be null.
+     * </p>
+     * <p>
+     * Batch operations do not use the pooled digesters' message digests,
+     * each processing thread creates its own instead.
+     * </p>
+     * 
+     * @param messages the messages to be digested
+     * @return the digest results
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public byte[][] digestAll(final byte[][] messages) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        return this.pool[0].digestAll(messages);
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Checks each of the messages against the digest at the same position,
+     * processing them in parallel (one thread per available processor, 
+     * including the calling thread).
+     * </p>
+     * <p>
+     * Each check is performed exactly as in 
+     * {@link #matches(byte[], byte[])}. If the check fails for a message, the 
+     * result for it will be false.
+     * </p>
+     * <p>
+     * Batch operations do not use the pooled digesters' message digests,
+     * each processing thread creates its own instead.
+     * </p>
+     * 
+     * @param messages the messages to check
+     * @param digests the digests against which to check the messages (must
+     *        have the same length as messages)
+     * @return for each message, true if it matches its digest, false if not.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public boolean[] matchesAll(final byte[][] messages, final byte[][] digests) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        return this.pool[0].matchesAll(messages, digests);
+        
+    }    
+    
+    /**
+     * <p>
+     * Performs a digest operation on a stream, without loading the whole
+     * message into a byte array. See 
+     * {@link StandardByteDigester#digestStream(InputStream)} for details.
+     * </p>
+     * <p>
+     * Streamed operations do not use the pooled digesters' message digests,
+     * each operation creates its own instead.
+     * </p>
+     * 
+     * @param message the stream to be digested (read but not closed)
+     * @return the digest result
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails, ommitting any further information about the cause for
+     *         security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public byte[] digestStream(final InputStream message) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        return this.pool[0].digestStream(message);
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Performs a digest operation on a channel, without loading the whole
+     * message into a byte array. See 
+     * {@link StandardByteDigester#digestChannel(ReadableByteChannel)} for details.
+     * </p>
+     * <p>
+     * Streamed operations do not use the pooled digesters' message digests,
+     * each operation creates its own instead.
+     * </p>
+     * 
+     * @param message the channel to be digested (read but not closed)
+     * @return the digest result
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails, ommitting any further information about the cause for
+     *         security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public byte[] digestChannel(final ReadableByteChannel message) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        return this.pool[0].digestChannel(message);
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Performs a digest operation on a buffer, without loading the whole
+     * message into a byte array. See 
+     * {@link StandardByteDigester#digestBuffer(ByteBuffer)} for details.
+     * </p>
+     * <p>
+     * Streamed operations do not use the pooled digesters' message digests,
+     * each operation creates its own instead.
+     * </p>
+     * 
+     * @param message the buffer to be digested (from its position to its limit)
+     * @return the digest result
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails, ommitting any further information about the cause for
+     *         security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public byte[] digestBuffer(final ByteBuffer message) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        return this.pool[0].digestBuffer(message);
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Performs a digest operation on a file, without loading the whole
+     * message into a byte array. See 
+     * {@link StandardByteDigester#digestFile(File)} for details.
+     * </p>
+     * <p>
+     * Streamed operations do not use the pooled digesters' message digests,
+     * each operation creates its own instead.
+     * </p>
+     * 
+     * @param message the file to be digested
+     * @return the digest result
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails, ommitting any further information about the cause for
+     *         security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public byte[] digestFile(final File message) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
         }
         
-        return this.pool[poolPosition].matches(message, digest);
+        return this.pool[0].digestFile(message);
         
     }
 
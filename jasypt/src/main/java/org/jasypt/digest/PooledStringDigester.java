@@ -22,6 +22,7 @@ package org.jasypt.digest;
 import java.security.Provider;
 
 import org.jasypt.commons.CommonUtils;
+import org.jasypt.commons.PoolMemberSelector;
 import org.jasypt.digest.config.DigesterConfig;
 import org.jasypt.exceptions.AlreadyInitializedException;
 import org.jasypt.salt.SaltGenerator;
@@ -32,7 +33,8 @@ import org.jasypt.salt.SaltGenerator;
  * <p>
  * Pooled implementation of {@link StringDigester} that in fact contains
  * an array of {@link StandardStringDigester} objects which are used
- * to attend digest and match requests in round-robin. This should
+ * to attend digest and match requests in round-robin (or following the
+ * configured pool selection strategy). This should
  * result in higher performance in multiprocessor systems.
  * </p>
  * <p>
@@ -49,7 +51,8 @@ import org.jasypt.salt.SaltGenerator;
  * @author Daniel Fern&aacute;ndez
  *
  */
-public class PooledStringDigester implements StringDigester {
+public class PooledStringDigester 
+        implements BatchStringDigester, CharSequenceStringDigester {
 
     
     private final StandardStringDigester firstDigester;
@@ -57,9 +60,11 @@ public class PooledStringDigester implements StringDigester {
     private DigesterConfig config = null;
     private int poolSize = 0;
     private boolean poolSizeSet = false;
+    private String poolSelectionStrategy = null;
+    private boolean poolSelectionStrategySet = false;
     
     private StandardStringDigester[] pool;
-    private int roundRobin = 0;
+    private PoolMemberSelector poolMemberSelector = null;
 
 
     /*
@@ -383,7 +388,12 @@ public class PooledStringDigester implements StringDigester {
      * </p>
      * <ul>
      *   <li><tt><b>base64</b></tt> (default)</li>
+     *   <li><tt><b>base64-unpadded</b></tt></li>
+     *   <li><tt><b>base64url</b></tt></li>
+     *   <li><tt><b>base64url-unpadded</b></tt></li>
      *   <li><tt><b>hexadecimal</b></tt></li>
+     *   <li>Any other output type registered at 
+     *       {@link org.jasypt.codec.StringOutputCodecs}</li>
      * </ul>
      * <p>
      * If not set, null will be returned.
@@ -451,6 +461,38 @@ public class PooledStringDigester implements StringDigester {
         this.poolSize = poolSize;
         this.poolSizeSet = true;
     }
+
+    
+    /**
+     * <p>
+     * Sets the strategy used for selecting the pool member that will attend
+     * each request. Available strategies are:
+     * </p>
+     * <ul>
+     *   <li><tt><b>round-robin</b></tt> (default)</li>
+     *   <li><tt><b>thread</b></tt>: each thread is always attended by the
+     *       same digester.</li>
+     *   <li><tt><b>least-busy</b></tt>: digesters being used by other threads
+     *       are skipped if possible.</li>
+     * </ul>
+     * <p>
+     * None of these strategies acquire a pool-wide lock.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param poolSelectionStrategy the pool selection strategy
+     */
+    public synchronized void setPoolSelectionStrategy(final String poolSelectionStrategy) {
+        CommonUtils.validateNotEmpty(poolSelectionStrategy, 
+                "Pool selection strategy cannot be set empty");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.poolSelectionStrategy = 
+            PoolMemberSelector.getStandardStrategy(poolSelectionStrategy);
+        this.poolSelectionStrategySet = true;
+    }
     
     
 
@@ -529,6 +571,13 @@ public class PooledStringDigester implements StringDigester {
                     ((this.poolSizeSet) || (configPoolSize == null))?
                             this.poolSize : configPoolSize.intValue();
                 
+                final String configPoolSelectionStrategy = 
+                    this.config.getPoolSelectionStrategy();
+                
+                this.poolSelectionStrategy = 
+                    ((this.poolSelectionStrategySet) || (configPoolSelectionStrategy == null))?
+                            this.poolSelectionStrategy : configPoolSelectionStrategy;
+                
             }
             
             if (this.poolSize <= 0) {
@@ -543,6 +592,9 @@ public class PooledStringDigester implements StringDigester {
                 this.pool[i] = this.pool[i - 1].cloneDigester();
             }
             
+            this.poolMemberSelector = 
+                new PoolMemberSelector(this.poolSize, this.poolSelectionStrategy);
+            
             this.initialized = true;
             
         }
@@ -633,12 +685,12 @@ public class PooledStringDigester implements StringDigester {
             initialize();
         }
         
-        int poolPosition;
-        synchronized(this) {
-            poolPosition = this.roundRobin;
-            this.roundRobin = (this.roundRobin + 1) % this.poolSize;
+        final int poolPosition = this.poolMemberSelector.acquire();
+        try {
+            return this.pool[poolPosition].digest(message);
+        } finally {
+            this.poolMemberSelector.release(poolPosition);
         }
-        return this.pool[poolPosition].digest(message);
         
     }
     
@@ -681,13 +733,153 @@ public class PooledStringDigester implements StringDigester {
             initialize();
         }
         
-        int poolPosition;
-        synchronized(this) {
-            poolPosition = this.roundRobin;
-            this.roundRobin = (this.roundRobin + 1) % this.poolSize;
+        final int poolPosition = this.poolMemberSelector.acquire();
+        try {
+            return this.pool[poolPosition].matches(message, digest);
+        } finally {
+            this.poolMemberSelector.release(poolPosition);
+        }
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Creates a digest of the input message (any <tt>CharSequence</tt>)
+     * without converting it into a <tt>String</tt>.
+     * </p>
+     * 
+     * @param message the message to be digested 
+     * @return the digest result
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails, ommitting any further information about the cause for
+     *         security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @see StandardStringDigester#digest(CharSequence)
+     * @since 1.9.4
+     */
+    public String digest(final CharSequence message) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final int poolPosition = this.poolMemberSelector.acquire();
+        try {
+            return this.pool[poolPosition].digest(message);
+        } finally {
+            this.poolMemberSelector.release(poolPosition);
+        }
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Checks a message (any <tt>CharSequence</tt>) against a given digest
+     * without converting it into a <tt>String</tt>.
+     * </p>
+     * 
+     * @param message the message to be compared to the digest.
+     * @param digest the digest. 
+     * @return true if the specified message matches the digest, false
+     *         if not.
+     * @throws EncryptionOperationNotPossibleException if the digest matching
+     *         operation fails, ommitting any further information about the 
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @see StandardStringDigester#matches(CharSequence, String)
+     * @since 1.9.4
+     */
+    public boolean matches(final CharSequence message, final String digest) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final int poolPosition = this.poolMemberSelector.acquire();
+        try {
+            return this.pool[poolPosition].matches(message, digest);
+        } finally {
+            this.poolMemberSelector.release(poolPosition);
+        }
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Creates a digest for each of the messages, processing them in parallel
+     * (one thread per available processor, including the calling thread).
+     * </p>
+     * <p>
+     * Digests are created exactly as in {@link #digest(String)}, and 
+     * returned in the same order as the messages. If the digest operation 
+     * fails for a message (or the message is null), its digest will be null.
+     * </p>
+     * <p>
+     * Batch operations do not use the pooled digesters' message digests,
+     * each processing thread creates its own instead.
+     * </p>
+     * 
+     * @param messages the messages to be digested
+     * @return the digest results
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public String[] digestAll(final String[] messages) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        return this.pool[0].digestAll(messages);
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Checks each of the messages against the digest at the same position,
+     * processing them in parallel (one thread per available processor, 
+     * including the calling thread).
+     * </p>
+     * <p>
+     * Each check is performed exactly as in 
+     * {@link #matches(String, String)}. If the check fails for a message, the 
+     * result for it will be false.
+     * </p>
+     * <p>
+     * Batch operations do not use the pooled digesters' message digests,
+     * each processing thread creates its own instead.
+     * </p>
+     * 
+     * @param messages the messages to check
+     * @param digests the digests against which to check the messages (must
+     *        have the same length as messages)
+     * @return for each message, true if it matches its digest, false if not.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public boolean[] matchesAll(final String[] messages, final String[] digests) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
         }
         
-        return this.pool[poolPosition].matches(message, digest);
+        return this.pool[0].matchesAll(messages, digests);
         
     }
 
@@ -19,11 +19,22 @@
  */
 package org.jasypt.digest;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.DigestException;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.Provider;
+import java.util.Arrays;
 
+import org.jasypt.commons.BatchExecutor;
 import org.jasypt.commons.CommonUtils;
 import org.jasypt.digest.config.DigesterConfig;
 import org.jasypt.exceptions.AlreadyInitializedException;
@@ -165,7 +176,8 @@ import org.jasypt.salt.SaltGenerator;
  * @author Daniel Fern&aacute;ndez
  * 
  */
-public final class StandardByteDigester implements ByteDigester {
+public final class StandardByteDigester 
+        implements BatchByteDigester, StreamingByteDigester {
 
     /**
      * Default digest algorithm will be MD5 
@@ -179,6 +191,11 @@ public final class StandardByteDigester implements ByteDigester {
      * The minimum recommended iterations for hashing are 1000
      */
     public static final int DEFAULT_ITERATIONS = 1000;
+    
+    // Size of the buffers used for reading streamed messages
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    // Maximum size of each of the file regions mapped into memory at a time
+    private static final long MAPPED_REGION_SIZE = 64L * 1024L * 1024L;
 
     // Algorithm to be used for hashing
     private String algorithm = DEFAULT_ALGORITHM;
@@ -253,6 +270,29 @@ public final class StandardByteDigester implements ByteDigester {
      */
     private MessageDigest md = null;
     
+    /*
+     * If thread-local digests are enabled, each thread using the digester
+     * will lazily create its own MessageDigest object, and the shared
+     * one will not be used for digesting.
+     */
+    private boolean threadLocalDigests = false;
+    private ThreadLocal<MessageDigest> threadMd = null;
+    
+    /*
+     * Pure-Java implementation of the hashing iterations for the configured
+     * algorithm (SHA-1 and SHA-2 only, and only if explicitly enabled, no 
+     * specific provider has been set and the JVM does not provide faster 
+     * intrinsics).
+     */
+    private boolean useRehashKernel = false;
+    private FixedLengthRehashKernel rehashKernel = null;
+    
+    /*
+     * PBKDF2 implementation used (instead of a MessageDigest) if the
+     * configured algorithm is a PBKDF2 one.
+     */
+    private Pbkdf2Engine pbkdf2Engine = null;
+    
     /*
      * Length of the result digest for the specified algorithm.
      * This might be zero if this operation is not supported by the 
@@ -329,6 +369,16 @@ public final class StandardByteDigester implements ByteDigester {
      *         Cryptography Architecture API Specification & 
      *         Reference</a>.
      * </p>
+     * <p>
+     * PBKDF2 key derivation algorithms (like <tt>PBKDF2WithHmacSHA256</tt>
+     * or <tt>PBKDF2WithHmacSHA512</tt>) can also be used, provided the
+     * corresponding HMAC algorithm (<tt>HmacSHA256</tt>, 
+     * <tt>HmacSHA512</tt>...) is supported as a javax.crypto.Mac. In this 
+     * case the salt is used as PBKDF2 salt, the number of iterations as PBKDF2
+     * iteration count, and the digest has the length of the HMAC output. The 
+     * position of the salt in the digested message cannot be inverted for 
+     * these algorithms. 
+     * </p>
      * 
      * @param algorithm the name of the algorithm to be used.
      */
@@ -593,6 +643,68 @@ public final class StandardByteDigester implements ByteDigester {
     }
 
 
+
+    /**
+     * <p>
+     * Sets whether each thread using this digester should be given its own
+     * <tt>MessageDigest</tt> object. Default is <tt>false</tt>.
+     * </p>
+     * <p>
+     * By default, all threads share the same <tt>MessageDigest</tt> object,
+     * and so digest and match operations (including all of their hashing
+     * iterations) are serialized. If this is set to <tt>true</tt>, each 
+     * thread will lazily create its own <tt>MessageDigest</tt> (for the 
+     * configured algorithm and provider) the first time it uses the digester, 
+     * and no locks will be acquired during digest operations afterwards. 
+     * This allows throughput to scale with the number of processors without 
+     * the need of a pooled digester, at the cost of keeping one 
+     * <tt>MessageDigest</tt> object per thread.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param threadLocalDigests whether digests should be thread-local or not.
+     */
+    public synchronized void setThreadLocalDigests(final boolean threadLocalDigests) {
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.threadLocalDigests = threadLocalDigests;
+    }
+
+
+
+    /**
+     * <p>
+     * Sets whether the hashing iterations (all but the first one) should be
+     * performed by a pure-Java implementation of the algorithm which works
+     * on fixed-length inputs, instead of by the <tt>MessageDigest</tt> 
+     * object. Default is <tt>false</tt>.
+     * </p>
+     * <p>
+     * Such implementations exist for <tt>SHA-1</tt>, <tt>SHA-224</tt>, 
+     * <tt>SHA-256</tt>, <tt>SHA-384</tt> and <tt>SHA-512</tt>, and produce 
+     * the same results as the standard <tt>MessageDigest</tt> objects while 
+     * avoiding their per-iteration buffering, which can make digests with 
+     * high iteration counts noticeably faster on Java 8 and older. This 
+     * setting is ignored for any other algorithms, if a provider or provider 
+     * name has been set, and on Java 9 and newer (whose JVMs can replace 
+     * the standard implementations with faster CPU intrinsics).
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param useRehashKernel whether a pure-Java implementation should be
+     *                        used for the hashing iterations.
+     */
+    public synchronized void setUseRehashKernel(final boolean useRehashKernel) {
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.useRehashKernel = useRehashKernel;
+    }
+
+
     
     
     
@@ -625,6 +737,8 @@ public final class StandardByteDigester implements ByteDigester {
         }
         cloned.setSaltSizeBytes(this.saltSizeBytes);
         cloned.setUseLenientSaltSizeCheck(this.useLenientSaltSizeCheck);
+        cloned.setThreadLocalDigests(this.threadLocalDigests);
+        cloned.setUseRehashKernel(this.useRehashKernel);
         
         return cloned;
         
@@ -793,44 +907,80 @@ public final class StandardByteDigester implements ByteDigester {
                 }
             }
             
-            /*
-             * MessageDigest is initialized the usual way, and the digester
-             * is marked as "initialized" so that configuration cannot be
-             * changed in the future.
-             */
-            try {
-                if (this.provider != null) {
-                    this.md = 
-                        MessageDigest.getInstance(
-                                this.algorithm, 
-                                this.provider);
-                } else if (this.providerName != null) {
-                    this.md = 
-                        MessageDigest.getInstance(
-                                this.algorithm, 
-                                this.providerName);
-                } else {
-                    this.md = MessageDigest.getInstance(this.algorithm);
+            if (Pbkdf2Engine.isPbkdf2Algorithm(this.algorithm)) {
+                
+                /*
+                 * Key derivation algorithms do not use MessageDigest objects,
+                 * and perform the hashing iterations themselves.
+                 */
+                if (this.invertPositionOfSaltInMessageBeforeDigesting) {
+                    throw new EncryptionInitializationException(
+                            "The position of salt in the digested message " +
+                            "cannot be inverted for algorithm " + this.algorithm);
+                }
+                try {
+                    this.pbkdf2Engine = 
+                        new Pbkdf2Engine(this.algorithm, this.provider, this.providerName);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new EncryptionInitializationException(e);
+                } catch (NoSuchProviderException e) {
+                    throw new EncryptionInitializationException(e);
+                }
+                this.digestLengthBytes = this.pbkdf2Engine.getDigestLength();
+                
+            } else {
+                
+                /*
+                 * MessageDigest is initialized the usual way, and the digester
+                 * is marked as "initialized" so that configuration cannot be
+                 * changed in the future.
+                 */
+                try {
+                    this.md = createMessageDigest();
+                } catch (NoSuchAlgorithmException e) {
+                    throw new EncryptionInitializationException(e);
+                } catch (NoSuchProviderException e) {
+                    throw new EncryptionInitializationException(e);
                 }
-            } catch (NoSuchAlgorithmException e) {
-                throw new EncryptionInitializationException(e);
-            } catch (NoSuchProviderException e) {
-                throw new EncryptionInitializationException(e);
-            }
             
+                if (this.threadLocalDigests) {
+                    this.threadMd = 
+                        new ThreadLocal<MessageDigest>() {
+                            protected MessageDigest initialValue() {
+                                try {
+                                    return createMessageDigest();
+                                } catch (final GeneralSecurityException e) {
+                                    throw new EncryptionOperationNotPossibleException();
+                                }
+                            }
+                        };
+                }
             
-            /*
-             * Store the digest length (algorithm-dependent) and check
-             * the operation is supported by the provider.
-             */
-            this.digestLengthBytes = this.md.getDigestLength();
-            if (this.digestLengthBytes <= 0) {
-                throw new EncryptionInitializationException(
-                        "The configured algorithm (" + 
-                        this.algorithm + ") or its provider do  " +
-                        "not allow knowing the digest length beforehand " +
-                        "(getDigestLength() operation), which is not compatible" +
-                        "with setting the salt size checking behaviour to \"lenient\".");
+            
+                /*
+                 * Store the digest length (algorithm-dependent) and check
+                 * the operation is supported by the provider.
+                 */
+                this.digestLengthBytes = this.md.getDigestLength();
+                if (this.digestLengthBytes <= 0) {
+                    throw new EncryptionInitializationException(
+                            "The configured algorithm (" + 
+                            this.algorithm + ") or its provider do  " +
+                            "not allow knowing the digest length beforehand " +
+                            "(getDigestLength() operation), which is not compatible" +
+                            "with setting the salt size checking behaviour to \"lenient\".");
+                }
+            
+                if (this.useRehashKernel && 
+                        this.provider == null && this.providerName == null &&
+                        FixedLengthRehashKernel.isPreferableToMessageDigest()) {
+                    final FixedLengthRehashKernel kernel = 
+                        FixedLengthRehashKernel.forAlgorithm(this.algorithm);
+                    if (kernel != null && kernel.getDigestLength() == this.digestLengthBytes) {
+                        this.rehashKernel = kernel;
+                    }
+                }
+
             }
             
             this.initialized = true;
@@ -912,10 +1062,30 @@ public final class StandardByteDigester implements ByteDigester {
      *         
      */
     public byte[] digest(byte[] message) {
+        return digestInWorker(message, null);
+    }
+    
+    
+    /*
+     * Performs the digest operation using the specified MessageDigest (owned 
+     * by the calling batch worker) or, if null, the digester's own ones.
+     */
+    byte[] digestInWorker(final byte[] message, final MessageDigest workerMessageDigest) {
         
         if (message == null) {
             return null;
         }
+        return digestInWorker(message, message.length, workerMessageDigest);
+        
+    }
+    
+    
+    /*
+     * Performs the digest operation on the first messageLength bytes of
+     * the message array (which can be a reusable buffer).
+     */
+    byte[] digestInWorker(final byte[] message, final int messageLength, 
+            final MessageDigest workerMessageDigest) {
 
         // Check initialization
         if (!isInitialized()) {
@@ -929,7 +1099,7 @@ public final class StandardByteDigester implements ByteDigester {
         }
 
         // Create digest
-        return digest(message, salt);
+        return digest(message, messageLength, salt, workerMessageDigest);
         
     }
 
@@ -939,65 +1109,373 @@ public final class StandardByteDigester implements ByteDigester {
      * has already been created (if needed) and the digester has already been
      * initialized.
      */
-    private byte[] digest(final byte[] message, final byte[] salt) {
+    private byte[] digest(final byte[] message, final int messageLength, 
+            final byte[] salt, final MessageDigest workerMessageDigest) {
         
         try {
 
             byte[] digest = null;
             
-            synchronized (this.md) {
+            if (this.pbkdf2Engine != null) {
                 
-                this.md.reset();
-                
-                if (salt != null) {
-                    
-                    if (!this.invertPositionOfSaltInMessageBeforeDigesting) {
-                        
-                        // The salt bytes are added before the message to be digested
-                        this.md.update(salt);
-                        this.md.update(message);
-                        
-                    } else {
-                        
-                        // The salt bytes are appended after the message to be digested
-                        this.md.update(message);
-                        this.md.update(salt);
-                        
-                    }
-                    
-                } else {
-                    
-                    //No salt to be added
-                    this.md.update(message);
-                    
+                // Salt is the PBKDF2 salt, iterations are PBKDF2 iterations.
+                // The message is the HMAC key, so it has to be an exact array.
+                if (messageLength == message.length) {
+                    return completeDigest(
+                            this.pbkdf2Engine.derive(message, salt, this.iterations), salt);
+                }
+                final byte[] key = Arrays.copyOf(message, messageLength);
+                try {
+                    return completeDigest(
+                            this.pbkdf2Engine.derive(key, salt, this.iterations), salt);
+                } finally {
+                    Arrays.fill(key, (byte)0);
                 }
                 
-                digest = this.md.digest();
-                for (int i = 0; i < (this.iterations - 1); i++) {
-                    this.md.reset();
-                    digest = this.md.digest(digest);
+            } else if (workerMessageDigest != null) {
+                
+                digest = digestWithMessageDigest(workerMessageDigest, message, messageLength, salt);
+                
+            } else if (this.threadLocalDigests) {
+                
+                // No locks needed: this thread's own MessageDigest is used
+                digest = digestWithMessageDigest(this.threadMd.get(), message, messageLength, salt);
+                
+            } else {
+                
+                synchronized (this.md) {
+                    digest = digestWithMessageDigest(this.md, message, messageLength, salt);
                 }
                 
             }
+            
+            return completeDigest(digest, salt);
+            
+        } catch (Exception e) {
+            // If digest fails, it is more secure not to return any information
+            // about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        }
+        
+    }
+    
+    
+    /*
+     * Performs the remaining iterations if a rehash kernel is being used,
+     * and then builds the digest result including the plain salt (if needed). 
+     */
+    private byte[] completeDigest(final byte[] digest, final byte[] salt) {
+        
+        // If available, the specific kernel performs the remaining 
+        // iterations (no MessageDigest objects involved)
+        if (this.rehashKernel != null && this.iterations > 1) {
+            this.rehashKernel.rehash(digest, this.iterations - 1);
+        }
 
-            // Finally we build an array containing both the unhashed (plain) salt
-            // and the digest of the (salt + message). This is done only
-            // if the salt generator we are using specifies to do so.
-            if (this.saltGenerator.includePlainSaltInEncryptionResults() && salt != null) {
+        // Finally we build an array containing both the unhashed (plain) salt
+        // and the digest of the (salt + message). This is done only
+        // if the salt generator we are using specifies to do so.
+        if (this.saltGenerator.includePlainSaltInEncryptionResults() && salt != null) {
 
-                if (!this.invertPositionOfPlainSaltInEncryptionResults) {
-                    
-                    // Insert unhashed salt before the hashing result (default behaviour)
-                    return CommonUtils.appendArrays(salt, digest);
-                    
-                }
-                    
-                // Append unhashed salt after the hashing result
-                return CommonUtils.appendArrays(digest, salt);
+            if (!this.invertPositionOfPlainSaltInEncryptionResults) {
+                
+                // Insert unhashed salt before the hashing result (default behaviour)
+                return CommonUtils.appendArrays(salt, digest);
                 
             }
+                
+            // Append unhashed salt after the hashing result
+            return CommonUtils.appendArrays(digest, salt);
             
-            return digest;
+        }
+        
+        return digest;
+        
+    }
+    
+    
+    /*
+     * Applies the hash function to the salt and message and then, unless
+     * a rehash kernel is available, to its own results (iterations). The 
+     * MessageDigest object is expected to be either owned by the current 
+     * thread or adequately synchronized.
+     */
+    private byte[] digestWithMessageDigest(final MessageDigest messageDigest,
+            final byte[] message, final int messageLength, final byte[] salt) 
+            throws DigestException {
+        
+        messageDigest.reset();
+        
+        if (salt != null) {
+            
+            if (!this.invertPositionOfSaltInMessageBeforeDigesting) {
+                
+                // The salt bytes are added before the message to be digested
+                messageDigest.update(salt);
+                messageDigest.update(message, 0, messageLength);
+                
+            } else {
+                
+                // The salt bytes are appended after the message to be digested
+                messageDigest.update(message, 0, messageLength);
+                messageDigest.update(salt);
+                
+            }
+            
+        } else {
+            
+            //No salt to be added
+            messageDigest.update(message, 0, messageLength);
+            
+        }
+        
+        return iterateDigest(messageDigest);
+        
+    }
+    
+    
+    /*
+     * Obtains the digest of the data already fed to the MessageDigest object
+     * and then, unless a rehash kernel is available, applies the hash 
+     * function to its own results (iterations).
+     */
+    private byte[] iterateDigest(final MessageDigest messageDigest) 
+            throws DigestException {
+        
+        final byte[] digest = messageDigest.digest();
+        if (this.rehashKernel == null) {
+            // The same array is used as input and output of every iteration
+            // (the input is completely consumed by update() before the 
+            // result is written)
+            for (int i = 0; i < (this.iterations - 1); i++) {
+                messageDigest.update(digest);
+                messageDigest.digest(digest, 0, digest.length);
+            }
+        }
+        return digest;
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Performs a digest operation on all the bytes remaining in an input 
+     * stream, which will be read (but not closed) by this method.
+     * </p>
+     * <p>
+     * Salt, its position and hashing iterations are applied exactly as in
+     * {@link #digest(byte[])}, so the result will be equivalent to that of 
+     * digesting an array containing the same bytes, and can be checked with
+     * {@link #matches(byte[], byte[])}.
+     * </p>
+     * <p>
+     * Streamed messages are never digested with the digester's shared 
+     * <tt>MessageDigest</tt> object, so that other threads do not have to 
+     * wait while the message is being read.
+     * </p>
+     * 
+     * @param message the stream to be digested 
+     * @return the digest result (null if the stream is null)
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails (including errors reading the stream), ommitting any 
+     *         further information about the cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public byte[] digestStream(final InputStream message) {
+        
+        if (message == null) {
+            return null;
+        }
+        
+        return digestStreamed(new MessageReader() {
+            void readInto(final MessageDigest messageDigest) throws IOException {
+                final byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                int read = 0;
+                while ((read = message.read(buffer)) != -1) {
+                    messageDigest.update(buffer, 0, read);
+                }
+            }
+        });
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Performs a digest operation on all the bytes remaining in a (blocking)
+     * channel, which will be read (but not closed) by this method.
+     * </p>
+     * <p>
+     * Salt, its position and hashing iterations are applied exactly as in
+     * {@link #digest(byte[])}, so the result will be equivalent to that of 
+     * digesting an array containing the same bytes, and can be checked with
+     * {@link #matches(byte[], byte[])}.
+     * </p>
+     * 
+     * @param message the channel to be digested 
+     * @return the digest result (null if the channel is null)
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails (including errors reading the channel), ommitting any 
+     *         further information about the cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public byte[] digestChannel(final ReadableByteChannel message) {
+        
+        if (message == null) {
+            return null;
+        }
+        
+        return digestStreamed(new MessageReader() {
+            void readInto(final MessageDigest messageDigest) throws IOException {
+                final ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+                while (message.read(buffer) != -1) {
+                    buffer.flip();
+                    messageDigest.update(buffer);
+                    buffer.clear();
+                }
+            }
+        });
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Performs a digest operation on the bytes remaining in a buffer (from
+     * its position to its limit). Once digested, the position of the buffer
+     * will be equal to its limit. Both heap and direct buffers are allowed.
+     * </p>
+     * <p>
+     * Salt, its position and hashing iterations are applied exactly as in
+     * {@link #digest(byte[])}, so the result will be equivalent to that of 
+     * digesting an array containing the same bytes, and can be checked with
+     * {@link #matches(byte[], byte[])}.
+     * </p>
+     * 
+     * @param message the buffer to be digested 
+     * @return the digest result (null if the buffer is null)
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails, ommitting any further information about the cause for
+     *         security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public byte[] digestBuffer(final ByteBuffer message) {
+        
+        if (message == null) {
+            return null;
+        }
+        
+        return digestStreamed(new MessageReader() {
+            void readInto(final MessageDigest messageDigest) {
+                messageDigest.update(message);
+            }
+        });
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Performs a digest operation on the contents of a file. The file is
+     * not copied into the heap: consecutive regions of it (of up to 64 MB 
+     * each) are mapped into memory and digested directly.
+     * </p>
+     * <p>
+     * Salt, its position and hashing iterations are applied exactly as in
+     * {@link #digest(byte[])}, so the result will be equivalent to that of 
+     * digesting an array containing the same bytes, and can be checked with
+     * {@link #matches(byte[], byte[])}.
+     * </p>
+     * 
+     * @param message the file to be digested 
+     * @return the digest result (null if the file is null)
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails (including errors reading the file), ommitting any 
+     *         further information about the cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public byte[] digestFile(final File message) {
+        
+        if (message == null) {
+            return null;
+        }
+        
+        return digestStreamed(new MessageReader() {
+            void readInto(final MessageDigest messageDigest) throws IOException {
+                final FileInputStream fileInputStream = new FileInputStream(message);
+                try {
+                    final FileChannel channel = fileInputStream.getChannel();
+                    final long size = channel.size();
+                    long position = 0L;
+                    while (position < size) {
+                        final long regionSize = Math.min(MAPPED_REGION_SIZE, size - position);
+                        messageDigest.update(
+                                channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize));
+                        position += regionSize;
+                    }
+                } finally {
+                    fileInputStream.close();
+                }
+            }
+        });
+        
+    }
+    
+    
+    /*
+     * Performs the digest operation on a message which is not available as
+     * a byte array, but can be fed into a MessageDigest object. A new
+     * MessageDigest is used for each operation, as reading the message 
+     * could take long.
+     */
+    private byte[] digestStreamed(final MessageReader messageReader) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        if (this.pbkdf2Engine != null) {
+            throw new EncryptionOperationNotPossibleException(
+                    "Streamed messages cannot be digested with key derivation " +
+                    "algorithms like " + this.algorithm);
+        }
+        
+        // Create salt
+        byte[] salt = null;
+        if (this.useSalt) {
+            salt = this.saltGenerator.generateSalt(this.saltSizeBytes);
+        }
+        
+        try {
+            
+            final MessageDigest messageDigest = createMessageDigest();
+            
+            if (salt != null && !this.invertPositionOfSaltInMessageBeforeDigesting) {
+                // The salt bytes are added before the message to be digested
+                messageDigest.update(salt);
+            }
+            
+            messageReader.readInto(messageDigest);
+            
+            if (salt != null && this.invertPositionOfSaltInMessageBeforeDigesting) {
+                // The salt bytes are appended after the message to be digested
+                messageDigest.update(salt);
+            }
+            
+            return completeDigest(iterateDigest(messageDigest), salt);
             
         } catch (Exception e) {
             // If digest fails, it is more secure not to return any information
@@ -1006,8 +1484,20 @@ public final class StandardByteDigester implements ByteDigester {
         }
         
     }
+
     
     
+    private MessageDigest createMessageDigest() 
+            throws NoSuchAlgorithmException, NoSuchProviderException {
+        if (this.provider != null) {
+            return MessageDigest.getInstance(this.algorithm, this.provider);
+        } else if (this.providerName != null) {
+            return MessageDigest.getInstance(this.algorithm, this.providerName);
+        }
+        return MessageDigest.getInstance(this.algorithm);
+    }
+
+    
     /**
      * <p>
      * Checks a message against a given digest.
@@ -1038,10 +1528,33 @@ public final class StandardByteDigester implements ByteDigester {
      *         cannot be used).
      */
     public boolean matches(final byte[] message, final byte[] digest) {
+        return matchesInWorker(message, digest, null);
+    }
+    
+    
+    /*
+     * Performs the match operation using the specified MessageDigest (owned 
+     * by the calling batch worker) or, if null, the digester's own ones.
+     */
+    boolean matchesInWorker(final byte[] message, final byte[] digest, 
+            final MessageDigest workerMessageDigest) {
 
         if (message == null) {
             return (digest == null);
-        } else if (digest == null) {
+        }
+        return matchesInWorker(message, message.length, digest, workerMessageDigest);
+        
+    }
+    
+    
+    /*
+     * Performs the match operation on the first messageLength bytes of
+     * the message array (which can be a reusable buffer).
+     */
+    boolean matchesInWorker(final byte[] message, final int messageLength, 
+            final byte[] digest, final MessageDigest workerMessageDigest) {
+
+        if (digest == null) {
             return false;
         }
         
@@ -1095,7 +1608,7 @@ public final class StandardByteDigester implements ByteDigester {
             }
             
             // Digest the message with the extracted digest.
-            final byte[] encryptedMessage = digest(message, salt);
+            final byte[] encryptedMessage = digest(message, messageLength, salt, workerMessageDigest);
             
             // If, using the same salt, digests match, then messages too. 
             return (digestsAreEqual(encryptedMessage, digest));
@@ -1109,6 +1622,132 @@ public final class StandardByteDigester implements ByteDigester {
     }
 
     
+    /**
+     * <p>
+     * Creates a digest for each of the messages, processing them in parallel
+     * (one thread per available processor, including the calling thread).
+     * Each thread uses its own <tt>MessageDigest</tt> object, whether 
+     * thread-local digests have been enabled for this digester or not.
+     * </p>
+     * <p>
+     * Digests are created exactly as in {@link #digest(byte[])}, and 
+     * returned in the same order as the messages. If the digest operation 
+     * fails for a message (or the message is null), its digest will be null.
+     * </p>
+     * 
+     * @param messages the byte array messages to be digested
+     * @return the digest results
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @throws EncryptionOperationNotPossibleException if the calling thread
+     *         could not create its <tt>MessageDigest</tt>, so that some of 
+     *         the messages could not be processed.
+     * @since 1.9.4
+     */
+    public byte[][] digestAll(final byte[][] messages) {
+        
+        CommonUtils.validateNotNull(messages, "Messages cannot be null");
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final byte[][] digests = new byte[messages.length][];
+        BatchExecutor.execute(messages.length, 
+                new BatchExecutor.Batch<MessageDigest>() {
+                    protected MessageDigest createWorkerContext() {
+                        return createWorkerMessageDigest();
+                    }
+                    protected void process(final int index, final MessageDigest workerContext) {
+                        digests[index] = digestInWorker(messages[index], workerContext);
+                    }
+                });
+        return digests;
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Checks each of the messages against the digest at the same position,
+     * processing them in parallel (one thread per available processor, 
+     * including the calling thread). Each thread uses its own 
+     * <tt>MessageDigest</tt> object, whether thread-local digests have been 
+     * enabled for this digester or not.
+     * </p>
+     * <p>
+     * Each check is performed exactly as in {@link #matches(byte[], byte[])}.
+     * If the check fails for a message (for example, because its digest is 
+     * malformed), the result for it will be false.
+     * </p>
+     * 
+     * @param messages the messages to check
+     * @param digests the digests against which to check the messages (must
+     *        have the same length as messages)
+     * @return for each message, true if it matches its digest, false if not.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @throws EncryptionOperationNotPossibleException if the calling thread
+     *         could not create its <tt>MessageDigest</tt>, so that some of 
+     *         the messages could not be processed.
+     * @since 1.9.4
+     */
+    public boolean[] matchesAll(final byte[][] messages, final byte[][] digests) {
+        
+        CommonUtils.validateNotNull(messages, "Messages cannot be null");
+        CommonUtils.validateNotNull(digests, "Digests cannot be null");
+        CommonUtils.validateIsTrue(messages.length == digests.length, 
+                "Messages and digests must have the same length");
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final boolean[] results = new boolean[messages.length];
+        BatchExecutor.execute(messages.length, 
+                new BatchExecutor.Batch<MessageDigest>() {
+                    protected MessageDigest createWorkerContext() {
+                        return createWorkerMessageDigest();
+                    }
+                    protected void process(final int index, final MessageDigest workerContext) {
+                        results[index] = matchesInWorker(messages[index], digests[index], workerContext);
+                    }
+                });
+        return results;
+        
+    }
+    
+    
+    /*
+     * Returns whether a key derivation algorithm (PBKDF2) is being used
+     * instead of a MessageDigest one.
+     */
+    boolean isKeyDerivationAlgorithm() {
+        return (this.pbkdf2Engine != null);
+    }
+    
+    
+    /*
+     * Creates a MessageDigest to be used by a batch worker (null if the
+     * algorithm being used is a key derivation one).
+     */
+    MessageDigest createWorkerMessageDigest() {
+        if (this.pbkdf2Engine != null) {
+            // Key derivation algorithms need no MessageDigest
+            return null;
+        }
+        try {
+            return createMessageDigest();
+        } catch (final GeneralSecurityException e) {
+            throw new EncryptionOperationNotPossibleException(e);
+        }
+    }
+    
+    
     // Time-constant comparison of byte arrays
     private static boolean digestsAreEqual(byte[] a, byte[] b) {
 
@@ -1131,5 +1770,14 @@ public final class StandardByteDigester implements ByteDigester {
     }
     
     
+    /*
+     * Feeds a message (from whichever its source is) into a MessageDigest.
+     */
+    private abstract static class MessageReader {
+        
+        abstract void readInto(final MessageDigest messageDigest) throws IOException;
+        
+    }
+
     
 }
@@ -19,10 +19,14 @@
  */
 package org.jasypt.digest;
 
+import java.security.MessageDigest;
 import java.security.Provider;
 
+import org.jasypt.commons.BatchExecutor;
+import org.jasypt.codec.StringOutputCodec;
+import org.jasypt.codec.StringOutputCodecs;
 import org.jasypt.commons.CommonUtils;
-import org.jasypt.contrib.org.apache.commons.codec_1_3.binary.Base64;
+import org.jasypt.commons.Utf8Transcoder;
 import org.jasypt.digest.config.DigesterConfig;
 import org.jasypt.digest.config.StringDigesterConfig;
 import org.jasypt.exceptions.AlreadyInitializedException;
@@ -169,7 +173,8 @@ import org.jasypt.salt.SaltGenerator;
  * @author Daniel Fern&aacute;ndez
  * 
  */
-public final class StandardStringDigester implements StringDigester {
+public final class StandardStringDigester 
+        implements BatchStringDigester, CharSequenceStringDigester {
 
 
     /**
@@ -247,9 +252,9 @@ public final class StandardStringDigester implements StringDigester {
         DEFAULT_UNICODE_NORMALIZATION_IGNORED;
     
     // This variable holds the type of String output which will be done,
-    // and also a boolean variable for faster comparison
+    // and also the codec which will perform the encoding
     private String stringOutputType = DEFAULT_STRING_OUTPUT_TYPE;
-    private boolean stringOutputTypeBase64 = true;
+    private StringOutputCodec stringOutputCodec = null;
     
 
     // Prefix and suffix to be added to encryption results (if any)
@@ -266,12 +271,6 @@ public final class StandardStringDigester implements StringDigester {
     private boolean stringOutputTypeSet = false;
     private boolean prefixSet = false;
     private boolean suffixSet = false;
-    
-    
-    // BASE64 encoder which will make sure the returned digests are
-    // valid US-ASCII strings (if the user chooses BASE64 output).
-    // The Bsae64 encoder is THREAD-SAFE
-    private final Base64 base64;
 
 
     
@@ -281,7 +280,6 @@ public final class StandardStringDigester implements StringDigester {
     public StandardStringDigester() {
         super();
         this.byteDigester = new StandardByteDigester();
-        this.base64 = new Base64();
     }
 
 
@@ -293,7 +291,6 @@ public final class StandardStringDigester implements StringDigester {
     private StandardStringDigester(final StandardByteDigester standardByteDigester) {
         super();
         this.byteDigester = standardByteDigester;
-        this.base64 = new Base64();
     }
 
     
@@ -357,6 +354,11 @@ public final class StandardStringDigester implements StringDigester {
      *         Cryptography Architecture API Specification & 
      *         Reference</a>.
      * </p>
+     * <p>
+     * PBKDF2 key derivation algorithms like <tt>PBKDF2WithHmacSHA256</tt> 
+     * or <tt>PBKDF2WithHmacSHA512</tt> can also be used (see 
+     * {@link StandardByteDigester#setAlgorithm(String)}).
+     * </p>
      * 
      * @param algorithm the name of the algorithm to be used.
      */
@@ -569,6 +571,45 @@ public final class StandardStringDigester implements StringDigester {
     }
     
     
+    /**
+     * <p>
+     * Sets whether each thread using this digester should be given its own
+     * <tt>MessageDigest</tt> object. Default is <tt>false</tt>.
+     * </p>
+     * <p>
+     * If this is set to <tt>true</tt>, each thread will lazily create its
+     * own <tt>MessageDigest</tt> the first time it uses the digester, and
+     * concurrent digest and match operations will not wait for each other.
+     * See {@link StandardByteDigester#setThreadLocalDigests(boolean)}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param threadLocalDigests whether digests should be thread-local or not.
+     */
+    public synchronized void setThreadLocalDigests(final boolean threadLocalDigests) {
+        this.byteDigester.setThreadLocalDigests(threadLocalDigests);
+    }
+    
+    
+    /**
+     * <p>
+     * Sets whether the hashing iterations should be performed by a pure-Java
+     * implementation of the algorithm instead of by the 
+     * <tt>MessageDigest</tt> object. Default is <tt>false</tt>.
+     * See {@link StandardByteDigester#setUseRehashKernel(boolean)}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param useRehashKernel whether a pure-Java implementation should be
+     *                        used for the hashing iterations.
+     */
+    public synchronized void setUseRehashKernel(final boolean useRehashKernel) {
+        this.byteDigester.setUseRehashKernel(useRehashKernel);
+    }
+    
+    
     /**
      * <p>
      * Sets whether the unicode text normalization step should be ignored.
@@ -612,7 +653,12 @@ public final class StandardStringDigester implements StringDigester {
      * </p>
      * <ul>
      *   <li><tt><b>base64</b></tt> (default)</li>
+     *   <li><tt><b>base64-unpadded</b></tt></li>
+     *   <li><tt><b>base64url</b></tt></li>
+     *   <li><tt><b>base64url-unpadded</b></tt></li>
      *   <li><tt><b>hexadecimal</b></tt></li>
+     *   <li>Any other output type registered at 
+     *       {@link org.jasypt.codec.StringOutputCodecs}</li>
      * </ul>
      * <p>
      * If not set, null will be returned.
@@ -807,9 +853,8 @@ public final class StandardStringDigester implements StringDigester {
                 
             }
             
-            this.stringOutputTypeBase64 =
-                (CommonUtils.STRING_OUTPUT_TYPE_BASE64.
-                    equalsIgnoreCase(this.stringOutputType));
+            this.stringOutputCodec = 
+                StringOutputCodecs.getCodec(this.stringOutputType);
             
             this.byteDigester.initialize();
         
@@ -893,6 +938,43 @@ public final class StandardStringDigester implements StringDigester {
      *         cannot be used).
      */
     public String digest(final String message) {
+        return digestInWorker(message, null);
+    }
+    
+    
+    /**
+     * <p>
+     * Performs a digest operation on a message (any <tt>CharSequence</tt>,
+     * like a <tt>StringBuilder</tt> or a <tt>CharBuffer</tt>).
+     * </p>
+     * <p>
+     * The result is exactly the same as that of {@link #digest(String)},
+     * but the message is not converted into a <tt>String</tt> (unless it
+     * needs Unicode normalization). Instead, it is converted to bytes into 
+     * a reusable per-thread buffer (cleaned after use) and digested from 
+     * there.
+     * </p>
+     * 
+     * @param message the message to be digested 
+     * @return the digest result
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails, ommitting any further information about the cause for
+     *         security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public String digest(final CharSequence message) {
+        return digestInWorker(message, null);
+    }
+    
+    
+    /*
+     * Performs the digest operation using the specified MessageDigest (owned 
+     * by the calling batch worker) or, if null, the byte digester's own ones.
+     */
+    private String digestInWorker(final CharSequence message, final MessageDigest workerMessageDigest) {
 
         if (message == null) {
             return null;
@@ -903,23 +985,33 @@ public final class StandardStringDigester implements StringDigester {
             initialize();
         }
         
+        Utf8Transcoder transcoder = null;
         try {
 
             // Normalize Unicode message to NFC form
-            String normalizedMessage = null;
-            if (! this.unicodeNormalizationIgnored) {
-                normalizedMessage = Normalizer.normalizeToNfc(message);
-            } else {
-                normalizedMessage = message;
-            }
+            final CharSequence normalizedMessage = normalize(message);
             
-            // The input String is converted into bytes using MESSAGE_CHARSET
-            // as a fixed charset to avoid problems with different platforms
-            // having different default charsets (see MESSAGE_CHARSET doc).
-            final byte[] messageBytes = normalizedMessage.getBytes(MESSAGE_CHARSET);
-
             // The StandardByteDigester does its job.
-            byte[] digest = this.byteDigester.digest(messageBytes);
+            final byte[] digest;
+            if (normalizedMessage instanceof String) {
+                
+                // The input String is converted into bytes using MESSAGE_CHARSET
+                // as a fixed charset to avoid problems with different platforms
+                // having different default charsets (see MESSAGE_CHARSET doc).
+                final byte[] messageBytes = 
+                    ((String) normalizedMessage).getBytes(MESSAGE_CHARSET);
+                digest = this.byteDigester.digestInWorker(messageBytes, workerMessageDigest);
+                
+            } else {
+                
+                // Other char sequences are converted into bytes (also using
+                // MESSAGE_CHARSET) at the transcoder's own buffer
+                transcoder = Utf8Transcoder.acquire();
+                final int messageLength = transcoder.encode(normalizedMessage);
+                digest = this.byteDigester.digestInWorker(
+                        transcoder.getBytes(), messageLength, workerMessageDigest);
+                
+            }
 
             // We build the result variable
             final StringBuffer result = new StringBuffer();
@@ -931,12 +1023,7 @@ public final class StandardStringDigester implements StringDigester {
             
             // We encode the result in BASE64 or HEXADECIMAL so that we obtain
             // the safest result String possible.
-            if (this.stringOutputTypeBase64) {
-                digest = this.base64.encode(digest);
-                result.append(new String(digest, DIGEST_CHARSET)); 
-            } else {
-                result.append(CommonUtils.toHexadecimal(digest));
-            }
+            result.append(this.stringOutputCodec.encode(digest));
             
             if (this.suffix != null) {
                 // Suffix is added
@@ -953,9 +1040,24 @@ public final class StandardStringDigester implements StringDigester {
             // If digest fails, it is more secure not to return any information
             // about the cause in nested exceptions. Simply fail.
             throw new EncryptionOperationNotPossibleException();
+        } finally {
+            if (transcoder != null) {
+                transcoder.release();
+            }
         }
         
     }
+    
+    
+    /*
+     * Normalizes the message to NFC form, unless normalization is ignored.
+     */
+    private CharSequence normalize(final CharSequence message) {
+        if (this.unicodeNormalizationIgnored) {
+            return message;
+        }
+        return Normalizer.normalizeToNfc(message);
+    }
 
     
     
@@ -989,6 +1091,44 @@ public final class StandardStringDigester implements StringDigester {
      *         cannot be used).
      */
     public boolean matches(final String message, final String digest) {
+        return matchesInWorker(message, digest, null);
+    }
+    
+    
+    /**
+     * <p>
+     * Checks a message (any <tt>CharSequence</tt>, like a 
+     * <tt>StringBuilder</tt> or a <tt>CharBuffer</tt>) against a given digest.
+     * </p>
+     * <p>
+     * The result is exactly the same as that of 
+     * {@link #matches(String, String)}, but the message is not converted 
+     * into a <tt>String</tt> (unless it needs Unicode normalization).
+     * </p>
+     * 
+     * @param message the message to be compared to the digest.
+     * @param digest the digest. 
+     * @return true if the specified message matches the digest, false
+     *         if not.
+     * @throws EncryptionOperationNotPossibleException if the digest matching
+     *         operation fails, ommitting any further information about the 
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @since 1.9.4
+     */
+    public boolean matches(final CharSequence message, final String digest) {
+        return matchesInWorker(message, digest, null);
+    }
+    
+    
+    /*
+     * Performs the match operation using the specified MessageDigest (owned 
+     * by the calling batch worker) or, if null, the byte digester's own ones.
+     */
+    private boolean matchesInWorker(final CharSequence message, final String digest, 
+            final MessageDigest workerMessageDigest) {
 
         String processedDigest = digest;
         
@@ -1022,34 +1162,31 @@ public final class StandardStringDigester implements StringDigester {
             initialize();
         }
         
+        Utf8Transcoder transcoder = null;
         try {
 
             // Normalize Unicode message to NFC form
-            String normalizedMessage = null;
-            if (! this.unicodeNormalizationIgnored) {
-                normalizedMessage = Normalizer.normalizeToNfc(message);
-            } else {
-                normalizedMessage = message;
-            }
-            
-            // We get a valid byte array from the message, in the 
-            // fixed MESSAGE_CHARSET that the digest operations use.
-            final byte[] messageBytes = normalizedMessage.getBytes(MESSAGE_CHARSET);
-            
+            final CharSequence normalizedMessage = normalize(message);
 
             // The BASE64 or HEXADECIMAL encoding is reversed and the digest
             // is converted into a byte array.
-            byte[] digestBytes = null;
-            if (this.stringOutputTypeBase64) {
-                // The digest must be a US-ASCII String BASE64-encoded
-                digestBytes = processedDigest.getBytes(DIGEST_CHARSET);
-                digestBytes = this.base64.decode(digestBytes);
-            } else {
-                digestBytes = CommonUtils.fromHexadecimal(processedDigest);
+            final byte[] digestBytes = 
+                this.stringOutputCodec.decode(processedDigest);
+            
+            // We get a valid byte array from the message, in the 
+            // fixed MESSAGE_CHARSET that the digest operations use, and 
+            // the StandardByteDigester is asked to match message to digest.
+            if (normalizedMessage instanceof String) {
+                final byte[] messageBytes = 
+                    ((String) normalizedMessage).getBytes(MESSAGE_CHARSET);
+                return this.byteDigester.matchesInWorker(
+                        messageBytes, digestBytes, workerMessageDigest); 
             }
             
-            // The StandardByteDigester is asked to match message to digest.
-            return this.byteDigester.matches(messageBytes, digestBytes); 
+            transcoder = Utf8Transcoder.acquire();
+            final int messageLength = transcoder.encode(normalizedMessage);
+            return this.byteDigester.matchesInWorker(
+                    transcoder.getBytes(), messageLength, digestBytes, workerMessageDigest); 
         
         } catch (EncryptionInitializationException e) {
             throw e;
@@ -1059,8 +1196,112 @@ public final class StandardStringDigester implements StringDigester {
             // If digest fails, it is more secure not to return any information
             // about the cause in nested exceptions. Simply fail.
             throw new EncryptionOperationNotPossibleException();
+        } finally {
+            if (transcoder != null) {
+                transcoder.release();
+            }
+        }
+
+    }
+    
+    
+    /**
+     * <p>
+     * Creates a digest for each of the messages, processing them in parallel
+     * (one thread per available processor, including the calling thread).
+     * Each thread uses its own <tt>MessageDigest</tt> object, whether 
+     * thread-local digests have been enabled for this digester or not.
+     * </p>
+     * <p>
+     * Digests are created exactly as in {@link #digest(String)}, and 
+     * returned in the same order as the messages. If the digest operation 
+     * fails for a message (or the message is null), its digest will be null.
+     * </p>
+     * 
+     * @param messages the Strings to be digested
+     * @return the digest results
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @throws EncryptionOperationNotPossibleException if the calling thread
+     *         could not create its <tt>MessageDigest</tt>, so that some of 
+     *         the messages could not be processed.
+     * @since 1.9.4
+     */
+    public String[] digestAll(final String[] messages) {
+        
+        CommonUtils.validateNotNull(messages, "Messages cannot be null");
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
         }
+        
+        final String[] digests = new String[messages.length];
+        BatchExecutor.execute(messages.length, 
+                new BatchExecutor.Batch<MessageDigest>() {
+                    protected MessageDigest createWorkerContext() {
+                        return StandardStringDigester.this.byteDigester.createWorkerMessageDigest();
+                    }
+                    protected void process(final int index, final MessageDigest workerContext) {
+                        digests[index] = digestInWorker(messages[index], workerContext);
+                    }
+                });
+        return digests;
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Checks each of the messages against the digest at the same position,
+     * processing them in parallel (one thread per available processor, 
+     * including the calling thread). Each thread uses its own 
+     * <tt>MessageDigest</tt> object, whether thread-local digests have been 
+     * enabled for this digester or not.
+     * </p>
+     * <p>
+     * Each check is performed exactly as in {@link #matches(String, String)}.
+     * If the check fails for a message (for example, because its digest
+     * does not have the required prefix), the result for it will be false.
+     * </p>
+     * 
+     * @param messages the messages to check
+     * @param digests the digests against which to check the messages (must
+     *        have the same length as messages)
+     * @return for each message, true if it matches its digest, false if not.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     * @throws EncryptionOperationNotPossibleException if the calling thread
+     *         could not create its <tt>MessageDigest</tt>, so that some of 
+     *         the messages could not be processed.
+     * @since 1.9.4
+     */
+    public boolean[] matchesAll(final String[] messages, final String[] digests) {
+        
+        CommonUtils.validateNotNull(messages, "Messages cannot be null");
+        CommonUtils.validateNotNull(digests, "Digests cannot be null");
+        CommonUtils.validateIsTrue(messages.length == digests.length, 
+                "Messages and digests must have the same length");
 
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final boolean[] results = new boolean[messages.length];
+        BatchExecutor.execute(messages.length, 
+                new BatchExecutor.Batch<MessageDigest>() {
+                    protected MessageDigest createWorkerContext() {
+                        return StandardStringDigester.this.byteDigester.createWorkerMessageDigest();
+                    }
+                    protected void process(final int index, final MessageDigest workerContext) {
+                        results[index] = matchesInWorker(messages[index], digests[index], workerContext);
+                    }
+                });
+        return results;
+        
     }
     
     
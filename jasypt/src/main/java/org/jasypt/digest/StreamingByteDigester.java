@@ -0,0 +1,101 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * <p>
+ * Common interface for all ByteDigesters which can also digest messages
+ * read from streams, channels, buffers or files, without needing the
+ * whole message to be loaded in a byte array.
+ * </p>
+ * <p>
+ * For the same message bytes, results are equivalent to those of 
+ * {@link ByteDigester#digest(byte[])}: the configured salt, its position and
+ * the hashing iterations are applied in exactly the same way, so digests 
+ * created by any of these methods can be checked with 
+ * {@link ByteDigester#matches(byte[], byte[])}.
+ * </p>
+ * <p>
+ * For a default implementation, see {@link StandardByteDigester}.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public interface StreamingByteDigester extends ByteDigester {
+
+
+    /**
+     * <p>
+     * Create a digest of all the bytes remaining in the input stream. The
+     * stream will be read until its end, but it will not be closed.
+     * </p>
+     * 
+     * @param message the stream to be digested
+     * @return the digest.
+     */
+    public byte[] digestStream(InputStream message);
+    
+    
+    /**
+     * <p>
+     * Create a digest of all the bytes remaining in the channel. The
+     * channel will be read until its end, but it will not be closed.
+     * </p>
+     * 
+     * @param message the channel to be digested
+     * @return the digest.
+     */
+    public byte[] digestChannel(ReadableByteChannel message);
+    
+    
+    /**
+     * <p>
+     * Create a digest of the bytes remaining in the buffer (from its 
+     * position to its limit). Once digested, the buffer's position will
+     * be equal to its limit.
+     * </p>
+     * 
+     * @param message the buffer to be digested
+     * @return the digest.
+     */
+    public byte[] digestBuffer(ByteBuffer message);
+    
+    
+    /**
+     * <p>
+     * Create a digest of the contents of a file. Contents are read by 
+     * memory-mapping consecutive regions of the file instead of copying 
+     * them into the heap.
+     * </p>
+     * 
+     * @param message the file to be digested
+     * @return the digest.
+     */
+    public byte[] digestFile(File message);
+
+}
@@ -0,0 +1,985 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jasypt.commons.BatchExecutor;
+import org.jasypt.commons.CommonUtils;
+import org.jasypt.digest.config.DigesterConfig;
+import org.jasypt.digest.config.TreeDigesterConfig;
+import org.jasypt.exceptions.AlreadyInitializedException;
+import org.jasypt.exceptions.EncryptionInitializationException;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.salt.SaltGenerator;
+
+/**
+ * <p>
+ * Implementation of the {@link ByteDigester} interface which splits messages
+ * into fixed-size chunks, hashes these chunks in parallel and combines the
+ * results into a hash tree (Merkle tree), the root of which is then digested 
+ * in the same way {@link StandardByteDigester} would do (applying salt and
+ * hashing iterations). It is specially suited for very large messages, like
+ * files of several gigabytes, which can be digested directly from disk 
+ * by means of {@link #digestFile(File)}: each chunk is mapped into memory
+ * and hashed by its own thread.
+ * </p>
+ * <p>
+ * Digests created by this class are self-describing: they start with a 
+ * header containing the format version, the chunk size and the length of the 
+ * message, so that {@link #matches(byte[], byte[])} and 
+ * {@link #matchesFile(File, byte[])} do not depend on the chunk size 
+ * currently configured. Note that these digests are not compatible with
+ * those created by {@link StandardByteDigester}.
+ * </p>
+ * <p>
+ * Additionally, {@link #digestTree(File)} returns a {@link ChunkDigestTree}
+ * object which keeps the hashes of all the chunks, so that the digest of a 
+ * file in which only a few chunks are known to have changed can be 
+ * recomputed reading only those chunks (see 
+ * {@link #updateTree(File, ChunkDigestTree, int[])}), and then checked with
+ * {@link #matchesTree(ChunkDigestTree, byte[])}.
+ * </p>
+ * <p>
+ * This class can be configured the same way as {@link StandardByteDigester}
+ * (algorithm, salt, iterations, provider...), plus:
+ * </p>
+ * <ul>
+ *   <li>Chunk size: the size (in bytes) of the chunks in which messages are 
+ *       split. Default is 4 MB.</li>
+ *   <li>Parallelism: the maximum number of threads (including the calling 
+ *       one) used for hashing the chunks of a message. Default is the 
+ *       number of available processors.</li>
+ * </ul>
+ * <p>
+ * Configuration can also be set by means of a {@link DigesterConfig} object
+ * which, if it is a {@link TreeDigesterConfig}, can specify chunk size and
+ * parallelism too. Values explicitly set with the <tt>setX</tt> methods 
+ * take precedence over those of the config object.
+ * </p>
+ * <p>
+ * This class is <i>thread-safe</i>.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class TreeByteDigester implements ByteDigester {
+
+    /**
+     * Default chunk size will be 4 MB
+     */
+    public static final int DEFAULT_CHUNK_SIZE_BYTES = 4 * 1024 * 1024;
+    
+    // Version of the format of digest headers
+    private static final byte FORMAT_VERSION = 1;
+    // Header: version (1 byte) + chunk size (4 bytes) + message length (8 bytes)
+    private static final int HEADER_SIZE_BYTES = 13;
+    
+    // Prefixes for hashing leaves and inner nodes (avoids confusing them)
+    private static final byte LEAF_PREFIX = 0x00;
+    private static final byte NODE_PREFIX = 0x01;
+    
+    
+    // Digester used for digesting the tree roots (applies salt, iterations...)
+    private final StandardByteDigester rootDigester;
+    
+    private int chunkSizeBytes = DEFAULT_CHUNK_SIZE_BYTES;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private DigesterConfig config = null;
+    
+    private boolean chunkSizeBytesSet = false;
+    private boolean parallelismSet = false;
+    
+    private boolean initialized = false;
+    
+    
+    
+    /**
+     * Creates a new instance of <tt>TreeByteDigester</tt>.
+     */
+    public TreeByteDigester() {
+        super();
+        this.rootDigester = new StandardByteDigester();
+    }
+
+    
+    /**
+     * <p>
+     * Sets a <tt>{@link DigesterConfig}</tt> object for the digester. If 
+     * this config object is set, it will be asked values for all the 
+     * configuration parameters (including chunk size and parallelism,
+     * if it is a {@link TreeDigesterConfig}) which have not been explicitly
+     * set with the corresponding <tt>setX</tt> methods.
+     * </p>
+     * 
+     * @param config the <tt>DigesterConfig</tt> object to be used as the 
+     *               source for configuration parameters.
+     */
+    public synchronized void setConfig(final DigesterConfig config) {
+        CommonUtils.validateNotNull(config, "Config cannot be set null");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.rootDigester.setConfig(config);
+        this.config = config;
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the size (in bytes) of the chunks in which messages will be split.
+     * </p>
+     * 
+     * @param chunkSizeBytes the size of the chunks, in bytes.
+     */
+    public synchronized void setChunkSizeBytes(final int chunkSizeBytes) {
+        CommonUtils.validateIsTrue(chunkSizeBytes > 0, 
+                "Chunk size in bytes must be greater than zero");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.chunkSizeBytes = chunkSizeBytes;
+        this.chunkSizeBytesSet = true;
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the maximum number of threads (including the calling one) used
+     * for hashing the chunks of a message.
+     * </p>
+     * 
+     * @param parallelism the maximum number of threads.
+     */
+    public synchronized void setParallelism(final int parallelism) {
+        CommonUtils.validateIsTrue(parallelism > 0, 
+                "Parallelism must be greater than zero");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.parallelism = parallelism;
+        this.parallelismSet = true;
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the algorithm to be used for digesting (both chunks and tree 
+     * nodes). See {@link StandardByteDigester#setAlgorithm(String)}.
+     * </p>
+     * 
+     * @param algorithm the name of the algorithm to be used.
+     */
+    public synchronized void setAlgorithm(final String algorithm) {
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.rootDigester.setAlgorithm(algorithm);
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the size of the salt applied to the tree root. See 
+     * {@link StandardByteDigester#setSaltSizeBytes(int)}.
+     * </p>
+     * 
+     * @param saltSizeBytes the size of the salt to be used, in bytes.
+     */
+    public synchronized void setSaltSizeBytes(final int saltSizeBytes) {
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.rootDigester.setSaltSizeBytes(saltSizeBytes);
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the number of hashing iterations applied to the tree root. See 
+     * {@link StandardByteDigester#setIterations(int)}.
+     * </p>
+     * 
+     * @param iterations the number of iterations.
+     */
+    public synchronized void setIterations(final int iterations) {
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.rootDigester.setIterations(iterations);
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the salt generator to be used. See 
+     * {@link StandardByteDigester#setSaltGenerator(SaltGenerator)}.
+     * </p>
+     * 
+     * @param saltGenerator the salt generator to be used.
+     */
+    public synchronized void setSaltGenerator(final SaltGenerator saltGenerator) {
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.rootDigester.setSaltGenerator(saltGenerator);
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the name of the security provider to be asked for the digest
+     * algorithm. See {@link StandardByteDigester#setProviderName(String)}.
+     * </p>
+     * 
+     * @param providerName the name of the security provider to be asked
+     *                     for the digest algorithm.
+     */
+    public synchronized void setProviderName(final String providerName) {
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.rootDigester.setProviderName(providerName);
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the security provider to be asked for the digest algorithm.
+     * See {@link StandardByteDigester#setProvider(Provider)}.
+     * </p>
+     * 
+     * @param provider the provider to be asked for the chosen algorithm
+     */
+    public synchronized void setProvider(final Provider provider) {
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.rootDigester.setProvider(provider);
+    }
+    
+    
+    /**
+     * <p>
+     * Whether the salt bytes are to be appended after the tree root
+     * before digesting it. See 
+     * {@link StandardByteDigester#setInvertPositionOfSaltInMessageBeforeDigesting(boolean)}.
+     * </p>
+     * 
+     * @param invertPositionOfSaltInMessageBeforeDigesting whether salt will 
+     *        be appended after the tree root.
+     */
+    public synchronized void setInvertPositionOfSaltInMessageBeforeDigesting(
+            final boolean invertPositionOfSaltInMessageBeforeDigesting) {
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.rootDigester.setInvertPositionOfSaltInMessageBeforeDigesting(
+                invertPositionOfSaltInMessageBeforeDigesting);
+    }
+    
+    
+    /**
+     * <p>
+     * Whether the plain (not hashed) salt bytes are to be appended after 
+     * the digest of the tree root. See 
+     * {@link StandardByteDigester#setInvertPositionOfPlainSaltInEncryptionResults(boolean)}.
+     * </p>
+     * 
+     * @param invertPositionOfPlainSaltInEncryptionResults whether plain salt 
+     *        will be appended after the digest of the tree root.
+     */
+    public synchronized void setInvertPositionOfPlainSaltInEncryptionResults(
+            final boolean invertPositionOfPlainSaltInEncryptionResults) {
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.rootDigester.setInvertPositionOfPlainSaltInEncryptionResults(
+                invertPositionOfPlainSaltInEncryptionResults);
+    }
+    
+    
+    /**
+     * <p>
+     * Returns true if the digester has already been initialized, false if
+     * not.<br/> 
+     * Initialization happens:
+     * </p>
+     * <ul>
+     *   <li>When <tt>initialize</tt> is called.</li>
+     *   <li>When any of the digest or matching operations is called for 
+     *       the first time.</li>
+     * </ul>
+     * 
+     * @return true if the digester has already been initialized, false if
+     *   not.
+     */
+    public boolean isInitialized() {
+        return this.initialized;
+    }
+    
+    
+    /**
+     * <p>
+     * Initialize the digester.
+     * </p>
+     * <p>
+     * This operation will consist in determining the actual configuration 
+     * values to be used, and then initializing the digester with them. 
+     * Once a digester has been initialized, trying to change its 
+     * configuration will result in an <tt>AlreadyInitializedException</tt> 
+     * being thrown.
+     * </p>
+     * 
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     */
+    public synchronized void initialize() {
+        
+        // Double-check to avoid synchronization issues
+        if (!this.initialized) {
+            
+            if (this.config instanceof TreeDigesterConfig) {
+                
+                final TreeDigesterConfig treeConfig = (TreeDigesterConfig) this.config;
+                
+                final Integer configChunkSizeBytes = treeConfig.getChunkSizeBytes();
+                if (configChunkSizeBytes != null) {
+                    CommonUtils.validateIsTrue(configChunkSizeBytes.intValue() > 0, 
+                            "Chunk size in bytes must be greater than zero");
+                }
+                
+                final Integer configParallelism = treeConfig.getParallelism();
+                if (configParallelism != null) {
+                    CommonUtils.validateIsTrue(configParallelism.intValue() > 0, 
+                            "Parallelism must be greater than zero");
+                }
+                
+                this.chunkSizeBytes = 
+                    ((this.chunkSizeBytesSet) || (configChunkSizeBytes == null))?
+                            this.chunkSizeBytes : configChunkSizeBytes.intValue();
+                this.parallelism = 
+                    ((this.parallelismSet) || (configParallelism == null))?
+                            this.parallelism : configParallelism.intValue();
+                
+            }
+            
+            this.rootDigester.initialize();
+            if (this.rootDigester.isKeyDerivationAlgorithm()) {
+                throw new EncryptionInitializationException(
+                        "Tree digests cannot be created with key derivation " +
+                        "algorithms (only with MessageDigest ones)");
+            }
+            this.initialized = true;
+            
+        }
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Performs a tree digest operation on a byte array message.
+     * </p>
+     * 
+     * @param message the byte array to be digested 
+     * @return the digest result (null if the message is null)
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails, ommitting any further information about the cause for
+     *         security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     */
+    public byte[] digest(final byte[] message) {
+        
+        if (message == null) {
+            return null;
+        }
+        
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final byte[][] chunkDigests = 
+            digestChunks(new ArrayChunkSource(message), this.chunkSizeBytes, null, null);
+        return digestRoot(this.chunkSizeBytes, message.length, chunkDigests);
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Checks a message against a tree digest (created by this class, 
+     * with any chunk size).
+     * </p>
+     * <p>
+     * A null message will only match a null digest.
+     * </p>
+     * 
+     * @param message the message to be compared to the digest.
+     * @param digest the digest. 
+     * @return true if the specified message matches the digest, false
+     *         if not.
+     * @throws EncryptionOperationNotPossibleException if the digest matching
+     *         operation fails, ommitting any further information about the 
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     */
+    public boolean matches(final byte[] message, final byte[] digest) {
+        
+        if (message == null) {
+            return (digest == null);
+        } else if (digest == null) {
+            return false;
+        }
+        
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+
+        final int digestChunkSizeBytes = readChunkSizeBytes(digest);
+        if (digestChunkSizeBytes <= 0 || readMessageLength(digest) != message.length) {
+            return false;
+        }
+        
+        final byte[][] chunkDigests = 
+            digestChunks(new ArrayChunkSource(message), digestChunkSizeBytes, null, null);
+        return matchesRoot(digestChunkSizeBytes, message.length, chunkDigests, digest);
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Performs a tree digest operation on the contents of a file. Each of the 
+     * chunks of the file is mapped into memory and hashed (in parallel)
+     * without copying the file contents into the heap.
+     * </p>
+     * <p>
+     * For the same bytes, the result is equivalent to that of
+     * {@link #digest(byte[])}.
+     * </p>
+     * 
+     * @param file the file to be digested
+     * @return the digest result (null if the file is null)
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails (including errors reading the file), ommitting any 
+     *         further information about the cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     */
+    public byte[] digestFile(final File file) {
+        
+        if (file == null) {
+            return null;
+        }
+        
+        return digestTree(file).getDigest();
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Checks the contents of a file against a tree digest (created by this 
+     * class, with any chunk size).
+     * </p>
+     * 
+     * @param file the file to be compared to the digest.
+     * @param digest the digest. 
+     * @return true if the file matches the digest, false if not.
+     * @throws EncryptionOperationNotPossibleException if the digest matching
+     *         operation fails (including errors reading the file), ommitting 
+     *         any further information about the cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     */
+    public boolean matchesFile(final File file, final byte[] digest) {
+        
+        if (file == null) {
+            return (digest == null);
+        } else if (digest == null) {
+            return false;
+        }
+        
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+
+        final int digestChunkSizeBytes = readChunkSizeBytes(digest);
+        if (digestChunkSizeBytes <= 0) {
+            return false;
+        }
+        
+        final FileChunkSource chunkSource = FileChunkSource.open(file);
+        try {
+            if (readMessageLength(digest) != chunkSource.getLength()) {
+                return false;
+            }
+            final byte[][] chunkDigests = 
+                digestChunks(chunkSource, digestChunkSizeBytes, null, null);
+            return matchesRoot(digestChunkSizeBytes, chunkSource.getLength(), chunkDigests, digest);
+        } finally {
+            chunkSource.close();
+        }
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Performs a tree digest operation on the contents of a file, returning
+     * an object which contains both the digest and the hashes of each 
+     * of the chunks of the file.
+     * </p>
+     * 
+     * @param file the file to be digested
+     * @return the digest tree.
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails (including errors reading the file), ommitting any 
+     *         further information about the cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     */
+    public ChunkDigestTree digestTree(final File file) {
+        
+        CommonUtils.validateNotNull(file, "File cannot be null");
+        
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final FileChunkSource chunkSource = FileChunkSource.open(file);
+        try {
+            final byte[][] chunkDigests = 
+                digestChunks(chunkSource, this.chunkSizeBytes, null, null);
+            final byte[] digest = 
+                digestRoot(this.chunkSizeBytes, chunkSource.getLength(), chunkDigests);
+            return new ChunkDigestTree(
+                    this.chunkSizeBytes, chunkSource.getLength(), chunkDigests, digest);
+        } finally {
+            chunkSource.close();
+        }
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Computes the digest tree of a modified version of a file, reading only
+     * the chunks that are specified to have changed since the previous tree 
+     * was computed. If the length of the file has changed, chunks from the 
+     * last one in the previous tree onwards are also read. The rest of the 
+     * chunk hashes are taken from the previous tree, and the chunk size of 
+     * the previous tree is kept.
+     * </p>
+     * <p>
+     * Note that no check is performed on the chunks not specified as 
+     * changed: specifying the correct chunks is responsibility of the caller.
+     * </p>
+     * 
+     * @param file the file to be digested
+     * @param previousTree the digest tree previously computed for the file.
+     * @param changedChunks the indexes of the chunks that have changed.
+     * @return the new digest tree.
+     * @throws EncryptionOperationNotPossibleException if the digest operation
+     *         fails (including errors reading the file), ommitting any 
+     *         further information about the cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     */
+    public ChunkDigestTree updateTree(final File file, 
+            final ChunkDigestTree previousTree, final int[] changedChunks) {
+
+        CommonUtils.validateNotNull(file, "File cannot be null");
+        CommonUtils.validateNotNull(previousTree, "Previous tree cannot be null");
+        CommonUtils.validateNotNull(changedChunks, "Changed chunks cannot be null");
+        
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final int treeChunkSizeBytes = previousTree.getChunkSizeBytes();
+        final byte[][] previousChunkDigests = previousTree.getChunkDigests();
+        
+        final FileChunkSource chunkSource = FileChunkSource.open(file);
+        try {
+            
+            final long length = chunkSource.getLength();
+            final int chunkCount = computeChunkCount(length, treeChunkSizeBytes);
+            
+            // Chunks not known to be unchanged are marked for hashing
+            final boolean[] mustDigest = new boolean[chunkCount];
+            for (int i = 0; i < changedChunks.length; i++) {
+                CommonUtils.validateIsTrue(changedChunks[i] >= 0, 
+                        "Chunk indexes cannot be negative");
+                if (changedChunks[i] < chunkCount) {
+                    mustDigest[changedChunks[i]] = true;
+                }
+            }
+            if (length != previousTree.getMessageLength()) {
+                // The previous last chunk and the new last one could have
+                // changed, as well as any chunk after them
+                final int firstAffectedByLength = 
+                    Math.min(previousChunkDigests.length, chunkCount) - 1;
+                for (int i = firstAffectedByLength; i < chunkCount; i++) {
+                    mustDigest[i] = true;
+                }
+            }
+            
+            final byte[][] chunkDigests = 
+                digestChunks(chunkSource, treeChunkSizeBytes, mustDigest, previousChunkDigests);
+            final byte[] digest = 
+                digestRoot(treeChunkSizeBytes, length, chunkDigests);
+            return new ChunkDigestTree(treeChunkSizeBytes, length, chunkDigests, digest);
+            
+        } finally {
+            chunkSource.close();
+        }
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Checks a digest tree (computed by {@link #digestTree(File)} or 
+     * {@link #updateTree(File, ChunkDigestTree, int[])}) against a tree 
+     * digest, without reading the file again.
+     * </p>
+     * 
+     * @param tree the digest tree to be compared to the digest.
+     * @param digest the digest. 
+     * @return true if the tree matches the digest, false if not.
+     * @throws EncryptionOperationNotPossibleException if the digest matching
+     *         operation fails, ommitting any further information about the 
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, if the digest algorithm chosen
+     *         cannot be used).
+     */
+    public boolean matchesTree(final ChunkDigestTree tree, final byte[] digest) {
+        
+        CommonUtils.validateNotNull(tree, "Tree cannot be null");
+        if (digest == null) {
+            return false;
+        }
+        
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        if (readChunkSizeBytes(digest) != tree.getChunkSizeBytes() ||
+                readMessageLength(digest) != tree.getMessageLength()) {
+            return false;
+        }
+        
+        return matchesRoot(tree.getChunkSizeBytes(), tree.getMessageLength(), 
+                tree.getChunkDigests(), digest);
+        
+    }
+    
+    
+    
+    /*
+     * Computes the hashes of the chunks of a message, in parallel. If
+     * mustDigest is not null, only the chunks marked there are hashed, and
+     * the rest are taken from previousChunkDigests.
+     */
+    private byte[][] digestChunks(final ChunkSource chunkSource, final int chunkSize, 
+            final boolean[] mustDigest, final byte[][] previousChunkDigests) {
+        
+        final long length = chunkSource.getLength();
+        final int chunkCount = computeChunkCount(length, chunkSize);
+        final byte[][] chunkDigests = new byte[chunkCount][];
+        
+        // Select the chunks to be hashed
+        final int[] chunkIndexes = new int[chunkCount];
+        int selectedChunks = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            if (mustDigest == null || mustDigest[i]) {
+                chunkIndexes[selectedChunks++] = i;
+            } else {
+                chunkDigests[i] = previousChunkDigests[i];
+            }
+        }
+        
+        // The first failure of a worker is kept in order to report its cause
+        final AtomicReference<Exception> firstFailure = new AtomicReference<Exception>();
+        
+        BatchExecutor.execute(selectedChunks, this.parallelism, 
+                new BatchExecutor.Batch<MessageDigest>() {
+                    protected MessageDigest createWorkerContext() {
+                        return TreeByteDigester.this.rootDigester.createWorkerMessageDigest();
+                    }
+                    protected void process(final int index, final MessageDigest workerContext) {
+                        final int chunkIndex = chunkIndexes[index];
+                        final long offset = (long) chunkIndex * chunkSize;
+                        final int chunkLength = (int) Math.min(chunkSize, length - offset);
+                        try {
+                            workerContext.reset();
+                            workerContext.update(LEAF_PREFIX);
+                            chunkSource.update(workerContext, offset, chunkLength);
+                            chunkDigests[chunkIndex] = workerContext.digest();
+                        } catch (final IOException e) {
+                            // Chunk digest will be left null
+                            firstFailure.compareAndSet(null, e);
+                        } catch (final RuntimeException e) {
+                            firstFailure.compareAndSet(null, e);
+                        }
+                    }
+                });
+        
+        final Exception failure = firstFailure.get();
+        if (failure != null) {
+            throw new EncryptionOperationNotPossibleException(failure);
+        }
+        for (int i = 0; i < chunkCount; i++) {
+            if (chunkDigests[i] == null) {
+                throw new EncryptionOperationNotPossibleException();
+            }
+        }
+        return chunkDigests;
+        
+    }
+    
+    
+    /*
+     * Digests the root of the tree (along with the header) using the root 
+     * digester, and adds the header to the result.
+     */
+    private byte[] digestRoot(final int chunkSize, final long length, 
+            final byte[][] chunkDigests) {
+        final byte[] header = createHeader(chunkSize, length);
+        final byte[] rootDigest = 
+            this.rootDigester.digest(CommonUtils.appendArrays(header, computeRoot(chunkDigests)));
+        return CommonUtils.appendArrays(header, rootDigest);
+    }
+    
+    
+    /*
+     * Checks the root of the tree (along with the header) against the
+     * digest, which is expected to start with the header.
+     */
+    private boolean matchesRoot(final int chunkSize, final long length, 
+            final byte[][] chunkDigests, final byte[] digest) {
+        final byte[] header = createHeader(chunkSize, length);
+        final byte[] rootDigest = 
+            Arrays.copyOfRange(digest, HEADER_SIZE_BYTES, digest.length);
+        return this.rootDigester.matches(
+                CommonUtils.appendArrays(header, computeRoot(chunkDigests)), rootDigest);
+    }
+    
+    
+    /*
+     * Combines the hashes of the chunks into the root of a binary hash
+     * tree. At each level, nodes are combined in pairs (an odd last
+     * node is promoted to the next level unchanged).
+     */
+    private byte[] computeRoot(final byte[][] chunkDigests) {
+        
+        final MessageDigest messageDigest = this.rootDigester.createWorkerMessageDigest();
+        
+        byte[][] level = chunkDigests;
+        while (level.length > 1) {
+            final byte[][] nextLevel = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < nextLevel.length; i++) {
+                final int left = 2 * i;
+                if (left + 1 < level.length) {
+                    messageDigest.update(NODE_PREFIX);
+                    messageDigest.update(level[left]);
+                    messageDigest.update(level[left + 1]);
+                    nextLevel[i] = messageDigest.digest();
+                } else {
+                    nextLevel[i] = level[left];
+                }
+            }
+            level = nextLevel;
+        }
+        return level[0];
+        
+    }
+    
+    
+    private static int computeChunkCount(final long length, final int chunkSize) {
+        // An empty message is considered to have one (empty) chunk
+        final long chunkCount = Math.max(1L, (length + chunkSize - 1) / chunkSize);
+        if (chunkCount > Integer.MAX_VALUE) {
+            throw new EncryptionOperationNotPossibleException(
+                    "Message is too large for the configured chunk size");
+        }
+        return (int) chunkCount;
+    }
+    
+    
+    private static byte[] createHeader(final int chunkSize, final long length) {
+        final byte[] header = new byte[HEADER_SIZE_BYTES];
+        header[0] = FORMAT_VERSION;
+        for (int i = 0; i < 4; i++) {
+            header[1 + i] = (byte) (chunkSize >>> (8 * (3 - i)));
+        }
+        for (int i = 0; i < 8; i++) {
+            header[5 + i] = (byte) (length >>> (8 * (7 - i)));
+        }
+        return header;
+    }
+    
+    
+    /*
+     * Returns the chunk size specified in the header of a digest, or -1 if
+     * the digest is not a valid tree digest.
+     */
+    private static int readChunkSizeBytes(final byte[] digest) {
+        if (digest.length <= HEADER_SIZE_BYTES || digest[0] != FORMAT_VERSION) {
+            return -1;
+        }
+        int chunkSize = 0;
+        for (int i = 0; i < 4; i++) {
+            chunkSize = (chunkSize << 8) | (digest[1 + i] & 0xff);
+        }
+        return chunkSize;
+    }
+    
+    
+    /*
+     * Returns the message length specified in the header of a (valid) digest.
+     */
+    private static long readMessageLength(final byte[] digest) {
+        long length = 0L;
+        for (int i = 0; i < 8; i++) {
+            length = (length << 8) | (digest[5 + i] & 0xff);
+        }
+        return length;
+    }
+    
+    
+    
+    /*
+     * Source of the chunks of a message (a byte array or a file).
+     */
+    private abstract static class ChunkSource {
+        
+        abstract long getLength();
+        
+        abstract void update(final MessageDigest messageDigest, 
+                final long offset, final int length) throws IOException;
+        
+    }
+    
+    
+    private static final class ArrayChunkSource extends ChunkSource {
+        
+        private final byte[] message;
+        
+        ArrayChunkSource(final byte[] message) {
+            super();
+            this.message = message;
+        }
+        
+        long getLength() {
+            return this.message.length;
+        }
+        
+        void update(final MessageDigest messageDigest, 
+                final long offset, final int length) {
+            messageDigest.update(this.message, (int) offset, length);
+        }
+        
+    }
+    
+    
+    private static final class FileChunkSource extends ChunkSource {
+        
+        private final FileInputStream fileInputStream;
+        private final FileChannel channel;
+        private final long length;
+        
+        private FileChunkSource(final FileInputStream fileInputStream) 
+                throws IOException {
+            super();
+            this.fileInputStream = fileInputStream;
+            this.channel = fileInputStream.getChannel();
+            this.length = this.channel.size();
+        }
+        
+        static FileChunkSource open(final File file) {
+            FileInputStream fileInputStream = null;
+            try {
+                fileInputStream = new FileInputStream(file);
+                return new FileChunkSource(fileInputStream);
+            } catch (final IOException e) {
+                closeQuietly(fileInputStream);
+                throw new EncryptionOperationNotPossibleException(e);
+            }
+        }
+        
+        long getLength() {
+            return this.length;
+        }
+        
+        void update(final MessageDigest messageDigest, 
+                final long offset, final int length) throws IOException {
+            if (length > 0) {
+                // FileChannel.map() can be safely called from several threads
+                messageDigest.update(
+                        this.channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+            }
+        }
+        
+        void close() {
+            closeQuietly(this.fileInputStream);
+        }
+        
+        private static void closeQuietly(final FileInputStream fileInputStream) {
+            if (fileInputStream != null) {
+                try {
+                    fileInputStream.close();
+                } catch (final IOException e) {
+                    // Nothing to do: the file has already been read
+                }
+            }
+        }
+        
+    }
+    
+}
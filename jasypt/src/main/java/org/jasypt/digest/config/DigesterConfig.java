@@ -287,5 +287,23 @@ public interface DigesterConfig {
      *         pooled digester
      */
     public Integer getPoolSize();
+
+    
+    /**
+     * <p>
+     * Get the strategy used for selecting the pool member that will perform
+     * each operation: <tt>round-robin</tt> (default), <tt>thread</tt> or 
+     * <tt>least-busy</tt>. See {@link org.jasypt.commons.PoolMemberSelector}.
+     * </p>
+     * <p>
+     * <b>This parameter will be ignored if used with a non-pooled digester</b>.
+     * </p>
+     *
+     * @since 1.9.4
+     * 
+     * @return the pool selection strategy to be used if this configuration is 
+     *         used with a pooled digester
+     */
+    public String getPoolSelectionStrategy();
     
 }
@@ -62,6 +62,7 @@ public class SimpleDigesterConfig implements DigesterConfig {
     private Boolean invertPositionOfPlainSaltInEncryptionResults = null;
     private Boolean useLenientSaltSizeCheck = null;
     private Integer poolSize = null;
+    private String poolSelectionStrategy = null;
     
 
     /**
@@ -504,6 +505,32 @@ public class SimpleDigesterConfig implements DigesterConfig {
         }
     }
 
+    
+    /**
+     * <p>
+     * Sets the strategy used for selecting the pool member that will perform
+     * each operation: <tt>round-robin</tt> (default), <tt>thread</tt> or 
+     * <tt>least-busy</tt>.
+     * </p>
+     * <p>
+     * <b>This parameter will be ignored if used with a non-pooled digester</b>.
+     * </p>
+     * <p>
+     * If not set, null will be returned.
+     * </p>
+     * <p>
+     * Determines the result of: {@link #getPoolSelectionStrategy()}
+     * </p>
+     *
+     * @since 1.9.4
+     * 
+     * @param poolSelectionStrategy the pool selection strategy to be used if 
+     *         this configuration is used with a pooled digester
+     */
+    public void setPoolSelectionStrategy(final String poolSelectionStrategy) {
+        this.poolSelectionStrategy = poolSelectionStrategy;
+    }
+
 
     
     public String getAlgorithm() {
@@ -549,5 +576,9 @@ public class SimpleDigesterConfig implements DigesterConfig {
         return this.poolSize;
     }
 
+    public String getPoolSelectionStrategy() {
+        return this.poolSelectionStrategy;
+    }
+
     
 }
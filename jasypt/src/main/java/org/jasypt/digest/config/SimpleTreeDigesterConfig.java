@@ -0,0 +1,161 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest.config;
+
+import org.jasypt.exceptions.EncryptionInitializationException;
+
+
+/**
+ * <p>
+ * Bean implementation for {@link TreeDigesterConfig}. This class allows 
+ * the values for the configuration parameters to be set
+ * via "standard" <tt>setX</tt> methods.
+ * </p>
+ * <p>
+ * For any of the configuration parameters, if its <tt>setX</tt>
+ * method is not called, a <tt>null</tt> value will be returned by the
+ * corresponding <tt>getX</tt> method. 
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public class SimpleTreeDigesterConfig 
+        extends SimpleDigesterConfig
+        implements TreeDigesterConfig {
+    
+    private Integer chunkSizeBytes = null;
+    private Integer parallelism = null;
+    
+
+    /**
+     * <p>
+     * Creates a new <tt>SimpleTreeDigesterConfig</tt> instance.
+     * </p>
+     */
+    public SimpleTreeDigesterConfig() {
+        super();
+    }
+
+    
+    /**
+     * <p>
+     * Sets the size (in bytes) of the chunks in which messages will be split.
+     * </p>
+     * <p>
+     * If not set, null will be returned.
+     * </p>
+     * <p>
+     * Determines the result of: {@link #getChunkSizeBytes()}
+     * </p>
+     * 
+     * @param chunkSizeBytes the size of the chunks, in bytes.
+     */
+    public void setChunkSizeBytes(final Integer chunkSizeBytes) {
+        this.chunkSizeBytes = chunkSizeBytes;
+    }
+
+    
+    /**
+     * <p>
+     * Sets the size (in bytes) of the chunks in which messages will be split.
+     * </p>
+     * <p>
+     * If not set, null will be returned.
+     * </p>
+     * <p>
+     * Determines the result of: {@link #getChunkSizeBytes()}
+     * </p>
+     * 
+     * @param chunkSizeBytes the size of the chunks, in bytes.
+     */
+    public void setChunkSizeBytes(final String chunkSizeBytes) {
+        if (chunkSizeBytes != null) {
+            try {
+                this.chunkSizeBytes = new Integer(chunkSizeBytes);
+            } catch (NumberFormatException e) {
+                throw new EncryptionInitializationException(e);
+            }
+        } else {
+            this.chunkSizeBytes = null;
+        }
+    }
+
+    
+    /**
+     * <p>
+     * Sets the maximum number of threads used for hashing the chunks
+     * of a single message.
+     * </p>
+     * <p>
+     * If not set, null will be returned.
+     * </p>
+     * <p>
+     * Determines the result of: {@link #getParallelism()}
+     * </p>
+     * 
+     * @param parallelism the maximum number of threads.
+     */
+    public void setParallelism(final Integer parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    
+    /**
+     * <p>
+     * Sets the maximum number of threads used for hashing the chunks
+     * of a single message.
+     * </p>
+     * <p>
+     * If not set, null will be returned.
+     * </p>
+     * <p>
+     * Determines the result of: {@link #getParallelism()}
+     * </p>
+     * 
+     * @param parallelism the maximum number of threads.
+     */
+    public void setParallelism(final String parallelism) {
+        if (parallelism != null) {
+            try {
+                this.parallelism = new Integer(parallelism);
+            } catch (NumberFormatException e) {
+                throw new EncryptionInitializationException(e);
+            }
+        } else {
+            this.parallelism = null;
+        }
+    }
+
+    
+    
+    public Integer getChunkSizeBytes() {
+        return this.chunkSizeBytes;
+    }
+
+    
+    public Integer getParallelism() {
+        return this.parallelism;
+    }
+
+    
+}
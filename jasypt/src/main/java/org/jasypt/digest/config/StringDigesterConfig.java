@@ -88,7 +88,12 @@ public interface StringDigesterConfig extends DigesterConfig {
      * </p>
      * <ul>
      *   <li><tt><b>base64</b></tt> (default)</li>
+     *   <li><tt><b>base64-unpadded</b></tt></li>
+     *   <li><tt><b>base64url</b></tt></li>
+     *   <li><tt><b>base64url-unpadded</b></tt></li>
      *   <li><tt><b>hexadecimal</b></tt></li>
+     *   <li>Any other output type registered at 
+     *       {@link org.jasypt.codec.StringOutputCodecs}</li>
      * </ul>
      * 
      * @return The name of the encoding type for String output 
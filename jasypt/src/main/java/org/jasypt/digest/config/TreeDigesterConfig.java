@@ -0,0 +1,83 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest.config;
+
+
+/**
+ * <p>
+ * Common interface for config classes applicable to 
+ * {@link org.jasypt.digest.TreeByteDigester} objects. 
+ * </p>
+ * <p>
+ * This interface lets the user create new <tt>TreeDigesterConfig</tt>
+ * classes which retrieve values for this parameters from different
+ * (and maybe more secure) sources (remote servers, LDAP, other databases...),
+ * and do this transparently for the digester object. 
+ * </p>
+ * <p>
+ * The config objects passed to a digester <u>will only be queried once</u>
+ * for each configuration parameter, and this will happen 
+ * during the initialization of the digester object. 
+ * </p>
+ * <p>
+ * For a default implementation, see {@link SimpleTreeDigesterConfig}.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public interface TreeDigesterConfig extends DigesterConfig {
+
+    
+    /**
+     * <p>
+     * Returns the size (in bytes) of the chunks in which messages will be
+     * split, each of them being hashed independently before combining all
+     * the results into a tree.
+     * </p>
+     * <p>
+     * If this method returns null, the digester will ignore the config object
+     * when deciding the chunk size to be used.
+     * </p>
+     * 
+     * @return the size of the chunks, or null if this object will not want 
+     *         to set a chunk size.
+     */
+    public Integer getChunkSizeBytes();
+
+    
+    /**
+     * <p>
+     * Returns the maximum number of threads (including the calling one) 
+     * that will be used for hashing the chunks of a single message.
+     * </p>
+     * <p>
+     * If this method returns null, the digester will ignore the config object
+     * when deciding the parallelism to be used.
+     * </p>
+     * 
+     * @return the maximum number of threads, or null if this object will 
+     *         not want to set a parallelism.
+     */
+    public Integer getParallelism();
+    
+}
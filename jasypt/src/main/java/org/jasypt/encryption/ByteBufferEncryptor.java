@@ -0,0 +1,124 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * <p>
+ * Common interface for all Encryptors which, besides receiving a 
+ * byte array message and returning a byte array result, are able to 
+ * read messages from and write results into caller-supplied buffers (arrays 
+ * with offsets or NIO {@link ByteBuffer} objects), so that no intermediate 
+ * arrays need to be created for the message or its result.
+ * </p>
+ * <p>
+ * The size of the buffer needed for receiving a result can be 
+ * known in advance by calling {@link #getEncryptOutputSize(int)} and 
+ * {@link #getDecryptOutputSize(int)}. If the output buffer is not big
+ * enough, operations will fail and the contents of the output buffer
+ * will be undefined.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public interface ByteBufferEncryptor extends ByteEncryptor {
+    
+    
+    /**
+     * Returns the size of the output buffer needed for encrypting a message
+     * of the specified length.
+     * 
+     * @param messageLength the length of the message to be encrypted
+     * @return the length of the encryption result
+     */
+    public int getEncryptOutputSize(int messageLength);
+
+    
+    /**
+     * Returns the size of the output buffer needed for decrypting an
+     * encrypted message of the specified length. Due to padding, the 
+     * actual result can be shorter than this.
+     * 
+     * @param encryptedMessageLength the length of the message to be decrypted
+     * @return the maximum length of the decryption result
+     */
+    public int getDecryptOutputSize(int encryptedMessageLength);
+    
+    
+    /**
+     * Encrypt the specified portion of the input array, writing the result
+     * into the output array starting at the specified offset.
+     * 
+     * @param message the array containing the message to be encrypted
+     * @param messageOffset the offset at which the message starts
+     * @param messageLength the length of the message
+     * @param output the array the result will be written to
+     * @param outputOffset the offset at which the result will be written
+     * @return the number of bytes written to the output array
+     */
+    public int encrypt(byte[] message, int messageOffset, int messageLength, 
+            byte[] output, int outputOffset);
+
+    
+    /**
+     * Decrypt the specified portion of the input array, writing the result
+     * into the output array starting at the specified offset. Input and
+     * output can be the same array.
+     * 
+     * @param encryptedMessage the array containing the message to be decrypted
+     * @param encryptedMessageOffset the offset at which the message starts
+     * @param encryptedMessageLength the length of the message
+     * @param output the array the result will be written to
+     * @param outputOffset the offset at which the result will be written
+     * @return the number of bytes written to the output array
+     */
+    public int decrypt(byte[] encryptedMessage, int encryptedMessageOffset, 
+            int encryptedMessageLength, byte[] output, int outputOffset);
+
+    
+    /**
+     * Encrypt all the remaining bytes of the input buffer, writing the
+     * result into the output buffer. The positions of both buffers 
+     * are advanced.
+     * 
+     * @param message the buffer containing the message to be encrypted
+     * @param output the buffer the result will be written to
+     * @return the number of bytes written to the output buffer
+     */
+    public int encrypt(ByteBuffer message, ByteBuffer output);
+
+    
+    /**
+     * Decrypt all the remaining bytes of the input buffer, writing the
+     * result into the output buffer. The positions of both buffers 
+     * are advanced.
+     * 
+     * @param encryptedMessage the buffer containing the message to be decrypted
+     * @param output the buffer the result will be written to
+     * @return the number of bytes written to the output buffer
+     */
+    public int decrypt(ByteBuffer encryptedMessage, ByteBuffer output);
+    
+}
@@ -0,0 +1,92 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption;
+
+
+/**
+ * <p>
+ * Common interface for all String Encryptors which, besides receiving
+ * <tt>String</tt> messages, are able to encrypt any <tt>CharSequence</tt>
+ * (for example, a <tt>StringBuilder</tt> or a <tt>CharBuffer</tt>) or
+ * a portion of a <tt>char[]</tt>, and to write decryption results 
+ * directly into caller-supplied <tt>char[]</tt> or <tt>Appendable</tt>
+ * objects, without creating intermediate <tt>String</tt> objects.
+ * </p>
+ * <p>
+ * Results are exactly the same as those obtained by converting the
+ * messages to and from <tt>String</tt> objects and calling 
+ * {@link #encrypt(String)} and {@link #decrypt(String)}.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public interface CharSequenceStringEncryptor extends StringEncryptor {
+    
+    
+    /**
+     * Encrypt the input message
+     * 
+     * @param message the message to be encrypted
+     * @return the result of encryption
+     */
+    public String encrypt(CharSequence message);
+
+    
+    /**
+     * Encrypt the specified portion of the input array
+     * 
+     * @param message the array containing the message to be encrypted
+     * @param messageOffset the offset at which the message starts
+     * @param messageLength the length of the message
+     * @return the result of encryption
+     */
+    public String encrypt(char[] message, int messageOffset, int messageLength);
+
+    
+    /**
+     * Decrypt an encrypted message, writing the result into the output 
+     * array starting at the specified offset. If the output array is not
+     * big enough, the operation will fail and the contents of the output
+     * array will be undefined.
+     * 
+     * @param encryptedMessage the encrypted message to be decrypted
+     * @param output the array the result will be written to
+     * @param outputOffset the offset at which the result will be written
+     * @return the number of chars written, or -1 if the encrypted message
+     *         is null
+     */
+    public int decryptTo(String encryptedMessage, char[] output, int outputOffset);
+
+    
+    /**
+     * Decrypt an encrypted message, appending the result to the 
+     * specified <tt>Appendable</tt> object.
+     * 
+     * @param encryptedMessage the encrypted message to be decrypted
+     * @param output the object the result will be appended to
+     * @return the number of chars appended, or -1 if the encrypted message
+     *         is null
+     */
+    public int decryptTo(String encryptedMessage, Appendable output);
+    
+}
@@ -0,0 +1,967 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jasypt.commons.CommonUtils;
+import org.jasypt.encryption.pbe.config.PBECleanablePasswordConfig;
+import org.jasypt.encryption.pbe.config.PBEConfig;
+import org.jasypt.exceptions.AlreadyInitializedException;
+import org.jasypt.exceptions.EncryptionInitializationException;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.normalization.Normalizer;
+import org.jasypt.salt.RandomSaltGenerator;
+import org.jasypt.salt.SaltGenerator;
+
+
+/**
+ * <p>
+ * Implementation of the {@link PBEByteEncryptor} interface which derives
+ * an AES key from the password only once (at initialization) and then
+ * encrypts each message with AES in GCM mode, using a random 96-bit nonce
+ * per message.
+ * </p>
+ * <p>
+ * Unlike {@link StandardPBEByteEncryptor}, which performs a password-based
+ * key derivation for every encrypted or decrypted message, this encryptor
+ * pays the derivation cost once, and so its per-message cost is only that
+ * of AES-GCM itself. GCM also authenticates the encrypted messages, so any
+ * modification of them will make decryption fail.
+ * </p>
+ * <p>
+ * Encryption results have the following format:
+ * </p>
+ * <pre>
+ *   [version (1 byte)][salt length (1 byte)][salt][nonce (12 bytes)][encrypted message + tag (16 bytes)]
+ * </pre>
+ * <p>
+ * The version, salt length and salt bytes are authenticated as additional 
+ * data. The salt included is the one used for deriving the key of the 
+ * encryptor that produced the message, which allows encryptors using a 
+ * different salt (e.g. other instances using a random salt generator, in
+ * the same or in a different JVM) to derive the required key when 
+ * decrypting. Such keys are derived only once and then cached (a bounded
+ * number of them). If all encrypted messages are known to come from 
+ * encryptors using the same fixed salt, decryption of messages with other
+ * salts can be disabled with {@link #setDecryptForeignSalts(boolean)}, so
+ * that the password can be cleaned from memory after initialization.
+ * </p>
+ * <p>
+ * As nonces are random, a single key can be used for encrypting at most
+ * 2<sup>32</sup> messages. Once that limit is reached, encryption will fail
+ * and a new encryptor (using a new random salt) must be created.
+ * </p>
+ * <p>
+ * <b>The format of encryption results is not compatible with that of
+ * {@link StandardPBEByteEncryptor}</b>, even when using the same algorithm.
+ * </p>
+ * <p>
+ * This class is <i>thread-safe</i>, and encryption and decryption 
+ * operations do not acquire any locks (every thread uses its own cipher), 
+ * so there is no need to use it inside a pool.
+ * </p>
+ * <p>
+ * <br/><b><u>Configuration</u></b>
+ * </p>
+ * <p>
+ * The algorithm, provider, password, key-obtention iterations and salt
+ * generator can take values using their defaults (except for password),
+ * a <tt>{@link org.jasypt.encryption.pbe.config.PBEConfig}</tt> object or
+ * the corresponding <tt>setX(...)</tt> methods, with the same priorities as 
+ * in {@link StandardPBEByteEncryptor}. Other configuration parameters
+ * of the <tt>PBEConfig</tt> object (like the IV generator) are ignored, as
+ * nonces are always randomly generated by this encryptor.
+ * </p>
+ * <p>
+ * Supported algorithms are the PBES2 ones, named 
+ * <tt>PBEWithHMACSHAxxxAndAES_yyy</tt> (for example, 
+ * <tt>PBEWithHMACSHA512AndAES_256</tt>, the default), which determine the
+ * PBKDF2 function and the AES key size to be used. The chosen provider 
+ * must support the corresponding <tt>PBKDF2WithHmacSHAxxx</tt> key
+ * factory and the <tt>AES/GCM/NoPadding</tt> cipher. GCM parameters are
+ * only available since Java 7: this class can be loaded on Java 6, but 
+ * initializing it there will fail.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class AESGCMPBEByteEncryptor implements PBEByteCleanablePasswordEncryptor {
+
+    
+    /**
+     * The default algorithm to be used if none specified: 
+     * PBEWithHMACSHA512AndAES_256.
+     */
+    public static final String DEFAULT_ALGORITHM = "PBEWithHMACSHA512AndAES_256";
+
+    /**
+     * The default number of hashing iterations applied for obtaining the
+     * encryption key from the specified password, set to 1000. 
+     */
+    public static final int DEFAULT_KEY_OBTENTION_ITERATIONS = 1000;
+
+    /**
+     * The salt size used for deriving the encryption key, set to 16 bytes.
+     */
+    public static final int SALT_SIZE_BYTES = 16;
+    
+    /**
+     * The version of the format of encryption results, set to 1.
+     */
+    public static final int FORMAT_VERSION = 1;
+    
+    
+    private static final Pattern PBES2_ALGORITHM_PATTERN = 
+        Pattern.compile("PBEWITHHMAC(SHA[0-9]+)ANDAES_([0-9]+)", Pattern.CASE_INSENSITIVE);
+    private static final String KEY_FACTORY_ALGORITHM_PREFIX = "PBKDF2WithHmac";
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+    private static final String KEY_ALGORITHM = "AES";
+    private static final String GCM_PARAMETER_SPEC_CLASS_NAME = "javax.crypto.spec.GCMParameterSpec";
+    
+    private static final int NONCE_SIZE_BYTES = 12;
+    private static final int TAG_SIZE_BITS = 128;
+    private static final int TAG_SIZE_BYTES = TAG_SIZE_BITS / 8;
+    
+    // Maximum number of keys derived for salts other than the one of this
+    // encryptor that will be kept cached.
+    private static final int FOREIGN_KEY_CACHE_SIZE = 16;
+    
+    // Maximum number of messages encrypted with the same key using random
+    // 96-bit nonces (NIST SP 800-38D, section 8.3)
+    private static final long MAX_MESSAGES_PER_KEY = 1L << 32;
+    
+    
+    private String algorithm = DEFAULT_ALGORITHM;
+    private String providerName = null;
+    private Provider provider = null;
+    private char[] password = null;
+    private int keyObtentionIterations = DEFAULT_KEY_OBTENTION_ITERATIONS;
+    private SaltGenerator saltGenerator = null;
+    private boolean decryptForeignSalts = true;
+    
+    private PBEConfig config = null;
+    
+    private boolean algorithmSet = false;
+    private boolean passwordSet = false;
+    private boolean iterationsSet = false;
+    private boolean saltGeneratorSet = false;
+    private boolean providerNameSet = false;
+    private boolean providerSet = false;
+    
+    private boolean initialized = false;
+    
+    
+    // Key derivation parameters, resolved at initialization
+    private String keyFactoryAlgorithm = null;
+    private int keyLengthBits = 0;
+    
+    // Salt and key of this encryptor, and header (version, salt length
+    // and salt) to be prepended to every encryption result.
+    private byte[] salt = null;
+    private SecretKey key = null;
+    private byte[] header = null;
+    private final AtomicLong encryptedMessages = new AtomicLong(0L);
+    
+    // Keys derived for salts found in messages encrypted by other encryptors
+    private DerivedKeyCache foreignKeyCache = null;
+    
+    // Every thread uses its own cipher and random nonce generator
+    private ThreadLocal<Cipher> threadCipher = null;
+    private ThreadLocal<SecureRandom> threadRandom = null;
+    
+    
+
+    
+    /**
+     * Creates a new instance of <tt>AESGCMPBEByteEncryptor</tt>.
+     */
+    public AESGCMPBEByteEncryptor() {
+        super();
+    }
+
+    
+    /**
+     * <p>
+     * Sets a <tt>{@link org.jasypt.encryption.pbe.config.PBEConfig}</tt> object 
+     * for the encryptor. If this config
+     * object is set, it will be asked values for:
+     * </p>
+     * 
+     * <ul>
+     *   <li>Algorithm</li>
+     *   <li>Security Provider (or provider name)</li>
+     *   <li>Password</li>
+     *   <li>Hashing iterations for obtaining the encryption key</li>
+     *   <li>Salt generator</li>
+     * </ul>
+     * 
+     * <p>
+     * The non-null values it returns will override the default ones, 
+     * <i>and will be overriden by any values specified with a <tt>setX</tt>
+     * method</i>.
+     * </p>
+     * 
+     * @param config the <tt>PBEConfig</tt> object to be used as the 
+     *               source for configuration parameters.
+     */
+    public synchronized void setConfig(final PBEConfig config) {
+        CommonUtils.validateNotNull(config, "Config cannot be set null");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.config = config;
+    }
+
+    
+    /**
+     * <p>
+     * Sets the algorithm to be used for obtaining the encryption key, which
+     * must be a PBES2 one like <tt>PBEWithHMACSHA512AndAES_256</tt>. 
+     * </p>
+     * 
+     * @param algorithm the name of the algorithm to be used.
+     */
+    public synchronized void setAlgorithm(final String algorithm) {
+        CommonUtils.validateNotEmpty(algorithm, "Algorithm cannot be set empty");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.algorithm = algorithm;
+        this.algorithmSet = true;
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the password to be used.
+     * </p>
+     * <p>
+     * <b>There is no default value for password</b>, so not setting
+     * this parameter either from a 
+     * {@link org.jasypt.encryption.pbe.config.PBEConfig} object or from
+     * a call to <tt>setPassword</tt> will result in an
+     * EncryptionInitializationException being thrown during initialization.
+     * </p>
+     * 
+     * @param password the password to be used.
+     */
+    public synchronized void setPassword(final String password) {
+        CommonUtils.validateNotEmpty(password, "Password cannot be set empty");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        cleanPassword(this.password);
+        this.password = password.toCharArray();
+        this.passwordSet = true;
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the password to be used, as a char[].
+     * </p>
+     * <p>
+     * <b>Important</b>: the array specified as a parameter WILL BE COPIED
+     * in order to be stored as encryptor configuration. The caller of
+     * this method will therefore be responsible for its cleaning (jasypt
+     * will only clean the internally stored copy).
+     * </p>
+     * 
+     * @param password the password to be used.
+     */
+    public synchronized void setPasswordCharArray(final char[] password) {
+        CommonUtils.validateNotNull(password, "Password cannot be set null");
+        CommonUtils.validateIsTrue(password.length > 0, "Password cannot be set empty");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        cleanPassword(this.password);
+        this.password = new char[password.length];
+        System.arraycopy(password, 0, this.password, 0, password.length);
+        this.passwordSet = true;
+    }
+    
+    
+    /**
+     * <p>
+     * Set the number of hashing iterations applied to obtain the
+     * encryption key. As key derivation only happens once for each encryptor,
+     * high values can be set without penalizing encryption performance.
+     * </p>
+     * 
+     * @param keyObtentionIterations the number of iterations
+     */
+    public synchronized void setKeyObtentionIterations(final int keyObtentionIterations) {
+        CommonUtils.validateIsTrue(keyObtentionIterations > 0, 
+                "Number of iterations for key obtention must be " +
+                "greater than zero");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.keyObtentionIterations = keyObtentionIterations;
+        this.iterationsSet = true;
+    }
+
+    
+    /**
+     * <p>
+     * Sets the salt generator to be used for obtaining the salt applied
+     * when deriving the encryption key at initialization. If no salt 
+     * generator is specified, an instance of 
+     * {@link org.jasypt.salt.RandomSaltGenerator} will be used. 
+     * </p>
+     * 
+     * @param saltGenerator the salt generator to be used.
+     */
+    public synchronized void setSaltGenerator(final SaltGenerator saltGenerator) {
+        CommonUtils.validateNotNull(saltGenerator, "Salt generator cannot be set null");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.saltGenerator = saltGenerator;
+        this.saltGeneratorSet = true;
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the name of the security provider to be asked for the key
+     * derivation and encryption algorithms. This security provider has to 
+     * be registered beforehand at the JVM security framework. 
+     * </p>
+     * <p>
+     * Note that a call to {@link #setProvider(Provider)} overrides any value 
+     * set by this method.
+     * </p>
+     * 
+     * @param providerName the name of the security provider to be asked
+     *                     for the algorithms.
+     */
+    public synchronized void setProviderName(final String providerName) {
+        CommonUtils.validateNotNull(providerName, "Provider name cannot be set null");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.providerName = providerName;
+        this.providerNameSet = true;
+    }
+    
+    
+    /**
+     * <p>
+     * Sets the security provider to be asked for the key derivation and
+     * encryption algorithms. The provider does not have to be registered at 
+     * the security infrastructure beforehand, and its being used here will 
+     * not result in its being registered.
+     * </p>
+     * 
+     * @param provider the provider to be asked for the chosen algorithms
+     */
+    public synchronized void setProvider(final Provider provider) {
+        CommonUtils.validateNotNull(provider, "Provider cannot be set null");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.provider = provider;
+        this.providerSet = true;
+    }
+    
+    
+    /**
+     * <p>
+     * Sets whether messages encrypted with a salt different from the one 
+     * of this encryptor (e.g. by other encryptors using a random salt 
+     * generator) can be decrypted. Default is <tt>true</tt>, which is 
+     * required for decrypting values encrypted by other instances (e.g. 
+     * before a restart, or in a different node) unless a fixed salt 
+     * generator is used.
+     * </p>
+     * <p>
+     * If enabled, the key for each different salt found in a message will be
+     * derived during decryption (and a few of them cached), which means that
+     * the password has to be kept in memory during the whole life of the
+     * encryptor, and that every message with an unknown salt costs a full 
+     * key derivation <i>before</i> its authenticity can be checked. If 
+     * disabled, such messages are rejected immediately and the password is 
+     * cleaned as soon as the encryptor has been initialized, which is 
+     * advisable when a fixed salt is used and encrypted messages can come
+     * from untrusted sources.
+     * </p>
+     * 
+     * @param decryptForeignSalts whether messages encrypted with other salts
+     *                            can be decrypted.
+     */
+    public synchronized void setDecryptForeignSalts(final boolean decryptForeignSalts) {
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.decryptForeignSalts = decryptForeignSalts;
+    }
+    
+    
+
+    
+    /**
+     * <p>
+     *   Returns true if the encryptor has already been initialized, false if
+     *   not.<br/> 
+     *   Initialization happens:
+     * </p>
+     * <ul>
+     *   <li>When <tt>initialize</tt> is called.</li>
+     *   <li>When <tt>encrypt</tt> or <tt>decrypt</tt> are called for the
+     *       first time, if <tt>initialize</tt> has not been called before.</li>
+     * </ul>
+     * <p>
+     *   Once an encryptor has been initialized, trying to
+     *   change its configuration will
+     *   result in an <tt>AlreadyInitializedException</tt> being thrown.
+     * </p>
+     * 
+     * @return true if the encryptor has already been initialized, false if
+     *         not.
+     */
+    public boolean isInitialized() {
+        return this.initialized;
+    }
+
+    
+    /**
+     * <p>
+     * Initialize the encryptor, which includes deriving the encryption 
+     * key from the password.
+     * </p>
+     * <p>
+     * Configuration values are decided by applying the same priorities as in 
+     * {@link StandardPBEByteEncryptor#initialize()}.
+     * </p>
+     * 
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     */
+    public synchronized void initialize() {
+        
+        // Double-check to avoid synchronization issues
+        if (!this.initialized) {
+            
+            if (this.config != null) {
+
+                resolveConfigurationPassword();
+                
+                final String configAlgorithm = this.config.getAlgorithm();
+                if (configAlgorithm != null) {
+                    CommonUtils.validateNotEmpty(configAlgorithm, 
+                            "Algorithm cannot be set empty");
+                }
+                
+                final Integer configKeyObtentionIterations = 
+                    this.config.getKeyObtentionIterations();
+                if (configKeyObtentionIterations != null) {
+                    CommonUtils.validateIsTrue(configKeyObtentionIterations.intValue() > 0, 
+                            "Number of iterations for key obtention must be " +
+                            "greater than zero");
+                }
+                
+                final SaltGenerator configSaltGenerator = this.config.getSaltGenerator();
+                
+                final String configProviderName = this.config.getProviderName();
+                if (configProviderName != null) {
+                    CommonUtils.validateNotEmpty(configProviderName,
+                            "Provider name cannot be empty");
+                }
+                
+                final Provider configProvider = this.config.getProvider();
+                
+                this.algorithm = 
+                    ((this.algorithmSet) || (configAlgorithm == null))?
+                            this.algorithm : configAlgorithm;
+                this.keyObtentionIterations = 
+                    ((this.iterationsSet) || 
+                     (configKeyObtentionIterations == null))?
+                            this.keyObtentionIterations : 
+                            configKeyObtentionIterations.intValue();
+                this.saltGenerator = 
+                    ((this.saltGeneratorSet) || (configSaltGenerator == null))?
+                            this.saltGenerator : configSaltGenerator;
+                this.providerName = 
+                    ((this.providerNameSet) || (configProviderName == null))?
+                            this.providerName : configProviderName;
+                this.provider = 
+                    ((this.providerSet) || (configProvider == null))?
+                            this.provider : configProvider;
+                
+            }
+            
+            if (this.saltGenerator == null) {
+                this.saltGenerator = new RandomSaltGenerator();
+            }
+            
+            if (this.password == null) {
+                throw new EncryptionInitializationException(
+                        "Password not set for Password Based Encryptor");
+            }
+            
+            if (!GCMSupport.isAvailable()) {
+                throw new EncryptionInitializationException(
+                        "AES/GCM encryption requires Java 7 or higher");
+            }
+            
+            final Matcher algorithmMatcher = PBES2_ALGORITHM_PATTERN.matcher(this.algorithm);
+            if (!algorithmMatcher.matches()) {
+                throw new EncryptionInitializationException(
+                        "Algorithm " + this.algorithm + " not supported: only " +
+                        "PBEWithHMACSHAxxxAndAES_yyy algorithms can be used");
+            }
+            this.keyFactoryAlgorithm = 
+                KEY_FACTORY_ALGORITHM_PREFIX + algorithmMatcher.group(1).toUpperCase();
+            this.keyLengthBits = Integer.parseInt(algorithmMatcher.group(2));
+            
+            // Normalize password to NFC form. The normalized password is only
+            // kept if keys for other salts have to be derived.
+            final char[] normalizedPassword = Normalizer.normalizeToNfc(this.password);
+            cleanPassword(this.password);
+            this.password = normalizedPassword;
+            
+            this.salt = this.saltGenerator.generateSalt(SALT_SIZE_BYTES);
+            if (this.salt == null || this.salt.length == 0 || this.salt.length > 255) {
+                throw new EncryptionInitializationException(
+                        "Salt generator must produce salts between 1 and 255 bytes long");
+            }
+            
+            this.header = new byte[2 + this.salt.length];
+            this.header[0] = (byte) FORMAT_VERSION;
+            this.header[1] = (byte) this.salt.length;
+            System.arraycopy(this.salt, 0, this.header, 2, this.salt.length);
+            
+            try {
+                
+                final byte[] keyBytes = deriveKeyBytes(this.salt);
+                this.key = new SecretKeySpec(keyBytes, KEY_ALGORITHM);
+                Arrays.fill(keyBytes, (byte)0);
+                
+                // Check the cipher can be obtained and used with the key
+                createCipher().init(
+                        Cipher.ENCRYPT_MODE, this.key, 
+                        GCMSupport.createParameterSpec(new byte[NONCE_SIZE_BYTES], 0));
+                
+            } catch (final InvalidKeyException e) {
+                handleInvalidKeyException(e);
+                throw new EncryptionInitializationException(e);
+            } catch (final GeneralSecurityException e) {
+                throw new EncryptionInitializationException(e);
+            }
+            
+            if (this.decryptForeignSalts) {
+                this.foreignKeyCache = 
+                    new DerivedKeyCache(FOREIGN_KEY_CACHE_SIZE, 0L, KEY_ALGORITHM);
+            } else {
+                cleanPassword(this.password);
+                this.password = null;
+            }
+            
+            this.threadCipher = new ThreadLocal<Cipher>() {
+                protected Cipher initialValue() {
+                    try {
+                        return createCipher();
+                    } catch (final GeneralSecurityException e) {
+                        throw new EncryptionOperationNotPossibleException();
+                    }
+                }
+            };
+            
+            this.threadRandom = new ThreadLocal<SecureRandom>() {
+                protected SecureRandom initialValue() {
+                    return new SecureRandom();
+                }
+            };
+            
+            this.initialized = true;
+            
+        }
+        
+    }
+    
+    
+    
+    private synchronized void resolveConfigurationPassword() {
+        
+        if (!this.initialized && this.config != null && !this.passwordSet) {
+            
+            char[] configPassword = null;
+            if (this.config instanceof PBECleanablePasswordConfig) {
+                configPassword = ((PBECleanablePasswordConfig)this.config).getPasswordCharArray();
+            } else {
+                final String configPwd = this.config.getPassword();
+                if (configPwd != null) {
+                    configPassword = configPwd.toCharArray();
+                }
+            }
+
+            if (configPassword != null) {
+                CommonUtils.validateIsTrue(configPassword.length > 0, 
+                        "Password cannot be set empty");
+                this.password = new char[configPassword.length];
+                System.arraycopy(configPassword, 0, this.password, 0, configPassword.length);
+                this.passwordSet = true;
+                cleanPassword(configPassword);
+            }
+            
+            if (this.config instanceof PBECleanablePasswordConfig) {
+                ((PBECleanablePasswordConfig)this.config).cleanPassword();
+            }
+            
+        }
+        
+    }
+    
+    
+    private static void cleanPassword(final char[] password) {
+        if (password != null) {
+            synchronized (password) {
+                Arrays.fill(password, (char)0);
+            }
+        }
+    }
+    
+    
+    
+    /**
+     * <p>
+     * Encrypts a message using the key derived at initialization and a
+     * random nonce.
+     * </p>
+     * 
+     * @param message the byte array message to be encrypted
+     * @return the result of encryption 
+     * @throws EncryptionOperationNotPossibleException if the encryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     */
+    public byte[] encrypt(final byte[] message) 
+            throws EncryptionOperationNotPossibleException {
+        
+        if (message == null) {
+            return null;
+        }
+        
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        if (this.encryptedMessages.incrementAndGet() > MAX_MESSAGES_PER_KEY) {
+            throw new EncryptionOperationNotPossibleException(
+                    "Maximum number of messages encrypted with the same key " +
+                    "reached: a new encryptor must be created");
+        }
+        
+        try {
+            
+            final Cipher cipher = this.threadCipher.get();
+            
+            final byte[] nonce = new byte[NONCE_SIZE_BYTES];
+            this.threadRandom.get().nextBytes(nonce);
+            
+            cipher.init(Cipher.ENCRYPT_MODE, this.key, GCMSupport.createParameterSpec(nonce, 0));
+            GCMSupport.updateAAD(cipher, this.header, 0, this.header.length);
+            
+            // The result is built in a single array: header, nonce and
+            // encrypted message (including the authentication tag).
+            final int messageOffset = this.header.length + NONCE_SIZE_BYTES;
+            final byte[] encryptedMessage = 
+                new byte[messageOffset + cipher.getOutputSize(message.length)];
+            System.arraycopy(this.header, 0, encryptedMessage, 0, this.header.length);
+            System.arraycopy(nonce, 0, encryptedMessage, this.header.length, NONCE_SIZE_BYTES);
+            
+            final int encryptedLength = 
+                cipher.doFinal(message, 0, message.length, encryptedMessage, messageOffset);
+            if (messageOffset + encryptedLength != encryptedMessage.length) {
+                throw new EncryptionOperationNotPossibleException();
+            }
+            
+            return encryptedMessage;
+            
+        } catch (final InvalidKeyException e) {
+            handleInvalidKeyException(e);
+            throw new EncryptionOperationNotPossibleException();
+        } catch (final Exception e) {
+            // If encryption fails, it is more secure not to return any 
+            // information about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        }
+        
+    }
+    
+    
+    /**
+     * <p>
+     * Decrypts a message, checking its authenticity.
+     * </p>
+     * <p>
+     * If the message was encrypted by an encryptor using a different salt,
+     * the key for that salt will be derived (and cached), unless 
+     * {@link #setDecryptForeignSalts(boolean)} has been disabled, in which
+     * case decryption will fail.
+     * </p>
+     * 
+     * @param encryptedMessage the byte array message to be decrypted
+     * @return the result of decryption 
+     * @throws EncryptionOperationNotPossibleException if the decryption 
+     *         operation fails (including the case of the message having
+     *         been modified), ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     */
+    public byte[] decrypt(final byte[] encryptedMessage) 
+            throws EncryptionOperationNotPossibleException {
+        
+        if (encryptedMessage == null) {
+            return null;
+        }
+        
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        if (encryptedMessage.length < 2 || 
+                (encryptedMessage[0] & 0xff) != FORMAT_VERSION) {
+            throw new EncryptionOperationNotPossibleException();
+        }
+        
+        final int saltSize = (encryptedMessage[1] & 0xff);
+        final int headerSize = 2 + saltSize;
+        final int messageOffset = headerSize + NONCE_SIZE_BYTES;
+        if (saltSize == 0 || encryptedMessage.length < messageOffset + TAG_SIZE_BYTES) {
+            throw new EncryptionOperationNotPossibleException();
+        }
+        
+        try {
+            
+            final SecretKey messageKey = obtainKey(encryptedMessage, saltSize);
+
+            final Cipher cipher = this.threadCipher.get();
+            cipher.init(
+                    Cipher.DECRYPT_MODE, messageKey, 
+                    GCMSupport.createParameterSpec(encryptedMessage, headerSize));
+            GCMSupport.updateAAD(cipher, encryptedMessage, 0, headerSize);
+            
+            return cipher.doFinal(
+                    encryptedMessage, messageOffset, encryptedMessage.length - messageOffset);
+            
+        } catch (final InvalidKeyException e) {
+            handleInvalidKeyException(e);
+            throw new EncryptionOperationNotPossibleException();
+        } catch (final Exception e) {
+            // If decryption fails, it is more secure not to return any 
+            // information about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        }
+        
+    }
+    
+    
+    
+    /*
+     * Returns the key of this encryptor if the message salt is the one being 
+     * used by it, or the key derived for the message salt if not.
+     */
+    private SecretKey obtainKey(final byte[] encryptedMessage, final int saltSize) 
+            throws GeneralSecurityException {
+        
+        boolean sameSalt = (saltSize == this.salt.length);
+        for (int i = 0; sameSalt && i < saltSize; i++) {
+            sameSalt = (encryptedMessage[2 + i] == this.salt[i]);
+        }
+        if (sameSalt) {
+            return this.key;
+        }
+        if (this.foreignKeyCache == null) {
+            throw new EncryptionOperationNotPossibleException();
+        }
+        
+        final byte[] messageSalt = new byte[saltSize];
+        System.arraycopy(encryptedMessage, 2, messageSalt, 0, saltSize);
+        
+        final SecretKey cachedKey = this.foreignKeyCache.get(messageSalt);
+        if (cachedKey != null) {
+            return cachedKey;
+        }
+        return this.foreignKeyCache.put(messageSalt, deriveKeyBytes(messageSalt));
+        
+    }
+    
+    
+    private byte[] deriveKeyBytes(final byte[] keySalt) throws GeneralSecurityException {
+        final PBEKeySpec keySpec = 
+            new PBEKeySpec(this.password, keySalt, this.keyObtentionIterations, this.keyLengthBits);
+        try {
+            final SecretKeyFactory factory;
+            if (this.provider != null) {
+                factory = SecretKeyFactory.getInstance(this.keyFactoryAlgorithm, this.provider);
+            } else if (this.providerName != null) {
+                factory = SecretKeyFactory.getInstance(this.keyFactoryAlgorithm, this.providerName);
+            } else {
+                factory = SecretKeyFactory.getInstance(this.keyFactoryAlgorithm);
+            }
+            return factory.generateSecret(keySpec).getEncoded();
+        } finally {
+            keySpec.clearPassword();
+        }
+    }
+    
+    
+    private Cipher createCipher() throws GeneralSecurityException {
+        if (this.provider != null) {
+            return Cipher.getInstance(CIPHER_ALGORITHM, this.provider);
+        } else if (this.providerName != null) {
+            return Cipher.getInstance(CIPHER_ALGORITHM, this.providerName);
+        }
+        return Cipher.getInstance(CIPHER_ALGORITHM);
+    }
+    
+    
+    /*
+     * Method used to provide an useful error message in the case that the
+     * user tried to use 256-bit keys without having installed the Unlimited 
+     * Strength Policy files.
+     */
+    private static void handleInvalidKeyException(final InvalidKeyException e) {
+
+        if ((e.getMessage() != null) && 
+                ((e.getMessage().toUpperCase().indexOf("KEY SIZE") != -1))) {
+            
+            throw new EncryptionOperationNotPossibleException(
+                    "Encryption raised an exception. A possible cause is " +
+                    "you are using strong encryption algorithms and " +
+                    "you have not installed the Java Cryptography " + 
+                    "Extension (JCE) Unlimited Strength Jurisdiction " +
+                    "Policy Files in this Java Virtual Machine");
+            
+        }
+        
+    }
+    
+    
+    
+    /*
+     * GCMParameterSpec and Cipher.updateAAD(...) only exist since Java 7, so
+     * they are accessed by reflection (resolved only once) in order to keep
+     * this class linkable against the Java 6 class library.
+     */
+    private static final class GCMSupport {
+        
+        private static final Constructor<?> PARAMETER_SPEC_CONSTRUCTOR;
+        private static final Method UPDATE_AAD_METHOD;
+        
+        static {
+            Constructor<?> parameterSpecConstructor = null;
+            Method updateAADMethod = null;
+            try {
+                final Class<?> parameterSpecClass = Class.forName(GCM_PARAMETER_SPEC_CLASS_NAME);
+                parameterSpecConstructor = 
+                    parameterSpecClass.getConstructor(int.class, byte[].class, int.class, int.class);
+                updateAADMethod = 
+                    Cipher.class.getMethod("updateAAD", byte[].class, int.class, int.class);
+            } catch (final ClassNotFoundException e) {
+                // Not available (Java 6): initialization will fail
+            } catch (final NoSuchMethodException e) {
+                // Not available (Java 6): initialization will fail
+            }
+            PARAMETER_SPEC_CONSTRUCTOR = parameterSpecConstructor;
+            UPDATE_AAD_METHOD = updateAADMethod;
+        }
+        
+        
+        static boolean isAvailable() {
+            return (PARAMETER_SPEC_CONSTRUCTOR != null && UPDATE_AAD_METHOD != null);
+        }
+        
+        
+        static AlgorithmParameterSpec createParameterSpec(final byte[] nonce, final int nonceOffset)
+                throws GeneralSecurityException {
+            return (AlgorithmParameterSpec) invoke(PARAMETER_SPEC_CONSTRUCTOR, null, 
+                    new Object[] { Integer.valueOf(TAG_SIZE_BITS), nonce, 
+                                   Integer.valueOf(nonceOffset), Integer.valueOf(NONCE_SIZE_BYTES) });
+        }
+        
+        
+        static void updateAAD(final Cipher cipher, final byte[] aad, 
+                final int aadOffset, final int aadLength) throws GeneralSecurityException {
+            invoke(UPDATE_AAD_METHOD, cipher, 
+                    new Object[] { aad, Integer.valueOf(aadOffset), Integer.valueOf(aadLength) });
+        }
+        
+        
+        private static Object invoke(final Object member, final Object target, 
+                final Object[] args) throws GeneralSecurityException {
+            try {
+                if (member instanceof Constructor<?>) {
+                    return ((Constructor<?>) member).newInstance(args);
+                }
+                return ((Method) member).invoke(target, args);
+            } catch (final InvocationTargetException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof GeneralSecurityException) {
+                    throw (GeneralSecurityException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new GeneralSecurityException(cause);
+            } catch (final InstantiationException e) {
+                throw new GeneralSecurityException(e);
+            } catch (final IllegalAccessException e) {
+                throw new GeneralSecurityException(e);
+            }
+        }
+        
+        
+        private GCMSupport() {
+            super();
+        }
+        
+    }
+    
+}
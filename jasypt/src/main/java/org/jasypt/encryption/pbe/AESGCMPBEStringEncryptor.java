@@ -0,0 +1,586 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import java.nio.CharBuffer;
+import java.security.Provider;
+import java.util.Arrays;
+
+import org.jasypt.codec.StringOutputCodec;
+import org.jasypt.codec.StringOutputCodecs;
+import org.jasypt.commons.CommonUtils;
+import org.jasypt.commons.Utf8Transcoder;
+import org.jasypt.encryption.CharSequenceStringEncryptor;
+import org.jasypt.encryption.pbe.config.PBEConfig;
+import org.jasypt.encryption.pbe.config.StringPBEConfig;
+import org.jasypt.exceptions.AlreadyInitializedException;
+import org.jasypt.exceptions.EncryptionInitializationException;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.salt.SaltGenerator;
+
+
+/**
+ * <p>
+ * Implementation of the {@link PBEStringEncryptor} interface which uses
+ * an {@link AESGCMPBEByteEncryptor} for encrypting and decrypting: the
+ * encryption key is derived from the password only once and every message
+ * is encrypted with AES in GCM mode and a random nonce.
+ * </p>
+ * <p>
+ * Apart from the engine being used, this class behaves like 
+ * {@link StandardPBEStringEncryptor}: messages are converted to bytes
+ * using UTF-8 and encryption results are encoded in <i>BASE64</i> (default) 
+ * or <i>HEXADECIMAL</i>. See {@link AESGCMPBEByteEncryptor} for the
+ * format of encryption results and the supported algorithms.
+ * </p>
+ * <p>
+ * This class is <i>thread-safe</i>, and does not acquire any locks for
+ * encrypting or decrypting, so there is no need to use it inside a pool.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class AESGCMPBEStringEncryptor 
+        implements PBEStringCleanablePasswordEncryptor, CharSequenceStringEncryptor {
+
+    // Charset to be used to obtain "encryptable" byte arrays from input
+    // Strings (see StandardPBEStringEncryptor).
+    private static final String MESSAGE_CHARSET = "UTF-8";
+
+
+    /**
+     * <p>
+     * Default type of String output. Set to <b>BASE64</b>. 
+     * </p> 
+     */
+    public static final String DEFAULT_STRING_OUTPUT_TYPE = 
+        CommonUtils.STRING_OUTPUT_TYPE_BASE64;
+    
+
+    // If the config object set is a StringPBEConfig, it must be referenced
+    private StringPBEConfig stringPBEConfig = null;
+    
+    // This variable holds the type of String output which will be done,
+    // and also the codec which will perform the encoding
+    private String stringOutputType = DEFAULT_STRING_OUTPUT_TYPE;
+    private StringOutputCodec stringOutputCodec = null;
+
+    private boolean stringOutputTypeSet = false;
+    
+    
+    // The AESGCMPBEByteEncryptor that will be internally used.
+    private final AESGCMPBEByteEncryptor byteEncryptor;
+
+    
+    
+    /**
+     * Creates a new instance of <tt>AESGCMPBEStringEncryptor</tt>.
+     */
+    public AESGCMPBEStringEncryptor() {
+        super();
+        this.byteEncryptor = new AESGCMPBEByteEncryptor();
+    }
+
+    
+    
+    /**
+     * <p>
+     * Sets a <tt>{@link org.jasypt.encryption.pbe.config.PBEConfig}</tt> object 
+     * for the encryptor. See {@link AESGCMPBEByteEncryptor#setConfig(PBEConfig)}
+     * for the values it will be asked for. If it is a 
+     * <tt>{@link org.jasypt.encryption.pbe.config.StringPBEConfig}</tt>, 
+     * it will also be asked for the output type (base64, hexadecimal).
+     * </p>
+     * 
+     * @param config the <tt>PBEConfig</tt> object to be used as the 
+     *               source for configuration parameters.
+     */
+    public synchronized void setConfig(final PBEConfig config) {
+        this.byteEncryptor.setConfig(config);
+        if ((config != null) && (config instanceof StringPBEConfig)) {
+            this.stringPBEConfig = (StringPBEConfig) config;
+        }
+    }
+
+    
+    /**
+     * See {@link AESGCMPBEByteEncryptor#setAlgorithm(String)}.
+     * 
+     * @param algorithm the name of the algorithm to be used.
+     */
+    public void setAlgorithm(final String algorithm) {
+        this.byteEncryptor.setAlgorithm(algorithm);
+    }
+
+    
+    /**
+     * See {@link AESGCMPBEByteEncryptor#setPassword(String)}.
+     * 
+     * @param password the password to be used.
+     */
+    public void setPassword(final String password) {
+        this.byteEncryptor.setPassword(password);
+    }
+
+    
+    /**
+     * See {@link AESGCMPBEByteEncryptor#setPasswordCharArray(char[])}.
+     * 
+     * @param password the password to be used.
+     */
+    public void setPasswordCharArray(final char[] password) {
+        this.byteEncryptor.setPasswordCharArray(password);
+    }
+
+    
+    /**
+     * See {@link AESGCMPBEByteEncryptor#setKeyObtentionIterations(int)}.
+     * 
+     * @param keyObtentionIterations the number of iterations
+     */
+    public void setKeyObtentionIterations(final int keyObtentionIterations) {
+        this.byteEncryptor.setKeyObtentionIterations(keyObtentionIterations);
+    }
+
+    
+    /**
+     * See {@link AESGCMPBEByteEncryptor#setSaltGenerator(SaltGenerator)}.
+     * 
+     * @param saltGenerator the salt generator to be used.
+     */
+    public void setSaltGenerator(final SaltGenerator saltGenerator) {
+        this.byteEncryptor.setSaltGenerator(saltGenerator);
+    }
+
+    
+    /**
+     * See {@link AESGCMPBEByteEncryptor#setProviderName(String)}.
+     * 
+     * @param providerName the name of the security provider to be asked
+     *                     for the algorithms.
+     */
+    public void setProviderName(final String providerName) {
+        this.byteEncryptor.setProviderName(providerName);
+    }
+
+    
+    /**
+     * See {@link AESGCMPBEByteEncryptor#setProvider(Provider)}.
+     * 
+     * @param provider the provider to be asked for the chosen algorithms
+     */
+    public void setProvider(final Provider provider) {
+        this.byteEncryptor.setProvider(provider);
+    }
+
+    
+    /**
+     * See {@link AESGCMPBEByteEncryptor#setDecryptForeignSalts(boolean)}.
+     * 
+     * @param decryptForeignSalts whether messages encrypted with other salts
+     *                            can be decrypted.
+     */
+    public void setDecryptForeignSalts(final boolean decryptForeignSalts) {
+        this.byteEncryptor.setDecryptForeignSalts(decryptForeignSalts);
+    }
+
+    
+    /**
+     * <p>
+     * Sets the the form in which String output
+     * will be encoded. Available encoding types are:
+     * </p>
+     * <ul>
+     *   <li><tt><b>base64</b></tt> (default)</li>
+     *   <li><tt><b>base64-unpadded</b></tt></li>
+     *   <li><tt><b>base64url</b></tt></li>
+     *   <li><tt><b>base64url-unpadded</b></tt></li>
+     *   <li><tt><b>hexadecimal</b></tt></li>
+     *   <li>Any other output type registered at 
+     *       {@link org.jasypt.codec.StringOutputCodecs}</li>
+     * </ul>
+     * 
+     * @param stringOutputType the string output type.
+     */
+    public synchronized void setStringOutputType(final String stringOutputType) {
+        CommonUtils.validateNotEmpty(stringOutputType, 
+                "String output type cannot be set empty");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.stringOutputType = 
+            CommonUtils.
+                getStandardStringOutputType(stringOutputType);
+
+        this.stringOutputTypeSet = true;
+    }
+    
+    
+
+    /**
+     * <p>
+     *   Returns true if the encryptor has already been initialized, false if
+     *   not.
+     * </p>
+     * 
+     * @return true if the encryptor has already been initialized, false if
+     *         not.
+     */
+    public boolean isInitialized() {
+        return this.byteEncryptor.isInitialized();
+    }
+
+    
+    /**
+     * <p>
+     * Initialize the encryptor. See 
+     * {@link AESGCMPBEByteEncryptor#initialize()}.
+     * </p>
+     * 
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     */
+    public synchronized void initialize() {
+        
+        // Double-check to avoid synchronization issues
+        if (!this.isInitialized()) {
+            
+            if (this.stringPBEConfig != null) {
+                
+                final String configStringOutputType = 
+                    this.stringPBEConfig.getStringOutputType();
+
+                this.stringOutputType = 
+                    ((this.stringOutputTypeSet) || (configStringOutputType == null))?
+                            this.stringOutputType : configStringOutputType;
+                
+            }
+            
+            this.stringOutputCodec = 
+                StringOutputCodecs.getCodec(this.stringOutputType);
+            
+            this.byteEncryptor.initialize();
+            
+        }
+
+    }
+    
+    
+    /**
+     * <p>
+     * Encrypts a message. The Strings returned by this method are 
+     * BASE64-encoded (default) or HEXADECIMAL ASCII Strings.
+     * </p>
+     * 
+     * @param message the String message to be encrypted
+     * @return the result of encryption 
+     * @throws EncryptionOperationNotPossibleException if the encryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     */
+    public String encrypt(final String message) {
+        
+        if (message == null) {
+            return null;
+        }
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        try {
+
+            final byte[] messageBytes = message.getBytes(MESSAGE_CHARSET);
+            
+            final byte[] encryptedMessage = this.byteEncryptor.encrypt(messageBytes);
+            
+            return this.stringOutputCodec.encode(encryptedMessage);
+        
+        } catch (EncryptionInitializationException e) {
+            throw e;
+        } catch (EncryptionOperationNotPossibleException e) {
+            throw e;
+        } catch (Exception e) {
+            // If encryption fails, it is more secure not to return any 
+            // information about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        }
+        
+    }
+
+    
+    /**
+     * <p>
+     * Decrypts a message. This method expects to receive a BASE64-encoded 
+     * (default) or HEXADECIMAL ASCII String.
+     * </p>
+     * 
+     * @param encryptedMessage the String message to be decrypted
+     * @return the result of decryption 
+     * @throws EncryptionOperationNotPossibleException if the decryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     */
+    public String decrypt(final String encryptedMessage) {
+        
+        if (encryptedMessage == null) {
+            return null;
+        }
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        try {
+            
+            final byte[] encryptedMessageBytes = 
+                this.stringOutputCodec.decode(encryptedMessage);
+
+            final byte[] message = this.byteEncryptor.decrypt(encryptedMessageBytes);
+            
+            return new String(message, MESSAGE_CHARSET);
+        
+        } catch (EncryptionInitializationException e) {
+            throw e;
+        } catch (EncryptionOperationNotPossibleException e) {
+            throw e;
+        } catch (Exception e) {
+            // If decryption fails, it is more secure not to return any 
+            // information about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        }
+
+    }
+
+
+    
+    /**
+     * <p>
+     * Encrypts a message (any <tt>CharSequence</tt>) without creating an
+     * intermediate <tt>String</tt>. The result is exactly the same as that
+     * of {@link #encrypt(String)}.
+     * </p>
+     * 
+     * @param message the message to be encrypted
+     * @return the result of encryption 
+     * @throws EncryptionOperationNotPossibleException if the encryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public String encrypt(final CharSequence message) {
+        
+        if (message == null) {
+            return null;
+        }
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final Utf8Transcoder transcoder = Utf8Transcoder.acquire();
+        byte[] messageBytes = null;
+        try {
+
+            final int messageLength = transcoder.encode(message);
+            messageBytes = Arrays.copyOf(transcoder.getBytes(), messageLength);
+            
+            final byte[] encryptedMessage = this.byteEncryptor.encrypt(messageBytes);
+            
+            return this.stringOutputCodec.encode(encryptedMessage);
+        
+        } catch (EncryptionInitializationException e) {
+            throw e;
+        } catch (EncryptionOperationNotPossibleException e) {
+            throw e;
+        } catch (Exception e) {
+            // If encryption fails, it is more secure not to return any 
+            // information about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        } finally {
+            if (messageBytes != null) {
+                Arrays.fill(messageBytes, (byte)0);
+            }
+            transcoder.release();
+        }
+        
+    }
+
+    
+    /**
+     * <p>
+     * Encrypts the specified portion of a char array, exactly in the same 
+     * way as {@link #encrypt(CharSequence)}.
+     * </p>
+     * 
+     * @param message the array containing the message to be encrypted
+     * @param messageOffset the offset at which the message starts
+     * @param messageLength the length of the message
+     * @return the result of encryption 
+     * @throws EncryptionOperationNotPossibleException if the encryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public String encrypt(final char[] message, final int messageOffset, final int messageLength) {
+        if (message == null) {
+            return null;
+        }
+        return encrypt(CharBuffer.wrap(message, messageOffset, messageLength));
+    }
+
+    
+    /**
+     * <p>
+     * Decrypts a message, writing the result into the output array starting
+     * at the specified offset, without creating an intermediate 
+     * <tt>String</tt>. If the output array is not big enough, an
+     * {@link EncryptionOperationNotPossibleException} will be thrown and
+     * the contents of the output array will be undefined.
+     * </p>
+     * 
+     * @param encryptedMessage the String message to be decrypted
+     * @param output the array the result will be written to
+     * @param outputOffset the offset at which the result will be written
+     * @return the number of chars written, or -1 if the encrypted message
+     *         is null
+     * @throws EncryptionOperationNotPossibleException if the decryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public int decryptTo(final String encryptedMessage, final char[] output, final int outputOffset) {
+        
+        CommonUtils.validateNotNull(output, "Output array cannot be null");
+        
+        if (encryptedMessage == null) {
+            return -1;
+        }
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final Utf8Transcoder transcoder = Utf8Transcoder.acquire();
+        byte[] message = null;
+        try {
+            
+            message = this.byteEncryptor.decrypt(
+                    this.stringOutputCodec.decode(encryptedMessage));
+            
+            return transcoder.decode(message, 0, message.length, output, outputOffset);
+        
+        } catch (EncryptionInitializationException e) {
+            throw e;
+        } catch (EncryptionOperationNotPossibleException e) {
+            throw e;
+        } catch (Exception e) {
+            // If decryption fails, it is more secure not to return any 
+            // information about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        } finally {
+            if (message != null) {
+                Arrays.fill(message, (byte)0);
+            }
+            transcoder.release();
+        }
+
+    }
+
+    
+    /**
+     * <p>
+     * Decrypts a message, appending the result to the specified 
+     * <tt>Appendable</tt> object without creating an intermediate 
+     * <tt>String</tt>.
+     * </p>
+     * 
+     * @param encryptedMessage the String message to be decrypted
+     * @param output the object the result will be appended to
+     * @return the number of chars appended, or -1 if the encrypted message
+     *         is null
+     * @throws EncryptionOperationNotPossibleException if the decryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public int decryptTo(final String encryptedMessage, final Appendable output) {
+        
+        CommonUtils.validateNotNull(output, "Output cannot be null");
+        
+        if (encryptedMessage == null) {
+            return -1;
+        }
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final Utf8Transcoder transcoder = Utf8Transcoder.acquire();
+        byte[] message = null;
+        try {
+            
+            message = this.byteEncryptor.decrypt(
+                    this.stringOutputCodec.decode(encryptedMessage));
+            
+            final CharBuffer result = transcoder.decode(message, 0, message.length);
+            final int resultLength = result.remaining();
+            output.append(result);
+            return resultLength;
+        
+        } catch (EncryptionInitializationException e) {
+            throw e;
+        } catch (EncryptionOperationNotPossibleException e) {
+            throw e;
+        } catch (Exception e) {
+            // If decryption fails, it is more secure not to return any 
+            // information about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        } finally {
+            if (message != null) {
+                Arrays.fill(message, (byte)0);
+            }
+            transcoder.release();
+        }
+
+    }
+
+    
+}
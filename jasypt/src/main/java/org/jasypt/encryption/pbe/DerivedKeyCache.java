@@ -0,0 +1,199 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * 
+ * Bounded, least-recently-used cache of cipher keys derived from the
+ * encryptor password, indexed by salt. Intended only for internal
+ * use within jasypt.
+ * <p>
+ * Entries can optionally expire after a time-to-live, and the key bytes of 
+ * every entry leaving the cache (because of eviction, expiration, replacement 
+ * or clearing) are zeroed.
+ * </p>
+ * <p>
+ * This class is <i>thread-safe</i>.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ *
+ */
+final class DerivedKeyCache {
+
+    private final int maxEntries;
+    private final long timeToLiveMillis;
+    private final String keyAlgorithm;
+    
+    private final LinkedHashMap<Salt,CachedKey> entries;
+    
+    private final AtomicLong hits = new AtomicLong(0L);
+    private final AtomicLong misses = new AtomicLong(0L);
+    
+    
+    
+    DerivedKeyCache(final int maxEntries, final long timeToLiveMillis, final String keyAlgorithm) {
+        super();
+        this.maxEntries = maxEntries;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.keyAlgorithm = keyAlgorithm;
+        this.entries = new LinkedHashMap<Salt,CachedKey>(16, 0.75f, true) {
+            
+            private static final long serialVersionUID = 4018725541376598131L;
+
+            protected boolean removeEldestEntry(final Map.Entry<Salt,CachedKey> eldest) {
+                if (size() > DerivedKeyCache.this.maxEntries) {
+                    eldest.getValue().clean();
+                    return true;
+                }
+                return false;
+            }
+            
+        };
+    }
+    
+    
+    /*
+     * Returns the key derived for the specified salt, or null if no
+     * (non-expired) key exists for it. The returned key is a copy, so it 
+     * will not be affected by the cache zeroing the entry afterwards.
+     */
+    SecretKey get(final byte[] salt) {
+        synchronized (this.entries) {
+            final Salt cacheKey = new Salt(salt);
+            final CachedKey entry = this.entries.get(cacheKey);
+            if (entry != null) {
+                if (!entry.isExpired(System.currentTimeMillis())) {
+                    this.hits.incrementAndGet();
+                    return new SecretKeySpec(entry.keyBytes, this.keyAlgorithm);
+                }
+                this.entries.remove(cacheKey);
+                entry.clean();
+            }
+        }
+        this.misses.incrementAndGet();
+        return null;
+    }
+    
+    
+    /*
+     * Stores the derived key bytes for the specified salt, and returns them
+     * as a SecretKey. Both arrays will be owned by the cache from this moment 
+     * on, and the key bytes will be zeroed when the entry leaves the cache.
+     */
+    SecretKey put(final byte[] salt, final byte[] keyBytes) {
+        final SecretKey secretKey = new SecretKeySpec(keyBytes, this.keyAlgorithm);
+        synchronized (this.entries) {
+            final CachedKey previous = 
+                this.entries.put(new Salt(salt), new CachedKey(keyBytes, System.currentTimeMillis()));
+            if (previous != null) {
+                previous.clean();
+            }
+        }
+        return secretKey;
+    }
+    
+    
+    void clear() {
+        synchronized (this.entries) {
+            final Iterator<CachedKey> entryIterator = this.entries.values().iterator();
+            while (entryIterator.hasNext()) {
+                entryIterator.next().clean();
+                entryIterator.remove();
+            }
+        }
+    }
+    
+    
+    long getHits() {
+        return this.hits.get();
+    }
+    
+    
+    long getMisses() {
+        return this.misses.get();
+    }
+
+    
+    
+    
+    private final class CachedKey {
+        
+        private final byte[] keyBytes;
+        private final long creationTime;
+        
+        CachedKey(final byte[] keyBytes, final long creationTime) {
+            super();
+            this.keyBytes = keyBytes;
+            this.creationTime = creationTime;
+        }
+        
+        boolean isExpired(final long now) {
+            return (DerivedKeyCache.this.timeToLiveMillis > 0L) && 
+                   (now - this.creationTime >= DerivedKeyCache.this.timeToLiveMillis);
+        }
+        
+        void clean() {
+            Arrays.fill(this.keyBytes, (byte)0);
+        }
+        
+    }
+    
+    
+    private static final class Salt {
+        
+        private final byte[] bytes;
+        private final int hashCode;
+        
+        Salt(final byte[] bytes) {
+            super();
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+        
+        public int hashCode() {
+            return this.hashCode;
+        }
+        
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Salt)) {
+                return false;
+            }
+            return Arrays.equals(this.bytes, ((Salt)obj).bytes);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,276 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jasypt.commons.PoolMemberSelector;
+
+
+/**
+ * <p>
+ * Pool of encryptors which grows when callers have to wait for a busy
+ * member longer than a threshold (up to a maximum size), and shrinks back 
+ * (down to its initial size) when the added members stay idle.
+ * </p>
+ * <p>
+ * Members are created by cloning an already initialized encryptor, so 
+ * that growing the pool does not require obtaining keys again.
+ * </p>
+ * <p>
+ * Intended only for internal use within jasypt.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ *
+ */
+final class ElasticEncryptorPool<T> {
+
+    /**
+     * Time a caller can wait for a busy member before the pool grows,
+     * set to 1 millisecond.
+     */
+    static final long GROWTH_WAIT_TIME_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+    
+    
+    /*
+     * Creates new members of the pool.
+     */
+    interface MemberFactory<T> {
+        
+        T createMember();
+        
+    }
+    
+    
+    private final MemberFactory<T> memberFactory;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTime;
+    private final boolean thread;
+    private final boolean leastBusy;
+    
+    // Replaced (never modified) when the pool grows or shrinks
+    private volatile Member<T>[] members;
+    private final Object resizeLock = new Object();
+    
+    private final AtomicInteger counter = new AtomicInteger(0);
+    private volatile long lastIdleCheckTime;
+    
+    private final AtomicLong waitCount = new AtomicLong(0L);
+    private final AtomicLong waitTimeNanos = new AtomicLong(0L);
+    
+    
+    
+    ElasticEncryptorPool(final T[] initialMembers, final int maxSize, 
+            final long idleTime, final String selectionStrategy, 
+            final MemberFactory<T> memberFactory) {
+        
+        super();
+        
+        final String strategy = 
+            (selectionStrategy == null? 
+                    PoolMemberSelector.STRATEGY_ROUND_ROBIN : 
+                    PoolMemberSelector.getStandardStrategy(selectionStrategy));
+        
+        this.memberFactory = memberFactory;
+        this.minSize = initialMembers.length;
+        this.maxSize = maxSize;
+        this.idleTime = idleTime;
+        this.thread = PoolMemberSelector.STRATEGY_THREAD.equals(strategy);
+        this.leastBusy = PoolMemberSelector.STRATEGY_LEAST_BUSY.equals(strategy);
+        this.lastIdleCheckTime = System.currentTimeMillis();
+        
+        final Member<T>[] newMembers = newMemberArray(initialMembers.length);
+        for (int i = 0; i < initialMembers.length; i++) {
+            newMembers[i] = new Member<T>(initialMembers[i], this.lastIdleCheckTime);
+        }
+        this.members = newMembers;
+        
+    }
+    
+    
+    
+    /*
+     * Acquires a member of the pool, which will not be used by any other 
+     * thread until released.
+     */
+    Member<T> acquire() {
+        
+        final long now = System.currentTimeMillis();
+        if (now - this.lastIdleCheckTime >= this.idleTime) {
+            shrink(now);
+        }
+        
+        final Member<T>[] currentMembers = this.members;
+        final int size = currentMembers.length;
+        
+        final int start;
+        if (this.thread) {
+            start = (int) (Thread.currentThread().getId() % size);
+        } else {
+            start = (this.counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+        }
+        
+        final int tries = (this.leastBusy? size : 1);
+        for (int i = 0; i < tries; i++) {
+            final Member<T> member = currentMembers[(start + i) % size];
+            if (member.lock.tryLock()) {
+                member.lastUsedTime = now;
+                return member;
+            }
+        }
+        
+        // The caller will have to wait: if it waits for too long and the pool
+        // can still grow, a new member will be created for it.
+        final Member<T> member = currentMembers[start];
+        final long waitStart = System.nanoTime();
+        boolean acquired = false;
+        try {
+            acquired = member.lock.tryLock(GROWTH_WAIT_TIME_NANOS, TimeUnit.NANOSECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        Member<T> acquiredMember = (acquired? member : grow(now));
+        if (acquiredMember == null) {
+            member.lock.lock();
+            acquiredMember = member;
+        }
+        
+        this.waitCount.incrementAndGet();
+        this.waitTimeNanos.addAndGet(System.nanoTime() - waitStart);
+        
+        acquiredMember.lastUsedTime = now;
+        return acquiredMember;
+        
+    }
+    
+    
+    void release(final Member<T> member) {
+        member.lock.unlock();
+    }
+    
+    
+    int getSize() {
+        return this.members.length;
+    }
+    
+    
+    long getWaitCount() {
+        return this.waitCount.get();
+    }
+    
+    
+    long getWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(this.waitTimeNanos.get());
+    }
+    
+    
+    
+    /*
+     * Adds a new member to the pool (if it has not reached its maximum size 
+     * yet) and returns it already acquired.
+     */
+    private Member<T> grow(final long now) {
+        
+        synchronized (this.resizeLock) {
+            
+            final Member<T>[] currentMembers = this.members;
+            if (currentMembers.length >= this.maxSize) {
+                return null;
+            }
+            
+            final Member<T> newMember = 
+                new Member<T>(this.memberFactory.createMember(), now);
+            newMember.lock.lock();
+            
+            final Member<T>[] newMembers = newMemberArray(currentMembers.length + 1);
+            System.arraycopy(currentMembers, 0, newMembers, 0, currentMembers.length);
+            newMembers[currentMembers.length] = newMember;
+            this.members = newMembers;
+            
+            return newMember;
+            
+        }
+        
+    }
+    
+    
+    /*
+     * Removes the members added by growth which have not been used during
+     * the idle time. Threads which already obtained them from the previous
+     * array of members can still use them safely.
+     */
+    private void shrink(final long now) {
+        
+        synchronized (this.resizeLock) {
+            
+            if (now - this.lastIdleCheckTime < this.idleTime) {
+                return;
+            }
+            this.lastIdleCheckTime = now;
+            
+            final Member<T>[] currentMembers = this.members;
+            int newSize = currentMembers.length;
+            while (newSize > this.minSize && 
+                    now - currentMembers[newSize - 1].lastUsedTime >= this.idleTime &&
+                    !currentMembers[newSize - 1].lock.isLocked()) {
+                newSize--;
+            }
+            
+            if (newSize < currentMembers.length) {
+                final Member<T>[] newMembers = newMemberArray(newSize);
+                System.arraycopy(currentMembers, 0, newMembers, 0, newSize);
+                this.members = newMembers;
+            }
+            
+        }
+        
+    }
+    
+    
+    @SuppressWarnings("unchecked")
+    private static <T> Member<T>[] newMemberArray(final int size) {
+        return new Member[size];
+    }
+    
+    
+    
+    static final class Member<T> {
+        
+        final T encryptor;
+        final ReentrantLock lock = new ReentrantLock();
+        volatile long lastUsedTime;
+        
+        Member(final T encryptor, final long lastUsedTime) {
+            super();
+            this.encryptor = encryptor;
+            this.lastUsedTime = lastUsedTime;
+        }
+        
+    }
+    
+}
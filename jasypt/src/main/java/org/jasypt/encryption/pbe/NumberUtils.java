@@ -35,30 +35,28 @@ import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
 final class NumberUtils {
 
     
-    static byte[] byteArrayFromInt(final int number) {
-        final byte b0 = (byte) (0xff & number);
-        final byte b1 = (byte) (0xff & (number >> 8));
-        final byte b2 = (byte) (0xff & (number >> 16));
-        final byte b3 = (byte) (0xff & (number >> 24));
-        return new byte[] {b3,b2,b1,b0};
+    static void writeIntToByteArray(final int number, final byte[] byteArray, final int offset) {
+        byteArray[offset] = (byte) (0xff & (number >> 24));
+        byteArray[offset + 1] = (byte) (0xff & (number >> 16));
+        byteArray[offset + 2] = (byte) (0xff & (number >> 8));
+        byteArray[offset + 3] = (byte) (0xff & number);
     }
    
    
-    static int intFromByteArray(final byte[] byteArray) {
-        
-        if (byteArray == null || byteArray.length == 0) {
-            throw new IllegalArgumentException(
-                    "Cannot convert an empty array into an int");
-        }
-        int result = (0xff & byteArray[0]);
-        for (int i = 1; i < byteArray.length; i++) {
-            result = (result << 8) | (0xff & byteArray[i]);
+    static int intFromByteArray(final byte[] byteArray, final int offset, final int length) {
+        int result = (0xff & byteArray[offset]);
+        for (int i = 1; i < length; i++) {
+            result = (result << 8) | (0xff & byteArray[offset + i]);
         }
-        
         return result;
     }
 
     
+    /*
+     * The returned array contains the encrypted message followed by its
+     * 4-byte length suffix (which should be ignored for decryption). If 
+     * no padding is needed, the received array itself is returned.
+     */
     static byte[] processBigIntegerEncryptedByteArray(
             final byte[] byteArray, final int signum) {
         
@@ -67,14 +65,8 @@ final class NumberUtils {
             
             final int initialSize = byteArray.length;
             
-            final byte[] encryptedMessageExpectedSizeBytes = new byte[4];
-            System.arraycopy(byteArray, (initialSize - 4), encryptedMessageExpectedSizeBytes, 0, 4);
-            
-            final byte[] processedByteArray = new byte[initialSize - 4];
-            System.arraycopy(byteArray, 0, processedByteArray, 0, (initialSize - 4));
-            
             final int expectedSize = 
-                NumberUtils.intFromByteArray(encryptedMessageExpectedSizeBytes);
+                NumberUtils.intFromByteArray(byteArray, (initialSize - 4), 4);
             if (expectedSize < 0 || expectedSize > maxSafeSizeInBytes()) {
                 throw new EncryptionOperationNotPossibleException();
             }
@@ -82,33 +74,37 @@ final class NumberUtils {
             // If expected and real sizes do not match, we will need to pad
             // (this happens because BigInteger removes 0x0's and -0x1's in
             // the leftmost side).
-            if (processedByteArray.length != expectedSize) {
+            if ((initialSize - 4) != expectedSize) {
 
                 // BigInteger can have removed, in the leftmost side:
                 //      * 0x0's: for not being significative
                 //      * -0x1's: for being translated as the "signum"
                 final int sizeDifference = 
-                    (expectedSize - processedByteArray.length);
+                    (expectedSize - (initialSize - 4));
 
-                final byte[] paddedProcessedByteArray = new byte[expectedSize];
+                final byte[] paddedByteArray = new byte[expectedSize + 4];
                 for (int i = 0; i < sizeDifference; i++) {
-                    paddedProcessedByteArray[i] = (signum >= 0)? (byte)0x0 : (byte)-0x1;
+                    paddedByteArray[i] = (signum >= 0)? (byte)0x0 : (byte)-0x1;
                 }
                     
 
                 // Finally, the encrypted message bytes are represented
                 // as they supposedly were when they were encrypted.
-                System.arraycopy(processedByteArray, 0, paddedProcessedByteArray, sizeDifference, processedByteArray.length);
+                System.arraycopy(byteArray, 0, paddedByteArray, sizeDifference, initialSize);
                 
-                return paddedProcessedByteArray;
+                return paddedByteArray;
                 
             }
             
-            return processedByteArray;
+            return byteArray;
             
         }
-            
-        return (byte[]) byteArray.clone();
+        
+        // Too short to contain a length suffix: the whole array is 
+        // considered the encrypted message
+        final byte[] suffixedByteArray = new byte[byteArray.length + 4];
+        System.arraycopy(byteArray, 0, suffixedByteArray, 0, byteArray.length);
+        return suffixedByteArray;
         
     }
     
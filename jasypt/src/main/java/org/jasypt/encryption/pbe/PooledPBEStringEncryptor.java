@@ -20,8 +20,12 @@
 package org.jasypt.encryption.pbe;
 
 import java.security.Provider;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.jasypt.commons.CommonUtils;
+import org.jasypt.commons.PoolMemberSelector;
+import org.jasypt.encryption.CharSequenceStringEncryptor;
 import org.jasypt.encryption.pbe.config.PBEConfig;
 import org.jasypt.exceptions.AlreadyInitializedException;
 import org.jasypt.iv.IvGenerator;
@@ -35,7 +39,8 @@ import org.jasypt.salt.SaltGenerator;
  * <p>
  * Pooled implementation of {@link PBEStringEncryptor} that in fact contains
  * an array of {@link StandardPBEStringEncryptor} objects which are used
- * to attend encrypt and decrypt requests in round-robin. This should
+ * to attend encrypt and decrypt requests in round-robin (or following the
+ * configured pool selection strategy). This should
  * result in higher performance in multiprocessor systems.
  * </p>
  * <p>
@@ -52,17 +57,34 @@ import org.jasypt.salt.SaltGenerator;
  * @author Daniel Fern&aacute;ndez
  *
  */
-public final class PooledPBEStringEncryptor implements PBEStringCleanablePasswordEncryptor {
+public final class PooledPBEStringEncryptor 
+        implements PBEStringCleanablePasswordEncryptor, CharSequenceStringEncryptor {
 
+    /**
+     * Default time (in milliseconds) after which idle encryptors added to
+     * a growing pool are removed, set to 60 seconds.
+     * 
+     * @since 1.9.4
+     */
+    public static final long DEFAULT_POOL_IDLE_TIME = 60000L;
+    
     
     private final StandardPBEStringEncryptor firstEncryptor;
     
     private PBEConfig config = null;
     private int poolSize = 0;
     private boolean poolSizeSet = false;
+    private String poolSelectionStrategy = null;
+    private boolean poolSelectionStrategySet = false;
+    private int maxPoolSize = 0;
+    private boolean maxPoolSizeSet = false;
+    private long poolIdleTime = DEFAULT_POOL_IDLE_TIME;
     
     private StandardPBEStringEncryptor[] pool;
-    private int roundRobin = 0;
+    private PoolMemberSelector poolMemberSelector = null;
+    
+    // Only used if the pool is allowed to grow (maxPoolSize > poolSize)
+    private ElasticEncryptorPool<StandardPBEStringEncryptor> elasticPool = null;
 
 
     /*
@@ -71,7 +93,10 @@ public final class PooledPBEStringEncryptor implements PBEStringCleanablePasswor
      * Once initialized, no further modifications to its configuration will
      * be allowed.
      */
-    private boolean initialized = false;
+    private volatile boolean initialized = false;
+    
+    // Background initialization, if started (see initializeAsync())
+    private FutureTask<Object> asyncInitialization = null;
     
     
     
@@ -291,7 +316,12 @@ public final class PooledPBEStringEncryptor implements PBEStringCleanablePasswor
      * </p>
      * <ul>
      *   <li><tt><b>base64</b></tt> (default)</li>
+     *   <li><tt><b>base64-unpadded</b></tt></li>
+     *   <li><tt><b>base64url</b></tt></li>
+     *   <li><tt><b>base64url-unpadded</b></tt></li>
      *   <li><tt><b>hexadecimal</b></tt></li>
+     *   <li>Any other output type registered at 
+     *       {@link org.jasypt.codec.StringOutputCodecs}</li>
      * </ul>
      * <p>
      * If not set, null will be returned.
@@ -325,6 +355,138 @@ public final class PooledPBEStringEncryptor implements PBEStringCleanablePasswor
     }
 
     
+    /**
+     * <p>
+     * Sets the strategy used for selecting the pool member that will attend
+     * each request. Available strategies are:
+     * </p>
+     * <ul>
+     *   <li><tt><b>round-robin</b></tt> (default)</li>
+     *   <li><tt><b>thread</b></tt>: each thread is always attended by the
+     *       same encryptor.</li>
+     *   <li><tt><b>least-busy</b></tt>: encryptors being used by other threads
+     *       are skipped if possible.</li>
+     * </ul>
+     * <p>
+     * None of these strategies acquire a pool-wide lock.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param poolSelectionStrategy the pool selection strategy
+     */
+    public synchronized void setPoolSelectionStrategy(final String poolSelectionStrategy) {
+        CommonUtils.validateNotEmpty(poolSelectionStrategy, 
+                "Pool selection strategy cannot be set empty");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.poolSelectionStrategy = 
+            PoolMemberSelector.getStandardStrategy(poolSelectionStrategy);
+        this.poolSelectionStrategySet = true;
+    }
+
+
+    
+    /**
+     * <p>
+     * Sets the maximum size to which the pool of encryptors can grow. If
+     * set to a value higher than the pool size, a caller which has to wait 
+     * for a busy encryptor for more than a millisecond will make the 
+     * pool grow by one encryptor, created from the key of the first one
+     * (so key obtention is not repeated). Encryptors added this way are
+     * removed after having been idle for the pool idle time.
+     * </p>
+     * <p>
+     * If not set (or not higher than the pool size), the pool will have a 
+     * fixed size.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param maxPoolSize the maximum size of the pool
+     */
+    public synchronized void setMaxPoolSize(final int maxPoolSize) {
+        CommonUtils.validateIsTrue(maxPoolSize > 0, "Maximum pool size be > 0");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.maxPoolSize = maxPoolSize;
+        this.maxPoolSizeSet = true;
+    }
+
+    
+    /**
+     * <p>
+     * Sets the time (in milliseconds) after which idle encryptors added
+     * to a growing pool are removed. Default is 
+     * {@link #DEFAULT_POOL_IDLE_TIME}. Only applies if a maximum
+     * pool size has been set.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param poolIdleTime the idle time, in milliseconds
+     */
+    public synchronized void setPoolIdleTime(final long poolIdleTime) {
+        CommonUtils.validateIsTrue(poolIdleTime > 0L, "Pool idle time be > 0");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.poolIdleTime = poolIdleTime;
+    }
+
+    
+    /**
+     * <p>
+     * Returns the current size of the pool, which can only change if a 
+     * maximum pool size has been set. If the encryptor has not been 
+     * initialized yet, returns 0.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @return the current size of the pool
+     */
+    public int getCurrentPoolSize() {
+        if (!isInitialized()) {
+            return 0;
+        }
+        return (this.elasticPool != null? this.elasticPool.getSize() : this.poolSize);
+    }
+
+    
+    /**
+     * <p>
+     * Returns the number of times callers had to wait for a busy encryptor.
+     * Only measured if a maximum pool size has been set (0 otherwise).
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @return the number of waits
+     */
+    public long getPoolWaitCount() {
+        return (this.elasticPool != null? this.elasticPool.getWaitCount() : 0L);
+    }
+
+    
+    /**
+     * <p>
+     * Returns the total time (in milliseconds) callers have waited for
+     * busy encryptors. Only measured if a maximum pool size has been set 
+     * (0 otherwise).
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @return the total wait time, in milliseconds
+     */
+    public long getPoolWaitTime() {
+        return (this.elasticPool != null? this.elasticPool.getWaitTime() : 0L);
+    }
+
+    
     
     
     /**
@@ -396,6 +558,19 @@ public final class PooledPBEStringEncryptor implements PBEStringCleanablePasswor
                     ((this.poolSizeSet) || (configPoolSize == null))?
                             this.poolSize : configPoolSize.intValue();
                 
+                final String configPoolSelectionStrategy = 
+                    this.config.getPoolSelectionStrategy();
+                
+                this.poolSelectionStrategy = 
+                    ((this.poolSelectionStrategySet) || (configPoolSelectionStrategy == null))?
+                            this.poolSelectionStrategy : configPoolSelectionStrategy;
+                
+                final Integer configMaxPoolSize = this.config.getMaxPoolSize();
+                
+                this.maxPoolSize = 
+                    ((this.maxPoolSizeSet) || (configMaxPoolSize == null))?
+                            this.maxPoolSize : configMaxPoolSize.intValue();
+                
             }
             
             if (this.poolSize <= 0) {
@@ -404,11 +579,65 @@ public final class PooledPBEStringEncryptor implements PBEStringCleanablePasswor
             
             this.pool = this.firstEncryptor.cloneAndInitializeEncryptor(this.poolSize);
             
+            if (this.maxPoolSize > this.poolSize) {
+                this.elasticPool = 
+                    new ElasticEncryptorPool<StandardPBEStringEncryptor>(
+                            this.pool, this.maxPoolSize, this.poolIdleTime, 
+                            this.poolSelectionStrategy, 
+                            new ElasticEncryptorPool.MemberFactory<StandardPBEStringEncryptor>() {
+                                public StandardPBEStringEncryptor createMember() {
+                                    return PooledPBEStringEncryptor.this.firstEncryptor.cloneInitializedEncryptor();
+                                }
+                            });
+            } else {
+                this.poolMemberSelector = 
+                    new PoolMemberSelector(this.poolSize, this.poolSelectionStrategy);
+            }
+            
             this.initialized = true;
             
         }
         
     }
+
+    
+    /**
+     * <p>
+     * Initialize the encryptor in a background thread, returning
+     * immediately. Encryption and decryption operations called before
+     * initialization finishes will block until it does.
+     * </p>
+     * <p>
+     * If background initialization fails, the next operation will try to
+     * initialize the encryptor again (and will throw the corresponding
+     * exception if it fails again).
+     * </p>
+     * <p>
+     * Background initialization is only started once: further calls to 
+     * this method return the same <tt>Future</tt>.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @return a <tt>Future</tt> which can be used for waiting for 
+     *         initialization to finish and checking whether it failed. 
+     */
+    public synchronized Future<?> initializeAsync() {
+        if (this.asyncInitialization == null) {
+            this.asyncInitialization = 
+                new FutureTask<Object>(
+                        new Runnable() {
+                            public void run() {
+                                initialize();
+                            }
+                        }, null);
+            final Thread initializationThread = 
+                new Thread(this.asyncInitialization, "jasypt-" + getClass().getSimpleName() + "-init");
+            initializationThread.setDaemon(true);
+            initializationThread.start();
+        }
+        return this.asyncInitialization;
+    }
     
     
     /**
@@ -456,13 +685,12 @@ public final class PooledPBEStringEncryptor implements PBEStringCleanablePasswor
             initialize();
         }
         
-        int poolPosition;
-        synchronized(this) {
-            poolPosition = this.roundRobin;
-            this.roundRobin = (this.roundRobin + 1) % this.poolSize;
+        final Object member = acquireMember();
+        try {
+            return memberEncryptor(member).encrypt(message);
+        } finally {
+            releaseMember(member);
         }
-
-        return this.pool[poolPosition].encrypt(message);
         
     }
 
@@ -502,15 +730,187 @@ public final class PooledPBEStringEncryptor implements PBEStringCleanablePasswor
             initialize();
         }
         
-        int poolPosition;
-        synchronized(this) {
-            poolPosition = this.roundRobin;
-            this.roundRobin = (this.roundRobin + 1) % this.poolSize;
+        final Object member = acquireMember();
+        try {
+            return memberEncryptor(member).decrypt(encryptedMessage);
+        } finally {
+            releaseMember(member);
         }
         
-        return this.pool[poolPosition].decrypt(encryptedMessage);
+    }
+
+
+    
+    /**
+     * <p>
+     * Encrypts a message (any <tt>CharSequence</tt>) without creating
+     * an intermediate <tt>String</tt>.
+     * </p>
+     * 
+     * @param message the message to be encrypted
+     * @return the result of encryption 
+     * @throws EncryptionOperationNotPossibleException if the encryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @see StandardPBEStringEncryptor#encrypt(CharSequence)
+     * @since 1.9.4
+     */
+    public String encrypt(final CharSequence message) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final Object member = acquireMember();
+        try {
+            return memberEncryptor(member).encrypt(message);
+        } finally {
+            releaseMember(member);
+        }
+        
+    }
+
+    
+    /**
+     * <p>
+     * Encrypts the specified portion of a char array without creating
+     * an intermediate <tt>String</tt>.
+     * </p>
+     * 
+     * @param message the array containing the message to be encrypted
+     * @param messageOffset the offset at which the message starts
+     * @param messageLength the length of the message
+     * @return the result of encryption 
+     * @throws EncryptionOperationNotPossibleException if the encryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @see StandardPBEStringEncryptor#encrypt(char[], int, int)
+     * @since 1.9.4
+     */
+    public String encrypt(final char[] message, final int messageOffset, final int messageLength) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final Object member = acquireMember();
+        try {
+            return memberEncryptor(member).encrypt(message, messageOffset, messageLength);
+        } finally {
+            releaseMember(member);
+        }
+        
+    }
+
+    
+    /**
+     * <p>
+     * Decrypts a message, writing the result into the output array starting
+     * at the specified offset, without creating an intermediate <tt>String</tt>.
+     * </p>
+     * 
+     * @param encryptedMessage the String message to be decrypted
+     * @param output the array the result will be written to
+     * @param outputOffset the offset at which the result will be written
+     * @return the number of chars written, or -1 if the encrypted message
+     *         is null
+     * @throws EncryptionOperationNotPossibleException if the decryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @see StandardPBEStringEncryptor#decryptTo(String, char[], int)
+     * @since 1.9.4
+     */
+    public int decryptTo(final String encryptedMessage, final char[] output, final int outputOffset) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final Object member = acquireMember();
+        try {
+            return memberEncryptor(member).decryptTo(encryptedMessage, output, outputOffset);
+        } finally {
+            releaseMember(member);
+        }
+        
+    }
+
+    
+    /**
+     * <p>
+     * Decrypts a message, appending the result to the specified 
+     * <tt>Appendable</tt> object without creating an intermediate <tt>String</tt>.
+     * </p>
+     * 
+     * @param encryptedMessage the String message to be decrypted
+     * @param output the object the result will be appended to
+     * @return the number of chars appended, or -1 if the encrypted message
+     *         is null
+     * @throws EncryptionOperationNotPossibleException if the decryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @see StandardPBEStringEncryptor#decryptTo(String, Appendable)
+     * @since 1.9.4
+     */
+    public int decryptTo(final String encryptedMessage, final Appendable output) {
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final Object member = acquireMember();
+        try {
+            return memberEncryptor(member).decryptTo(encryptedMessage, output);
+        } finally {
+            releaseMember(member);
+        }
         
     }
 
     
+    
+    /*
+     * Acquires a member of the pool (from the elastic pool, if the pool can
+     * grow, or by means of the member selector if not). The returned object 
+     * identifies the member, and must be used for releasing it once the 
+     * operation has finished.
+     */
+    private Object acquireMember() {
+        if (this.elasticPool != null) {
+            return this.elasticPool.acquire();
+        }
+        return Integer.valueOf(this.poolMemberSelector.acquire());
+    }
+    
+    
+    @SuppressWarnings("unchecked")
+    private StandardPBEStringEncryptor memberEncryptor(final Object member) {
+        if (this.elasticPool != null) {
+            return ((ElasticEncryptorPool.Member<StandardPBEStringEncryptor>) member).encryptor;
+        }
+        return this.pool[((Integer) member).intValue()];
+    }
+    
+    
+    @SuppressWarnings("unchecked")
+    private void releaseMember(final Object member) {
+        if (this.elasticPool != null) {
+            this.elasticPool.release((ElasticEncryptorPool.Member<StandardPBEStringEncryptor>) member);
+        } else {
+            this.poolMemberSelector.release(((Integer) member).intValue());
+        }
+    }
+    
 }
@@ -22,7 +22,6 @@ package org.jasypt.encryption.pbe;
 import java.math.BigInteger;
 import java.security.Provider;
 
-import org.jasypt.commons.CommonUtils;
 import org.jasypt.encryption.pbe.config.PBEConfig;
 import org.jasypt.exceptions.EncryptionInitializationException;
 import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
@@ -351,6 +350,132 @@ public final class StandardPBEBigIntegerEncryptor
         this.byteEncryptor.setProvider(provider);
     }
 
+
+    /**
+     * <p>
+     * Sets whether each thread using this encryptor should be given its own
+     * pair of <tt>Cipher</tt> objects, so that no locks are acquired during 
+     * encryption or decryption. Default is <tt>false</tt>.
+     * </p>
+     * <p>
+     * See {@link StandardPBEByteEncryptor#setThreadLocalCiphers(boolean)}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param threadLocalCiphers whether ciphers should be thread-local or not.
+     */
+    public void setThreadLocalCiphers(final boolean threadLocalCiphers) {
+        this.byteEncryptor.setThreadLocalCiphers(threadLocalCiphers);
+    }
+
+
+    /**
+     * <p>
+     * Sets the maximum number of entries of the cache of derived keys used
+     * for decryption with PBES2 algorithms. Default is <tt>0</tt> (no cache).
+     * </p>
+     * <p>
+     * See {@link StandardPBEByteEncryptor#setDerivedKeyCacheSize(int)}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param derivedKeyCacheSize the maximum number of cached keys.
+     */
+    public void setDerivedKeyCacheSize(final int derivedKeyCacheSize) {
+        this.byteEncryptor.setDerivedKeyCacheSize(derivedKeyCacheSize);
+    }
+
+
+    /**
+     * <p>
+     * Sets the time (in milliseconds) during which a key will be kept in the
+     * derived key cache. Default is <tt>0</tt> (keys do not expire).
+     * </p>
+     * <p>
+     * See {@link StandardPBEByteEncryptor#setDerivedKeyCacheTimeToLive(long)}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param derivedKeyCacheTimeToLive the time to live of cached keys, in 
+     *                                  milliseconds.
+     */
+    public void setDerivedKeyCacheTimeToLive(final long derivedKeyCacheTimeToLive) {
+        this.byteEncryptor.setDerivedKeyCacheTimeToLive(derivedKeyCacheTimeToLive);
+    }
+
+
+    /**
+     * <p>
+     * Sets the maximum number of encrypted messages for which the same salt
+     * (and therefore the same derived key) will be used with PBES2 
+     * algorithms. Default is <tt>0</tt>.
+     * </p>
+     * <p>
+     * See {@link StandardPBEByteEncryptor#setSaltReuseMaxMessages(int)}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param saltReuseMaxMessages the maximum number of messages encrypted
+     *                             with the same salt.
+     */
+    public void setSaltReuseMaxMessages(final int saltReuseMaxMessages) {
+        this.byteEncryptor.setSaltReuseMaxMessages(saltReuseMaxMessages);
+    }
+
+
+    /**
+     * <p>
+     * Sets the maximum time (in milliseconds) during which the same salt
+     * (and therefore the same derived key) will be used for encrypting 
+     * messages with PBES2 algorithms. Default is <tt>0</tt>.
+     * </p>
+     * <p>
+     * See {@link StandardPBEByteEncryptor#setSaltReuseMaxTime(long)}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param saltReuseMaxTime the maximum time, in milliseconds, during which
+     *                         the same salt will be used.
+     */
+    public void setSaltReuseMaxTime(final long saltReuseMaxTime) {
+        this.byteEncryptor.setSaltReuseMaxTime(saltReuseMaxTime);
+    }
+
+
+    /**
+     * <p>
+     * Returns the number of decryption operations which found their key 
+     * in the derived key cache.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @return the number of cache hits, or 0 if no cache is being used.
+     */
+    public long getDerivedKeyCacheHits() {
+        return this.byteEncryptor.getDerivedKeyCacheHits();
+    }
+
+
+    /**
+     * <p>
+     * Returns the number of decryption operations which did not find their
+     * key in the derived key cache.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @return the number of cache misses, or 0 if no cache is being used.
+     */
+    public long getDerivedKeyCacheMisses() {
+        return this.byteEncryptor.getDerivedKeyCacheMisses();
+    }
+
     
 
     
@@ -363,7 +488,7 @@ public final class StandardPBEBigIntegerEncryptor
     /*
      * Clone this encryptor 'size' times and initialize it.
      * This encryptor will be at position 0 itself.
-     * Clones will NOT be initialized.
+     * Clones will be returned initialized.
      */
     synchronized StandardPBEBigIntegerEncryptor[] cloneAndInitializeEncryptor(final int size) {
         
@@ -383,6 +508,17 @@ public final class StandardPBEBigIntegerEncryptor
     }
     
     
+    /*
+     * Create a new initialized encryptor with the same configuration as 
+     * this one (which must be already initialized), sharing its key.
+     */
+    synchronized StandardPBEBigIntegerEncryptor cloneInitializedEncryptor() {
+        final StandardPBEBigIntegerEncryptor clone = 
+            new StandardPBEBigIntegerEncryptor(this.byteEncryptor.cloneInitializedEncryptor());
+        return clone;
+    }
+    
+    
     
 
     /**
@@ -499,20 +635,19 @@ public final class StandardPBEBigIntegerEncryptor
             // Get the number in binary form
             final byte[] messageBytes = message.toByteArray();
             
-            // The StandardPBEByteEncryptor does its job.
-            final byte[] encryptedMessage = this.byteEncryptor.encrypt(messageBytes);
+            // The StandardPBEByteEncryptor does its job, leaving room
+            // for the length suffix at the end of the result.
+            final byte[] encryptionResult = 
+                this.byteEncryptor.encrypt(messageBytes, 4);
 
             // The length of the encrypted message will be stored
             // with the result itself so that we can correctly rebuild
             // the complete byte array when decrypting (BigInteger will
             // ignore all "0x0" bytes in the leftmost side, and also "-0x1" 
             // in the leftmost side will be translated as signum).
-            final byte[] encryptedMessageLengthBytes =
-                NumberUtils.byteArrayFromInt(encryptedMessage.length);
-            
-            // Append the length bytes to the encrypted message
-            final byte[] encryptionResult = 
-                CommonUtils.appendArrays(encryptedMessage, encryptedMessageLengthBytes);
+            final int encryptedMessageLength = encryptionResult.length - 4;
+            NumberUtils.writeIntToByteArray(
+                    encryptedMessageLength, encryptionResult, encryptedMessageLength);
 
             // Finally, return a new number built from the encrypted bytes
             return new BigInteger(encryptionResult);
@@ -570,8 +705,10 @@ public final class StandardPBEBigIntegerEncryptor
                 NumberUtils.processBigIntegerEncryptedByteArray(
                         encryptedMessageBytes, encryptedMessage.signum());
             
-            // Let the byte encyptor decrypt
-            byte[] message = this.byteEncryptor.decrypt(encryptedMessageBytes);
+            // Let the byte encyptor decrypt (ignoring the length suffix)
+            byte[] message = 
+                this.byteEncryptor.decrypt(
+                        encryptedMessageBytes, 0, (encryptedMessageBytes.length - 4));
 
             // Finally, return a new number built from the decrypted bytes
             return new BigInteger(message);
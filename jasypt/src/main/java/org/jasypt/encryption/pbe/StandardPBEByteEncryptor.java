@@ -20,9 +20,15 @@
 package org.jasypt.encryption.pbe;
 
 import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.Provider;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
@@ -30,8 +36,10 @@ import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.PBEParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.jasypt.commons.CommonUtils;
+import org.jasypt.encryption.ByteBufferEncryptor;
 import org.jasypt.encryption.pbe.config.PBECleanablePasswordConfig;
 import org.jasypt.encryption.pbe.config.PBEConfig;
 import org.jasypt.exceptions.AlreadyInitializedException;
@@ -112,6 +120,8 @@ import org.jasypt.salt.SaltGenerator;
  *   <li><i>Encrypting messages</i>, by calling the <tt>encrypt(...)</tt> method.</li>
  *   <li><i>Decrypting messages</i>, by calling the <tt>decrypt(...)</tt> method.</li> 
  * </ul>
+ * Both operations can also read their input from and write their results into
+ * caller-supplied arrays or NIO buffers (see {@link ByteBufferEncryptor}).
  * <b>If a random salt generator is used, two encryption results for 
  * the same message will always be different
  * (except in the case of random salt coincidence)</b>. This may enforce
@@ -131,7 +141,8 @@ import org.jasypt.salt.SaltGenerator;
  * @author Daniel Fern&aacute;ndez
  * 
  */
-public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordEncryptor {
+public final class StandardPBEByteEncryptor 
+        implements PBEByteCleanablePasswordEncryptor, ByteBufferEncryptor {
 
 
     /**
@@ -157,6 +168,16 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
      */
     public static final int DEFAULT_IV_SIZE_BYTES = 16;
 
+    
+    // PBES2 algorithms (PBEWithHmacSHAxxxAndAES_yyy) perform a PBKDF2 key
+    // derivation and then use AES in CBC mode. Only for these algorithms
+    // can derived keys be obtained (and cached) by the encryptor itself.
+    private static final Pattern PBES2_ALGORITHM_PATTERN = 
+        Pattern.compile("PBEWITHHMAC(SHA[0-9]+)ANDAES_([0-9]+)", Pattern.CASE_INSENSITIVE);
+    private static final String PBES2_KEY_FACTORY_ALGORITHM_PREFIX = "PBKDF2WithHmac";
+    private static final String PBES2_CIPHER_ALGORITHM = "AES/CBC/PKCS5Padding";
+    private static final String PBES2_KEY_ALGORITHM = "AES";
+
 
     // Algorithm (and provider-related info) for Password Based Encoding.
     private String algorithm = DEFAULT_ALGORITHM;
@@ -210,6 +231,23 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
     private boolean ivGeneratorSet = false;
     private boolean providerNameSet = false;
     private boolean providerSet = false;
+    private boolean saltReuseMaxMessagesSet = false;
+    private boolean saltReuseMaxTimeSet = false;
+    
+    // Whether each thread will be given its own pair of Cipher objects
+    // instead of all threads sharing (and synchronizing on) the same ones.
+    private boolean threadLocalCiphers = false;
+    
+    // Maximum size (0 = no cache) and time-to-live in milliseconds (0 = no
+    // expiration) of the cache of derived keys used for decryption.
+    private int derivedKeyCacheSize = 0;
+    private long derivedKeyCacheTimeToLive = 0L;
+    
+    // Maximum number of messages (0 = no limit) and maximum time in 
+    // milliseconds (0 = no limit) during which the same salt will be reused
+    // for encryption. If both are 0, a new salt is used for every message.
+    private int saltReuseMaxMessages = 0;
+    private long saltReuseMaxTime = 0L;
     
     
     /*
@@ -228,6 +266,30 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
     private Cipher encryptCipher = null;
     private Cipher decryptCipher = null;
     
+    // Block size of the cipher (0 for stream ciphers), used for computing
+    // output sizes
+    private int cipherBlockSize = 0;
+    
+    // Per-thread ciphers, only used if threadLocalCiphers is true.
+    private ThreadLocal<Cipher> threadEncryptCipher = null;
+    private ThreadLocal<Cipher> threadDecryptCipher = null;
+    
+    // Derived key cache, key factory algorithm, key length and ciphers, only 
+    // used if the algorithm is a PBES2 one and a cache size has been set.
+    private DerivedKeyCache derivedKeyCache = null;
+    private String derivedKeyFactoryAlgorithm = null;
+    private int derivedKeyLengthBits = 0;
+    private Cipher derivedDecryptCipher = null;
+    private ThreadLocal<Cipher> threadDerivedDecryptCipher = null;
+    
+    // Salt reuse window currently being used for encryption (and the ciphers
+    // to be used with its key), only if salt reuse is enabled.
+    private boolean saltReuseEnabled = false;
+    private volatile SaltReuseWindow saltReuseWindow = null;
+    private final Object saltReuseWindowLock = new Object();
+    private Cipher derivedEncryptCipher = null;
+    private ThreadLocal<Cipher> threadDerivedEncryptCipher = null;
+    
 
     // Flag which indicates whether the salt generator being used is a
     // FixedSaltGenerator implementation (in which case some optimizations can
@@ -503,6 +565,207 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
     }
 
 
+    /**
+     * <p>
+     * Sets whether each thread using this encryptor should be given its own
+     * pair of <tt>Cipher</tt> objects. Default is <tt>false</tt>.
+     * </p>
+     * <p>
+     * By default, all threads share the same encryption and decryption
+     * <tt>Cipher</tt> objects, and so encrypt and decrypt operations are 
+     * serialized. If this is set to <tt>true</tt>, each thread will lazily 
+     * create (from the key obtained at initialization) its own ciphers the 
+     * first time it uses the encryptor, and no locks will be acquired during 
+     * encryption or decryption afterwards. This allows throughput to scale 
+     * with the number of processors without the need of a pooled encryptor,
+     * at the cost of keeping one pair of ciphers per thread.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param threadLocalCiphers whether ciphers should be thread-local or not.
+     */
+    public synchronized void setThreadLocalCiphers(final boolean threadLocalCiphers) {
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.threadLocalCiphers = threadLocalCiphers;
+    }
+
+
+    /**
+     * <p>
+     * Sets the maximum number of entries of the cache of derived keys used
+     * for decryption. Default is <tt>0</tt> (no cache).
+     * </p>
+     * <p>
+     * PBES2 algorithms like <tt>PBEWithHMACSHA512AndAES_256</tt> perform a
+     * full PBKDF2 key derivation for each decrypted message, using the salt
+     * included in it. If this cache is enabled, keys derived during
+     * decryption will be kept (in least-recently-used order) indexed by salt,
+     * so that decrypting further messages with the same salt (e.g. the same
+     * encrypted value read repeatedly) will not require key derivation at all.
+     * </p>
+     * <p>
+     * This setting is ignored for algorithms other than the PBES2 ones
+     * (<tt>PBEWithHMACSHAxxxAndAES_yyy</tt>), when no IV generator 
+     * producing non-empty IVs is set, and also when a provider or provider 
+     * name has been explicitly set (keys are then always derived by the 
+     * provider's own cipher). The bytes of keys leaving the cache are zeroed.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param derivedKeyCacheSize the maximum number of cached keys.
+     */
+    public synchronized void setDerivedKeyCacheSize(final int derivedKeyCacheSize) {
+        CommonUtils.validateIsTrue(derivedKeyCacheSize >= 0, 
+                "Derived key cache size cannot be negative");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.derivedKeyCacheSize = derivedKeyCacheSize;
+    }
+
+
+    /**
+     * <p>
+     * Sets the time (in milliseconds) during which a key will be kept in the
+     * derived key cache since the moment it was derived. Default is 
+     * <tt>0</tt> (keys do not expire).
+     * </p>
+     * <p>
+     * This setting is ignored if no derived key cache size has been set
+     * (see {@link #setDerivedKeyCacheSize(int)}).
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param derivedKeyCacheTimeToLive the time to live of cached keys, in 
+     *                                  milliseconds.
+     */
+    public synchronized void setDerivedKeyCacheTimeToLive(final long derivedKeyCacheTimeToLive) {
+        CommonUtils.validateIsTrue(derivedKeyCacheTimeToLive >= 0L, 
+                "Derived key cache time to live cannot be negative");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.derivedKeyCacheTimeToLive = derivedKeyCacheTimeToLive;
+    }
+
+
+    /**
+     * <p>
+     * Sets the maximum number of encrypted messages for which the same salt
+     * (and therefore the same derived key) will be used. Default is 
+     * <tt>0</tt> (salt reuse is disabled unless a maximum time is set, see 
+     * {@link #setSaltReuseMaxTime(long)}).
+     * </p>
+     * <p>
+     * PBES2 algorithms like <tt>PBEWithHMACSHA512AndAES_256</tt> perform a
+     * full PBKDF2 key derivation for every new salt. If salt reuse is enabled,
+     * a salt obtained from the salt generator and its derived key will be
+     * kept and used for encrypting up to this number of messages (or during
+     * the maximum time set), while a new IV is still generated for each
+     * message. The format of the encryption results (salt + IV + encrypted 
+     * message) does not change, so they can be decrypted normally by any 
+     * encryptor configured with the same algorithm and password.
+     * </p>
+     * <p>
+     * This setting is ignored for algorithms other than the PBES2 ones
+     * (<tt>PBEWithHMACSHAxxxAndAES_yyy</tt>), when either the salt or the 
+     * IV generators do not include their values in encryption results (e.g. 
+     * when using fixed salts or no IV), and also when a provider or provider 
+     * name has been explicitly set.
+     * </p>
+     * <p>
+     * If a <tt>PBEConfig</tt> object has been set, the value specified with
+     * this method will override the one returned by 
+     * {@link PBEConfig#getSaltReuseMaxMessages()}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param saltReuseMaxMessages the maximum number of messages encrypted
+     *                             with the same salt.
+     */
+    public synchronized void setSaltReuseMaxMessages(final int saltReuseMaxMessages) {
+        CommonUtils.validateIsTrue(saltReuseMaxMessages >= 0, 
+                "Maximum number of messages for salt reuse cannot be negative");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.saltReuseMaxMessages = saltReuseMaxMessages;
+        this.saltReuseMaxMessagesSet = true;
+    }
+
+
+    /**
+     * <p>
+     * Sets the maximum time (in milliseconds) during which the same salt
+     * (and therefore the same derived key) will be used for encrypting 
+     * messages. Default is <tt>0</tt> (salt reuse is disabled unless a 
+     * maximum number of messages is set, see 
+     * {@link #setSaltReuseMaxMessages(int)}).
+     * </p>
+     * <p>
+     * See {@link #setSaltReuseMaxMessages(int)} for the conditions in which
+     * salt reuse is applied.
+     * </p>
+     * <p>
+     * If a <tt>PBEConfig</tt> object has been set, the value specified with
+     * this method will override the one returned by 
+     * {@link PBEConfig#getSaltReuseMaxTime()}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param saltReuseMaxTime the maximum time, in milliseconds, during which
+     *                         the same salt will be used.
+     */
+    public synchronized void setSaltReuseMaxTime(final long saltReuseMaxTime) {
+        CommonUtils.validateIsTrue(saltReuseMaxTime >= 0L, 
+                "Maximum time for salt reuse cannot be negative");
+        if (isInitialized()) {
+            throw new AlreadyInitializedException();
+        }
+        this.saltReuseMaxTime = saltReuseMaxTime;
+        this.saltReuseMaxTimeSet = true;
+    }
+
+
+    /**
+     * <p>
+     * Returns the number of decryption operations which found their key 
+     * in the derived key cache (and therefore did not need to derive it).
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @return the number of cache hits, or 0 if no cache is being used.
+     */
+    public long getDerivedKeyCacheHits() {
+        final DerivedKeyCache cache = this.derivedKeyCache;
+        return (cache == null? 0L : cache.getHits());
+    }
+
+
+    /**
+     * <p>
+     * Returns the number of decryption operations which did not find their
+     * key in the derived key cache (and therefore had to derive it).
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @return the number of cache misses, or 0 if no cache is being used.
+     */
+    public long getDerivedKeyCacheMisses() {
+        final DerivedKeyCache cache = this.derivedKeyCache;
+        return (cache == null? 0L : cache.getMisses());
+    }
+
+
     
     
 
@@ -514,7 +777,9 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
     /*
      * Clone this encryptor 'size' times and initialize it.
      * This encryptor will be at position 0 itself.
-     * Clones will NOT be initialized.
+     * Clones will be returned initialized, sharing the key obtained from
+     * the password by this encryptor (so that it is obtained only once
+     * for the whole pool).
      */
     synchronized StandardPBEByteEncryptor[] cloneAndInitializeEncryptor(final int size) {
 
@@ -523,15 +788,6 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
                     "Cannot clone encryptor if it has been already initialized");
         }
 
-        // If there is a config object, this forces the password configured value 
-        // (if any) into the this.password property.
-        resolveConfigurationPassword();
-        
-        final char[] copiedPassword = new char[this.password.length];
-        System.arraycopy(this.password, 0, copiedPassword, 0, this.password.length);
-
-        // Initialize the encryptor - note that this will clean the 
-        // password (that's why copied it before)
         initialize();
 
         final StandardPBEByteEncryptor[] clones = new StandardPBEByteEncryptor[size];
@@ -539,35 +795,47 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
         clones[0] = this;
         
         for (int i = 1; i < size; i++) {
-            
-            final StandardPBEByteEncryptor clone = new StandardPBEByteEncryptor();
-            clone.setPasswordCharArray(copiedPassword);
-            if (CommonUtils.isNotEmpty(this.algorithm)) {
-                clone.setAlgorithm(this.algorithm);
-            }
-            clone.setKeyObtentionIterations(this.keyObtentionIterations);
-            if (this.provider != null) {
-                clone.setProvider(this.provider);
-            }
-            if (this.providerName != null) {
-                clone.setProviderName(this.providerName);
-            }
-            if (this.saltGenerator != null) {
-                clone.setSaltGenerator(this.saltGenerator);
-            }
-            if (this.ivGenerator != null) {
-                clone.setIvGenerator(this.ivGenerator);
-            }
-            
-            clones[i] = clone;
-            
+            clones[i] = cloneInitializedEncryptor();
         }
         
-        cleanPassword(copiedPassword);
-        
         return clones;
         
     }
+
+    
+    
+    /*
+     * Create a new encryptor with the same configuration as this one, which
+     * must be already initialized. The clone will be returned initialized, 
+     * sharing the key obtained from the password by this encryptor (so that 
+     * key obtention does not need to be repeated).
+     */
+    synchronized StandardPBEByteEncryptor cloneInitializedEncryptor() {
+
+        if (!isInitialized()) {
+            throw new EncryptionInitializationException(
+                    "Cannot clone encryptor with its key if it has not been initialized");
+        }
+        
+        final StandardPBEByteEncryptor clone = new StandardPBEByteEncryptor();
+        clone.algorithm = this.algorithm;
+        clone.keyObtentionIterations = this.keyObtentionIterations;
+        clone.provider = this.provider;
+        clone.providerName = this.providerName;
+        clone.saltGenerator = this.saltGenerator;
+        clone.ivGenerator = this.ivGenerator;
+        clone.threadLocalCiphers = this.threadLocalCiphers;
+        clone.derivedKeyCacheSize = this.derivedKeyCacheSize;
+        clone.derivedKeyCacheTimeToLive = this.derivedKeyCacheTimeToLive;
+        clone.saltReuseMaxMessages = this.saltReuseMaxMessages;
+        clone.saltReuseMaxTime = this.saltReuseMaxTime;
+        clone.key = this.key;
+        
+        clone.initialize();
+        
+        return clone;
+        
+    }
     
     
     
@@ -668,6 +936,19 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
                 
                 final Provider configProvider = this.config.getProvider();
                 
+                final Integer configSaltReuseMaxMessages = 
+                    this.config.getSaltReuseMaxMessages();
+                if (configSaltReuseMaxMessages != null) {
+                    CommonUtils.validateIsTrue(configSaltReuseMaxMessages.intValue() >= 0, 
+                            "Maximum number of messages for salt reuse cannot be negative");
+                }
+                
+                final Long configSaltReuseMaxTime = this.config.getSaltReuseMaxTime();
+                if (configSaltReuseMaxTime != null) {
+                    CommonUtils.validateIsTrue(configSaltReuseMaxTime.longValue() >= 0L, 
+                            "Maximum time for salt reuse cannot be negative");
+                }
+                
                 this.algorithm = 
                     ((this.algorithmSet) || (configAlgorithm == null))?
                             this.algorithm : configAlgorithm;
@@ -688,6 +969,12 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
                 this.provider = 
                     ((this.providerSet) || (configProvider == null))?
                             this.provider : configProvider;
+                this.saltReuseMaxMessages = 
+                    ((this.saltReuseMaxMessagesSet) || (configSaltReuseMaxMessages == null))?
+                            this.saltReuseMaxMessages : configSaltReuseMaxMessages.intValue();
+                this.saltReuseMaxTime = 
+                    ((this.saltReuseMaxTimeSet) || (configSaltReuseMaxTime == null))?
+                            this.saltReuseMaxTime : configSaltReuseMaxTime.longValue();
                 
             }
             
@@ -708,64 +995,34 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
             
             try {
             
-                // Password cannot be null.
-                if (this.password == null) {
-                    throw new EncryptionInitializationException(
-                            "Password not set for Password Based Encryptor");
-                }
-                
-                // Normalize password to NFC form
-                final char[] normalizedPassword = Normalizer.normalizeToNfc(this.password);
-                
-                /*
-                 * Encryption and decryption Ciphers are created the usual way.
-                 */
-                final PBEKeySpec pbeKeySpec = new PBEKeySpec(normalizedPassword);
-                
-                // We don't need the char[] passwords anymore -> clean!
-                cleanPassword(this.password);
-                cleanPassword(normalizedPassword);
-                
-                
-                if (this.provider != null) {
-                    
-                    final SecretKeyFactory factory =
-                        SecretKeyFactory.getInstance(
-                                this.algorithm, 
-                                this.provider);
-                    
-                    this.key = factory.generateSecret(pbeKeySpec);
+                // If the key was not set when cloning an initialized encryptor,
+                // it has to be obtained from the password.
+                if (this.key == null) {
                     
-                    this.encryptCipher = 
-                        Cipher.getInstance(this.algorithm, this.provider);
-                    this.decryptCipher = 
-                        Cipher.getInstance(this.algorithm, this.provider);
-                    
-                } else if (this.providerName != null) {
-                    
-                    final SecretKeyFactory factory =
-                        SecretKeyFactory.getInstance(
-                                this.algorithm, 
-                                this.providerName);
-                    
-                    this.key = factory.generateSecret(pbeKeySpec);
-                    
-                    this.encryptCipher = 
-                        Cipher.getInstance(this.algorithm, this.providerName);
-                    this.decryptCipher = 
-                        Cipher.getInstance(this.algorithm, this.providerName);
+                    // Password cannot be null.
+                    if (this.password == null) {
+                        throw new EncryptionInitializationException(
+                                "Password not set for Password Based Encryptor");
+                    }
                     
-                } else {
+                    // Normalize password to NFC form
+                    final char[] normalizedPassword = Normalizer.normalizeToNfc(this.password);
                     
-                    final SecretKeyFactory factory =
-                        SecretKeyFactory.getInstance(this.algorithm);
+                    /*
+                     * Encryption and decryption Ciphers are created the usual way.
+                     */
+                    final PBEKeySpec pbeKeySpec = new PBEKeySpec(normalizedPassword);
                     
-                    this.key = factory.generateSecret(pbeKeySpec);
+                    // We don't need the char[] passwords anymore -> clean!
+                    cleanPassword(this.password);
+                    cleanPassword(normalizedPassword);
                     
-                    this.encryptCipher = Cipher.getInstance(this.algorithm);
-                    this.decryptCipher = Cipher.getInstance(this.algorithm);
+                    this.key = createSecretKeyFactory(this.algorithm).generateSecret(pbeKeySpec);
                     
                 }
+                
+                this.encryptCipher = createCipher(this.algorithm);
+                this.decryptCipher = createCipher(this.algorithm);
 
             } catch (EncryptionInitializationException e) {
                 throw e;
@@ -777,6 +1034,7 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
             // The salt size and the IV size for the chosen algorithm are set to be equal
             // to the algorithm's block size (if it is a block algorithm).
             final int algorithmBlockSize = this.encryptCipher.getBlockSize();
+            this.cipherBlockSize = algorithmBlockSize;
             if (algorithmBlockSize > 0) {
                 this.saltSizeBytes = algorithmBlockSize;
                 this.ivSizeBytes = algorithmBlockSize;
@@ -818,6 +1076,65 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
             }
             
             
+            /*
+             * If the algorithm is a PBES2 one, and a derived key cache and/or
+             * salt reuse have been configured, prepare the cache, the salt 
+             * reuse window and the ciphers to be used with the derived keys.
+             * 
+             * Keys are derived from the encoded form of the PBE key, which is
+             * only known to be the (ASCII) password for the default JVM 
+             * provider. If a provider has been explicitly set, keys are
+             * always derived by the PBE cipher itself.
+             */
+            final Matcher pbes2Matcher = PBES2_ALGORITHM_PATTERN.matcher(this.algorithm);
+            final boolean defaultProvider = 
+                (this.provider == null && this.providerName == null);
+            if (pbes2Matcher.matches()) {
+                
+                this.derivedKeyFactoryAlgorithm = 
+                    PBES2_KEY_FACTORY_ALGORITHM_PREFIX + pbes2Matcher.group(1).toUpperCase();
+                this.derivedKeyLengthBits = Integer.parseInt(pbes2Matcher.group(2));
+                
+                this.saltReuseEnabled =
+                    (this.saltReuseMaxMessages > 0 || this.saltReuseMaxTime > 0L) &&
+                    defaultProvider &&
+                    this.saltGenerator.includePlainSaltInEncryptionResults() &&
+                    this.ivGenerator.includePlainIvInEncryptionResults();
+                
+                try {
+                    if (this.derivedKeyCacheSize > 0 && defaultProvider) {
+                        this.derivedDecryptCipher = createCipher(PBES2_CIPHER_ALGORITHM);
+                        this.derivedKeyCache = 
+                            new DerivedKeyCache(
+                                    this.derivedKeyCacheSize, this.derivedKeyCacheTimeToLive,
+                                    PBES2_KEY_ALGORITHM);
+                    }
+                    if (this.saltReuseEnabled) {
+                        this.derivedEncryptCipher = createCipher(PBES2_CIPHER_ALGORITHM);
+                    }
+                } catch (final GeneralSecurityException e) {
+                    throw new EncryptionInitializationException(e);
+                }
+                
+            }
+            
+            
+            if (this.threadLocalCiphers) {
+                this.threadEncryptCipher = 
+                    new ThreadLocalCipher(this.algorithm, Cipher.ENCRYPT_MODE, true);
+                this.threadDecryptCipher = 
+                    new ThreadLocalCipher(this.algorithm, Cipher.DECRYPT_MODE, true);
+                if (this.derivedKeyCache != null) {
+                    this.threadDerivedDecryptCipher = 
+                        new ThreadLocalCipher(PBES2_CIPHER_ALGORITHM, Cipher.DECRYPT_MODE, false);
+                }
+                if (this.saltReuseEnabled) {
+                    this.threadDerivedEncryptCipher = 
+                        new ThreadLocalCipher(PBES2_CIPHER_ALGORITHM, Cipher.ENCRYPT_MODE, false);
+                }
+            }
+            
+            
             this.initialized = true;
             
         }
@@ -927,6 +1244,21 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
             return null;
         }
         
+        return encrypt(message, 0);
+        
+    }
+
+
+    /*
+     * Encrypts the message into a single array, sized before running the
+     * cipher, which will contain the unencrypted salt and IV (if needed), 
+     * the encryption result and, finally, suffixSize bytes left empty for 
+     * the caller to fill (number encryptors store the length of the 
+     * encrypted message there).
+     */
+    byte[] encrypt(final byte[] message, final int suffixSize) 
+            throws EncryptionOperationNotPossibleException {
+        
         // Check initialization
         if (!isInitialized()) {
             initialize();
@@ -934,61 +1266,18 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
         
         try {
 
-            final byte[] salt;
-            byte[] iv = null;
-            byte[] encryptedMessage;
-            if (this.optimizingDueFixedSalt) {
-
-                salt = this.fixedSaltInUse;
-                
-                synchronized (this.encryptCipher) {
-                    encryptedMessage = this.encryptCipher.doFinal(message);
-                }
-                
-            } else {
-            
-                // Create salt
-                salt = this.saltGenerator.generateSalt(this.saltSizeBytes);
-
-                // Create IV
-                iv = this.ivGenerator.generateIv(this.ivSizeBytes);
-
-
-                /*
-                 * Perform encryption using the Cipher
-                 */
-                final PBEParameterSpec parameterSpec = buildPBEParameterSpec(salt, iv);
-    
-                synchronized (this.encryptCipher) {
-                    this.encryptCipher.init(
-                            Cipher.ENCRYPT_MODE, this.key, parameterSpec);
-                    encryptedMessage = this.encryptCipher.doFinal(message);
-                }
-                
-            }
-
-            // We build an array containing both the unencrypted IV
-            // and the result of the encryption. This is done only
-            // if the IV generator we are using specifies to do so.
-            if (this.ivGenerator.includePlainIvInEncryptionResults()) {
-
-                // Insert plain IV before the encryption result
-                encryptedMessage = CommonUtils.appendArrays(iv, encryptedMessage);
-
-            }
-            
-            // Finally we build an array containing both the unencrypted salt
-            // and the result of the encryption. This is done only
-            // if the salt generator we are using specifies to do so.
-            if (this.saltGenerator.includePlainSaltInEncryptionResults()) {
-                
-                // Insert unhashed salt before the encryption result
-                encryptedMessage = CommonUtils.appendArrays(salt, encryptedMessage);
-                
-            }
+            final CipherParameters parameters = obtainEncryptionParameters();
 
+            // The unencrypted salt and IV are only included in results
+            // if the generators we are using specify to do so.
+            final byte[] plainSalt = 
+                (this.saltGenerator.includePlainSaltInEncryptionResults()? parameters.salt : null);
+            final byte[] plainIv = 
+                (this.ivGenerator.includePlainIvInEncryptionResults()? parameters.iv : null);
             
-            return encryptedMessage;
+            return processWithCipher(
+                    Cipher.ENCRYPT_MODE, parameters, plainSalt, plainIv, 
+                    message, 0, message.length, suffixSize);
             
         } catch (final InvalidKeyException e) {
             // The problem could be not having the unlimited strength policies
@@ -1041,122 +1330,371 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
             return null;
         }
         
+        return decrypt(encryptedMessage, 0, encryptedMessage.length);
+        
+    }
+
+
+    /*
+     * Decrypts the specified portion of the array. The salt and IV (if
+     * included) are read from their positions and the cipher is run 
+     * directly on the encrypted message kernel, without copying it.
+     */
+    byte[] decrypt(final byte[] encryptedMessage, final int offset, final int length) 
+            throws EncryptionOperationNotPossibleException {
+        
         // Check initialization
         if (!isInitialized()) {
             initialize();
         }
 
-
-        if (this.saltGenerator.includePlainSaltInEncryptionResults()
-                && this.ivGenerator.includePlainIvInEncryptionResults()) {
-            // Check that the received message is bigger than the salt + IV
-            if (encryptedMessage.length <= this.saltSizeBytes + this.ivSizeBytes) {
-                throw new EncryptionOperationNotPossibleException();
-            }
-        } else if (this.saltGenerator.includePlainSaltInEncryptionResults()) {
-            // Check that the received message is bigger than the salt
-            if (encryptedMessage.length <= this.saltSizeBytes) {
-                throw new EncryptionOperationNotPossibleException();
-            }
-        } else if (this.ivGenerator.includePlainIvInEncryptionResults()) {
-            // Check that the received message is bigger than the IV
-            if (encryptedMessage.length <= this.ivSizeBytes) {
-                throw new EncryptionOperationNotPossibleException();
-            }
+        // Check that the received message is bigger than the salt and/or IV
+        final int plainHeaderSize = getPlainHeaderSize();
+        if (plainHeaderSize > 0 && length <= plainHeaderSize) {
+            throw new EncryptionOperationNotPossibleException();
         }
 
-
         try {
 
             // If we are using a salt generator which specifies the salt
             // to be included into the encrypted message itself, get it from 
             // there. If not, the salt is supposed to be fixed and thus the
             // salt generator can be safely asked for it again.
-            byte[] salt = null; 
-            byte[] encryptedMessageKernel = null; 
+            int kernelOffset = offset;
+            final byte[] salt;
             if (this.saltGenerator.includePlainSaltInEncryptionResults()) {
-                
-                final int saltStart = 0;
-                final int saltSize = 
-                    (this.saltSizeBytes < encryptedMessage.length? this.saltSizeBytes : encryptedMessage.length);
-                final int encMesKernelStart =
-                    (this.saltSizeBytes < encryptedMessage.length? this.saltSizeBytes : encryptedMessage.length);
-                final int encMesKernelSize = 
-                    (this.saltSizeBytes < encryptedMessage.length? (encryptedMessage.length - this.saltSizeBytes) : 0);
-                
-                salt = new byte[saltSize];
-                encryptedMessageKernel = new byte[encMesKernelSize];
-                
-                System.arraycopy(encryptedMessage, saltStart, salt, 0, saltSize);
-                System.arraycopy(encryptedMessage, encMesKernelStart, encryptedMessageKernel, 0, encMesKernelSize);
-                
-            } else if (!this.optimizingDueFixedSalt){
-                
+                salt = Arrays.copyOfRange(encryptedMessage, kernelOffset, kernelOffset + this.saltSizeBytes);
+                kernelOffset += this.saltSizeBytes;
+            } else if (!this.optimizingDueFixedSalt) {
                 salt = this.saltGenerator.generateSalt(this.saltSizeBytes);
-                encryptedMessageKernel = encryptedMessage;
-                
             } else {
-                // this.optimizingDueFixedSalt == true
-                
                 salt = this.fixedSaltInUse;
-                encryptedMessageKernel = encryptedMessage;
-                
             }
 
-            byte[] iv = null;
-            byte[] finalEncryptedMessageKernel = null;
+            // The same applies to the IV
+            final byte[] iv;
             if (this.ivGenerator.includePlainIvInEncryptionResults()) {
-
-                final int ivStart = 0;
-                final int ivSize =
-                        (this.ivSizeBytes < encryptedMessageKernel.length? this.ivSizeBytes : encryptedMessageKernel.length);
-                final int encMesKernelStart =
-                        (this.ivSizeBytes < encryptedMessageKernel.length? this.ivSizeBytes : encryptedMessageKernel.length);
-                final int encMesKernelSize =
-                        (this.ivSizeBytes < encryptedMessageKernel.length? (encryptedMessageKernel.length - this.ivSizeBytes) : 0);
-
-                iv = new byte[ivSize];
-                finalEncryptedMessageKernel = new byte[encMesKernelSize];
-
-                System.arraycopy(encryptedMessageKernel, ivStart, iv, 0, ivSize);
-                System.arraycopy(encryptedMessageKernel, encMesKernelStart, finalEncryptedMessageKernel, 0, encMesKernelSize);
-
+                iv = Arrays.copyOfRange(encryptedMessage, kernelOffset, kernelOffset + this.ivSizeBytes);
+                kernelOffset += this.ivSizeBytes;
             } else {
-                iv = ivGenerator.generateIv(ivSizeBytes);
-                finalEncryptedMessageKernel = encryptedMessageKernel;
-
+                iv = this.ivGenerator.generateIv(this.ivSizeBytes);
             }
             
+            final CipherParameters parameters = obtainDecryptionParameters(salt, iv);
+            
+            return processWithCipher(
+                    Cipher.DECRYPT_MODE, parameters, null, null,
+                    encryptedMessage, kernelOffset, (offset + length - kernelOffset), 0);
+            
+        } catch (final InvalidKeyException e) {
+            // The problem could be not having the unlimited strength policies
+            // installed, so better give a usefull error message.
+            handleInvalidKeyException(e);
+            throw new EncryptionOperationNotPossibleException();
+        } catch (final Exception e) {
+            // If decryption fails, it is more secure not to return any 
+            // information about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        }
+        
+    }    
 
-            final byte[] decryptedMessage;
-            if (this.optimizingDueFixedSalt) {
-                
-                /*
-                 * Fixed salt is being used, therefore no initialization supposedly needed
-                 */
-                synchronized (this.decryptCipher) {
-                    decryptedMessage = 
-                        this.decryptCipher.doFinal(finalEncryptedMessageKernel);
-                }
 
+    /**
+     * <p>
+     * Returns the size of the output buffer needed for encrypting a message
+     * of the specified length, including the unencrypted salt and IV if 
+     * the generators being used specify them to be included in 
+     * encryption results.
+     * </p>
+     * <p>
+     * If a block cipher is being used, the returned size assumes padding 
+     * to be applied, and therefore it might be a few bytes bigger than the
+     * actual result if the cipher does not pad.
+     * </p>
+     * 
+     * @param messageLength the length of the message to be encrypted
+     * @return the size of the encryption result
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public int getEncryptOutputSize(final int messageLength) {
+        
+        CommonUtils.validateIsTrue(messageLength >= 0, "Message length cannot be negative");
+        
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final int encryptedKernelLength =
+            (this.cipherBlockSize > 0? 
+                    ((messageLength / this.cipherBlockSize) + 1) * this.cipherBlockSize : 
+                    messageLength);
+        return getPlainHeaderSize() + encryptedKernelLength;
+        
+    }
+
+
+    /**
+     * <p>
+     * Returns the size of the output buffer needed for decrypting an 
+     * encrypted message of the specified length. As padding is removed
+     * on decryption, the actual result can be shorter than this size.
+     * </p>
+     * 
+     * @param encryptedMessageLength the length of the message to be decrypted
+     * @return the maximum size of the decryption result
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public int getDecryptOutputSize(final int encryptedMessageLength) {
+        
+        CommonUtils.validateIsTrue(encryptedMessageLength >= 0, "Encrypted message length cannot be negative");
+        
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final int encryptedKernelLength = encryptedMessageLength - getPlainHeaderSize();
+        return (encryptedKernelLength > 0? encryptedKernelLength : 0);
+        
+    }
+
+
+    /**
+     * <p>
+     * Encrypts the specified portion of an array, writing the result
+     * (including the unencrypted salt and IV, if needed) into the output 
+     * array. The output array must have at least 
+     * {@link #getEncryptOutputSize(int)} bytes available from the
+     * specified output offset.
+     * </p>
+     * <p>
+     * This operation follows exactly the same mechanisms as 
+     * {@link #encrypt(byte[])}, but no intermediate arrays are created
+     * for the message or its result.
+     * </p>
+     * 
+     * @param message the array containing the message to be encrypted
+     * @param messageOffset the offset at which the message starts
+     * @param messageLength the length of the message
+     * @param output the array the result will be written to
+     * @param outputOffset the offset at which the result will be written
+     * @return the number of bytes written to the output array
+     * @throws EncryptionOperationNotPossibleException if the encryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public int encrypt(final byte[] message, final int messageOffset, final int messageLength,
+            final byte[] output, final int outputOffset) 
+            throws EncryptionOperationNotPossibleException {
+        
+        CommonUtils.validateNotNull(message, "Message cannot be null");
+        CommonUtils.validateNotNull(output, "Output array cannot be null");
+        
+        return encrypt(
+                ByteBuffer.wrap(message, messageOffset, messageLength),
+                ByteBuffer.wrap(output, outputOffset, output.length - outputOffset));
+        
+    }
+
+
+    /**
+     * <p>
+     * Encrypts all the remaining bytes of the input buffer, writing the 
+     * result (including the unencrypted salt and IV, if needed) into 
+     * the output buffer. The output buffer must have at least 
+     * {@link #getEncryptOutputSize(int)} bytes remaining. The positions
+     * of both buffers will be advanced.
+     * </p>
+     * <p>
+     * This operation follows exactly the same mechanisms as 
+     * {@link #encrypt(byte[])}, but no intermediate arrays are created
+     * for the message or its result. Both heap and direct buffers 
+     * are allowed.
+     * </p>
+     * 
+     * @param message the buffer containing the message to be encrypted
+     * @param output the buffer the result will be written to
+     * @return the number of bytes written to the output buffer
+     * @throws EncryptionOperationNotPossibleException if the encryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public int encrypt(final ByteBuffer message, final ByteBuffer output) 
+            throws EncryptionOperationNotPossibleException {
+        
+        CommonUtils.validateNotNull(message, "Message cannot be null");
+        CommonUtils.validateNotNull(output, "Output buffer cannot be null");
+        
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        if (output.remaining() < getEncryptOutputSize(message.remaining())) {
+            throw new EncryptionOperationNotPossibleException(
+                    "Output buffer is too small for the encryption result");
+        }
+        
+        try {
+
+            final CipherParameters parameters = obtainEncryptionParameters();
+
+            final int outputStart = output.position();
+            
+            // The unencrypted salt and IV are written before the encryption
+            // result, in the same order as in encrypt(byte[])
+            if (this.saltGenerator.includePlainSaltInEncryptionResults()) {
+                output.put(parameters.salt);
+            }
+            if (this.ivGenerator.includePlainIvInEncryptionResults()) {
+                output.put(parameters.iv);
+            }
+            
+            processWithCipher(Cipher.ENCRYPT_MODE, parameters, message, output);
+            
+            return output.position() - outputStart;
+            
+        } catch (final InvalidKeyException e) {
+            // The problem could be not having the unlimited strength policies
+            // installed, so better give a usefull error message.
+            handleInvalidKeyException(e);
+            throw new EncryptionOperationNotPossibleException();
+        } catch (final Exception e) {
+            // If encryption fails, it is more secure not to return any 
+            // information about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        }
+        
+    }
+
+
+    /**
+     * <p>
+     * Decrypts the specified portion of an array, writing the result
+     * into the output array. The output array must have at least 
+     * {@link #getDecryptOutputSize(int)} bytes available from the
+     * specified output offset. Input and output can be the same array
+     * (even at overlapping positions), which allows messages to be 
+     * decrypted in place.
+     * </p>
+     * <p>
+     * This operation follows exactly the same mechanisms as 
+     * {@link #decrypt(byte[])}, but no intermediate arrays are created
+     * for the message or its result.
+     * </p>
+     * 
+     * @param encryptedMessage the array containing the message to be decrypted
+     * @param encryptedMessageOffset the offset at which the message starts
+     * @param encryptedMessageLength the length of the message
+     * @param output the array the result will be written to
+     * @param outputOffset the offset at which the result will be written
+     * @return the number of bytes written to the output array
+     * @throws EncryptionOperationNotPossibleException if the decryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public int decrypt(final byte[] encryptedMessage, final int encryptedMessageOffset, 
+            final int encryptedMessageLength, final byte[] output, final int outputOffset) 
+            throws EncryptionOperationNotPossibleException {
+        
+        CommonUtils.validateNotNull(encryptedMessage, "Encrypted message cannot be null");
+        CommonUtils.validateNotNull(output, "Output array cannot be null");
+        
+        return decrypt(
+                ByteBuffer.wrap(encryptedMessage, encryptedMessageOffset, encryptedMessageLength),
+                ByteBuffer.wrap(output, outputOffset, output.length - outputOffset));
+        
+    }
+
+
+    /**
+     * <p>
+     * Decrypts all the remaining bytes of the input buffer, writing the 
+     * result into the output buffer. The output buffer must have at least 
+     * {@link #getDecryptOutputSize(int)} bytes remaining. The positions
+     * of both buffers will be advanced.
+     * </p>
+     * <p>
+     * This operation follows exactly the same mechanisms as 
+     * {@link #decrypt(byte[])}, but no intermediate arrays are created
+     * for the message or its result. Both heap and direct buffers 
+     * are allowed.
+     * </p>
+     * 
+     * @param encryptedMessage the buffer containing the message to be decrypted
+     * @param output the buffer the result will be written to
+     * @return the number of bytes written to the output buffer
+     * @throws EncryptionOperationNotPossibleException if the decryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public int decrypt(final ByteBuffer encryptedMessage, final ByteBuffer output) 
+            throws EncryptionOperationNotPossibleException {
+        
+        CommonUtils.validateNotNull(encryptedMessage, "Encrypted message cannot be null");
+        CommonUtils.validateNotNull(output, "Output buffer cannot be null");
+        
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+
+        // Check that the received message is bigger than the salt and/or IV
+        final int plainHeaderSize = getPlainHeaderSize();
+        if (plainHeaderSize > 0 && encryptedMessage.remaining() <= plainHeaderSize) {
+            throw new EncryptionOperationNotPossibleException();
+        }
+        
+        if (output.remaining() < getDecryptOutputSize(encryptedMessage.remaining())) {
+            throw new EncryptionOperationNotPossibleException(
+                    "Output buffer is too small for the decryption result");
+        }
+
+        try {
+
+            final byte[] salt;
+            if (this.saltGenerator.includePlainSaltInEncryptionResults()) {
+                salt = new byte[this.saltSizeBytes];
+                encryptedMessage.get(salt);
+            } else if (!this.optimizingDueFixedSalt) {
+                salt = this.saltGenerator.generateSalt(this.saltSizeBytes);
             } else {
-                
-                /*
-                 * Perform decryption using the Cipher
-                 */
-                final PBEParameterSpec parameterSpec = buildPBEParameterSpec(salt, iv);
-                     
-                synchronized (this.decryptCipher) {
-                    this.decryptCipher.init(
-                            Cipher.DECRYPT_MODE, this.key, parameterSpec);
-                    decryptedMessage = 
-                        this.decryptCipher.doFinal(finalEncryptedMessageKernel);
-                }
+                salt = this.fixedSaltInUse;
+            }
 
+            final byte[] iv;
+            if (this.ivGenerator.includePlainIvInEncryptionResults()) {
+                iv = new byte[this.ivSizeBytes];
+                encryptedMessage.get(iv);
+            } else {
+                iv = this.ivGenerator.generateIv(this.ivSizeBytes);
             }
             
-            // Return the results
-            return decryptedMessage;
+            final int outputStart = output.position();
+            
+            processWithCipher(
+                    Cipher.DECRYPT_MODE, obtainDecryptionParameters(salt, iv), 
+                    encryptedMessage, output);
+            
+            return output.position() - outputStart;
             
         } catch (final InvalidKeyException e) {
             // The problem could be not having the unlimited strength policies
@@ -1169,8 +1707,401 @@ public final class StandardPBEByteEncryptor implements PBEByteCleanablePasswordE
             throw new EncryptionOperationNotPossibleException();
         }
         
-    }    
+    }
+    
+    
+    /*
+     * Size of the unencrypted salt and IV included at the beginning of
+     * encryption results (if the salt and IV generators specify so).
+     */
+    private int getPlainHeaderSize() {
+        int plainHeaderSize = 0;
+        if (this.saltGenerator.includePlainSaltInEncryptionResults()) {
+            plainHeaderSize += this.saltSizeBytes;
+        }
+        if (this.ivGenerator.includePlainIvInEncryptionResults()) {
+            plainHeaderSize += this.ivSizeBytes;
+        }
+        return plainHeaderSize;
+    }
+
+
+
+    /*
+     * Returns the salt, IV, key and ciphers to be used for encrypting
+     * a message.
+     */
+    private CipherParameters obtainEncryptionParameters() throws GeneralSecurityException {
+        
+        if (this.optimizingDueFixedSalt) {
+            
+            /*
+             * Fixed salt is being used, therefore the ciphers are already
+             * initialized and no parameter spec is needed.
+             */
+            return new CipherParameters(
+                    this.fixedSaltInUse, null, this.key, null, 
+                    this.encryptCipher, this.threadEncryptCipher);
+            
+        } else if (this.saltReuseEnabled) {
+            
+            /*
+             * The salt (and its derived key) of the current salt reuse
+             * window is used, but a new IV is created for the message.
+             */
+            final SaltReuseWindow window = obtainSaltReuseWindow();
+            final byte[] iv = this.ivGenerator.generateIv(this.ivSizeBytes);
+            return new CipherParameters(
+                    window.salt, iv, window.key, new IvParameterSpec(iv),
+                    this.derivedEncryptCipher, this.threadDerivedEncryptCipher);
+            
+        }
+        
+        // Create salt and IV
+        final byte[] salt = this.saltGenerator.generateSalt(this.saltSizeBytes);
+        final byte[] iv = this.ivGenerator.generateIv(this.ivSizeBytes);
+        return new CipherParameters(
+                salt, iv, this.key, buildPBEParameterSpec(salt, iv), 
+                this.encryptCipher, this.threadEncryptCipher);
+        
+    }
+    
+    
+    /*
+     * Returns the key and ciphers to be used for decrypting a message
+     * encrypted with the specified salt and IV.
+     */
+    private CipherParameters obtainDecryptionParameters(final byte[] salt, final byte[] iv) 
+            throws GeneralSecurityException {
+        
+        if (this.optimizingDueFixedSalt) {
+            
+            /*
+             * Fixed salt is being used, therefore no initialization supposedly needed
+             */
+            return new CipherParameters(
+                    salt, iv, this.key, null, 
+                    this.decryptCipher, this.threadDecryptCipher);
+            
+        } else if (this.derivedKeyCache != null && iv != null && iv.length > 0) {
+            
+            /*
+             * PBES2 algorithm with a derived key cache: the key is only
+             * derived if it is not already cached for this salt.
+             */
+            return new CipherParameters(
+                    salt, iv, obtainDerivedKey(salt), new IvParameterSpec(iv),
+                    this.derivedDecryptCipher, this.threadDerivedDecryptCipher);
+            
+        }
+        
+        return new CipherParameters(
+                salt, iv, this.key, buildPBEParameterSpec(salt, iv),
+                this.decryptCipher, this.threadDecryptCipher);
+        
+    }
+
+
+    /*
+     * Executes the operation on the shared cipher (synchronizing on it) or,
+     * if thread-local ciphers are enabled, on the current thread's own cipher
+     * without acquiring any locks. A null parameterSpec means the cipher
+     * was already initialized (fixed salt).
+     */
+    private byte[] processWithCipher(
+            final int mode, final CipherParameters parameters, 
+            final byte[] plainSalt, final byte[] plainIv, 
+            final byte[] input, final int inputOffset, final int inputLength, 
+            final int suffixSize)
+            throws GeneralSecurityException {
+        
+        if (this.threadLocalCiphers) {
+            return runCipher(
+                    parameters.threadCipher.get(), mode, parameters, plainSalt, plainIv, 
+                    input, inputOffset, inputLength, suffixSize);
+        }
+        synchronized (parameters.sharedCipher) {
+            return runCipher(
+                    parameters.sharedCipher, mode, parameters, plainSalt, plainIv, 
+                    input, inputOffset, inputLength, suffixSize);
+        }
+        
+    }
+    
+    
+    /*
+     * Runs the cipher on the specified portion of the input. If a plain salt
+     * and/or IV or a suffix have to be included in the result, the output
+     * array is sized in advance (once the cipher has been initialized) and
+     * every part is written directly at its position.
+     */
+    private static byte[] runCipher(
+            final Cipher cipher, final int mode, final CipherParameters parameters, 
+            final byte[] plainSalt, final byte[] plainIv, 
+            final byte[] input, final int inputOffset, final int inputLength, 
+            final int suffixSize)
+            throws GeneralSecurityException {
+        
+        if (parameters.parameterSpec != null) {
+            cipher.init(mode, parameters.key, parameters.parameterSpec);
+        }
+        
+        final int saltLength = (plainSalt != null? plainSalt.length : 0);
+        final int ivLength = (plainIv != null? plainIv.length : 0);
+        final int headerLength = saltLength + ivLength;
+        
+        if (headerLength == 0 && suffixSize == 0) {
+            return cipher.doFinal(input, inputOffset, inputLength);
+        }
+        
+        final byte[] output = 
+            new byte[headerLength + cipher.getOutputSize(inputLength) + suffixSize];
+        if (saltLength > 0) {
+            System.arraycopy(plainSalt, 0, output, 0, saltLength);
+        }
+        if (ivLength > 0) {
+            System.arraycopy(plainIv, 0, output, saltLength, ivLength);
+        }
+        
+        final int resultLength = 
+            cipher.doFinal(input, inputOffset, inputLength, output, headerLength);
+        
+        final int outputLength = headerLength + resultLength + suffixSize;
+        if (outputLength == output.length) {
+            return output;
+        }
+        // The size computed in advance is only an upper bound if padding 
+        // is removed (decryption)
+        return Arrays.copyOf(output, outputLength);
+        
+    }
+    
+    
+    private void processWithCipher(
+            final int mode, final CipherParameters parameters, 
+            final ByteBuffer input, final ByteBuffer output)
+            throws GeneralSecurityException {
+        
+        if (this.threadLocalCiphers) {
+            runCipher(parameters.threadCipher.get(), mode, parameters, input, output);
+            return;
+        }
+        synchronized (parameters.sharedCipher) {
+            runCipher(parameters.sharedCipher, mode, parameters, input, output);
+        }
+        
+    }
+    
+    
+    private static void runCipher(
+            final Cipher cipher, final int mode, final CipherParameters parameters, 
+            final ByteBuffer input, final ByteBuffer output)
+            throws GeneralSecurityException {
+        if (parameters.parameterSpec != null) {
+            cipher.init(mode, parameters.key, parameters.parameterSpec);
+        }
+        cipher.doFinal(input, output);
+    }
+    
+    
+    /*
+     * Salt, IV, key and ciphers to be used for a single encryption or
+     * decryption operation.
+     */
+    private static final class CipherParameters {
+        
+        private final byte[] salt;
+        private final byte[] iv;
+        private final SecretKey key;
+        private final AlgorithmParameterSpec parameterSpec;
+        private final Cipher sharedCipher;
+        private final ThreadLocal<Cipher> threadCipher;
+        
+        CipherParameters(final byte[] salt, final byte[] iv, 
+                final SecretKey key, final AlgorithmParameterSpec parameterSpec,
+                final Cipher sharedCipher, final ThreadLocal<Cipher> threadCipher) {
+            super();
+            this.salt = salt;
+            this.iv = iv;
+            this.key = key;
+            this.parameterSpec = parameterSpec;
+            this.sharedCipher = sharedCipher;
+            this.threadCipher = threadCipher;
+        }
+        
+    }
+    
+    
+    /*
+     * Returns the key to be used with a PBES2 algorithm for the specified
+     * salt, deriving it (and caching it) only if it is not cached already.
+     */
+    private SecretKey obtainDerivedKey(final byte[] salt) throws GeneralSecurityException {
+        
+        final SecretKey cachedKey = this.derivedKeyCache.get(salt);
+        if (cachedKey != null) {
+            return cachedKey;
+        }
+        return this.derivedKeyCache.put(salt, deriveKeyBytes(salt));
+        
+    }
+    
+    
+    /*
+     * Returns the salt reuse window to be used for encrypting a message,
+     * creating a new one (with a new salt and derived key) if the current one 
+     * has been used for the maximum number of messages or time.
+     */
+    private SaltReuseWindow obtainSaltReuseWindow() throws GeneralSecurityException {
+        
+        final SaltReuseWindow currentWindow = this.saltReuseWindow;
+        if (currentWindow != null && currentWindow.acquire(System.currentTimeMillis())) {
+            return currentWindow;
+        }
+        
+        synchronized (this.saltReuseWindowLock) {
+            
+            // Another thread could have already replaced the window
+            final SaltReuseWindow latestWindow = this.saltReuseWindow;
+            if (latestWindow != null && latestWindow != currentWindow && 
+                    latestWindow.acquire(System.currentTimeMillis())) {
+                return latestWindow;
+            }
+            
+            final byte[] salt = this.saltGenerator.generateSalt(this.saltSizeBytes);
+            final byte[] keyBytes = deriveKeyBytes(salt);
+            final SecretKey windowKey = new SecretKeySpec(keyBytes, PBES2_KEY_ALGORITHM);
+            Arrays.fill(keyBytes, (byte)0);
+            
+            final long now = System.currentTimeMillis();
+            final SaltReuseWindow newWindow = 
+                new SaltReuseWindow(
+                        salt, windowKey,
+                        (this.saltReuseMaxMessages > 0? this.saltReuseMaxMessages : Long.MAX_VALUE),
+                        (this.saltReuseMaxTime > 0L? now + this.saltReuseMaxTime : Long.MAX_VALUE));
+            newWindow.acquire(now);
+            
+            this.saltReuseWindow = newWindow;
+            return newWindow;
+            
+        }
+        
+    }
+    
+    
+    /*
+     * Derives the key to be used with a PBES2 algorithm for the specified salt.
+     */
+    private byte[] deriveKeyBytes(final byte[] salt) throws GeneralSecurityException {
+        
+        // This is the same derivation performed by PBES2 ciphers on init: the
+        // PBE key contains the (ASCII) password as its encoded form, which is
+        // fed to PBKDF2 along with the salt and the iterations.
+        final byte[] encodedPassword = this.key.getEncoded();
+        final char[] passwordChars = new char[encodedPassword.length];
+        for (int i = 0; i < encodedPassword.length; i++) {
+            passwordChars[i] = (char) (encodedPassword[i] & 0x7f);
+        }
+        Arrays.fill(encodedPassword, (byte)0);
+        
+        final PBEKeySpec keySpec = 
+            new PBEKeySpec(passwordChars, salt, this.keyObtentionIterations, this.derivedKeyLengthBits);
+        cleanPassword(passwordChars);
+        
+        try {
+            return createSecretKeyFactory(this.derivedKeyFactoryAlgorithm).
+                        generateSecret(keySpec).getEncoded();
+        } finally {
+            keySpec.clearPassword();
+        }
+        
+    }
+    
+    
+    private SecretKeyFactory createSecretKeyFactory(final String factoryAlgorithm)
+            throws GeneralSecurityException {
+        if (this.provider != null) {
+            return SecretKeyFactory.getInstance(factoryAlgorithm, this.provider);
+        } else if (this.providerName != null) {
+            return SecretKeyFactory.getInstance(factoryAlgorithm, this.providerName);
+        }
+        return SecretKeyFactory.getInstance(factoryAlgorithm);
+    }
+    
+    
+    private Cipher createCipher(final String cipherAlgorithm) throws GeneralSecurityException {
+        if (this.provider != null) {
+            return Cipher.getInstance(cipherAlgorithm, this.provider);
+        } else if (this.providerName != null) {
+            return Cipher.getInstance(cipherAlgorithm, this.providerName);
+        }
+        return Cipher.getInstance(cipherAlgorithm);
+    }
+    
+    
+    /*
+     * Lazily creates a cipher for each thread. If a fixed salt is being used, 
+     * PBE ciphers are also initialized once and for all with the key 
+     * obtained at initialization.
+     */
+    private final class ThreadLocalCipher extends ThreadLocal<Cipher> {
+        
+        private final String cipherAlgorithm;
+        private final int mode;
+        private final boolean pbeCipher;
+        
+        ThreadLocalCipher(final String cipherAlgorithm, final int mode, final boolean pbeCipher) {
+            super();
+            this.cipherAlgorithm = cipherAlgorithm;
+            this.mode = mode;
+            this.pbeCipher = pbeCipher;
+        }
+        
+        protected Cipher initialValue() {
+            try {
+                final Cipher cipher = createCipher(this.cipherAlgorithm);
+                if (this.pbeCipher && optimizingDueFixedSalt) {
+                    cipher.init(
+                            this.mode, key,
+                            new PBEParameterSpec(fixedSaltInUse, keyObtentionIterations));
+                }
+                return cipher;
+            } catch (final GeneralSecurityException e) {
+                throw new EncryptionOperationNotPossibleException();
+            }
+        }
+        
+    }
+    
 
+    /*
+     * Salt (and derived key) shared by a limited number of encrypted
+     * messages or during a limited amount of time.
+     */
+    private static final class SaltReuseWindow {
+        
+        private final byte[] salt;
+        private final SecretKey key;
+        private final long maxMessages;
+        private final long expirationTime;
+        private final AtomicLong messages = new AtomicLong(0L);
+        
+        SaltReuseWindow(final byte[] salt, final SecretKey key, 
+                final long maxMessages, final long expirationTime) {
+            super();
+            this.salt = salt;
+            this.key = key;
+            this.maxMessages = maxMessages;
+            this.expirationTime = expirationTime;
+        }
+        
+        boolean acquire(final long now) {
+            return (now < this.expirationTime) && 
+                   (this.messages.incrementAndGet() <= this.maxMessages);
+        }
+        
+    }
+    
 
     private PBEParameterSpec buildPBEParameterSpec(final byte[] salt, final byte[] iv) {
 
@@ -19,10 +19,15 @@
  */
 package org.jasypt.encryption.pbe;
 
+import java.nio.CharBuffer;
 import java.security.Provider;
+import java.util.Arrays;
 
+import org.jasypt.codec.StringOutputCodec;
+import org.jasypt.codec.StringOutputCodecs;
 import org.jasypt.commons.CommonUtils;
-import org.jasypt.contrib.org.apache.commons.codec_1_3.binary.Base64;
+import org.jasypt.commons.Utf8Transcoder;
+import org.jasypt.encryption.CharSequenceStringEncryptor;
 import org.jasypt.encryption.pbe.config.PBEConfig;
 import org.jasypt.encryption.pbe.config.StringPBEConfig;
 import org.jasypt.exceptions.AlreadyInitializedException;
@@ -120,7 +125,8 @@ import org.jasypt.salt.SaltGenerator;
  * @author Daniel Fern&aacute;ndez
  * 
  */
-public final class StandardPBEStringEncryptor implements PBEStringCleanablePasswordEncryptor {
+public final class StandardPBEStringEncryptor 
+        implements PBEStringCleanablePasswordEncryptor, CharSequenceStringEncryptor {
 
     /**
      * <p>
@@ -148,26 +154,6 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
      */
     private static final String MESSAGE_CHARSET = "UTF-8";
     
-    /**
-     * <p>
-     * Charset to be used for encoding the encryption results. 
-     * Set to <b>US-ASCII</b>.
-     * </p>
-     * <p>
-     * The result of encrypting some bytes can be any other bytes, and so
-     * the result of encrypting, for example, some LATIN-1 valid String bytes, 
-     * can be bytes that may not conform a "valid" LATIN-1 String.
-     * </p>
-     * <p>
-     * Because of this, encryption results are always encoded in <i>BASE64</i>
-     * (default) or <i>HEXADECIMAL</i> after being created, and this ensures 
-     * that the results will make perfectly representable, safe ASCII Strings. 
-     * Because of this, the charset used to convert the encrypted bytes to the
-     * returned String is set to <b>US-ASCII</b>.
-     * </p>
-     */
-    private static final String ENCRYPTED_MESSAGE_CHARSET = "US-ASCII";
-
 
     /**
      * <p>
@@ -182,9 +168,9 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
     private StringPBEConfig stringPBEConfig = null;
     
     // This variable holds the type of String output which will be done,
-    // and also a boolean variable for faster comparison
+    // and also the codec which will perform the encoding
     private String stringOutputType = DEFAULT_STRING_OUTPUT_TYPE;
-    private boolean stringOutputTypeBase64 = true;
+    private StringOutputCodec stringOutputCodec = null;
 
     
     /*
@@ -197,11 +183,6 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
     
     // The StandardPBEByteEncryptor that will be internally used.
     private final StandardPBEByteEncryptor byteEncryptor;
-    
-    // BASE64 encoder which will make sure the returned results are
-    // valid US-ASCII strings.
-    // The Base64 encoder is THREAD-SAFE
-    private final Base64 base64;
 
     
     
@@ -211,7 +192,6 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
     public StandardPBEStringEncryptor() {
         super();
         this.byteEncryptor = new StandardPBEByteEncryptor();
-        this.base64 = new Base64();
     }
 
 
@@ -223,7 +203,6 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
     private StandardPBEStringEncryptor(final StandardPBEByteEncryptor standardPBEByteEncryptor) {
         super();
         this.byteEncryptor = standardPBEByteEncryptor;
-        this.base64 = new Base64();
     }
 
     
@@ -431,6 +410,132 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
     public void setProvider(final Provider provider) {
         this.byteEncryptor.setProvider(provider);
     }
+
+
+    /**
+     * <p>
+     * Sets whether each thread using this encryptor should be given its own
+     * pair of <tt>Cipher</tt> objects, so that no locks are acquired during 
+     * encryption or decryption. Default is <tt>false</tt>.
+     * </p>
+     * <p>
+     * See {@link StandardPBEByteEncryptor#setThreadLocalCiphers(boolean)}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param threadLocalCiphers whether ciphers should be thread-local or not.
+     */
+    public void setThreadLocalCiphers(final boolean threadLocalCiphers) {
+        this.byteEncryptor.setThreadLocalCiphers(threadLocalCiphers);
+    }
+
+
+    /**
+     * <p>
+     * Sets the maximum number of entries of the cache of derived keys used
+     * for decryption with PBES2 algorithms. Default is <tt>0</tt> (no cache).
+     * </p>
+     * <p>
+     * See {@link StandardPBEByteEncryptor#setDerivedKeyCacheSize(int)}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param derivedKeyCacheSize the maximum number of cached keys.
+     */
+    public void setDerivedKeyCacheSize(final int derivedKeyCacheSize) {
+        this.byteEncryptor.setDerivedKeyCacheSize(derivedKeyCacheSize);
+    }
+
+
+    /**
+     * <p>
+     * Sets the time (in milliseconds) during which a key will be kept in the
+     * derived key cache. Default is <tt>0</tt> (keys do not expire).
+     * </p>
+     * <p>
+     * See {@link StandardPBEByteEncryptor#setDerivedKeyCacheTimeToLive(long)}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param derivedKeyCacheTimeToLive the time to live of cached keys, in 
+     *                                  milliseconds.
+     */
+    public void setDerivedKeyCacheTimeToLive(final long derivedKeyCacheTimeToLive) {
+        this.byteEncryptor.setDerivedKeyCacheTimeToLive(derivedKeyCacheTimeToLive);
+    }
+
+
+    /**
+     * <p>
+     * Sets the maximum number of encrypted messages for which the same salt
+     * (and therefore the same derived key) will be used with PBES2 
+     * algorithms. Default is <tt>0</tt>.
+     * </p>
+     * <p>
+     * See {@link StandardPBEByteEncryptor#setSaltReuseMaxMessages(int)}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param saltReuseMaxMessages the maximum number of messages encrypted
+     *                             with the same salt.
+     */
+    public void setSaltReuseMaxMessages(final int saltReuseMaxMessages) {
+        this.byteEncryptor.setSaltReuseMaxMessages(saltReuseMaxMessages);
+    }
+
+
+    /**
+     * <p>
+     * Sets the maximum time (in milliseconds) during which the same salt
+     * (and therefore the same derived key) will be used for encrypting 
+     * messages with PBES2 algorithms. Default is <tt>0</tt>.
+     * </p>
+     * <p>
+     * See {@link StandardPBEByteEncryptor#setSaltReuseMaxTime(long)}.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @param saltReuseMaxTime the maximum time, in milliseconds, during which
+     *                         the same salt will be used.
+     */
+    public void setSaltReuseMaxTime(final long saltReuseMaxTime) {
+        this.byteEncryptor.setSaltReuseMaxTime(saltReuseMaxTime);
+    }
+
+
+    /**
+     * <p>
+     * Returns the number of decryption operations which found their key 
+     * in the derived key cache.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @return the number of cache hits, or 0 if no cache is being used.
+     */
+    public long getDerivedKeyCacheHits() {
+        return this.byteEncryptor.getDerivedKeyCacheHits();
+    }
+
+
+    /**
+     * <p>
+     * Returns the number of decryption operations which did not find their
+     * key in the derived key cache.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @return the number of cache misses, or 0 if no cache is being used.
+     */
+    public long getDerivedKeyCacheMisses() {
+        return this.byteEncryptor.getDerivedKeyCacheMisses();
+    }
     
     
     /**
@@ -440,7 +545,12 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
      * </p>
      * <ul>
      *   <li><tt><b>base64</b></tt> (default)</li>
+     *   <li><tt><b>base64-unpadded</b></tt></li>
+     *   <li><tt><b>base64url</b></tt></li>
+     *   <li><tt><b>base64url-unpadded</b></tt></li>
      *   <li><tt><b>hexadecimal</b></tt></li>
+     *   <li>Any other output type registered at 
+     *       {@link org.jasypt.codec.StringOutputCodecs}</li>
      * </ul>
      * <p>
      * If not set, null will be returned.
@@ -475,7 +585,7 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
     /*
      * Clone this encryptor 'size' times and initialize it.
      * This encryptor will be at position 0 itself.
-     * Clones will NOT be initialized.
+     * Clones will be returned initialized.
      */
     synchronized StandardPBEStringEncryptor[] cloneAndInitializeEncryptor(final int size) {
         
@@ -490,9 +600,8 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
         
         for (int i = 1; i < size; i++) {
             clones[i] = new StandardPBEStringEncryptor(byteEncryptorClones[i]);
-            if (CommonUtils.isNotEmpty(this.stringOutputType)) {
-                clones[i].setStringOutputType(this.stringOutputType);
-            }
+            clones[i].stringOutputType = this.stringOutputType;
+            clones[i].stringOutputCodec = this.stringOutputCodec;
         }
         
         return clones;
@@ -500,6 +609,19 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
     }
     
     
+    /*
+     * Create a new initialized encryptor with the same configuration as 
+     * this one (which must be already initialized), sharing its key.
+     */
+    synchronized StandardPBEStringEncryptor cloneInitializedEncryptor() {
+        final StandardPBEStringEncryptor clone = 
+            new StandardPBEStringEncryptor(this.byteEncryptor.cloneInitializedEncryptor());
+        clone.stringOutputType = this.stringOutputType;
+        clone.stringOutputCodec = this.stringOutputCodec;
+        return clone;
+    }
+    
+    
     
 
     /**
@@ -588,9 +710,8 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
             
         }
         
-        this.stringOutputTypeBase64 =
-            (CommonUtils.STRING_OUTPUT_TYPE_BASE64.
-                equalsIgnoreCase(this.stringOutputType));
+        this.stringOutputCodec = 
+            StringOutputCodecs.getCodec(this.stringOutputType);
 
     }
     
@@ -652,19 +773,11 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
             final byte[] messageBytes = message.getBytes(MESSAGE_CHARSET);
             
             // The StandardPBEByteEncryptor does its job.
-            byte[] encryptedMessage = this.byteEncryptor.encrypt(messageBytes);
-            
-            // We encode the result in BASE64 or HEXADECIMAL so that we obtain
-            // the safest result String possible.
-            String result = null;
-            if (this.stringOutputTypeBase64) {
-                encryptedMessage = this.base64.encode(encryptedMessage);
-                result = new String(encryptedMessage,ENCRYPTED_MESSAGE_CHARSET);
-            } else {
-                result = CommonUtils.toHexadecimal(encryptedMessage);
-            }
+            final byte[] encryptedMessage = this.byteEncryptor.encrypt(messageBytes);
             
-            return result;
+            // We encode the result in BASE64 (default), HEXADECIMAL... so 
+            // that we obtain the safest result String possible.
+            return this.stringOutputCodec.encode(encryptedMessage);
         
         } catch (EncryptionInitializationException e) {
             throw e;
@@ -720,19 +833,10 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
         
         try {
             
-            byte[] encryptedMessageBytes = null;
-
-            // Decode input to bytes depending on whether it is a
-            // BASE64-encoded or hexadecimal String
-            if (this.stringOutputTypeBase64) {
-                encryptedMessageBytes = 
-                    encryptedMessage.getBytes(ENCRYPTED_MESSAGE_CHARSET);
-                encryptedMessageBytes = 
-                    this.base64.decode(encryptedMessageBytes);
-            } else {
-                encryptedMessageBytes = 
-                    CommonUtils.fromHexadecimal(encryptedMessage);
-            }
+            // Decode input to bytes depending on the String output type
+            // (BASE64-encoded, hexadecimal...)
+            final byte[] encryptedMessageBytes = 
+                this.stringOutputCodec.decode(encryptedMessage);
 
             // Let the byte encyptor decrypt
             final byte[] message = this.byteEncryptor.decrypt(encryptedMessageBytes);
@@ -754,5 +858,236 @@ public final class StandardPBEStringEncryptor implements PBEStringCleanablePassw
 
     }
 
+
+    
+    /**
+     * <p>
+     * Encrypts a message (any <tt>CharSequence</tt>, like a 
+     * <tt>StringBuilder</tt> or a <tt>CharBuffer</tt>) using the specified 
+     * configuration.
+     * </p>
+     * <p>
+     * The result is exactly the same as that of {@link #encrypt(String)}, 
+     * but the message is converted to bytes into a reusable per-thread 
+     * buffer (cleaned after use) and encrypted from there, so that no 
+     * intermediate <tt>String</tt> or byte arrays are created.
+     * </p>
+     * 
+     * @param message the message to be encrypted
+     * @return the result of encryption 
+     * @throws EncryptionOperationNotPossibleException if the encryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public String encrypt(final CharSequence message) {
+        
+        if (message == null) {
+            return null;
+        }
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final Utf8Transcoder transcoder = Utf8Transcoder.acquire();
+        try {
+
+            // The message is converted into UTF-8 bytes (see MESSAGE_CHARSET)
+            // at the transcoder's own buffer
+            final int messageLength = transcoder.encode(message);
+            
+            // The StandardPBEByteEncryptor writes directly into the result
+            // array, which will only need to be copied if the cipher does not
+            // pad (and therefore the result is smaller than expected).
+            final byte[] output = 
+                new byte[this.byteEncryptor.getEncryptOutputSize(messageLength)];
+            final int outputLength = 
+                this.byteEncryptor.encrypt(
+                        transcoder.getBytes(), 0, messageLength, output, 0);
+            final byte[] encryptedMessage =
+                (outputLength == output.length? 
+                        output : Arrays.copyOf(output, outputLength));
+            
+            return this.stringOutputCodec.encode(encryptedMessage);
+        
+        } catch (EncryptionInitializationException e) {
+            throw e;
+        } catch (EncryptionOperationNotPossibleException e) {
+            throw e;
+        } catch (Exception e) {
+            // If encryption fails, it is more secure not to return any 
+            // information about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        } finally {
+            transcoder.release();
+        }
+        
+    }
+
+    
+    /**
+     * <p>
+     * Encrypts the specified portion of a char array, exactly in the same 
+     * way as {@link #encrypt(CharSequence)}.
+     * </p>
+     * 
+     * @param message the array containing the message to be encrypted
+     * @param messageOffset the offset at which the message starts
+     * @param messageLength the length of the message
+     * @return the result of encryption 
+     * @throws EncryptionOperationNotPossibleException if the encryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public String encrypt(final char[] message, final int messageOffset, final int messageLength) {
+        if (message == null) {
+            return null;
+        }
+        return encrypt(CharBuffer.wrap(message, messageOffset, messageLength));
+    }
+
+    
+    /**
+     * <p>
+     * Decrypts a message, writing the result into the output array starting
+     * at the specified offset. If the output array is not big enough, an
+     * {@link EncryptionOperationNotPossibleException} will be thrown and
+     * the contents of the output array will be undefined.
+     * </p>
+     * <p>
+     * The result is exactly the same as that of {@link #decrypt(String)}, 
+     * but no intermediate <tt>String</tt> objects are created, and the 
+     * decrypted bytes are cleaned after being converted into chars.
+     * </p>
+     * 
+     * @param encryptedMessage the String message to be decrypted
+     * @param output the array the result will be written to
+     * @param outputOffset the offset at which the result will be written
+     * @return the number of chars written, or -1 if the encrypted message
+     *         is null
+     * @throws EncryptionOperationNotPossibleException if the decryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public int decryptTo(final String encryptedMessage, final char[] output, final int outputOffset) {
+        
+        CommonUtils.validateNotNull(output, "Output array cannot be null");
+        
+        if (encryptedMessage == null) {
+            return -1;
+        }
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final Utf8Transcoder transcoder = Utf8Transcoder.acquire();
+        byte[] message = null;
+        try {
+            
+            // Decryption is performed in place, over the decoded bytes
+            message = this.stringOutputCodec.decode(encryptedMessage);
+            final int messageLength = 
+                this.byteEncryptor.decrypt(message, 0, message.length, message, 0);
+            
+            return transcoder.decode(message, 0, messageLength, output, outputOffset);
+        
+        } catch (EncryptionInitializationException e) {
+            throw e;
+        } catch (EncryptionOperationNotPossibleException e) {
+            throw e;
+        } catch (Exception e) {
+            // If decryption fails, it is more secure not to return any 
+            // information about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        } finally {
+            if (message != null) {
+                Arrays.fill(message, (byte)0);
+            }
+            transcoder.release();
+        }
+
+    }
+
+    
+    /**
+     * <p>
+     * Decrypts a message, appending the result to the specified 
+     * <tt>Appendable</tt> object (for example, a <tt>StringBuilder</tt> or
+     * a <tt>Writer</tt>).
+     * </p>
+     * <p>
+     * The result is exactly the same as that of {@link #decrypt(String)}, 
+     * but no intermediate <tt>String</tt> objects are created: the 
+     * decrypted chars are appended from a reusable per-thread buffer, 
+     * which is cleaned after use.
+     * </p>
+     * 
+     * @param encryptedMessage the String message to be decrypted
+     * @param output the object the result will be appended to
+     * @return the number of chars appended, or -1 if the encrypted message
+     *         is null
+     * @throws EncryptionOperationNotPossibleException if the decryption 
+     *         operation fails, ommitting any further information about the
+     *         cause for security reasons.
+     * @throws EncryptionInitializationException if initialization could not
+     *         be correctly done (for example, no password has been set).
+     * @since 1.9.4
+     */
+    public int decryptTo(final String encryptedMessage, final Appendable output) {
+        
+        CommonUtils.validateNotNull(output, "Output cannot be null");
+        
+        if (encryptedMessage == null) {
+            return -1;
+        }
+
+        // Check initialization
+        if (!isInitialized()) {
+            initialize();
+        }
+        
+        final Utf8Transcoder transcoder = Utf8Transcoder.acquire();
+        byte[] message = null;
+        try {
+            
+            // Decryption is performed in place, over the decoded bytes
+            message = this.stringOutputCodec.decode(encryptedMessage);
+            final int messageLength = 
+                this.byteEncryptor.decrypt(message, 0, message.length, message, 0);
+            
+            final CharBuffer result = transcoder.decode(message, 0, messageLength);
+            final int resultLength = result.remaining();
+            output.append(result);
+            return resultLength;
+        
+        } catch (EncryptionInitializationException e) {
+            throw e;
+        } catch (EncryptionOperationNotPossibleException e) {
+            throw e;
+        } catch (Exception e) {
+            // If decryption fails, it is more secure not to return any 
+            // information about the cause in nested exceptions. Simply fail.
+            throw new EncryptionOperationNotPossibleException();
+        } finally {
+            if (message != null) {
+                Arrays.fill(message, (byte)0);
+            }
+            transcoder.release();
+        }
+
+    }
+
     
 }
@@ -210,4 +210,79 @@ public interface PBEConfig {
     public Integer getPoolSize();
 
     
+    /**
+     * <p>
+     * Get the maximum size to which the pool of encryptors will be allowed
+     * to grow when callers have to wait for busy encryptors. Members 
+     * added this way will be removed after being idle for some time.
+     * If it is not higher than the pool size, the pool will have a fixed size.
+     * </p>
+     * <p>
+     * <b>This parameter will be ignored if used with a non-pooled encryptor</b>.
+     * </p>
+     *
+     * @since 1.9.4
+     * 
+     * @return the maximum size of the pool to be used if this configuration is 
+     *         used with a pooled encryptor
+     */
+    public Integer getMaxPoolSize();
+
+    
+    /**
+     * <p>
+     * Get the strategy used for selecting the pool member that will perform
+     * each operation: <tt>round-robin</tt> (default), <tt>thread</tt> or 
+     * <tt>least-busy</tt>. See {@link org.jasypt.commons.PoolMemberSelector}.
+     * </p>
+     * <p>
+     * <b>This parameter will be ignored if used with a non-pooled encryptor</b>.
+     * </p>
+     *
+     * @since 1.9.4
+     * 
+     * @return the pool selection strategy to be used if this configuration is 
+     *         used with a pooled encryptor
+     */
+    public String getPoolSelectionStrategy();
+
+    
+    /**
+     * <p>
+     * Get the maximum number of messages that will be encrypted using the
+     * same salt (and therefore the same derived key), when using PBES2
+     * algorithms like <tt>PBEWithHMACSHA512AndAES_256</tt>.
+     * </p>
+     * <p>
+     * If this method returns null, the encryptor will ignore the config object
+     * when deciding the maximum number of messages for salt reuse.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @return the maximum number of messages to be encrypted with the same
+     *         salt (0 for no limit).
+     */
+    public Integer getSaltReuseMaxMessages();
+
+    
+    /**
+     * <p>
+     * Get the maximum time (in milliseconds) during which the same salt (and 
+     * therefore the same derived key) will be used for encrypting messages, 
+     * when using PBES2 algorithms like <tt>PBEWithHMACSHA512AndAES_256</tt>.
+     * </p>
+     * <p>
+     * If this method returns null, the encryptor will ignore the config object
+     * when deciding the maximum time for salt reuse.
+     * </p>
+     * 
+     * @since 1.9.4
+     * 
+     * @return the maximum time, in milliseconds, during which the same salt
+     *         will be used (0 for no limit).
+     */
+    public Long getSaltReuseMaxTime();
+
+    
 }
@@ -67,6 +67,16 @@ import org.jasypt.salt.SaltGenerator;
  */
 public class SimplePBEConfig implements PBEConfig, PBECleanablePasswordConfig {
     
+    /**
+     * <p>
+     * Value that can be specified as pool size (or maximum pool size) 
+     * for setting it to the number of processors available to the JVM.
+     * </p>
+     * 
+     * @since 1.9.4
+     */
+    public static final String POOL_SIZE_AUTO = "auto";
+    
     private String algorithm = null;
     private char[] password = null;
     private Integer keyObtentionIterations = null;
@@ -75,6 +85,10 @@ public class SimplePBEConfig implements PBEConfig, PBECleanablePasswordConfig {
     private String providerName = null;
     private Provider provider = null;
     private Integer poolSize = null;
+    private Integer maxPoolSize = null;
+    private String poolSelectionStrategy = null;
+    private Integer saltReuseMaxMessages = null;
+    private Long saltReuseMaxTime = null;
 
     private boolean passwordCleaned = false;
     
@@ -445,6 +459,10 @@ public class SimplePBEConfig implements PBEConfig, PBECleanablePasswordConfig {
      * <p>
      * Determines the result of: {@link #getPoolSize()}
      * </p>
+     * <p>
+     * Since 1.9.4, the value <tt>"auto"</tt> can be specified for setting the 
+     * pool size to the number of processors available to the JVM.
+     * </p>
      *
      * @since 1.7
      * 
@@ -452,14 +470,206 @@ public class SimplePBEConfig implements PBEConfig, PBECleanablePasswordConfig {
      *         pooled encryptor
      */
     public void setPoolSize(final String poolSize) {
-        if (poolSize != null) {
+        this.poolSize = parsePoolSize(poolSize);
+    }
+
+
+    /**
+     * <p>
+     * Sets the maximum size to which the pool of encryptors can grow when
+     * callers have to wait for busy encryptors. If not higher than the 
+     * pool size, the pool will have a fixed size.
+     * </p>
+     * <p>
+     * <b>This parameter will be ignored if used with a non-pooled encryptor</b>.
+     * </p>
+     * <p>
+     * If not set, null will be returned.
+     * </p>
+     * <p>
+     * Determines the result of: {@link #getMaxPoolSize()}
+     * </p>
+     *
+     * @since 1.9.4
+     * 
+     * @param maxPoolSize the maximum size of the pool to be used if this 
+     *         configuration is used with a pooled encryptor
+     */
+    public void setMaxPoolSize(final Integer maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+    
+
+    /**
+     * <p>
+     * Sets the maximum size to which the pool of encryptors can grow when
+     * callers have to wait for busy encryptors. If not higher than the 
+     * pool size, the pool will have a fixed size. The value <tt>"auto"</tt>
+     * sets it to the number of processors available to the JVM.
+     * </p>
+     * <p>
+     * <b>This parameter will be ignored if used with a non-pooled encryptor</b>.
+     * </p>
+     * <p>
+     * If not set, null will be returned.
+     * </p>
+     * <p>
+     * Determines the result of: {@link #getMaxPoolSize()}
+     * </p>
+     *
+     * @since 1.9.4
+     * 
+     * @param maxPoolSize the maximum size of the pool to be used if this 
+     *         configuration is used with a pooled encryptor
+     */
+    public void setMaxPoolSize(final String maxPoolSize) {
+        this.maxPoolSize = parsePoolSize(maxPoolSize);
+    }
+    
+    
+    private static Integer parsePoolSize(final String poolSize) {
+        if (poolSize == null) {
+            return null;
+        }
+        if (POOL_SIZE_AUTO.equalsIgnoreCase(poolSize.trim())) {
+            return new Integer(Runtime.getRuntime().availableProcessors());
+        }
+        try {
+            return new Integer(poolSize);
+        } catch (NumberFormatException e) {
+            throw new EncryptionInitializationException(e);
+        }
+    }
+
+    
+    /**
+     * <p>
+     * Sets the strategy used for selecting the pool member that will perform
+     * each operation: <tt>round-robin</tt> (default), <tt>thread</tt> or 
+     * <tt>least-busy</tt>.
+     * </p>
+     * <p>
+     * <b>This parameter will be ignored if used with a non-pooled encryptor</b>.
+     * </p>
+     * <p>
+     * If not set, null will be returned.
+     * </p>
+     * <p>
+     * Determines the result of: {@link #getPoolSelectionStrategy()}
+     * </p>
+     *
+     * @since 1.9.4
+     * 
+     * @param poolSelectionStrategy the pool selection strategy to be used if 
+     *         this configuration is used with a pooled encryptor
+     */
+    public void setPoolSelectionStrategy(final String poolSelectionStrategy) {
+        this.poolSelectionStrategy = poolSelectionStrategy;
+    }
+
+
+    /**
+     * <p>
+     * Sets the maximum number of messages that will be encrypted using the
+     * same salt (and derived key) when using PBES2 algorithms.
+     * </p>
+     * <p>
+     * If not set, null will be returned.
+     * </p>
+     * <p>
+     * Determines the result of: {@link #getSaltReuseMaxMessages()}
+     * </p>
+     *
+     * @since 1.9.4
+     * 
+     * @param saltReuseMaxMessages the maximum number of messages encrypted 
+     *        with the same salt.
+     */
+    public void setSaltReuseMaxMessages(final Integer saltReuseMaxMessages) {
+        this.saltReuseMaxMessages = saltReuseMaxMessages;
+    }
+    
+
+    /**
+     * <p>
+     * Sets the maximum number of messages that will be encrypted using the
+     * same salt (and derived key) when using PBES2 algorithms.
+     * </p>
+     * <p>
+     * If not set, null will be returned.
+     * </p>
+     * <p>
+     * Determines the result of: {@link #getSaltReuseMaxMessages()}
+     * </p>
+     *
+     * @since 1.9.4
+     * 
+     * @param saltReuseMaxMessages the maximum number of messages encrypted 
+     *        with the same salt.
+     */
+    public void setSaltReuseMaxMessages(final String saltReuseMaxMessages) {
+        if (saltReuseMaxMessages != null) {
             try {
-                this.poolSize = new Integer(poolSize);
+                this.saltReuseMaxMessages = new Integer(saltReuseMaxMessages);
             } catch (NumberFormatException e) {
                 throw new EncryptionInitializationException(e);
             }
         } else {
-            this.poolSize = null;
+            this.saltReuseMaxMessages = null;
+        }
+    }
+
+
+    /**
+     * <p>
+     * Sets the maximum time (in milliseconds) during which the same salt
+     * (and derived key) will be used for encrypting messages when using
+     * PBES2 algorithms.
+     * </p>
+     * <p>
+     * If not set, null will be returned.
+     * </p>
+     * <p>
+     * Determines the result of: {@link #getSaltReuseMaxTime()}
+     * </p>
+     *
+     * @since 1.9.4
+     * 
+     * @param saltReuseMaxTime the maximum time, in milliseconds, during which 
+     *        the same salt will be used.
+     */
+    public void setSaltReuseMaxTime(final Long saltReuseMaxTime) {
+        this.saltReuseMaxTime = saltReuseMaxTime;
+    }
+    
+
+    /**
+     * <p>
+     * Sets the maximum time (in milliseconds) during which the same salt
+     * (and derived key) will be used for encrypting messages when using
+     * PBES2 algorithms.
+     * </p>
+     * <p>
+     * If not set, null will be returned.
+     * </p>
+     * <p>
+     * Determines the result of: {@link #getSaltReuseMaxTime()}
+     * </p>
+     *
+     * @since 1.9.4
+     * 
+     * @param saltReuseMaxTime the maximum time, in milliseconds, during which 
+     *        the same salt will be used.
+     */
+    public void setSaltReuseMaxTime(final String saltReuseMaxTime) {
+        if (saltReuseMaxTime != null) {
+            try {
+                this.saltReuseMaxTime = new Long(saltReuseMaxTime);
+            } catch (NumberFormatException e) {
+                throw new EncryptionInitializationException(e);
+            }
+        } else {
+            this.saltReuseMaxTime = null;
         }
     }
 
@@ -515,6 +725,22 @@ public class SimplePBEConfig implements PBEConfig, PBECleanablePasswordConfig {
         return this.poolSize;
     }
 
+    public Integer getMaxPoolSize() {
+        return this.maxPoolSize;
+    }
+
+    public String getPoolSelectionStrategy() {
+        return this.poolSelectionStrategy;
+    }
+
+    public Integer getSaltReuseMaxMessages() {
+        return this.saltReuseMaxMessages;
+    }
+
+    public Long getSaltReuseMaxTime() {
+        return this.saltReuseMaxTime;
+    }
+
 
     
     public void cleanPassword() {
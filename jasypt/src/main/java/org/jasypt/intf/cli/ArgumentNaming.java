@@ -70,6 +70,10 @@ final class ArgumentNaming {
     static final String ARG_PREFIX = "prefix";
     
     static final String ARG_SUFFIX = "suffix";
+    
+    static final String ARG_SECTION = "section";
+    
+    static final String ARG_UNBUNDLE = "unbundle";
 
     
     
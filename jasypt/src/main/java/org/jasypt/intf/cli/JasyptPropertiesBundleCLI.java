@@ -0,0 +1,225 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.intf.cli;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import org.jasypt.encryption.pbe.config.EnvironmentStringPBEConfig;
+import org.jasypt.properties.PropertyBundleEncryptionUtils;
+
+
+/**
+ * <p>
+ * This class supports the CLI "bundleProperties" operation, which converts
+ * a <tt>.properties</tt> file containing <tt>ENC(...)</tt> values into one
+ * in which all these values are encrypted together as a single bundle
+ * (see {@link PropertyBundleEncryptionUtils}), or the other way round
+ * if the <tt>unbundle=true</tt> argument is specified.
+ * </p>
+ * <p>
+ * <b>It should NEVER be used inside your code, only from the supplied
+ * command-line tools</b>.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ *
+ */
+public final class JasyptPropertiesBundleCLI {
+    
+    /*
+     * The required arguments for this CLI operation.
+     */
+    private static final String[][] VALID_REQUIRED_ARGUMENTS =
+        new String[][] {
+            new String [] {
+                ArgumentNaming.ARG_INPUT
+            },
+            new String [] {
+                ArgumentNaming.ARG_PASSWORD
+            }
+        };
+    
+    /*
+     * The optional arguments for this CLI operation.
+     */
+    private static final String[][] VALID_OPTIONAL_ARGUMENTS =
+        new String[][] {
+            new String [] {
+                ArgumentNaming.ARG_VERBOSE
+            },
+            new String [] {
+                ArgumentNaming.ARG_SECTION
+            },
+            new String [] {
+                ArgumentNaming.ARG_UNBUNDLE
+            },
+            new String [] {
+                ArgumentNaming.ARG_ALGORITHM
+            },
+            new String [] {
+                ArgumentNaming.ARG_KEY_OBTENTION_ITERATIONS
+            },
+            new String [] {
+                ArgumentNaming.ARG_SALT_GENERATOR_CLASS_NAME
+            },
+            new String [] {
+                ArgumentNaming.ARG_PROVIDER_NAME
+            },
+            new String [] {
+                ArgumentNaming.ARG_PROVIDER_CLASS_NAME
+            },
+            new String [] {
+                ArgumentNaming.ARG_STRING_OUTPUT_TYPE
+            },
+            new String[] {
+                ArgumentNaming.ARG_IV_GENERATOR_CLASS_NAME
+            }
+        };
+    
+    
+    /**
+     * <p>
+     * CLI execution method.
+     * </p>
+     * 
+     * @param args the command execution arguments
+     */
+    public static void main(final String[] args) {
+
+        final boolean verbose = CLIUtils.getVerbosity(args);
+
+        try {
+            
+            String applicationName = null;
+            String[] arguments = null;
+            if (args[0] == null || args[0].indexOf("=") != -1) {
+                applicationName = JasyptPropertiesBundleCLI.class.getName();
+                arguments = args;
+            } else {
+                applicationName = args[0];
+                arguments = new String[args.length - 1];
+                System.arraycopy(args, 1, arguments, 0, args.length - 1);
+            }
+            
+            final Properties argumentValues = 
+                CLIUtils.getArgumentValues(
+                        applicationName, arguments, 
+                        VALID_REQUIRED_ARGUMENTS, VALID_OPTIONAL_ARGUMENTS);
+
+            CLIUtils.showEnvironment(verbose);
+
+            CLIUtils.showArgumentDescription(argumentValues, verbose);
+            
+            final StandardPBEStringEncryptor encryptor = createEncryptor(argumentValues);
+            final Properties input = 
+                loadProperties(new File(argumentValues.getProperty(ArgumentNaming.ARG_INPUT)));
+            
+            final Properties result =
+                (Boolean.valueOf(argumentValues.getProperty(ArgumentNaming.ARG_UNBUNDLE)).booleanValue()?
+                        PropertyBundleEncryptionUtils.unbundle(input, encryptor) :
+                        PropertyBundleEncryptionUtils.bundle(
+                                input, argumentValues.getProperty(ArgumentNaming.ARG_SECTION), encryptor));
+            
+            final StringWriter output = new StringWriter();
+            result.store(output, null);
+            
+            CLIUtils.showOutput(output.toString(), verbose);
+
+        } catch (Throwable t) {
+            CLIUtils.showError(t, verbose);
+        }
+
+    }
+    
+    
+    private static StandardPBEStringEncryptor createEncryptor(final Properties argumentValues) {
+        
+        final EnvironmentStringPBEConfig config = new EnvironmentStringPBEConfig();
+        config.setPassword(argumentValues.getProperty(ArgumentNaming.ARG_PASSWORD));
+        
+        final String algorithm = argumentValues.getProperty(ArgumentNaming.ARG_ALGORITHM);
+        if (algorithm != null) {
+            config.setAlgorithm(algorithm);
+        }
+        final String keyObtentionIterations = 
+            argumentValues.getProperty(ArgumentNaming.ARG_KEY_OBTENTION_ITERATIONS);
+        if (keyObtentionIterations != null) {
+            config.setKeyObtentionIterations(keyObtentionIterations);
+        }
+        final String saltGeneratorClassName = 
+            argumentValues.getProperty(ArgumentNaming.ARG_SALT_GENERATOR_CLASS_NAME);
+        if (saltGeneratorClassName != null) {
+            config.setSaltGeneratorClassName(saltGeneratorClassName);
+        }
+        final String providerName = argumentValues.getProperty(ArgumentNaming.ARG_PROVIDER_NAME);
+        if (providerName != null) {
+            config.setProviderName(providerName);
+        }
+        final String providerClassName = 
+            argumentValues.getProperty(ArgumentNaming.ARG_PROVIDER_CLASS_NAME);
+        if (providerClassName != null) {
+            config.setProviderClassName(providerClassName);
+        }
+        final String stringOutputType = 
+            argumentValues.getProperty(ArgumentNaming.ARG_STRING_OUTPUT_TYPE);
+        if (stringOutputType != null) {
+            config.setStringOutputType(stringOutputType);
+        }
+        final String ivGeneratorClassName = 
+            argumentValues.getProperty(ArgumentNaming.ARG_IV_GENERATOR_CLASS_NAME);
+        if (ivGeneratorClassName != null) {
+            config.setIvGeneratorClassName(ivGeneratorClassName);
+        }
+        
+        final StandardPBEStringEncryptor encryptor = new StandardPBEStringEncryptor();
+        encryptor.setConfig(config);
+        return encryptor;
+        
+    }
+    
+    
+    private static Properties loadProperties(final File file) throws IOException {
+        final Properties properties = new Properties();
+        final InputStream inputStream = new FileInputStream(file);
+        try {
+            properties.load(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        return properties;
+    }
+    
+    
+    /*
+     * Instantiation is forbidden.
+     */
+    private JasyptPropertiesBundleCLI() {
+        super();
+    }
+    
+}
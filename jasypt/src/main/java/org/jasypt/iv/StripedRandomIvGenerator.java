@@ -0,0 +1,137 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.iv;
+
+import org.jasypt.commons.StripedSecureRandom;
+
+/**
+ * <p>
+ * High-throughput implementation of {@link IvGenerator} which generates
+ * random initialization vectors (IV) like {@link RandomIvGenerator}, but without making all
+ * threads share a single <b>secure</b> random generator.
+ * </p>
+ * <p>
+ * Random bytes are obtained from a set of <i>stripes</i>, each one with 
+ * its own <tt>SecureRandom</tt> instance, and each thread always uses the 
+ * same stripe. Optionally, each stripe can prefetch random bytes in bulk
+ * (refilled by a background thread), so that generating an IV
+ * is usually just an array copy.
+ * </p>
+ * <p>
+ * The algorithm used for random number generation can be configured at 
+ * instantiation time (for example, <tt>NativePRNGNonBlocking</tt> in 
+ * Java 8+ for avoiding blocking when the system has gathered little 
+ * entropy). If set to null, the default algorithm of the platform will be
+ * used.
+ * </p>
+ * <p>
+ * This class is <i>thread-safe</i>.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public class StripedRandomIvGenerator implements IvGenerator {
+    
+    /**
+     * The default algorithm to be used for secure random number 
+     * generation: set to SHA1PRNG.
+     */
+    public static final String DEFAULT_SECURE_RANDOM_ALGORITHM = "SHA1PRNG";
+    
+    /**
+     * The default size of the prefetch buffer of each stripe: set to 0
+     * (no prefetching).
+     */
+    public static final int DEFAULT_PREFETCH_SIZE = 0;
+    
+    private final StripedSecureRandom random;
+    
+    
+    /**
+     * Creates a new instance of <tt>StripedRandomIvGenerator</tt> using the 
+     * default secure random number generation algorithm, one stripe 
+     * per available processor and no prefetching.
+     */
+    public StripedRandomIvGenerator() {
+        this(DEFAULT_SECURE_RANDOM_ALGORITHM);
+    }
+    
+    
+    /**
+     * Creates a new instance of <tt>StripedRandomIvGenerator</tt> specifying a 
+     * secure random number generation algorithm, using one stripe per 
+     * available processor and no prefetching.
+     * 
+     * @param secureRandomAlgorithm the secure random number generation 
+     *        algorithm (null for the platform default).
+     */
+    public StripedRandomIvGenerator(final String secureRandomAlgorithm) {
+        this(secureRandomAlgorithm, 
+                Runtime.getRuntime().availableProcessors(), DEFAULT_PREFETCH_SIZE);
+    }
+    
+    
+    /**
+     * Creates a new instance of <tt>StripedRandomIvGenerator</tt> specifying a 
+     * secure random number generation algorithm, the number of stripes
+     * and the size of the prefetch buffer of each stripe.
+     * 
+     * @param secureRandomAlgorithm the secure random number generation 
+     *        algorithm (null for the platform default).
+     * @param stripes the number of stripes.
+     * @param prefetchSize the size in bytes of the prefetch buffer of each
+     *        stripe (0 for no prefetching).
+     */
+    public StripedRandomIvGenerator(final String secureRandomAlgorithm, 
+            final int stripes, final int prefetchSize) {
+        super();
+        this.random = new StripedSecureRandom(secureRandomAlgorithm, stripes, prefetchSize);
+    }
+    
+
+    /**
+     * Generate a random IV of the specified length in bytes.
+     * 
+     * @param lengthBytes length in bytes.
+     * @return the generated IV. 
+     */
+    public byte[] generateIv(final int lengthBytes) {
+        final byte[] iv = new byte[lengthBytes];
+        this.random.nextBytes(iv);
+        return iv;
+    }
+
+
+    /**
+     * This IV generator needs the IV to be included unencrypted in 
+     * encryption results, because of its being random. This method will always 
+     * return true.
+     * 
+     * @return true
+     */
+    public boolean includePlainIvInEncryptionResults() {
+        return true;
+    }
+
+    
+}
@@ -19,9 +19,6 @@
  */
 package org.jasypt.normalization;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-
 import org.jasypt.exceptions.EncryptionInitializationException;
 
 
@@ -30,10 +27,16 @@ import org.jasypt.exceptions.EncryptionInitializationException;
  * Utility for the normalization of Unicode Strings to NFC form. 
  * </p>
  * <p>
- * This class tries to use the <tt>java.text.Normalizer</tt> class in JDK 1.6
- * first and, if it the class is not found (Java version < 6), then it will use
- * the ICU4J <tt>com.ibm.icu.text.Normalizer</tt> class (in this case, a
- * <tt>ClassNotFoundException</tt> will be thrown if ICU4J is not present).
+ * This class will use the ICU4J <tt>com.ibm.icu.text.Normalizer</tt> class if
+ * it is present at the classpath, and the <tt>java.text.Normalizer</tt> class 
+ * in the JDK if it is not. The choice is made only once, the first time 
+ * a normalization is requested.
+ * </p>
+ * <p>
+ * Messages made only of US-ASCII characters are always in NFC form, so they
+ * are detected before calling any of these normalizers and returned (or
+ * copied, in the case of <tt>char[]</tt> messages) without further 
+ * processing.
  * </p>
  * 
  * @since 1.5
@@ -44,13 +47,8 @@ import org.jasypt.exceptions.EncryptionInitializationException;
 public final class Normalizer {
 
     private static final String ICU_NORMALIZER_CLASS_NAME = "com.ibm.icu.text.Normalizer";
-    private static final String JDK_NORMALIZER_CLASS_NAME = "java.text.Normalizer";
-    private static final String JDK_NORMALIZER_FORM_CLASS_NAME = "java.text.Normalizer$Form";
-    
-    private static Boolean useIcuNormalizer = null;
     
-    private static Method javaTextNormalizerMethod = null;
-    private static Object javaTextNormalizerFormNFCConstant = null;
+    private static volatile Boolean useIcuNormalizer = null;
 
     
     /**
@@ -60,15 +58,56 @@ public final class Normalizer {
      * <p>
      *   This algorithm will first try to normalize the input's UNICODE using icu4j's 
      *   <tt>com.ibm.icu.text.Normalizer</tt> and, if it is not present at the
-     *   classpath, will try to use <tt>java.text.Normalizer</tt>. If this is not present
-     *   either (this class appeared in JavaSE 6), it will raise an exception.
+     *   classpath, will use <tt>java.text.Normalizer</tt>.
+     * </p>
+     * <p>
+     *   If the message is already in NFC form (which is always the case
+     *   for US-ASCII messages), the same String object is returned.
      * </p>
      * 
      * @param message the message to be normalized
      * @return the result of the normalization operation
      */
     public static String normalizeToNfc(final String message) {
-        return new String(normalizeToNfc(message.toCharArray()));
+        
+        if (isAscii(message)) {
+            return message;
+        }
+        
+        if (isIcuNormalizerUsed()) {
+            return com.ibm.icu.text.Normalizer.normalize(message, com.ibm.icu.text.Normalizer.NFC);
+        }
+        
+        if (java.text.Normalizer.isNormalized(message, java.text.Normalizer.Form.NFC)) {
+            return message;
+        }
+        return java.text.Normalizer.normalize(message, java.text.Normalizer.Form.NFC);
+        
+    }
+
+    
+    /**
+     * <p>
+     *   Normalize Unicode-input message to NFC.
+     * </p>
+     * <p>
+     *   This method works exactly like {@link #normalizeToNfc(String)}, but
+     *   US-ASCII messages which are not <tt>String</tt> objects are returned
+     *   as they are, without being converted into a <tt>String</tt>.
+     * </p>
+     * 
+     * @param message the message to be normalized
+     * @return the result of the normalization operation
+     * @since 1.9.4
+     */
+    public static CharSequence normalizeToNfc(final CharSequence message) {
+        if (message instanceof String) {
+            return normalizeToNfc((String) message);
+        }
+        if (isAscii(message)) {
+            return message;
+        }
+        return normalizeToNfc(message.toString());
     }
 
     
@@ -79,8 +118,12 @@ public final class Normalizer {
      * <p>
      *   This algorithm will first try to normalize the input's UNICODE using icu4j's 
      *   <tt>com.ibm.icu.text.Normalizer</tt> and, if it is not present at the
-     *   classpath, will try to use <tt>java.text.Normalizer</tt>. If this is not present
-     *   either (this class appeared in JavaSE 6), it will raise an exception.
+     *   classpath, will use <tt>java.text.Normalizer</tt>.
+     * </p>
+     * <p>
+     *   The result is always a new array, so that callers can clean both
+     *   the message and the result independently. US-ASCII messages are
+     *   simply copied, without creating any intermediate String objects.
      * </p>
      * 
      * @param message the message to be normalized
@@ -88,75 +131,74 @@ public final class Normalizer {
      */
     public static char[] normalizeToNfc(final char[] message) {
         
+        if (isAscii(message)) {
+            final char[] result = new char[message.length];
+            System.arraycopy(message, 0, result, 0, message.length);
+            return result;
+        }
+        
+        if (isIcuNormalizerUsed()) {
+            return normalizeWithIcu4j(message);
+        }
+        
+        return normalizeWithJavaNormalizer(message);
+        
+    }
+
+
+    
+    private static boolean isIcuNormalizerUsed() {
         if (useIcuNormalizer == null) {
             // Still not initialized, will try to load the icu4j Normalizer. If 
-            // icu4j is in the classpath, it will be used even if java version is >= 6.
+            // icu4j is in the classpath, it will be used even if java.text.Normalizer
+            // is also available.
             try {
-                
                 initializeIcu4j();
-                
             } catch (final ClassNotFoundException e) {
-                
-                try {
-                    
-                    initializeJavaTextNormalizer();
-                    
-                } catch (final ClassNotFoundException e2) {
-                    throw new EncryptionInitializationException(
-                            "Cannot find a valid UNICODE normalizer: neither " + JDK_NORMALIZER_CLASS_NAME + " nor " +
-                            ICU_NORMALIZER_CLASS_NAME + " have been found at the classpath. If you are using " +
-                            "a version of the JDK older than JavaSE 6, you should include the icu4j library in " + 
-                            "your classpath.");
-                } catch (final NoSuchMethodException e2) {
-                    throw new EncryptionInitializationException(
-                            "Cannot find a valid UNICODE normalizer: " + JDK_NORMALIZER_CLASS_NAME + " has " +
-                            "been found at the classpath, but has an incompatible signature for its 'normalize' " +
-                            "method.");
-                } catch (final NoSuchFieldException e2) {
-                    throw new EncryptionInitializationException(
-                            "Cannot find a valid UNICODE normalizer: " + JDK_NORMALIZER_FORM_CLASS_NAME + " has " +
-                            "been found at the classpath, but seems to have no 'NFC' value.");
-                } catch (final IllegalAccessException e2) {
-                    throw new EncryptionInitializationException(
-                            "Cannot find a valid UNICODE normalizer: " + JDK_NORMALIZER_FORM_CLASS_NAME + " has " +
-                            "been found at the classpath, but seems to have no 'NFC' value.");
-                }
-                
+                initializeJavaTextNormalizer();
+            } catch (final LinkageError e) {
+                initializeJavaTextNormalizer();
             }
         }
-        
-        if (useIcuNormalizer.booleanValue()) {
-            return normalizeWithIcu4j(message);
+        return useIcuNormalizer.booleanValue();
+    }
+    
+    
+    
+    static boolean isAscii(final CharSequence message) {
+        final int length = message.length();
+        for (int i = 0; i < length; i++) {
+            if (message.charAt(i) >= 0x80) {
+                return false;
+            }
         }
-        
-        return normalizeWithJavaNormalizer(message);
-        
+        return true;
+    }
+    
+    
+    
+    static boolean isAscii(final char[] message) {
+        for (int i = 0; i < message.length; i++) {
+            if (message[i] >= 0x80) {
+                return false;
+            }
+        }
+        return true;
     }
 
 
     
     static void initializeIcu4j() throws ClassNotFoundException {
-        Thread.currentThread().getContextClassLoader().loadClass(ICU_NORMALIZER_CLASS_NAME);
+        // The ICU4J class is looked up at the class loader that will link it 
+        // from normalizeWithIcu4j, i.e. the one that loaded this class.
+        Class.forName(ICU_NORMALIZER_CLASS_NAME, false, Normalizer.class.getClassLoader());
         useIcuNormalizer = Boolean.TRUE;
     }
 
 
     
-    static void initializeJavaTextNormalizer() 
-            throws ClassNotFoundException, NoSuchMethodException, NoSuchFieldException, IllegalAccessException {
-    
-        final Class javaTextNormalizerClass = 
-                Thread.currentThread().getContextClassLoader().loadClass(JDK_NORMALIZER_CLASS_NAME);
-        final Class javaTextNormalizerFormClass = 
-                Thread.currentThread().getContextClassLoader().loadClass(JDK_NORMALIZER_FORM_CLASS_NAME);
-        javaTextNormalizerMethod =
-                javaTextNormalizerClass.getMethod(
-                        "normalize", new Class[]{ CharSequence.class, javaTextNormalizerFormClass });
-        final Field javaTextNormalizerFormNFCConstantField = javaTextNormalizerFormClass.getField("NFC");
-        javaTextNormalizerFormNFCConstant = javaTextNormalizerFormNFCConstantField.get(null);
-        
+    static void initializeJavaTextNormalizer() {
         useIcuNormalizer = Boolean.FALSE;
-        
     }
     
     
@@ -164,23 +206,12 @@ public final class Normalizer {
     
     static char[] normalizeWithJavaNormalizer(final char[] message) {
         
-        if (javaTextNormalizerMethod == null || javaTextNormalizerFormNFCConstant == null) {
-            throw new EncryptionInitializationException(
-                "Cannot use: " + JDK_NORMALIZER_FORM_CLASS_NAME + ", as JDK-based normalization has " +
-                "not been initialized! (check previous execution errors)");
-        }
-            
         // Using java JDK's Normalizer, we cannot avoid creating Strings
         // (it is the only possible interface to the Normalizer class).
-        //
-        // Note java.text.Normalizer is accessed via reflection in order to allow this
-        // class to be JDK 1.4-compilable (though ICU4j will be needed at runtime
-        // if Java 1.4 is used).
         final String messageStr = new String(message);
         final String result;
         try {
-            result = (String) javaTextNormalizerMethod.invoke(
-                    null, new Object[] { messageStr, javaTextNormalizerFormNFCConstant });
+            result = java.text.Normalizer.normalize(messageStr, java.text.Normalizer.Form.NFC);
         } catch (final Exception e) {
             throw new EncryptionInitializationException(
                     "Could not perform a valid UNICODE normalization", e);
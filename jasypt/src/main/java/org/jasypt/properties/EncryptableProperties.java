@@ -22,7 +22,13 @@ package org.jasypt.properties;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jasypt.commons.CommonUtils;
 import org.jasypt.encryption.StringEncryptor;
@@ -57,6 +63,25 @@ import org.jasypt.util.text.TextEncryptor;
  * properties file.
  * </p>
  * <p>
+ * Optionally, decrypted values can be cached (see 
+ * {@link #setDecryptedValueCacheEnabled(boolean)}) so that each encrypted 
+ * value is only decrypted once, and subsequent reads of the same property 
+ * neither decrypt it again nor wait for decryptions of other properties
+ * to finish.
+ * </p>
+ * <p>
+ * Properties can also be stored in encrypted <i>bundles</i> (see 
+ * {@link PropertyBundleEncryptionUtils}), which contain several properties
+ * encrypted together as one value and keyed <tt>jasypt.bundle</tt> or 
+ * <tt>jasypt.bundle.<i>section</i></tt>. All bundles are decrypted together
+ * the first time a property is read, which requires only one decryption
+ * per bundle regardless of the number of properties they contain, and their
+ * properties are then returned by the property read methods (taking 
+ * precedence over non-bundled properties, and being decrypted themselves
+ * if they are encrypted) and by
+ * {@link #stringPropertyNames()} and {@link #propertyNames()}.
+ * </p>
+ * <p>
  * Please note that, although objects of this class are Serializable, they
  * cannot be serialized and then de-serialized in different classloaders or
  * virtual machines. This is so because encryptors are not serializable themselves
@@ -90,6 +115,20 @@ public final class EncryptableProperties extends Properties {
      */
     private transient TextEncryptor textEncryptor = null;
     
+    /*
+     * Whether decrypted values should be cached, and the cache itself, 
+     * which maps property keys to their last decrypted values (along with
+     * the encrypted values they were obtained from). 
+     */
+    private boolean decryptedValueCacheEnabled = false;
+    private transient volatile ConcurrentHashMap<Object,DecryptedValue> decryptedValueCache = null;
+    
+    /*
+     * The (already decrypted) contents of all the bundles, computed on 
+     * first read and discarded when any bundle is modified.
+     */
+    private transient volatile Properties bundleProperties = null;
+    
     
     /**
      * <p>
@@ -167,7 +206,11 @@ public final class EncryptableProperties extends Properties {
      * @return the (decrypted) value
      */
     public String getProperty(final String key) {
-        return decode(super.getProperty(key));
+        final String bundledValue = getBundledProperty(key);
+        if (bundledValue != null) {
+            return decode(key, bundledValue);
+        }
+        return decode(key, super.getProperty(key));
     }
     
 
@@ -186,7 +229,11 @@ public final class EncryptableProperties extends Properties {
      * @return the (decrypted) value
      */
     public String getProperty(final String key, final String defaultValue) {
-        return decode(super.getProperty(key, defaultValue));
+        final String bundledValue = getBundledProperty(key);
+        if (bundledValue != null) {
+            return decode(key, bundledValue);
+        }
+        return decode(key, super.getProperty(key, defaultValue));
     }
 
 
@@ -200,11 +247,246 @@ public final class EncryptableProperties extends Properties {
      * @return the (decrypted) value
      * @since 1.9.0
      */
-    public synchronized Object get(final Object key) {
+    public Object get(final Object key) {
+        final String bundledValue = getBundledProperty(key);
+        if (bundledValue != null) {
+            return decode(key, bundledValue);
+        }
         final Object value = super.get(key);
         final String valueStr = 
                 (value instanceof String) ? (String)value : null;
-        return decode(valueStr);
+        return decode(key, valueStr);
+    }
+
+
+    /**
+     * <p>
+     * Sets the value for the specified key (see 
+     * {@link Hashtable#put(Object, Object)}), discarding its cached decrypted
+     * value, if any.
+     * </p>
+     * 
+     * @param key the property key
+     * @param value the (possibly encrypted) value
+     * @return the previous (not decrypted) value
+     * @since 1.9.4
+     */
+    public synchronized Object put(final Object key, final Object value) {
+        final Object previousValue = super.put(key, value);
+        evictDecryptedValue(key);
+        evictBundleProperties(key);
+        return previousValue;
+    }
+
+
+    /**
+     * <p>
+     * Removes the value for the specified key (see 
+     * {@link Hashtable#remove(Object)}), discarding its cached decrypted
+     * value, if any.
+     * </p>
+     * 
+     * @param key the property key
+     * @return the removed (not decrypted) value
+     * @since 1.9.4
+     */
+    public synchronized Object remove(final Object key) {
+        final Object previousValue = super.remove(key);
+        evictDecryptedValue(key);
+        evictBundleProperties(key);
+        return previousValue;
+    }
+
+
+    /**
+     * <p>
+     * Removes all the properties (see {@link Hashtable#clear()}), discarding
+     * all the cached decrypted values.
+     * </p>
+     * 
+     * @since 1.9.4
+     */
+    public synchronized void clear() {
+        super.clear();
+        clearDecryptedValueCache();
+    }
+
+
+    /**
+     * <p>
+     * Sets whether decrypted values should be cached. Default is 
+     * <b>false</b>.
+     * </p>
+     * <p>
+     * When enabled, the decrypted value of each property is kept in memory 
+     * after being read for the first time, and returned without decrypting
+     * it again (and without locking this object) for as long as the encrypted
+     * value of the property does not change. Loading, setting or removing 
+     * properties discards the cached values for the affected keys. 
+     * </p>
+     * <p>
+     * Note that this means decrypted values will be kept in memory as 
+     * <tt>String</tt> objects. Use {@link #clearDecryptedValueCache()} for
+     * discarding them once they are not needed anymore.
+     * </p>
+     * 
+     * @param decryptedValueCacheEnabled whether decrypted values should
+     *        be cached or not.
+     * @since 1.9.4
+     */
+    public synchronized void setDecryptedValueCacheEnabled(final boolean decryptedValueCacheEnabled) {
+        this.decryptedValueCacheEnabled = decryptedValueCacheEnabled;
+        this.decryptedValueCache =
+            (decryptedValueCacheEnabled? new ConcurrentHashMap<Object,DecryptedValue>() : null);
+    }
+
+
+    /**
+     * <p>
+     * Returns whether decrypted values are being cached.
+     * </p>
+     * 
+     * @return whether decrypted values are being cached.
+     * @since 1.9.4
+     */
+    public boolean isDecryptedValueCacheEnabled() {
+        return this.decryptedValueCacheEnabled;
+    }
+
+
+    /**
+     * <p>
+     * Discards all the cached decrypted values, so that they are not
+     * kept in memory by this object anymore. Properties will be decrypted
+     * again (and cached, if the cache is still enabled) when read. 
+     * </p>
+     * 
+     * @since 1.9.4
+     */
+    public void clearDecryptedValueCache() {
+        final ConcurrentHashMap<Object,DecryptedValue> cache = this.decryptedValueCache;
+        if (cache != null) {
+            cache.clear();
+        }
+        this.bundleProperties = null;
+    }
+    
+    
+    private void evictDecryptedValue(final Object key) {
+        final ConcurrentHashMap<Object,DecryptedValue> cache = this.decryptedValueCache;
+        if (cache != null && key != null) {
+            cache.remove(key);
+        }
+    }
+    
+    
+    private void evictBundleProperties(final Object key) {
+        if (key instanceof String && PropertyBundleEncryptionUtils.isBundleKey((String) key)) {
+            this.bundleProperties = null;
+        }
+    }
+
+
+    /**
+     * <p>
+     * Returns the names of the properties (see 
+     * {@link Properties#stringPropertyNames()}), including those contained
+     * in bundles instead of the bundle keys themselves.
+     * </p>
+     * 
+     * @return the property names.
+     * @since 1.9.4
+     */
+    public Set<String> stringPropertyNames() {
+        final Properties bundled = getBundleProperties();
+        if (bundled.isEmpty()) {
+            return super.stringPropertyNames();
+        }
+        // Keys are directly iterated, as Properties#stringPropertyNames()
+        // would obtain (and therefore decrypt) all values
+        final Set<String> result = new HashSet<String>();
+        if (this.defaults != null) {
+            result.addAll(this.defaults.stringPropertyNames());
+        }
+        synchronized (this) {
+            for (final Object key : keySet()) {
+                if (key instanceof String && 
+                        !PropertyBundleEncryptionUtils.isBundleKey((String) key)) {
+                    result.add((String) key);
+                }
+            }
+        }
+        result.addAll(bundled.stringPropertyNames());
+        return Collections.unmodifiableSet(result);
+    }
+
+
+    /**
+     * <p>
+     * Returns the names of the properties (see 
+     * {@link Properties#propertyNames()}), including those contained
+     * in bundles instead of the bundle keys themselves.
+     * </p>
+     * 
+     * @return the property names.
+     * @since 1.9.4
+     */
+    public Enumeration<?> propertyNames() {
+        if (getBundleProperties().isEmpty()) {
+            return super.propertyNames();
+        }
+        return Collections.enumeration(stringPropertyNames());
+    }
+    
+    
+    private String getBundledProperty(final Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        return getBundleProperties().getProperty((String) key);
+    }
+    
+    
+    private Properties getBundleProperties() {
+        final Properties bundled = this.bundleProperties;
+        if (bundled != null) {
+            return bundled;
+        }
+        return decryptBundles();
+    }
+    
+    
+    /*
+     * Decrypts all the bundles, each one with a single decryption operation.
+     */
+    private synchronized Properties decryptBundles() {
+        
+        if (this.bundleProperties != null) {
+            return this.bundleProperties;
+        }
+        
+        final Properties bundled = new Properties();
+        for (final Map.Entry<Object,Object> entry : super.entrySet()) {
+            if (entry.getKey() instanceof String && 
+                    PropertyBundleEncryptionUtils.isBundleKey((String) entry.getKey()) &&
+                    entry.getValue() instanceof String &&
+                    PropertyValueEncryptionUtils.isEncryptedValue((String) entry.getValue())) {
+                final String encodedValue = (String) entry.getValue();
+                if (this.stringEncryptor != null) {
+                    bundled.putAll(
+                            PropertyBundleEncryptionUtils.decryptBundle(encodedValue, this.stringEncryptor));
+                } else if (this.textEncryptor != null) {
+                    bundled.putAll(
+                            PropertyBundleEncryptionUtils.decryptBundle(encodedValue, this.textEncryptor));
+                } else {
+                    throw createNoEncryptorException();
+                }
+            }
+        }
+        
+        this.bundleProperties = bundled;
+        return bundled;
+        
     }
     
     
@@ -217,13 +499,40 @@ public final class EncryptableProperties extends Properties {
     
 
     /*
-     * Internal method for decoding (decrypting) a value if needed.
+     * Internal method for decoding (decrypting) a value if needed, using
+     * the cached decrypted value for the key if it is still valid.
      */
-    private synchronized String decode(final String encodedValue) {
+    private String decode(final Object key, final String encodedValue) {
         
         if (!PropertyValueEncryptionUtils.isEncryptedValue(encodedValue)) {
             return encodedValue;
         }
+        
+        final ConcurrentHashMap<Object,DecryptedValue> cache = this.decryptedValueCache;
+        if (cache == null || key == null) {
+            return decrypt(encodedValue);
+        }
+        
+        // A cached value is only valid if it was obtained from the encrypted
+        // value the property has now (defaults could have been modified, or 
+        // the value could have been changed while it was being decrypted) 
+        final DecryptedValue cachedValue = cache.get(key);
+        if (cachedValue != null && cachedValue.encryptedValue.equals(encodedValue)) {
+            return cachedValue.value;
+        }
+        
+        final String value = decrypt(encodedValue);
+        cache.put(key, new DecryptedValue(encodedValue, value));
+        return value;
+        
+    }
+    
+
+    /*
+     * Internal method for decrypting a value.
+     */
+    private synchronized String decrypt(final String encodedValue) {
+        
         if (this.stringEncryptor != null) {
             return PropertyValueEncryptionUtils.decrypt(encodedValue, this.stringEncryptor);
             
@@ -232,13 +541,21 @@ public final class EncryptableProperties extends Properties {
             return PropertyValueEncryptionUtils.decrypt(encodedValue, this.textEncryptor);
         }
         
+        throw createNoEncryptorException();
+        
+    }
+
+    
+
+    private static EncryptionOperationNotPossibleException createNoEncryptorException() {
+        
         /*
          * If neither a StringEncryptor nor a TextEncryptor can be retrieved
          * from the registry, this means that this EncryptableProperties
          * object has been serialized and then deserialized in a different
          * classloader and virtual machine, which is an unsupported behaviour. 
          */
-        throw new EncryptionOperationNotPossibleException(
+        return new EncryptionOperationNotPossibleException(
                 "Neither a string encryptor nor a text encryptor exist " +
                 "for this instance of EncryptableProperties. This is usually " +
                 "caused by the instance having been serialized and then " +
@@ -254,6 +571,10 @@ public final class EncryptableProperties extends Properties {
         
         in.defaultReadObject();
         
+        if (this.decryptedValueCacheEnabled) {
+            this.decryptedValueCache = new ConcurrentHashMap<Object,DecryptedValue>();
+        }
+        
         final EncryptablePropertiesEncryptorRegistry registry =
                 EncryptablePropertiesEncryptorRegistry.getInstance();
         
@@ -287,6 +608,21 @@ public final class EncryptableProperties extends Properties {
     }
     
     
+    
+    private static final class DecryptedValue {
+        
+        private final String encryptedValue;
+        private final String value;
+        
+        DecryptedValue(final String encryptedValue, final String value) {
+            super();
+            this.encryptedValue = encryptedValue;
+            this.value = value;
+        }
+        
+    }
+    
+    
 
     
 }
@@ -0,0 +1,200 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.properties;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.jasypt.commons.CommonUtils;
+import org.jasypt.encryption.StringEncryptor;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.util.text.TextEncryptor;
+
+/**
+ * <p>
+ * Utility class to encrypt/decrypt <i>property bundles</i>: sets of 
+ * properties which are encrypted together as a single value, so that
+ * decrypting all of them requires only one key derivation and one
+ * cipher pass instead of one per property.
+ * </p>
+ * <p>
+ * A bundle is stored in a properties file as a property whose key is
+ * <tt>jasypt.bundle</tt> (or <tt>jasypt.bundle.<i>section</i></tt>, if 
+ * several bundles are needed) and whose value is the encrypted text of 
+ * the bundled properties (in <tt>.properties</tt> format), surrounded 
+ * by <tt>ENC(...)</tt>, like:
+ * </p>
+ * <p>
+ *   <center>
+ *     <tt>jasypt.bundle.db=ENC(G6N718UuyPE5bHyWKyuLQSm02auQPUtm)</tt>
+ *   </center>
+ * </p>
+ * <p>
+ *   <b>This class is meant for internal Jasypt use only.</b>
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class PropertyBundleEncryptionUtils {
+
+    private static final String BUNDLE_KEY = "jasypt.bundle";
+    private static final String BUNDLE_KEY_SECTION_PREFIX = BUNDLE_KEY + ".";
+
+    
+    public static boolean isBundleKey(final String key) {
+        if (key == null) {
+            return false;
+        }
+        return (key.equals(BUNDLE_KEY) || 
+                (key.startsWith(BUNDLE_KEY_SECTION_PREFIX) && 
+                        key.length() > BUNDLE_KEY_SECTION_PREFIX.length()));
+    }
+
+    
+    public static String getBundleKey(final String section) {
+        if (section == null) {
+            return BUNDLE_KEY;
+        }
+        CommonUtils.validateNotEmpty(section, "Section cannot be empty");
+        return BUNDLE_KEY_SECTION_PREFIX + section;
+    }
+
+    
+    public static Properties decryptBundle(
+            final String encodedValue, final StringEncryptor encryptor) {
+        return fromText(PropertyValueEncryptionUtils.decrypt(encodedValue, encryptor));
+    }
+
+    
+    public static Properties decryptBundle(
+            final String encodedValue, final TextEncryptor encryptor) {
+        return fromText(PropertyValueEncryptionUtils.decrypt(encodedValue, encryptor));
+    }
+
+    
+    public static String encryptBundle(
+            final Properties properties, final StringEncryptor encryptor) {
+        return PropertyValueEncryptionUtils.encrypt(toText(properties), encryptor);
+    }
+
+    
+    public static String encryptBundle(
+            final Properties properties, final TextEncryptor encryptor) {
+        return PropertyValueEncryptionUtils.encrypt(toText(properties), encryptor);
+    }
+
+    
+    /*
+     * Converts a set of properties containing ENC(...) values into one in
+     * which all those values are contained in a single bundle (with the 
+     * specified section, which can be null). Unencrypted values and 
+     * already existing bundles are kept as they are.
+     */
+    public static Properties bundle(final Properties properties, 
+            final String section, final StringEncryptor encryptor) {
+        
+        final String bundleKey = getBundleKey(section);
+        CommonUtils.validateIsTrue(!properties.containsKey(bundleKey), 
+                "Properties already contain a bundle with key \"" + bundleKey + "\"");
+        
+        final Properties result = new Properties();
+        final Properties bundledProperties = new Properties();
+        for (final String key : properties.stringPropertyNames()) {
+            final String value = properties.getProperty(key);
+            if (!isBundleKey(key) && PropertyValueEncryptionUtils.isEncryptedValue(value)) {
+                bundledProperties.setProperty(
+                        key, PropertyValueEncryptionUtils.decrypt(value, encryptor));
+            } else {
+                result.setProperty(key, value);
+            }
+        }
+        if (!bundledProperties.isEmpty()) {
+            result.setProperty(bundleKey, encryptBundle(bundledProperties, encryptor));
+        }
+        return result;
+        
+    }
+
+    
+    /*
+     * Reverts bundle(...): all bundles are expanded and each of the 
+     * properties they contain is encrypted separately as an ENC(...) value.
+     */
+    public static Properties unbundle(
+            final Properties properties, final StringEncryptor encryptor) {
+        
+        final Properties result = new Properties();
+        final Properties unbundledProperties = new Properties();
+        for (final String key : properties.stringPropertyNames()) {
+            final String value = properties.getProperty(key);
+            if (isBundleKey(key) && PropertyValueEncryptionUtils.isEncryptedValue(value)) {
+                final Properties bundledProperties = decryptBundle(value, encryptor);
+                for (final String bundledKey : bundledProperties.stringPropertyNames()) {
+                    unbundledProperties.setProperty(
+                            bundledKey, 
+                            PropertyValueEncryptionUtils.encrypt(
+                                    bundledProperties.getProperty(bundledKey), encryptor));
+                }
+            } else {
+                result.setProperty(key, value);
+            }
+        }
+        // Bundled properties take precedence
+        result.putAll(unbundledProperties);
+        return result;
+        
+    }
+    
+    
+    private static Properties fromText(final String text) {
+        final Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(text));
+        } catch (final IOException e) {
+            throw new EncryptionOperationNotPossibleException();
+        }
+        return properties;
+    }
+    
+    
+    private static String toText(final Properties properties) {
+        final StringWriter writer = new StringWriter();
+        try {
+            properties.store(writer, null);
+        } catch (final IOException e) {
+            throw new EncryptionOperationNotPossibleException();
+        }
+        // The first line is a timestamp comment, which is not needed
+        final String text = writer.toString();
+        return (text.startsWith("#")? text.substring(text.indexOf('\n') + 1) : text);
+    }
+    
+    
+    private PropertyBundleEncryptionUtils() {
+        super();
+    }
+
+    
+}
@@ -0,0 +1,480 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.properties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+import org.jasypt.commons.CommonUtils;
+import org.jasypt.encryption.StringEncryptor;
+import org.jasypt.exceptions.EncryptionInitializationException;
+import org.jasypt.util.text.TextEncryptor;
+
+
+
+/**
+ * <p>
+ * Set of properties loaded from one or more <tt>.properties</tt> files
+ * which can contain encrypted values (surrounded by <tt>ENC(...)</tt>,
+ * as in {@link EncryptableProperties}), and which can be reloaded when
+ * these files change without restarting the application.
+ * </p>
+ * <p>
+ * All encrypted values are decrypted when properties are loaded, and the
+ * result is published as an immutable snapshot, so that readers always
+ * see a consistent set of properties. When files are reloaded, entries
+ * are compared by key with those of the previous snapshot and only those
+ * which have a different (encrypted) value are decrypted again: unchanged
+ * entries keep their already decrypted values.
+ * </p>
+ * <p>
+ * Files are loaded in order, entries in later files overriding those in
+ * earlier ones. Reloads can be performed manually by calling 
+ * {@link #reload()}, or automatically by calling 
+ * {@link #startPolling(long)}, which checks periodically (in a daemon
+ * thread) whether any of the files has changed. Changes are detected by
+ * comparing the modification date, size and checksum of the contents of
+ * each file, so that rewriting a file with a value of the same length 
+ * within the resolution of its modification date is detected too. Objects
+ * interested in reloads (for example, Spring beans that need to reconnect
+ * using a rotated credential) can register a 
+ * {@link ReloadableEncryptablePropertiesListener}.
+ * </p>
+ * <p>
+ * This class is <i>thread-safe</i>.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public final class ReloadableEncryptableProperties {
+
+    // Modification date, size and checksum of contents
+    private static final int STAMPS_PER_FILE = 3;
+    
+    /*
+     * Only one of these instances will be initialized, the other one will be
+     * null.
+     */
+    private final StringEncryptor stringEncryptor;
+    private final TextEncryptor textEncryptor;
+    
+    private final File[] files;
+    
+    private final List<ReloadableEncryptablePropertiesListener> listeners = 
+        new CopyOnWriteArrayList<ReloadableEncryptablePropertiesListener>();
+    
+    private volatile Snapshot snapshot;
+    private Timer pollingTimer = null;
+    
+    
+    
+    /**
+     * <p>
+     * Creates a <tt>ReloadableEncryptableProperties</tt> instance which
+     * will use the passed {@link StringEncryptor} object to decrypt 
+     * encrypted values, and loads the specified files.
+     * </p>
+     * 
+     * @param stringEncryptor the {@link StringEncryptor} to be used do 
+     *        decrypt values. It can not be null.
+     * @param files the properties files to be loaded (at least one).
+     * @throws EncryptionInitializationException if files cannot be read.
+     */
+    public ReloadableEncryptableProperties(
+            final StringEncryptor stringEncryptor, final File... files) {
+        super();
+        CommonUtils.validateNotNull(stringEncryptor, "Encryptor cannot be null");
+        this.stringEncryptor = stringEncryptor;
+        this.textEncryptor = null;
+        this.files = validateFiles(files);
+        this.snapshot = load(null);
+    }
+    
+    
+    /**
+     * <p>
+     * Creates a <tt>ReloadableEncryptableProperties</tt> instance which
+     * will use the passed {@link TextEncryptor} object to decrypt 
+     * encrypted values, and loads the specified files.
+     * </p>
+     * 
+     * @param textEncryptor the {@link TextEncryptor} to be used do 
+     *        decrypt values. It can not be null.
+     * @param files the properties files to be loaded (at least one).
+     * @throws EncryptionInitializationException if files cannot be read.
+     */
+    public ReloadableEncryptableProperties(
+            final TextEncryptor textEncryptor, final File... files) {
+        super();
+        CommonUtils.validateNotNull(textEncryptor, "Encryptor cannot be null");
+        this.stringEncryptor = null;
+        this.textEncryptor = textEncryptor;
+        this.files = validateFiles(files);
+        this.snapshot = load(null);
+    }
+    
+    
+    private static File[] validateFiles(final File[] files) {
+        CommonUtils.validateIsTrue(files != null && files.length > 0, 
+                "At least one file must be specified");
+        for (int i = 0; i < files.length; i++) {
+            CommonUtils.validateNotNull(files[i], "Files cannot be null");
+        }
+        return (File[]) files.clone();
+    }
+    
+    
+    
+    /**
+     * <p>
+     * Obtains the decrypted value of a property in the current snapshot.
+     * </p>
+     * 
+     * @param key the property key
+     * @return the (decrypted) value, or null if the property does not exist.
+     */
+    public String getProperty(final String key) {
+        return this.snapshot.values.get(key);
+    }
+    
+    
+    /**
+     * <p>
+     * Obtains the decrypted value of a property in the current snapshot,
+     * or a default value if the property does not exist.
+     * </p>
+     * 
+     * @param key the property key
+     * @param defaultValue the default value
+     * @return the (decrypted) value.
+     */
+    public String getProperty(final String key, final String defaultValue) {
+        final String value = getProperty(key);
+        return (value == null? defaultValue : value);
+    }
+    
+    
+    /**
+     * <p>
+     * Returns a copy of the current snapshot, containing decrypted values.
+     * </p>
+     * 
+     * @return a new <tt>Properties</tt> object with the decrypted values.
+     */
+    public Properties getProperties() {
+        final Properties properties = new Properties();
+        properties.putAll(this.snapshot.values);
+        return properties;
+    }
+    
+    
+    
+    /**
+     * <p>
+     * Adds a listener to be notified of reloads.
+     * </p>
+     * 
+     * @param listener the listener to be added.
+     */
+    public void addListener(final ReloadableEncryptablePropertiesListener listener) {
+        CommonUtils.validateNotNull(listener, "Listener cannot be null");
+        this.listeners.add(listener);
+    }
+    
+    
+    /**
+     * <p>
+     * Removes a previously added listener.
+     * </p>
+     * 
+     * @param listener the listener to be removed.
+     */
+    public void removeListener(final ReloadableEncryptablePropertiesListener listener) {
+        this.listeners.remove(listener);
+    }
+    
+    
+    
+    /**
+     * <p>
+     * Reloads the files if any of them has changed since it was last loaded,
+     * decrypting only those values which have changed, and publishes the new 
+     * snapshot. Listeners are notified if any property was added, modified
+     * or removed.
+     * </p>
+     * <p>
+     * If reloading fails, the current snapshot remains active.
+     * </p>
+     * 
+     * @return whether any property has changed.
+     * @throws EncryptionInitializationException if files cannot be read.
+     */
+    public boolean reload() {
+        final Set<String> changedKeys = reloadSnapshot();
+        if (changedKeys.isEmpty()) {
+            return false;
+        }
+        for (final ReloadableEncryptablePropertiesListener listener : this.listeners) {
+            listener.propertiesReloaded(this, changedKeys);
+        }
+        return true;
+    }
+    
+    
+    private synchronized Set<String> reloadSnapshot() {
+        
+        final Snapshot previous = this.snapshot;
+        if (!previous.isStale(this.files)) {
+            return Collections.emptySet();
+        }
+        
+        final Snapshot current = load(previous);
+        this.snapshot = current;
+        
+        final Set<String> changedKeys = new HashSet<String>();
+        for (final Map.Entry<String,String> entry : current.encodedValues.entrySet()) {
+            if (!entry.getValue().equals(previous.encodedValues.get(entry.getKey()))) {
+                changedKeys.add(entry.getKey());
+            }
+        }
+        for (final String key : previous.encodedValues.keySet()) {
+            if (!current.encodedValues.containsKey(key)) {
+                changedKeys.add(key);
+            }
+        }
+        return Collections.unmodifiableSet(changedKeys);
+        
+    }
+    
+    
+    
+    /**
+     * <p>
+     * Starts checking periodically (in a daemon thread) whether files have 
+     * changed, reloading them if so. Failures are notified to listeners
+     * (see {@link ReloadableEncryptablePropertiesListener#reloadFailed(ReloadableEncryptableProperties, RuntimeException)}),
+     * and exceptions thrown by listeners are ignored.
+     * </p>
+     * <p>
+     * If polling was already active, it is restarted with the new interval.
+     * </p>
+     * 
+     * @param intervalMillis the interval between checks, in milliseconds.
+     */
+    public synchronized void startPolling(final long intervalMillis) {
+        CommonUtils.validateIsTrue(intervalMillis > 0, 
+                "Polling interval must be greater than zero");
+        stopPolling();
+        this.pollingTimer = new Timer("jasypt-properties-reload", true);
+        this.pollingTimer.schedule(new PollingTask(), intervalMillis, intervalMillis);
+    }
+    
+    
+    /**
+     * <p>
+     * Stops checking periodically whether files have changed.
+     * </p>
+     */
+    public synchronized void stopPolling() {
+        if (this.pollingTimer != null) {
+            this.pollingTimer.cancel();
+            this.pollingTimer = null;
+        }
+    }
+    
+    
+    
+    private Snapshot load(final Snapshot previous) {
+        
+        final long[] stamps = new long[this.files.length * STAMPS_PER_FILE];
+        final Properties properties = new Properties();
+        for (int i = 0; i < this.files.length; i++) {
+            // Date and size are taken before reading, so that changes made 
+            // while reading are detected by the next check
+            stamps[i * STAMPS_PER_FILE] = this.files[i].lastModified();
+            stamps[i * STAMPS_PER_FILE + 1] = this.files[i].length();
+            // Properties are loaded from the same contents the checksum is
+            // computed on
+            final byte[] contents = readFile(this.files[i]);
+            stamps[i * STAMPS_PER_FILE + 2] = checksum(contents);
+            try {
+                properties.load(new ByteArrayInputStream(contents));
+            } catch (final IOException e) {
+                throw new EncryptionInitializationException(e);
+            }
+        }
+        
+        final Map<String,String> encodedValues = new HashMap<String,String>();
+        final Map<String,String> values = new HashMap<String,String>();
+        for (final String key : properties.stringPropertyNames()) {
+            final String encodedValue = properties.getProperty(key);
+            encodedValues.put(key, encodedValue);
+            if (previous != null && encodedValue.equals(previous.encodedValues.get(key))) {
+                values.put(key, previous.values.get(key));
+            } else {
+                values.put(key, decode(encodedValue));
+            }
+        }
+        
+        return new Snapshot(stamps, encodedValues, values);
+        
+    }
+    
+    
+    private static byte[] readFile(final File file) {
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                contents.write(buffer, 0, read);
+            }
+            return contents.toByteArray();
+        } catch (final IOException e) {
+            throw new EncryptionInitializationException(e);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (final IOException ignored) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+    
+    
+    private static long checksum(final byte[] contents) {
+        final CRC32 crc = new CRC32();
+        crc.update(contents);
+        return crc.getValue();
+    }
+    
+    
+    private String decode(final String encodedValue) {
+        if (!PropertyValueEncryptionUtils.isEncryptedValue(encodedValue)) {
+            return encodedValue;
+        }
+        if (this.stringEncryptor != null) {
+            return PropertyValueEncryptionUtils.decrypt(encodedValue, this.stringEncryptor);
+        }
+        return PropertyValueEncryptionUtils.decrypt(encodedValue, this.textEncryptor);
+    }
+    
+    
+    
+    /*
+     * Immutable set of loaded properties, along with the stamps (modification
+     * date, size and checksum) of the files they were loaded from.
+     */
+    private static final class Snapshot {
+        
+        private final long[] stamps;
+        private final Map<String,String> encodedValues;
+        private final Map<String,String> values;
+        
+        Snapshot(final long[] stamps, final Map<String,String> encodedValues, 
+                final Map<String,String> values) {
+            super();
+            this.stamps = stamps;
+            this.encodedValues = encodedValues;
+            this.values = values;
+        }
+        
+        boolean isStale(final File[] files) {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].lastModified() != this.stamps[i * STAMPS_PER_FILE] ||
+                        files[i].length() != this.stamps[i * STAMPS_PER_FILE + 1]) {
+                    return true;
+                }
+                // Modification dates can have a resolution of one second
+                // or more, so contents can change without altering them
+                if (checksum(readFile(files[i])) != this.stamps[i * STAMPS_PER_FILE + 2]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+    }
+    
+    
+    
+    private final class PollingTask extends TimerTask {
+        
+        PollingTask() {
+            super();
+        }
+        
+        @Override
+        public void run() {
+            
+            // Exceptions thrown by listeners are ignored, so that they do 
+            // not stop the polling thread
+            final Set<String> changedKeys;
+            try {
+                changedKeys = reloadSnapshot();
+            } catch (final RuntimeException e) {
+                for (final ReloadableEncryptablePropertiesListener listener : listeners) {
+                    try {
+                        listener.reloadFailed(ReloadableEncryptableProperties.this, e);
+                    } catch (final RuntimeException ignored) {
+                        // nothing to do
+                    }
+                }
+                return;
+            }
+            
+            if (changedKeys.isEmpty()) {
+                return;
+            }
+            for (final ReloadableEncryptablePropertiesListener listener : listeners) {
+                try {
+                    listener.propertiesReloaded(ReloadableEncryptableProperties.this, changedKeys);
+                } catch (final RuntimeException ignored) {
+                    // nothing to do
+                }
+            }
+            
+        }
+        
+    }
+    
+}
@@ -0,0 +1,71 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.properties;
+
+import java.util.Set;
+
+
+/**
+ * <p>
+ * Listener interface for objects that need to be notified when the
+ * properties of a {@link ReloadableEncryptableProperties} object are
+ * reloaded.
+ * </p>
+ * <p>
+ * Listeners are called from the thread performing the reload (which
+ * will be the polling thread if automatic reloading is active), so they
+ * should return quickly.
+ * </p>
+ * 
+ * @since 1.9.4
+ * 
+ * @author Daniel Fern&aacute;ndez
+ * 
+ */
+public interface ReloadableEncryptablePropertiesListener {
+
+    
+    /**
+     * <p>
+     * Called after a new snapshot of the properties has been published
+     * because at least one property was added, modified or removed.
+     * </p>
+     * 
+     * @param properties the reloaded properties.
+     * @param changedKeys the keys of the added, modified or removed properties.
+     */
+    public void propertiesReloaded(ReloadableEncryptableProperties properties, 
+            Set<String> changedKeys);
+
+    
+    /**
+     * <p>
+     * Called when an automatic reload fails (for example because a file
+     * could not be read or a value could not be decrypted). The previous
+     * snapshot of the properties remains active.
+     * </p>
+     * 
+     * @param properties the properties that could not be reloaded.
+     * @param exception the exception that caused the failure.
+     */
+    public void reloadFailed(ReloadableEncryptableProperties properties, 
+            RuntimeException exception);
+    
+}
@@ -19,6 +19,10 @@
  */
 package org.jasypt.util.digest;
 
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.security.Provider;
 
 import org.jasypt.digest.StandardByteDigester;
@@ -244,6 +248,53 @@ public final class Digester {
     public byte[] digest(final byte[] binary) {
         return this.digester.digest(binary);
     }
-
+    
+    /**
+     * Creates a digest of the contents of a stream.
+     * 
+     * @param stream the stream to be digested (read but not closed).
+     * @return the resulting digest.
+     * @see StandardByteDigester#digestStream(InputStream)
+     * @since 1.9.4
+     */
+    public byte[] digestStream(final InputStream stream) {
+        return this.digester.digestStream(stream);
+    }
+    
+    /**
+     * Creates a digest of the contents of a channel.
+     * 
+     * @param channel the channel to be digested (read but not closed).
+     * @return the resulting digest.
+     * @see StandardByteDigester#digestChannel(ReadableByteChannel)
+     * @since 1.9.4
+     */
+    public byte[] digestChannel(final ReadableByteChannel channel) {
+        return this.digester.digestChannel(channel);
+    }
+    
+    /**
+     * Creates a digest of the contents of a buffer.
+     * 
+     * @param buffer the buffer to be digested (from its position to its limit).
+     * @return the resulting digest.
+     * @see StandardByteDigester#digestBuffer(ByteBuffer)
+     * @since 1.9.4
+     */
+    public byte[] digestBuffer(final ByteBuffer buffer) {
+        return this.digester.digestBuffer(buffer);
+    }
+    
+    /**
+     * Creates a digest of the contents of a file.
+     * 
+     * @param file the file to be digested.
+     * @return the resulting digest.
+     * @see StandardByteDigester#digestFile(File)
+     * @since 1.9.4
+     */
+    public byte[] digestFile(final File file) {
+        return this.digester.digestFile(file);
+    }
     
 }
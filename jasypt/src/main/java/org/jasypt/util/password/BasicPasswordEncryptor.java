@@ -65,6 +65,8 @@ public final class BasicPasswordEncryptor implements PasswordEncryptor {
     public BasicPasswordEncryptor() {
         super();
         this.digester = new StandardStringDigester();
+        // Concurrent password checks should not wait for each other
+        this.digester.setThreadLocalDigests(true);
         this.digester.initialize();
     }
     
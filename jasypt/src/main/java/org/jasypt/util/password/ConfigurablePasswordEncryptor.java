@@ -73,6 +73,8 @@ public final class ConfigurablePasswordEncryptor implements PasswordEncryptor {
     public ConfigurablePasswordEncryptor() {
         super();
         this.digester = new StandardStringDigester();
+        // Concurrent password checks should not wait for each other
+        this.digester.setThreadLocalDigests(true);
     }
 
 
@@ -112,6 +114,11 @@ public final class ConfigurablePasswordEncryptor implements PasswordEncryptor {
      *         Cryptography Architecture API Specification & 
      *         Reference</a>.
      * </p>
+     * <p>
+     * PBKDF2 key derivation algorithms like <tt>PBKDF2WithHmacSHA256</tt> 
+     * or <tt>PBKDF2WithHmacSHA512</tt> can also be used (see 
+     * {@link org.jasypt.digest.StandardByteDigester#setAlgorithm(String)}).
+     * </p>
      * 
      * @param algorithm the name of the algorithm to be used.
      * @see StandardStringDigester#setAlgorithm(String)
@@ -214,7 +221,12 @@ public final class ConfigurablePasswordEncryptor implements PasswordEncryptor {
      * </p>
      * <ul>
      *   <li><tt><b>base64</b></tt> (default)</li>
+     *   <li><tt><b>base64-unpadded</b></tt></li>
+     *   <li><tt><b>base64url</b></tt></li>
+     *   <li><tt><b>base64url-unpadded</b></tt></li>
      *   <li><tt><b>hexadecimal</b></tt></li>
+     *   <li>Any other output type registered at 
+     *       {@link org.jasypt.codec.StringOutputCodecs}</li>
      * </ul>
      * @since 1.3
      * 
@@ -66,6 +66,8 @@ public final class StrongPasswordEncryptor implements PasswordEncryptor {
     public StrongPasswordEncryptor() {
         super();
         this.digester = new StandardStringDigester();
+        // Concurrent password checks should not wait for each other
+        this.digester.setThreadLocalDigests(true);
         this.digester.setAlgorithm("SHA-256");
         this.digester.setIterations(100000);
         this.digester.setSaltSizeBytes(16);
@@ -60,6 +60,8 @@ public final class RFC2307MD5PasswordEncryptor implements PasswordEncryptor {
     public RFC2307MD5PasswordEncryptor() {
         super();
         this.digester = new StandardStringDigester();
+        // Concurrent password checks should not wait for each other
+        this.digester.setThreadLocalDigests(true);
         this.digester.setAlgorithm("MD5");
         this.digester.setIterations(1);
         this.digester.setSaltSizeBytes(0);
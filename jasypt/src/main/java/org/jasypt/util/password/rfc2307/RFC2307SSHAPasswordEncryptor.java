@@ -63,6 +63,8 @@ public final class RFC2307SSHAPasswordEncryptor implements PasswordEncryptor {
     public RFC2307SSHAPasswordEncryptor() {
         super();
         this.digester = new StandardStringDigester();
+        // Concurrent password checks should not wait for each other
+        this.digester.setThreadLocalDigests(true);
         this.digester.setAlgorithm("SHA-1");
         this.digester.setIterations(1);
         this.digester.setSaltSizeBytes(8);
@@ -113,4 +113,59 @@ public final class AES256TextEncryptor implements TextEncryptor {
         return this.encryptor.decrypt(encryptedMessage);
     }
     
+
+    /**
+     * Encrypts a message (any <tt>CharSequence</tt>) without creating an
+     * intermediate <tt>String</tt>.
+     * 
+     * @param message the message to be encrypted.
+     * @see StandardPBEStringEncryptor#encrypt(CharSequence)
+     * @since 1.9.4
+     */
+    public String encrypt(final CharSequence message) {
+        return this.encryptor.encrypt(message);
+    }
+    
+
+    /**
+     * Encrypts the specified portion of a char array.
+     * 
+     * @param message the array containing the message to be encrypted.
+     * @param messageOffset the offset at which the message starts.
+     * @param messageLength the length of the message.
+     * @see StandardPBEStringEncryptor#encrypt(char[], int, int)
+     * @since 1.9.4
+     */
+    public String encrypt(final char[] message, final int messageOffset, final int messageLength) {
+        return this.encryptor.encrypt(message, messageOffset, messageLength);
+    }
+    
+
+    /**
+     * Decrypts a message into the specified char array.
+     * 
+     * @param encryptedMessage the message to be decrypted.
+     * @param output the array the result will be written to.
+     * @param outputOffset the offset at which the result will be written.
+     * @see StandardPBEStringEncryptor#decryptTo(String, char[], int)
+     * @since 1.9.4
+     */
+    public int decryptTo(final String encryptedMessage, final char[] output, final int outputOffset) {
+        return this.encryptor.decryptTo(encryptedMessage, output, outputOffset);
+    }
+    
+
+    /**
+     * Decrypts a message, appending the result to the specified 
+     * <tt>Appendable</tt> object.
+     * 
+     * @param encryptedMessage the message to be decrypted.
+     * @param output the object the result will be appended to.
+     * @see StandardPBEStringEncryptor#decryptTo(String, Appendable)
+     * @since 1.9.4
+     */
+    public int decryptTo(final String encryptedMessage, final Appendable output) {
+        return this.encryptor.decryptTo(encryptedMessage, output);
+    }
+    
 }
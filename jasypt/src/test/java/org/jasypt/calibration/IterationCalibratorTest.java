@@ -0,0 +1,98 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.calibration;
+
+import junit.framework.TestCase;
+
+import org.jasypt.digest.StandardByteDigester;
+import org.jasypt.digest.StandardStringDigester;
+import org.jasypt.digest.config.SimpleDigesterConfig;
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import org.jasypt.encryption.pbe.config.SimplePBEConfig;
+
+public class IterationCalibratorTest extends TestCase {
+
+    
+    private static IterationCalibrator createCalibrator(final long targetLatencyMillis) {
+        final IterationCalibrator calibrator = new IterationCalibrator();
+        calibrator.setTargetLatencyMillis(targetLatencyMillis);
+        calibrator.setWarmupMillis(50L);
+        calibrator.setSamples(3);
+        return calibrator;
+    }
+    
+    
+    private static void checkCalibration(final IterationCalibration calibration, 
+            final String algorithm) {
+        assertEquals(algorithm, calibration.getAlgorithm());
+        assertTrue(calibration.getIterations().intValue() >= 1);
+        assertTrue(calibration.getNanosPerIteration() > 0.0d);
+        assertTrue(calibration.getOverheadNanos() >= 0L);
+        if (calibration.getIterations().intValue() > 1) {
+            assertTrue(calibration.getEstimatedLatencyNanos() <= calibration.getTargetLatencyNanos());
+        }
+    }
+    
+    
+    public void testDigesterCalibration() throws Exception {
+        
+        final SimpleDigesterConfig config = new SimpleDigesterConfig();
+        config.setAlgorithm("SHA-256");
+        config.setIterations(new Integer(5));
+        
+        final IterationCalibration calibration = 
+            createCalibrator(20L).calibrateDigester(config);
+        checkCalibration(calibration, "SHA-256");
+        assertEquals(20000000L, calibration.getTargetLatencyNanos());
+        // SHA-256 iterations take much less than 4 microseconds each
+        assertTrue(calibration.getIterations().intValue() > 5000);
+        
+        config.setIterations(calibration.getIterations());
+        final StandardStringDigester digester = new StandardStringDigester();
+        digester.setConfig(config);
+        assertTrue(digester.matches("message", digester.digest("message")));
+        
+        checkCalibration(createCalibrator(5L).calibrateDigester(null), 
+                StandardByteDigester.DEFAULT_ALGORITHM);
+        
+    }
+    
+    
+    public void testPBECalibration() throws Exception {
+        
+        final SimplePBEConfig config = new SimplePBEConfig();
+        config.setAlgorithm("PBEWithMD5AndTripleDES");
+        
+        final IterationCalibrator calibrator = createCalibrator(1L);
+        calibrator.setTargetOperationsPerSecond(100);
+        final IterationCalibration calibration = calibrator.calibratePBE(config);
+        checkCalibration(calibration, "PBEWithMD5AndTripleDES");
+        assertEquals(10000000L, calibration.getTargetLatencyNanos());
+        
+        config.setKeyObtentionIterations(calibration.getIterations());
+        config.setPassword("password");
+        final StandardPBEStringEncryptor encryptor = new StandardPBEStringEncryptor();
+        encryptor.setConfig(config);
+        assertEquals("message", encryptor.decrypt(encryptor.encrypt("message")));
+        
+    }
+
+    
+}
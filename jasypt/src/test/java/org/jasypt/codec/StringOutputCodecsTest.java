@@ -0,0 +1,182 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.codec;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.jasypt.commons.CommonUtils;
+import org.jasypt.contrib.org.apache.commons.codec_1_3.binary.Base64;
+import org.jasypt.digest.StandardStringDigester;
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+public class StringOutputCodecsTest extends TestCase {
+
+    
+    public void testBase64Compatibility() throws Exception {
+        
+        final Random random = new Random(17);
+        final Base64 legacy = new Base64();
+        final StringOutputCodec codec = StringOutputCodecs.getCodec("base64");
+        
+        for (int length = 0; length < 200; length++) {
+            final byte[] data = new byte[length];
+            random.nextBytes(data);
+            final String legacyEncoded = new String(legacy.encode(data), "US-ASCII");
+            assertEquals(legacyEncoded, codec.encode(data));
+            assertTrue(Arrays.equals(data, codec.decode(legacyEncoded)));
+        }
+        
+    }
+    
+    
+    public void testBase64Variants() throws Exception {
+        
+        final Random random = new Random(23);
+        final String[] types = new String[] {
+                CommonUtils.STRING_OUTPUT_TYPE_BASE64_UNPADDED,
+                CommonUtils.STRING_OUTPUT_TYPE_BASE64_URL,
+                CommonUtils.STRING_OUTPUT_TYPE_BASE64_URL_UNPADDED
+        };
+        
+        for (int i = 0; i < types.length; i++) {
+            final StringOutputCodec codec = StringOutputCodecs.getCodec(types[i]);
+            for (int length = 0; length < 100; length++) {
+                final byte[] data = new byte[length];
+                random.nextBytes(data);
+                final String encoded = codec.encode(data);
+                if (types[i].startsWith("base64url")) {
+                    assertTrue(encoded.indexOf('+') < 0 && encoded.indexOf('/') < 0);
+                }
+                if (types[i].endsWith("unpadded")) {
+                    assertTrue(encoded.indexOf('=') < 0);
+                }
+                assertTrue(Arrays.equals(data, codec.decode(encoded)));
+            }
+        }
+        
+        final byte[] data = new byte[] { (byte)0xfb, (byte)0xff, (byte)0xfe };
+        assertEquals("+//+", StringOutputCodecs.getCodec("base64").encode(data));
+        assertEquals("-__-", StringOutputCodecs.getCodec("base64url").encode(data));
+        
+    }
+    
+    
+    public void testBase64LenientDecoding() throws Exception {
+        
+        final StringOutputCodec codec = StringOutputCodecs.getCodec("base64");
+        final byte[] data = "jasypt codecs".getBytes("US-ASCII");
+        final String encoded = codec.encode(data);
+        
+        final String wrapped = 
+            encoded.substring(0, 5) + "\r\n " + encoded.substring(5);
+        assertTrue(Arrays.equals(data, codec.decode(wrapped)));
+        
+    }
+    
+    
+    public void testHexadecimal() throws Exception {
+        
+        final byte[] data = new byte[256];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        
+        final StringOutputCodec codec = StringOutputCodecs.getCodec("HEX");
+        final String encoded = codec.encode(data);
+        assertEquals("000102", encoded.substring(0, 6));
+        assertEquals("FDFEFF", encoded.substring(encoded.length() - 6));
+        assertTrue(Arrays.equals(data, codec.decode(encoded)));
+        assertTrue(Arrays.equals(data, codec.decode(encoded.toLowerCase())));
+        
+        try {
+            codec.decode("0G");
+            fail();
+        } catch (final EncryptionOperationNotPossibleException e) {
+            // Expected
+        }
+        try {
+            codec.decode("ABC");
+            fail();
+        } catch (final EncryptionOperationNotPossibleException e) {
+            // Expected
+        }
+        
+    }
+    
+    
+    public void testEncryptorAndDigester() throws Exception {
+        
+        final String message = "This is a message with some \u00E1\u00E9\u00ED\u00F3\u00FA";
+        
+        final StandardPBEStringEncryptor encryptor = new StandardPBEStringEncryptor();
+        encryptor.setPassword("jasypt");
+        encryptor.setStringOutputType("base64url-unpadded");
+        final String encrypted = encryptor.encrypt(message);
+        assertTrue(encrypted.indexOf('=') < 0);
+        assertEquals(message, encryptor.decrypt(encrypted));
+        
+        final StandardStringDigester digester = new StandardStringDigester();
+        digester.setStringOutputType("BASE64URL");
+        final String digest = digester.digest(message);
+        assertTrue(digest.indexOf('+') < 0 && digest.indexOf('/') < 0);
+        assertTrue(digester.matches(message, digest));
+        
+    }
+    
+    
+    public void testCustomCodec() throws Exception {
+        
+        final StringOutputCodec reversedHex = new StringOutputCodec() {
+            public String encode(final byte[] data) {
+                return new StringBuffer(CommonUtils.toHexadecimal(data)).reverse().toString();
+            }
+            public byte[] decode(final String data) {
+                return CommonUtils.fromHexadecimal(new StringBuffer(data).reverse().toString());
+            }
+        };
+        
+        StringOutputCodecs.registerCodec("Reversed-Hex", reversedHex);
+        assertTrue(StringOutputCodecs.isCodecRegistered("reversed-hex"));
+        
+        final StandardStringDigester digester = new StandardStringDigester();
+        digester.setStringOutputType("reversed-hex");
+        final String digest = digester.digest("jasypt");
+        assertTrue(digester.matches("jasypt", digest));
+        
+        try {
+            StringOutputCodecs.registerCodec("base64", reversedHex);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            StringOutputCodecs.registerCodec("HEX", reversedHex);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // Expected
+        }
+        
+    }
+    
+}
@@ -0,0 +1,117 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.commons;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.TestCase;
+
+public class BatchExecutorTest extends TestCase {
+
+    
+    private static final int SIZE = 1000;
+    
+    
+    private static class MarkingBatch extends BatchExecutor.Batch<Object> {
+        
+        final AtomicIntegerArray processed = new AtomicIntegerArray(SIZE);
+        
+        protected void process(final int index, final Object workerContext) {
+            this.processed.incrementAndGet(index);
+        }
+        
+    }
+    
+    
+    public void testAllItemsProcessed() throws Exception {
+        
+        final MarkingBatch batch = new MarkingBatch();
+        BatchExecutor.execute(SIZE, 4, batch);
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(1, batch.processed.get(i));
+        }
+        
+    }
+    
+    
+    public void testWorkerContextFailure() throws Exception {
+        
+        final Thread callingThread = Thread.currentThread();
+        final MarkingBatch batch = 
+            new MarkingBatch() {
+                protected Object createWorkerContext() {
+                    if (Thread.currentThread() != callingThread) {
+                        throw new IllegalStateException();
+                    }
+                    return null;
+                }
+            };
+        BatchExecutor.execute(SIZE, 4, batch);
+        
+        // Items not taken by the failed workers are processed by the caller
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(1, batch.processed.get(i));
+        }
+        
+    }
+    
+    
+    public void testCallingThreadContextFailure() throws Exception {
+        
+        final RuntimeException failure = new IllegalStateException();
+        final MarkingBatch batch = 
+            new MarkingBatch() {
+                protected Object createWorkerContext() {
+                    throw failure;
+                }
+            };
+        try {
+            BatchExecutor.execute(SIZE, 1, batch);
+            fail();
+        } catch (final IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(0, batch.processed.get(i));
+        }
+        
+    }
+    
+    
+    public void testItemFailuresIsolated() throws Exception {
+        
+        final MarkingBatch batch = 
+            new MarkingBatch() {
+                protected void process(final int index, final Object workerContext) {
+                    super.process(index, workerContext);
+                    if (index % 2 == 0) {
+                        throw new IllegalStateException();
+                    }
+                }
+            };
+        BatchExecutor.execute(SIZE, 4, batch);
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(1, batch.processed.get(i));
+        }
+        
+    }
+    
+    
+}
@@ -0,0 +1,109 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class BatchStringDigesterTest extends TestCase {
+
+    
+    private static String[] createMessages(final int size) {
+        final String[] messages = new String[size];
+        for (int i = 0; i < size; i++) {
+            messages[i] = "Message number " + i;
+        }
+        return messages;
+    }
+    
+    
+    private static void checkBatch(final BatchStringDigester digester) {
+        
+        final String[] messages = createMessages(50);
+        messages[7] = null;
+        
+        final String[] digests = digester.digestAll(messages);
+        assertEquals(messages.length, digests.length);
+        assertNull(digests[7]);
+        for (int i = 0; i < messages.length; i++) {
+            if (messages[i] != null) {
+                assertTrue(digester.matches(messages[i], digests[i]));
+            }
+        }
+        
+        final String[] candidates = (String[]) messages.clone();
+        candidates[3] = "Not message number 3";
+        final String[] checkedDigests = (String[]) digests.clone();
+        checkedDigests[11] = "This is not a valid digest";
+        checkedDigests[12] = checkedDigests[13];
+        
+        final boolean[] results = digester.matchesAll(candidates, checkedDigests);
+        assertEquals(messages.length, results.length);
+        for (int i = 0; i < messages.length; i++) {
+            final boolean expected = (i != 3 && i != 11 && i != 12);
+            assertEquals("Item " + i, expected, results[i]);
+        }
+        
+        assertEquals(0, digester.digestAll(new String[0]).length);
+        
+    }
+    
+    
+    public void testStandardDigester() throws Exception {
+        final StandardStringDigester digester = new StandardStringDigester();
+        digester.setAlgorithm("SHA-256");
+        digester.setIterations(100);
+        checkBatch(digester);
+    }
+    
+    
+    public void testPooledDigester() throws Exception {
+        final PooledStringDigester digester = new PooledStringDigester();
+        digester.setPoolSize(3);
+        digester.setIterations(100);
+        digester.setPrefix("{X}");
+        checkBatch(digester);
+    }
+    
+    
+    public void testPrefixMismatchIsolated() throws Exception {
+        final StandardStringDigester digester = new StandardStringDigester();
+        digester.setPrefix("{X}");
+        final String[] messages = createMessages(4);
+        final String[] digests = digester.digestAll(messages);
+        digests[2] = digests[2].substring(3);
+        final boolean[] results = digester.matchesAll(messages, digests);
+        assertTrue(Arrays.equals(new boolean[] {true, true, false, true}, results));
+    }
+    
+    
+    public void testLengthMismatch() throws Exception {
+        final StandardStringDigester digester = new StandardStringDigester();
+        try {
+            digester.matchesAll(new String[2], new String[3]);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    
+}
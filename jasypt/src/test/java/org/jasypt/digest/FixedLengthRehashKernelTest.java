@@ -0,0 +1,108 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.jasypt.salt.StringFixedSaltGenerator;
+
+public class FixedLengthRehashKernelTest extends TestCase {
+
+    
+    private static final String[] ALGORITHMS = 
+        new String[] { "SHA-1", "SHA-224", "SHA-256", "SHA-384", "SHA-512" };
+    
+    
+    private static byte[] legacyRehash(final MessageDigest md, final byte[] digest, final int times) {
+        byte[] result = digest;
+        for (int i = 0; i < times; i++) {
+            md.reset();
+            result = md.digest(result);
+        }
+        return result;
+    }
+    
+    
+    public void testKernels() throws Exception {
+        
+        final Random random = new Random(42L);
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            
+            final MessageDigest md = MessageDigest.getInstance(ALGORITHMS[i]);
+            final FixedLengthRehashKernel kernel = 
+                FixedLengthRehashKernel.forAlgorithm(ALGORITHMS[i]);
+            assertNotNull(kernel);
+            assertEquals(md.getDigestLength(), kernel.getDigestLength());
+            
+            for (int times = 1; times < 50; times += 7) {
+                final byte[] digest = new byte[kernel.getDigestLength()];
+                random.nextBytes(digest);
+                final byte[] expected = legacyRehash(md, digest, times);
+                kernel.rehash(digest, times);
+                assertTrue(ALGORITHMS[i], Arrays.equals(expected, digest));
+            }
+            
+        }
+        
+        assertNull(FixedLengthRehashKernel.forAlgorithm("MD5"));
+        assertNotNull(FixedLengthRehashKernel.forAlgorithm("sha256"));
+        
+    }
+
+    
+    public void testDigesterResults() throws Exception {
+        
+        final byte[] message = "This is a message".getBytes("UTF-8");
+        final byte[] salt = "A FIXED SALT".getBytes("UTF-8");
+        
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            
+            final MessageDigest md = MessageDigest.getInstance(ALGORITHMS[i]);
+            md.update(salt);
+            md.update(message);
+            final byte[] expected = legacyRehash(md, md.digest(), 999);
+
+            // Rehash kernel
+            final StandardByteDigester digester = new StandardByteDigester();
+            digester.setAlgorithm(ALGORITHMS[i]);
+            digester.setIterations(1000);
+            digester.setSaltSizeBytes(salt.length);
+            digester.setSaltGenerator(new StringFixedSaltGenerator("A FIXED SALT"));
+            digester.setUseRehashKernel(true);
+            assertTrue(Arrays.equals(expected, digester.digest(message)));
+            
+            // Explicit provider: MessageDigest iterations
+            final StandardByteDigester providerDigester = new StandardByteDigester();
+            providerDigester.setAlgorithm(ALGORITHMS[i]);
+            providerDigester.setIterations(1000);
+            providerDigester.setSaltSizeBytes(salt.length);
+            providerDigester.setSaltGenerator(new StringFixedSaltGenerator("A FIXED SALT"));
+            providerDigester.setProvider(md.getProvider());
+            assertTrue(Arrays.equals(expected, providerDigester.digest(message)));
+            
+        }
+        
+    }
+    
+}
@@ -0,0 +1,144 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import junit.framework.TestCase;
+
+import org.jasypt.exceptions.EncryptionInitializationException;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.salt.StringFixedSaltGenerator;
+import org.jasypt.util.password.ConfigurablePasswordEncryptor;
+
+public class Pbkdf2DigesterTest extends TestCase {
+
+    
+    private static final String[] ALGORITHMS = 
+        new String[] { "PBKDF2WithHmacSHA1", "PBKDF2WithHmacSHA256", "PBKDF2WithHmacSHA512" };
+    
+    
+    public void testSecretKeyFactoryResults() throws Exception {
+        
+        final String[] messages = 
+            new String[] { "This is a message", "Mensaje con e\u00F1es y \u00E1cc\u00E9ntos", "x" };
+        final String salt = "A FIXED SALT";
+        
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            
+            final StandardByteDigester digester = new StandardByteDigester();
+            digester.setAlgorithm(ALGORITHMS[i]);
+            digester.setIterations(1000);
+            digester.setSaltGenerator(new StringFixedSaltGenerator(salt));
+            digester.setSaltSizeBytes(salt.length());
+            
+            final SecretKeyFactory factory = SecretKeyFactory.getInstance(ALGORITHMS[i]);
+            for (int j = 0; j < messages.length; j++) {
+                final byte[] expected = 
+                    factory.generateSecret(
+                            new PBEKeySpec(messages[j].toCharArray(), salt.getBytes("UTF-8"), 
+                                    1000, digester.digest(new byte[0]).length * 8)).getEncoded();
+                assertTrue(ALGORITHMS[i], 
+                        Arrays.equals(expected, digester.digest(messages[j].getBytes("UTF-8"))));
+            }
+            
+        }
+        
+    }
+    
+    
+    public void testRandomSaltDigests() throws Exception {
+        
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            
+            final StandardStringDigester digester = new StandardStringDigester();
+            digester.setAlgorithm(ALGORITHMS[i]);
+            digester.setIterations(500);
+            digester.setPrefix("{PBKDF2}");
+            digester.setStringOutputType("hexadecimal");
+            
+            final String digest = digester.digest("This is a password");
+            assertTrue(digest.startsWith("{PBKDF2}"));
+            assertTrue(digester.matches("This is a password", digest));
+            assertFalse(digester.matches("This is another password", digest));
+            assertFalse(digest.equals(digester.digest("This is a password")));
+            
+            final String emptyDigest = digester.digest("");
+            assertTrue(digester.matches("", emptyDigest));
+            assertFalse(digester.matches("x", emptyDigest));
+            
+            final boolean[] results = 
+                digester.matchesAll(new String[] { "a", "b" }, 
+                        new String[] { digester.digest("a"), digester.digest("a") });
+            assertTrue(Arrays.equals(new boolean[] { true, false }, results));
+            
+        }
+        
+    }
+    
+    
+    public void testPasswordEncryptor() throws Exception {
+        final ConfigurablePasswordEncryptor passwordEncryptor = new ConfigurablePasswordEncryptor();
+        passwordEncryptor.setAlgorithm("PBKDF2WithHmacSHA256");
+        passwordEncryptor.setPlainDigest(false);
+        final String encryptedPassword = passwordEncryptor.encryptPassword("password");
+        assertTrue(passwordEncryptor.checkPassword("password", encryptedPassword));
+        assertFalse(passwordEncryptor.checkPassword("Password", encryptedPassword));
+    }
+    
+    
+    public void testUnsupportedOperations() throws Exception {
+        
+        final StandardByteDigester digester = new StandardByteDigester();
+        digester.setAlgorithm("PBKDF2WithHmacSHA256");
+        try {
+            digester.digestStream(new ByteArrayInputStream(new byte[10]));
+            fail();
+        } catch (final EncryptionOperationNotPossibleException e) {
+            // expected
+        }
+        
+        final StandardByteDigester invertedDigester = new StandardByteDigester();
+        invertedDigester.setAlgorithm("PBKDF2WithHmacSHA256");
+        invertedDigester.setInvertPositionOfSaltInMessageBeforeDigesting(true);
+        try {
+            invertedDigester.initialize();
+            fail();
+        } catch (final EncryptionInitializationException e) {
+            // expected
+        }
+        
+        final TreeByteDigester treeDigester = new TreeByteDigester();
+        treeDigester.setAlgorithm("PBKDF2WithHmacSHA256");
+        try {
+            treeDigester.initialize();
+            fail();
+        } catch (final EncryptionInitializationException e) {
+            // expected
+        }
+        
+    }
+
+    
+}
@@ -0,0 +1,141 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.salt.StringFixedSaltGenerator;
+import org.jasypt.util.digest.Digester;
+
+public class StreamingByteDigesterTest extends TestCase {
+
+    
+    private static byte[] createMessage(final int size) {
+        final byte[] message = new byte[size];
+        new Random(size).nextBytes(message);
+        return message;
+    }
+    
+    
+    private static StandardByteDigester createDigester(final boolean invertSalt, 
+            final boolean invertPlainSalt) {
+        final StandardByteDigester digester = new StandardByteDigester();
+        digester.setAlgorithm("SHA-256");
+        digester.setIterations(10);
+        digester.setSaltGenerator(new StringFixedSaltGenerator("A FIXED SALT"));
+        digester.setSaltSizeBytes(12);
+        digester.setInvertPositionOfSaltInMessageBeforeDigesting(invertSalt);
+        digester.setInvertPositionOfPlainSaltInEncryptionResults(invertPlainSalt);
+        return digester;
+    }
+    
+    
+    public void testSameResultsAsArrays() throws Exception {
+        
+        final boolean[] options = new boolean[] { false, true };
+        final int[] sizes = new int[] { 0, 1, 8191, 8192, 8193, 100000 };
+        
+        for (int i = 0; i < options.length; i++) {
+            for (int j = 0; j < options.length; j++) {
+                
+                final StandardByteDigester digester = createDigester(options[i], options[j]);
+                for (int k = 0; k < sizes.length; k++) {
+                    
+                    final byte[] message = createMessage(sizes[k]);
+                    final byte[] expected = digester.digest(message);
+                    
+                    assertTrue(Arrays.equals(expected, 
+                            digester.digestStream(new ByteArrayInputStream(message))));
+                    assertTrue(Arrays.equals(expected, 
+                            digester.digestChannel(Channels.newChannel(new ByteArrayInputStream(message)))));
+                    
+                    final ByteBuffer direct = ByteBuffer.allocateDirect(message.length + 3);
+                    direct.put(new byte[3]).put(message).flip();
+                    direct.position(3);
+                    assertTrue(Arrays.equals(expected, digester.digestBuffer(direct)));
+                    assertFalse(direct.hasRemaining());
+                    
+                    final File file = File.createTempFile("jasypt", ".bin");
+                    try {
+                        final FileOutputStream out = new FileOutputStream(file);
+                        try {
+                            out.write(message);
+                        } finally {
+                            out.close();
+                        }
+                        assertTrue(Arrays.equals(expected, digester.digestFile(file)));
+                    } finally {
+                        file.delete();
+                    }
+                    
+                }
+                
+            }
+        }
+        
+    }
+    
+    
+    public void testRandomSaltMatches() throws Exception {
+        final StandardByteDigester digester = new StandardByteDigester();
+        final byte[] message = createMessage(20000);
+        final byte[] digest = digester.digestStream(new ByteArrayInputStream(message));
+        assertTrue(digester.matches(message, digest));
+        assertFalse(digester.matches(createMessage(20001), digest));
+    }
+    
+    
+    public void testPooledAndUtilDigesters() throws Exception {
+        
+        final byte[] message = createMessage(30000);
+        
+        final PooledByteDigester pooled = new PooledByteDigester();
+        pooled.setPoolSize(2);
+        assertTrue(pooled.matches(message, 
+                pooled.digestBuffer(ByteBuffer.wrap(message))));
+        
+        final Digester digester = new Digester("SHA-1");
+        assertTrue(Arrays.equals(digester.digest(message), 
+                digester.digestStream(new ByteArrayInputStream(message))));
+        
+    }
+    
+    
+    public void testNonExistingFile() throws Exception {
+        final StandardByteDigester digester = new StandardByteDigester();
+        try {
+            digester.digestFile(new File("this-file-does-not-exist.bin"));
+            fail();
+        } catch (final EncryptionOperationNotPossibleException e) {
+            // expected
+        }
+    }
+
+    
+}
@@ -0,0 +1,200 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.digest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.jasypt.digest.config.SimpleTreeDigesterConfig;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+public class TreeByteDigesterTest extends TestCase {
+
+    
+    private static byte[] createMessage(final int size) {
+        final byte[] message = new byte[size];
+        new Random(size).nextBytes(message);
+        return message;
+    }
+    
+    
+    private static File createFile(final byte[] contents) throws Exception {
+        final File file = File.createTempFile("jasypt", ".bin");
+        file.deleteOnExit();
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+    
+    
+    private static TreeByteDigester createDigester(final int chunkSizeBytes) {
+        final TreeByteDigester digester = new TreeByteDigester();
+        digester.setAlgorithm("SHA-256");
+        digester.setIterations(10);
+        digester.setChunkSizeBytes(chunkSizeBytes);
+        return digester;
+    }
+    
+    
+    public void testDigestAndMatch() throws Exception {
+        
+        final int[] sizes = new int[] { 0, 1, 1000, 1024, 1025, 10000 };
+        final TreeByteDigester digester = createDigester(1024);
+        final TreeByteDigester otherChunkSizeDigester = createDigester(100);
+        
+        assertNull(digester.digest(null));
+        assertTrue(digester.matches(null, null));
+        
+        for (int i = 0; i < sizes.length; i++) {
+            
+            final byte[] message = createMessage(sizes[i]);
+            final byte[] digest = digester.digest(message);
+            
+            assertTrue(digester.matches(message, digest));
+            assertTrue(otherChunkSizeDigester.matches(message, digest));
+            assertFalse(Arrays.equals(digest, digester.digest(message)));
+            
+            final byte[] modified = createMessage(sizes[i] + 1);
+            assertFalse(digester.matches(modified, digest));
+            if (sizes[i] > 0) {
+                final byte[] flipped = (byte[]) message.clone();
+                flipped[flipped.length / 2] ^= 1;
+                assertFalse(digester.matches(flipped, digest));
+            }
+            
+            final File file = createFile(message);
+            try {
+                assertTrue(digester.matchesFile(file, digest));
+                final byte[] fileDigest = digester.digestFile(file);
+                assertTrue(digester.matches(message, fileDigest));
+                assertTrue(otherChunkSizeDigester.matchesFile(file, fileDigest));
+            } finally {
+                file.delete();
+            }
+            
+        }
+        
+        assertFalse(digester.matches(createMessage(10), new byte[5]));
+        assertFalse(digester.matches(createMessage(10), createMessage(50)));
+        
+    }
+    
+    
+    public void testIncrementalUpdate() throws Exception {
+        
+        final TreeByteDigester digester = createDigester(1000);
+        final byte[] message = createMessage(10500);
+        final File file = createFile(message);
+        try {
+            
+            final ChunkDigestTree tree = digester.digestTree(file);
+            assertEquals(11, tree.getChunkCount());
+            assertTrue(digester.matchesTree(tree, tree.getDigest()));
+            assertTrue(digester.matches(message, tree.getDigest()));
+            
+            // Modify chunk 4
+            message[4321] ^= 1;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.seek(4321);
+                raf.write(message[4321]);
+            } finally {
+                raf.close();
+            }
+            
+            final ChunkDigestTree wrongTree = 
+                digester.updateTree(file, tree, new int[] { 3 });
+            assertFalse(digester.matches(message, wrongTree.getDigest()));
+            
+            final ChunkDigestTree updatedTree = 
+                digester.updateTree(file, tree, new int[] { 4 });
+            assertTrue(digester.matches(message, updatedTree.getDigest()));
+            assertTrue(digester.matchesTree(updatedTree, digester.digest(message)));
+            assertFalse(digester.matchesTree(tree, updatedTree.getDigest()));
+            
+            // Truncate the file inside chunk 6 (length change implies rehashing it)
+            raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(6500);
+            } finally {
+                raf.close();
+            }
+            final byte[] truncated = Arrays.copyOf(message, 6500);
+            final ChunkDigestTree truncatedTree = 
+                digester.updateTree(file, updatedTree, new int[0]);
+            assertEquals(7, truncatedTree.getChunkCount());
+            assertTrue(digester.matches(truncated, truncatedTree.getDigest()));
+            
+        } finally {
+            file.delete();
+        }
+        
+    }
+    
+    
+    public void testConfig() throws Exception {
+        
+        final SimpleTreeDigesterConfig config = new SimpleTreeDigesterConfig();
+        config.setAlgorithm("SHA-1");
+        config.setChunkSizeBytes("512");
+        config.setParallelism(new Integer(2));
+        
+        final TreeByteDigester digester = new TreeByteDigester();
+        digester.setConfig(config);
+        final File file = createFile(createMessage(5000));
+        try {
+            final ChunkDigestTree tree = digester.digestTree(file);
+            assertEquals(512, tree.getChunkSizeBytes());
+            assertEquals(10, tree.getChunkCount());
+            // Header (13 bytes) + salt (8 bytes) + SHA-1 digest (20 bytes) 
+            assertEquals(41, tree.getDigest().length);
+        } finally {
+            file.delete();
+        }
+        
+    }
+
+    
+    public void testReadFailureCause() throws Exception {
+        
+        final TreeByteDigester digester = createDigester(1024);
+        final File file = createFile(createMessage(10));
+        file.delete();
+        try {
+            digester.digestFile(file);
+            fail();
+        } catch (EncryptionOperationNotPossibleException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        
+    }
+
+    
+}
@@ -0,0 +1,156 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import java.util.Arrays;
+
+import org.jasypt.encryption.pbe.config.SimpleStringPBEConfig;
+import org.jasypt.exceptions.EncryptionInitializationException;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.salt.StringFixedSaltGenerator;
+
+
+
+public class AESGCMPBEStringEncryptorTest 
+        extends AbstractPBEStringEncryptorTest {
+
+    protected PBEStringEncryptor createPBEStringEncryptor() {
+        return new AESGCMPBEStringEncryptor();
+    }
+
+    
+    public void testSeparateInstancesWithSameConfig() throws Exception {
+        
+        // Same configuration, e.g. the same application before and after 
+        // a restart, or in two different nodes
+        SimpleStringPBEConfig config = new SimpleStringPBEConfig();
+        config.setPassword("A PASSWORD BEING SET");
+        SimpleStringPBEConfig config2 = new SimpleStringPBEConfig();
+        config2.setPassword("A PASSWORD BEING SET");
+        
+        AESGCMPBEStringEncryptor encryptor = new AESGCMPBEStringEncryptor();
+        encryptor.setConfig(config);
+        encryptor.initialize();
+        
+        AESGCMPBEStringEncryptor encryptor2 = new AESGCMPBEStringEncryptor();
+        encryptor2.setConfig(config2);
+        encryptor2.initialize();
+        
+        assertEquals("This is a message", 
+                encryptor2.decrypt(encryptor.encrypt("This is a message")));
+        assertEquals("This is a message", 
+                encryptor.decrypt(encryptor2.encrypt("This is a message")));
+        
+    }
+
+    
+    public void testForeignSaltsRejectedIfDisabled() throws Exception {
+        
+        AESGCMPBEStringEncryptor encryptor = new AESGCMPBEStringEncryptor();
+        encryptor.setPassword("A PASSWORD BEING SET");
+        
+        AESGCMPBEStringEncryptor encryptor2 = new AESGCMPBEStringEncryptor();
+        encryptor2.setPassword("A PASSWORD BEING SET");
+        encryptor2.setDecryptForeignSalts(false);
+        
+        String encryptedMessage = encryptor.encrypt("This is a message");
+        assertEquals("This is a message", encryptor.decrypt(encryptedMessage));
+        assertEquals("This is a message", encryptor2.decrypt(encryptor2.encrypt("This is a message")));
+        try {
+            encryptor2.decrypt(encryptedMessage);
+            fail();
+        } catch (EncryptionOperationNotPossibleException e) {
+            assertTrue(true);
+        }
+        
+    }
+
+    
+    public void testConfigAndHexadecimalOutput() throws Exception {
+        
+        SimpleStringPBEConfig config = new SimpleStringPBEConfig();
+        config.setPassword("A PASSWORD BEING SET");
+        config.setAlgorithm("PBEWithHMACSHA256AndAES_128");
+        config.setStringOutputType("hexadecimal");
+        
+        AESGCMPBEStringEncryptor encryptor = new AESGCMPBEStringEncryptor();
+        encryptor.setConfig(config);
+        
+        String encryptedMessage = encryptor.encrypt("This is a message");
+        assertTrue(encryptedMessage.matches("[0-9A-F]+"));
+        assertEquals("This is a message", encryptor.decrypt(encryptedMessage));
+        
+        AESGCMPBEStringEncryptor encryptor2 = new AESGCMPBEStringEncryptor();
+        encryptor2.setAlgorithm("PBEWithMD5AndDES");
+        encryptor2.setPassword("A PASSWORD BEING SET");
+        try {
+            encryptor2.initialize();
+            fail();
+        } catch (EncryptionInitializationException e) {
+            assertTrue(true);
+        }
+        
+    }
+
+    
+    public void testTamperedMessage() throws Exception {
+        
+        byte[] messageBytes = "This is a message".getBytes("UTF-8");
+        
+        AESGCMPBEByteEncryptor encryptor = new AESGCMPBEByteEncryptor();
+        encryptor.setPassword("A PASSWORD BEING SET");
+        
+        byte[] encryptedMessage = encryptor.encrypt(messageBytes);
+        assertTrue(Arrays.equals(messageBytes, encryptor.decrypt(encryptedMessage)));
+        
+        // Every byte (header, salt, nonce, message and tag) is authenticated
+        for (int i = 0; i < encryptedMessage.length; i++) {
+            byte[] tamperedMessage = (byte[]) encryptedMessage.clone();
+            tamperedMessage[i] ^= 0x01;
+            try {
+                encryptor.decrypt(tamperedMessage);
+                fail();
+            } catch (EncryptionOperationNotPossibleException e) {
+                assertTrue(true);
+            }
+        }
+        
+    }
+
+    
+    public void testFixedSalt() throws Exception {
+        
+        AESGCMPBEStringEncryptor encryptor = new AESGCMPBEStringEncryptor();
+        encryptor.setPassword("A PASSWORD BEING SET");
+        encryptor.setSaltGenerator(new StringFixedSaltGenerator("A FIXED SALT BEING SET"));
+        
+        AESGCMPBEStringEncryptor encryptor2 = new AESGCMPBEStringEncryptor();
+        encryptor2.setPassword("A PASSWORD BEING SET");
+        encryptor2.setSaltGenerator(new StringFixedSaltGenerator("A FIXED SALT BEING SET"));
+        
+        // Nonces are random, even if salt is fixed
+        assertFalse(encryptor.encrypt("This is a message").equals(
+                encryptor.encrypt("This is a message")));
+        assertEquals("This is a message", 
+                encryptor2.decrypt(encryptor.encrypt("This is a message")));
+        
+    }
+    
+}
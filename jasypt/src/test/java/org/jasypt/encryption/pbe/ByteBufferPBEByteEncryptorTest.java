@@ -0,0 +1,195 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.jasypt.encryption.ByteBufferEncryptor;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.iv.RandomIvGenerator;
+import org.jasypt.salt.StringFixedSaltGenerator;
+
+public class ByteBufferPBEByteEncryptorTest extends TestCase {
+
+    
+    private static final String PASSWORD = "A PASSWORD BEING SET";
+    
+    
+    private static StandardPBEByteEncryptor createEncryptor(final String algorithm) {
+        final StandardPBEByteEncryptor encryptor = new StandardPBEByteEncryptor();
+        encryptor.setAlgorithm(algorithm);
+        encryptor.setPassword(PASSWORD);
+        if (algorithm.startsWith("PBEWithHMAC")) {
+            encryptor.setIvGenerator(new RandomIvGenerator());
+        }
+        return encryptor;
+    }
+    
+    
+    private static byte[] createMessage(final int length) {
+        final byte[] message = new byte[length];
+        for (int i = 0; i < length; i++) {
+            message[i] = (byte) (i * 31);
+        }
+        return message;
+    }
+    
+    
+    private void checkArrayRoundTrip(final StandardPBEByteEncryptor encryptor, 
+            final ByteBufferEncryptor bufferEncryptor) {
+        
+        for (int length = 1; length < 40; length++) {
+            
+            final byte[] message = createMessage(length);
+            final byte[] framedMessage = new byte[length + 7];
+            System.arraycopy(message, 0, framedMessage, 3, length);
+            
+            final int outputSize = bufferEncryptor.getEncryptOutputSize(length);
+            final byte[] output = new byte[outputSize + 5];
+            final int encryptedLength = 
+                bufferEncryptor.encrypt(framedMessage, 3, length, output, 5);
+            assertTrue(encryptedLength <= outputSize);
+            
+            // Results are compatible with the byte[] API
+            final byte[] encryptedMessage = new byte[encryptedLength];
+            System.arraycopy(output, 5, encryptedMessage, 0, encryptedLength);
+            assertTrue(Arrays.equals(message, encryptor.decrypt(encryptedMessage)));
+            
+            // Decryption in place
+            final int decryptedLength = 
+                bufferEncryptor.decrypt(output, 5, encryptedLength, output, 5);
+            assertEquals(length, decryptedLength);
+            for (int i = 0; i < length; i++) {
+                assertEquals(message[i], output[5 + i]);
+            }
+            
+            final byte[] encryptedMessage2 = encryptor.encrypt(message);
+            final byte[] output2 = new byte[bufferEncryptor.getDecryptOutputSize(encryptedMessage2.length)];
+            assertEquals(length, 
+                    bufferEncryptor.decrypt(encryptedMessage2, 0, encryptedMessage2.length, output2, 0));
+            
+        }
+        
+    }
+    
+    
+    private void checkBufferRoundTrip(final ByteBufferEncryptor bufferEncryptor) {
+        
+        final byte[] message = createMessage(100);
+        
+        final ByteBuffer input = ByteBuffer.allocateDirect(message.length);
+        input.put(message);
+        input.flip();
+        
+        final ByteBuffer encrypted = 
+            ByteBuffer.allocateDirect(bufferEncryptor.getEncryptOutputSize(message.length));
+        final int encryptedLength = bufferEncryptor.encrypt(input, encrypted);
+        assertEquals(0, input.remaining());
+        assertEquals(encryptedLength, encrypted.position());
+        encrypted.flip();
+        
+        final ByteBuffer decrypted = 
+            ByteBuffer.allocate(bufferEncryptor.getDecryptOutputSize(encryptedLength));
+        assertEquals(message.length, bufferEncryptor.decrypt(encrypted, decrypted));
+        decrypted.flip();
+        
+        final byte[] decryptedMessage = new byte[decrypted.remaining()];
+        decrypted.get(decryptedMessage);
+        assertTrue(Arrays.equals(message, decryptedMessage));
+        
+    }
+    
+    
+    public void testAlgorithms() throws Exception {
+        
+        final String[] algorithms = 
+            new String[] { "PBEWithMD5AndDES", "PBEWithSHA1AndRC4_128", "PBEWithHMACSHA512AndAES_256" };
+        for (int i = 0; i < algorithms.length; i++) {
+            final StandardPBEByteEncryptor encryptor = createEncryptor(algorithms[i]);
+            checkArrayRoundTrip(encryptor, encryptor);
+            checkBufferRoundTrip(encryptor);
+        }
+        
+    }
+    
+    
+    public void testFixedSalt() throws Exception {
+        
+        final StandardPBEByteEncryptor encryptor = createEncryptor("PBEWithMD5AndDES");
+        encryptor.setSaltGenerator(new StringFixedSaltGenerator("A FIXED SALT BEING SET"));
+        checkArrayRoundTrip(encryptor, encryptor);
+        checkBufferRoundTrip(encryptor);
+        
+    }
+    
+    
+    public void testSaltReuseAndDerivedKeyCache() throws Exception {
+        
+        final StandardPBEByteEncryptor encryptor = createEncryptor("PBEWithHMACSHA256AndAES_128");
+        encryptor.setSaltReuseMaxMessages(10);
+        encryptor.setDerivedKeyCacheSize(4);
+        encryptor.setThreadLocalCiphers(true);
+        checkArrayRoundTrip(encryptor, encryptor);
+        checkBufferRoundTrip(encryptor);
+        
+    }
+    
+    
+    public void testPooled() throws Exception {
+        
+        final StandardPBEByteEncryptor encryptor = createEncryptor("PBEWithMD5AndTripleDES");
+        
+        final PooledPBEByteEncryptor pooledEncryptor = new PooledPBEByteEncryptor();
+        pooledEncryptor.setAlgorithm("PBEWithMD5AndTripleDES");
+        pooledEncryptor.setPassword(PASSWORD);
+        pooledEncryptor.setPoolSize(4);
+        checkArrayRoundTrip(encryptor, pooledEncryptor);
+        checkBufferRoundTrip(pooledEncryptor);
+        
+    }
+    
+    
+    public void testOutputTooSmall() throws Exception {
+        
+        final StandardPBEByteEncryptor encryptor = createEncryptor("PBEWithMD5AndDES");
+        final byte[] message = createMessage(16);
+        
+        final byte[] output = new byte[encryptor.getEncryptOutputSize(message.length) - 1];
+        try {
+            encryptor.encrypt(message, 0, message.length, output, 0);
+            fail();
+        } catch (final EncryptionOperationNotPossibleException e) {
+            // expected
+        }
+        
+        final byte[] encryptedMessage = encryptor.encrypt(message);
+        try {
+            encryptor.decrypt(encryptedMessage, 0, encryptedMessage.length, new byte[8], 0);
+            fail();
+        } catch (final EncryptionOperationNotPossibleException e) {
+            // expected
+        }
+        
+    }
+    
+}
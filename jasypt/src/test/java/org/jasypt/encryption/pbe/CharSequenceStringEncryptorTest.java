@@ -0,0 +1,176 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+
+import junit.framework.TestCase;
+
+import org.jasypt.digest.PooledStringDigester;
+import org.jasypt.digest.StandardStringDigester;
+import org.jasypt.encryption.CharSequenceStringEncryptor;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.iv.RandomIvGenerator;
+import org.jasypt.salt.FixedStringSaltGenerator;
+import org.jasypt.util.text.BasicTextEncryptor;
+
+public class CharSequenceStringEncryptorTest extends TestCase {
+
+    
+    private static final String[] MESSAGES = 
+        new String[] {
+            "", 
+            "This is a Message", 
+            "Mensaje con acentos y e\u00F1es: \u00E1\u00E9\u00ED\u00F3\u00FA \u00D1", 
+            "Supplementary \uD83D\uDE00 and decomposed A\u0301",
+            "Unpaired surrogate \uD800 in the middle"
+        };
+    
+    
+    private static void checkEncryptor(final CharSequenceStringEncryptor encryptor) throws Exception {
+        
+        for (int i = 0; i < MESSAGES.length; i++) {
+            
+            final String message = MESSAGES[i];
+            final String expected = encryptor.decrypt(encryptor.encrypt(message));
+            
+            // CharSequence input
+            final StringBuilder builder = new StringBuilder(message);
+            assertEquals(expected, encryptor.decrypt(encryptor.encrypt(builder)));
+            
+            // char[] slice input
+            final char[] buffer = ("<<" + message + ">>").toCharArray();
+            final String encrypted = encryptor.encrypt(buffer, 2, message.length());
+            assertEquals(expected, encryptor.decrypt(encrypted));
+            
+            // char[] output
+            final char[] output = new char[message.length() + 4];
+            final int written = encryptor.decryptTo(encrypted, output, 3);
+            assertEquals(expected, new String(output, 3, written));
+            
+            // Appendable output
+            final StringWriter writer = new StringWriter();
+            writer.write("prefix:");
+            assertEquals(expected.length(), encryptor.decryptTo(encrypted, writer));
+            assertEquals("prefix:" + expected, writer.toString());
+            
+        }
+        
+        assertNull(encryptor.encrypt((CharSequence) null));
+        assertNull(encryptor.encrypt(null, 0, 0));
+        assertEquals(-1, encryptor.decryptTo(null, new char[0], 0));
+        assertEquals(-1, encryptor.decryptTo(null, new StringBuilder()));
+        
+        // Output array too small
+        try {
+            encryptor.decryptTo(encryptor.encrypt("This is a Message"), new char[5], 0);
+            fail();
+        } catch (final EncryptionOperationNotPossibleException e) {
+            // Expected
+        }
+        
+    }
+    
+    
+    private static FixedStringSaltGenerator createFixedSaltGenerator() {
+        final FixedStringSaltGenerator saltGenerator = new FixedStringSaltGenerator();
+        saltGenerator.setSalt("12345678");
+        return saltGenerator;
+    }
+    
+    
+    public void testStandardEncryptor() throws Exception {
+        
+        final StandardPBEStringEncryptor encryptor = new StandardPBEStringEncryptor();
+        encryptor.setPassword("jasypt");
+        checkEncryptor(encryptor);
+        
+        final StandardPBEStringEncryptor aesEncryptor = new StandardPBEStringEncryptor();
+        aesEncryptor.setAlgorithm("PBEWithHMACSHA512AndAES_256");
+        aesEncryptor.setIvGenerator(new RandomIvGenerator());
+        aesEncryptor.setPassword("jasypt");
+        aesEncryptor.setStringOutputType("hexadecimal");
+        checkEncryptor(aesEncryptor);
+        
+        // Same results as with String messages (fixed salt)
+        final StandardPBEStringEncryptor fixedSaltEncryptor = new StandardPBEStringEncryptor();
+        fixedSaltEncryptor.setPassword("jasypt");
+        fixedSaltEncryptor.setSaltGenerator(createFixedSaltGenerator());
+        for (int i = 0; i < MESSAGES.length; i++) {
+            assertEquals(
+                    fixedSaltEncryptor.encrypt(MESSAGES[i]), 
+                    fixedSaltEncryptor.encrypt(CharBuffer.wrap(MESSAGES[i])));
+        }
+        
+    }
+    
+    
+    public void testOtherEncryptors() throws Exception {
+        
+        final AESGCMPBEStringEncryptor gcmEncryptor = new AESGCMPBEStringEncryptor();
+        gcmEncryptor.setPassword("jasypt");
+        checkEncryptor(gcmEncryptor);
+        
+        final PooledPBEStringEncryptor pooledEncryptor = new PooledPBEStringEncryptor();
+        pooledEncryptor.setPoolSize(2);
+        pooledEncryptor.setPassword("jasypt");
+        checkEncryptor(pooledEncryptor);
+        
+        final BasicTextEncryptor textEncryptor = new BasicTextEncryptor();
+        textEncryptor.setPassword("jasypt");
+        final String encrypted = textEncryptor.encrypt(new StringBuilder(MESSAGES[2]));
+        final StringBuilder decrypted = new StringBuilder();
+        textEncryptor.decryptTo(encrypted, decrypted);
+        assertEquals(MESSAGES[2], decrypted.toString());
+        
+    }
+    
+    
+    public void testDigesters() throws Exception {
+        
+        final StandardStringDigester digester = new StandardStringDigester();
+        digester.setSaltGenerator(createFixedSaltGenerator());
+        
+        final PooledStringDigester pooledDigester = new PooledStringDigester();
+        pooledDigester.setPoolSize(2);
+        pooledDigester.setAlgorithm("PBKDF2WithHmacSHA256");
+        
+        for (int i = 0; i < MESSAGES.length; i++) {
+            
+            final StringBuilder builder = new StringBuilder(MESSAGES[i]);
+            final char[] buffer = ("<<" + MESSAGES[i] + ">>").toCharArray();
+            final CharBuffer slice = CharBuffer.wrap(buffer, 2, MESSAGES[i].length());
+            
+            assertEquals(digester.digest(MESSAGES[i]), digester.digest(builder));
+            assertEquals(digester.digest(MESSAGES[i]), digester.digest(slice));
+            assertTrue(digester.matches(slice, digester.digest(MESSAGES[i])));
+            assertFalse(digester.matches(builder.append('x'), digester.digest(MESSAGES[i])));
+            
+            assertTrue(pooledDigester.matches(slice, pooledDigester.digest(MESSAGES[i])));
+            assertTrue(pooledDigester.matches(MESSAGES[i], pooledDigester.digest(slice)));
+            
+        }
+        
+        assertNull(digester.digest((CharSequence) null));
+        
+    }
+    
+}
@@ -0,0 +1,124 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import java.security.Security;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class DerivedKeyCacheTest extends TestCase {
+
+    
+    public void testDecryptWithDerivedKeyCache() throws Exception {
+
+        String password = "A PASSWORD BEING SET";
+        byte[] messageBytes = "This is a message".getBytes("UTF-8");
+        
+        StandardPBEByteEncryptor encryptor = PBES2ByteEncryptors.create(password);
+        
+        StandardPBEByteEncryptor cachingEncryptor = PBES2ByteEncryptors.create(password);
+        cachingEncryptor.setDerivedKeyCacheSize(2);
+        
+        byte[][] encryptedMessages = new byte[3][];
+        for (int i = 0; i < encryptedMessages.length; i++) {
+            encryptedMessages[i] = encryptor.encrypt(messageBytes);
+        }
+        
+        for (int i = 0; i < 10; i++) {
+            assertTrue(Arrays.equals(cachingEncryptor.decrypt(encryptedMessages[0]), messageBytes));
+            assertTrue(Arrays.equals(cachingEncryptor.decrypt(encryptedMessages[1]), messageBytes));
+        }
+        assertEquals(2L, cachingEncryptor.getDerivedKeyCacheMisses());
+        assertEquals(18L, cachingEncryptor.getDerivedKeyCacheHits());
+        
+        // Evicts the least recently used entry (first message)
+        assertTrue(Arrays.equals(cachingEncryptor.decrypt(encryptedMessages[2]), messageBytes));
+        assertTrue(Arrays.equals(cachingEncryptor.decrypt(encryptedMessages[1]), messageBytes));
+        assertTrue(Arrays.equals(cachingEncryptor.decrypt(encryptedMessages[0]), messageBytes));
+        assertEquals(4L, cachingEncryptor.getDerivedKeyCacheMisses());
+        assertEquals(19L, cachingEncryptor.getDerivedKeyCacheHits());
+        
+        // Results must be readable by encryptors not using a cache
+        for (int i = 0; i < 10; i++) {
+            byte[] encryptedMessage = cachingEncryptor.encrypt(messageBytes);
+            assertTrue(Arrays.equals(encryptor.decrypt(encryptedMessage), messageBytes));
+            assertTrue(Arrays.equals(cachingEncryptor.decrypt(encryptedMessage), messageBytes));
+        }
+        
+        StandardPBEByteEncryptor wrongEncryptor = PBES2ByteEncryptors.create(password + " ");
+        wrongEncryptor.setDerivedKeyCacheSize(2);
+        try {
+            assertFalse(Arrays.equals(wrongEncryptor.decrypt(encryptedMessages[0]), messageBytes));
+        } catch (Exception e) {
+            assertTrue(true);
+        }
+        
+    }
+
+    
+    public void testDerivedKeyCacheExpiration() throws Exception {
+
+        String password = "A PASSWORD BEING SET";
+        byte[] messageBytes = "This is a message".getBytes("UTF-8");
+        
+        StandardPBEByteEncryptor encryptor = PBES2ByteEncryptors.create(password);
+        encryptor.setDerivedKeyCacheSize(10);
+        encryptor.setDerivedKeyCacheTimeToLive(1L);
+        encryptor.setThreadLocalCiphers(true);
+        
+        byte[] encryptedMessage = encryptor.encrypt(messageBytes);
+        assertTrue(Arrays.equals(encryptor.decrypt(encryptedMessage), messageBytes));
+        Thread.sleep(10L);
+        assertTrue(Arrays.equals(encryptor.decrypt(encryptedMessage), messageBytes));
+        assertEquals(2L, encryptor.getDerivedKeyCacheMisses());
+        assertEquals(0L, encryptor.getDerivedKeyCacheHits());
+        
+    }
+    
+    
+    public void testDerivedKeyCacheIgnoredWithExplicitProvider() throws Exception {
+
+        String password = "A PASSWORD BEING SET";
+        byte[] messageBytes = "This is a message".getBytes("UTF-8");
+        
+        StandardPBEByteEncryptor encryptor = PBES2ByteEncryptors.create(password);
+        
+        StandardPBEByteEncryptor providerEncryptor = PBES2ByteEncryptors.create(password);
+        providerEncryptor.setProvider(Security.getProvider("SunJCE"));
+        providerEncryptor.setDerivedKeyCacheSize(2);
+        
+        StandardPBEByteEncryptor providerNameEncryptor = PBES2ByteEncryptors.create(password);
+        providerNameEncryptor.setProviderName("SunJCE");
+        providerNameEncryptor.setDerivedKeyCacheSize(2);
+        
+        byte[] encryptedMessage = encryptor.encrypt(messageBytes);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(Arrays.equals(providerEncryptor.decrypt(encryptedMessage), messageBytes));
+            assertTrue(Arrays.equals(providerNameEncryptor.decrypt(encryptedMessage), messageBytes));
+        }
+        assertEquals(0L, providerEncryptor.getDerivedKeyCacheMisses());
+        assertEquals(0L, providerEncryptor.getDerivedKeyCacheHits());
+        assertEquals(0L, providerNameEncryptor.getDerivedKeyCacheMisses());
+        assertEquals(0L, providerNameEncryptor.getDerivedKeyCacheHits());
+        
+    }
+    
+}
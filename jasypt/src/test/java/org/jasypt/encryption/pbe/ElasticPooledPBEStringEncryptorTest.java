@@ -0,0 +1,89 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import junit.framework.TestCase;
+
+import org.jasypt.encryption.pbe.config.SimplePBEConfig;
+
+public class ElasticPooledPBEStringEncryptorTest extends TestCase {
+
+    
+    public void testGrowAndShrink() throws Exception {
+
+        final String message = "This is a message";
+        
+        SimplePBEConfig config = new SimplePBEConfig();
+        config.setPoolSize(1);
+        config.setMaxPoolSize("4");
+        
+        final PooledPBEStringEncryptor encryptor = new PooledPBEStringEncryptor();
+        encryptor.setConfig(config);
+        encryptor.setAlgorithm("PBEWithMD5AndDES");
+        encryptor.setKeyObtentionIterations(10000);
+        encryptor.setPassword("A PASSWORD BEING SET");
+        encryptor.setPoolIdleTime(200L);
+        
+        assertEquals(0, encryptor.getCurrentPoolSize());
+        encryptor.initialize();
+        assertEquals(1, encryptor.getCurrentPoolSize());
+
+        final boolean[] failed = new boolean[1];
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 20; j++) {
+                            if (!message.equals(encryptor.decrypt(encryptor.encrypt(message)))) {
+                                failed[0] = true;
+                            }
+                        }
+                    } catch (Exception e) {
+                        failed[0] = true;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        
+        assertFalse(failed[0]);
+        assertTrue(encryptor.getCurrentPoolSize() > 1);
+        assertTrue(encryptor.getCurrentPoolSize() <= 4);
+        assertTrue(encryptor.getPoolWaitCount() > 0L);
+        
+        // Members added by growth are removed after being idle
+        Thread.sleep(300L);
+        assertEquals(message, encryptor.decrypt(encryptor.encrypt(message)));
+        assertEquals(1, encryptor.getCurrentPoolSize());
+        
+        // Results must be readable by non-pooled encryptors
+        StandardPBEStringEncryptor standardEncryptor = new StandardPBEStringEncryptor();
+        standardEncryptor.setAlgorithm("PBEWithMD5AndDES");
+        standardEncryptor.setKeyObtentionIterations(10000);
+        standardEncryptor.setPassword("A PASSWORD BEING SET");
+        assertEquals(message, standardEncryptor.decrypt(encryptor.encrypt(message)));
+        
+    }
+    
+}
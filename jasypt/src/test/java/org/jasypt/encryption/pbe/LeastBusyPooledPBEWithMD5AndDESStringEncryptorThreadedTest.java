@@ -0,0 +1,41 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import org.jasypt.encryption.pbe.config.SimplePBEConfig;
+
+
+
+
+public class LeastBusyPooledPBEWithMD5AndDESStringEncryptorThreadedTest 
+        extends AbstractPBEStringEncryptorThreadedTest {
+
+    protected PBEStringEncryptor createEncryptor() {
+        SimplePBEConfig config = new SimplePBEConfig();
+        config.setPoolSize(3);
+        config.setPoolSelectionStrategy("least-busy");
+        PooledPBEStringEncryptor encryptor = new PooledPBEStringEncryptor();
+        encryptor.setConfig(config);
+        encryptor.setAlgorithm("PBEWithMD5AndDES");
+        return encryptor;
+    }
+
+    
+}
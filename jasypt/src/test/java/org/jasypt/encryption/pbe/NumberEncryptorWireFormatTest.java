@@ -0,0 +1,108 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+import org.jasypt.commons.CommonUtils;
+import org.jasypt.salt.StringFixedSaltGenerator;
+
+public class NumberEncryptorWireFormatTest extends TestCase {
+
+    
+    private static final String PASSWORD = "A PASSWORD BEING SET";
+    private static final String SALT = "A FIXED SALT BEING SET";
+    
+    
+    /*
+     * Encryption result as built by previous versions: byte encryption
+     * result followed by its length.
+     */
+    private static BigInteger legacyEncrypt(final StandardPBEByteEncryptor byteEncryptor, 
+            final BigInteger message) {
+        final byte[] encryptedMessage = byteEncryptor.encrypt(message.toByteArray());
+        final int length = encryptedMessage.length;
+        final byte[] lengthBytes = 
+            new byte[] { (byte)(length >> 24), (byte)(length >> 16), (byte)(length >> 8), (byte)length };
+        return new BigInteger(CommonUtils.appendArrays(encryptedMessage, lengthBytes));
+    }
+    
+    
+    public void testBigIntegerWireFormat() throws Exception {
+
+        final StandardPBEByteEncryptor byteEncryptor = new StandardPBEByteEncryptor();
+        byteEncryptor.setPassword(PASSWORD);
+        byteEncryptor.setSaltGenerator(new StringFixedSaltGenerator(SALT));
+        
+        final StandardPBEBigIntegerEncryptor encryptor = new StandardPBEBigIntegerEncryptor();
+        encryptor.setPassword(PASSWORD);
+        encryptor.setSaltGenerator(new StringFixedSaltGenerator(SALT));
+        
+        for (int i = -300; i < 300; i++) {
+            final BigInteger message = BigInteger.valueOf(i * 7919L);
+            final BigInteger encryptedMessage = encryptor.encrypt(message);
+            assertEquals(legacyEncrypt(byteEncryptor, message), encryptedMessage);
+            assertEquals(message, encryptor.decrypt(encryptedMessage));
+        }
+        
+    }
+    
+    
+    public void testBigDecimalWireFormat() throws Exception {
+
+        final StandardPBEByteEncryptor byteEncryptor = new StandardPBEByteEncryptor();
+        byteEncryptor.setPassword(PASSWORD);
+        byteEncryptor.setSaltGenerator(new StringFixedSaltGenerator(SALT));
+        
+        final StandardPBEBigDecimalEncryptor encryptor = new StandardPBEBigDecimalEncryptor();
+        encryptor.setPassword(PASSWORD);
+        encryptor.setSaltGenerator(new StringFixedSaltGenerator(SALT));
+        
+        for (int i = -300; i < 300; i++) {
+            final BigDecimal message = BigDecimal.valueOf(i * 7919L, 3);
+            final BigDecimal encryptedMessage = encryptor.encrypt(message);
+            assertEquals(
+                    new BigDecimal(legacyEncrypt(byteEncryptor, message.unscaledValue()), 3), 
+                    encryptedMessage);
+            assertEquals(message, encryptor.decrypt(encryptedMessage));
+        }
+        
+    }
+    
+    
+    public void testRandomSaltRoundTrip() throws Exception {
+
+        final StandardPBEBigIntegerEncryptor encryptor = new StandardPBEBigIntegerEncryptor();
+        encryptor.setAlgorithm("PBEWithSHA1AndRC4_128");
+        encryptor.setPassword(PASSWORD);
+        
+        // Stream cipher: leftmost 0x0 and -0x1 bytes removed by BigInteger 
+        // are frequent, so padding on decryption is exercised
+        for (int i = -500; i < 500; i++) {
+            final BigInteger message = BigInteger.valueOf(i);
+            assertEquals(message, encryptor.decrypt(encryptor.encrypt(message)));
+        }
+        
+    }
+    
+}
@@ -0,0 +1,43 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import org.jasypt.iv.RandomIvGenerator;
+
+/*
+ * Creates the PBES2 encryptors used by the derived key cache and salt
+ * reuse tests.
+ */
+final class PBES2ByteEncryptors {
+
+    static StandardPBEByteEncryptor create(final String password) {
+        final StandardPBEByteEncryptor encryptor = new StandardPBEByteEncryptor();
+        encryptor.setAlgorithm("PBEWithHMACSHA512AndAES_256");
+        encryptor.setIvGenerator(new RandomIvGenerator());
+        encryptor.setPassword(password);
+        return encryptor;
+    }
+    
+    
+    private PBES2ByteEncryptors() {
+        super();
+    }
+    
+}
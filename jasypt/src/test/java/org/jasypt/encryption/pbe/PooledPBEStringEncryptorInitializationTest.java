@@ -0,0 +1,98 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.jasypt.exceptions.EncryptionInitializationException;
+
+public class PooledPBEStringEncryptorInitializationTest extends TestCase {
+
+    
+    public void testPoolMembersShareKey() throws Exception {
+
+        final String message = "This is a message";
+        
+        PooledPBEStringEncryptor encryptor = new PooledPBEStringEncryptor();
+        encryptor.setPoolSize(32);
+        encryptor.setAlgorithm("PBEWithMD5AndTripleDES");
+        encryptor.setPassword("A PASSWORD BEING SET");
+        encryptor.setStringOutputType("hexadecimal");
+        
+        StandardPBEStringEncryptor standardEncryptor = new StandardPBEStringEncryptor();
+        standardEncryptor.setAlgorithm("PBEWithMD5AndTripleDES");
+        standardEncryptor.setPassword("A PASSWORD BEING SET");
+        standardEncryptor.setStringOutputType("hexadecimal");
+        
+        // Every member of the pool is used in turn
+        for (int i = 0; i < 64; i++) {
+            String encryptedMessage = encryptor.encrypt(message);
+            assertEquals(message, standardEncryptor.decrypt(encryptedMessage));
+            assertEquals(message, encryptor.decrypt(standardEncryptor.encrypt(message)));
+        }
+        
+    }
+
+    
+    public void testInitializeAsync() throws Exception {
+
+        final String message = "This is a message";
+        
+        PooledPBEStringEncryptor encryptor = new PooledPBEStringEncryptor();
+        encryptor.setPoolSize(8);
+        encryptor.setAlgorithm("PBEWithMD5AndDES");
+        encryptor.setPassword("A PASSWORD BEING SET");
+        
+        Future<?> initialization = encryptor.initializeAsync();
+        
+        // Background initialization is only started once
+        assertSame(initialization, encryptor.initializeAsync());
+        
+        // Blocks until initialization finishes if needed
+        assertEquals(message, encryptor.decrypt(encryptor.encrypt(message)));
+        
+        initialization.get();
+        assertTrue(encryptor.isInitialized());
+        
+        PooledPBEStringEncryptor encryptor2 = new PooledPBEStringEncryptor();
+        encryptor2.setPoolSize(8);
+        encryptor2.setAlgorithm("PBEWithMD5AndDES");
+        
+        // No password: initialization fails in the background and then
+        // again when the encryptor is used
+        try {
+            encryptor2.initializeAsync().get();
+            fail();
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof EncryptionInitializationException);
+        }
+        assertFalse(encryptor2.isInitialized());
+        try {
+            encryptor2.encrypt(message);
+            fail();
+        } catch (EncryptionInitializationException e) {
+            assertTrue(true);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,126 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.encryption.pbe;
+
+import java.security.Security;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.jasypt.encryption.pbe.config.SimplePBEConfig;
+
+public class SaltReuseTest extends TestCase {
+
+    
+    public void testSaltReuseByNumberOfMessages() throws Exception {
+
+        String password = "A PASSWORD BEING SET";
+        byte[] messageBytes = "This is a message".getBytes("UTF-8");
+        
+        StandardPBEByteEncryptor encryptor = PBES2ByteEncryptors.create(password);
+        encryptor.setSaltReuseMaxMessages(3);
+        
+        StandardPBEByteEncryptor decryptor = PBES2ByteEncryptors.create(password);
+        
+        byte[][] encryptedMessages = new byte[7][];
+        for (int i = 0; i < encryptedMessages.length; i++) {
+            encryptedMessages[i] = encryptor.encrypt(messageBytes);
+            assertTrue(Arrays.equals(decryptor.decrypt(encryptedMessages[i]), messageBytes));
+            assertTrue(Arrays.equals(encryptor.decrypt(encryptedMessages[i]), messageBytes));
+        }
+        
+        assertTrue(Arrays.equals(salt(encryptedMessages[0]), salt(encryptedMessages[1])));
+        assertTrue(Arrays.equals(salt(encryptedMessages[0]), salt(encryptedMessages[2])));
+        assertFalse(Arrays.equals(salt(encryptedMessages[2]), salt(encryptedMessages[3])));
+        assertTrue(Arrays.equals(salt(encryptedMessages[3]), salt(encryptedMessages[5])));
+        assertFalse(Arrays.equals(salt(encryptedMessages[5]), salt(encryptedMessages[6])));
+        
+        // IVs must still be different for every message
+        assertFalse(Arrays.equals(iv(encryptedMessages[0]), iv(encryptedMessages[1])));
+        assertFalse(Arrays.equals(iv(encryptedMessages[1]), iv(encryptedMessages[2])));
+        
+    }
+
+    
+    public void testSaltReuseByTime() throws Exception {
+
+        String password = "A PASSWORD BEING SET";
+        byte[] messageBytes = "This is a message".getBytes("UTF-8");
+        
+        SimplePBEConfig config = new SimplePBEConfig();
+        config.setSaltReuseMaxTime("50");
+        
+        StandardPBEByteEncryptor encryptor = PBES2ByteEncryptors.create(password);
+        encryptor.setConfig(config);
+        encryptor.setThreadLocalCiphers(true);
+        
+        StandardPBEByteEncryptor decryptor = PBES2ByteEncryptors.create(password);
+        
+        byte[] first = encryptor.encrypt(messageBytes);
+        byte[] second = encryptor.encrypt(messageBytes);
+        Thread.sleep(100L);
+        byte[] third = encryptor.encrypt(messageBytes);
+
+        assertTrue(Arrays.equals(salt(first), salt(second)));
+        assertFalse(Arrays.equals(salt(second), salt(third)));
+        
+        assertTrue(Arrays.equals(decryptor.decrypt(first), messageBytes));
+        assertTrue(Arrays.equals(decryptor.decrypt(second), messageBytes));
+        assertTrue(Arrays.equals(decryptor.decrypt(third), messageBytes));
+        
+    }
+    
+    
+    public void testSaltReuseIgnoredWithExplicitProvider() throws Exception {
+
+        String password = "A PASSWORD BEING SET";
+        byte[] messageBytes = "This is a message".getBytes("UTF-8");
+        
+        StandardPBEByteEncryptor encryptor = PBES2ByteEncryptors.create(password);
+        encryptor.setProvider(Security.getProvider("SunJCE"));
+        encryptor.setSaltReuseMaxMessages(3);
+        
+        StandardPBEByteEncryptor decryptor = PBES2ByteEncryptors.create(password);
+        
+        byte[] first = encryptor.encrypt(messageBytes);
+        byte[] second = encryptor.encrypt(messageBytes);
+        
+        assertFalse(Arrays.equals(salt(first), salt(second)));
+        
+        assertTrue(Arrays.equals(decryptor.decrypt(first), messageBytes));
+        assertTrue(Arrays.equals(decryptor.decrypt(second), messageBytes));
+        
+    }
+    
+    
+    private static byte[] salt(final byte[] encryptedMessage) {
+        final byte[] salt = new byte[16];
+        System.arraycopy(encryptedMessage, 0, salt, 0, 16);
+        return salt;
+    }
+    
+    
+    private static byte[] iv(final byte[] encryptedMessage) {
+        final byte[] iv = new byte[16];
+        System.arraycopy(encryptedMessage, 16, iv, 0, 16);
+        return iv;
+    }
+    
+}
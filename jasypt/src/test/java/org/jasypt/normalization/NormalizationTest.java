@@ -53,5 +53,31 @@ public class NormalizationTest extends TestCase {
     }
     
     
+    public void testAsciiFastPath() throws Exception {
+        
+        final String msg = "This is a plain US-ASCII message 0123456789 !#$%&/()=?";
+        Assert.assertSame(msg, Normalizer.normalizeToNfc(msg));
+        
+        final char[] msgCharArray = msg.toCharArray();
+        final char[] result = Normalizer.normalizeToNfc(msgCharArray);
+        Assert.assertNotSame(msgCharArray, result);
+        Assert.assertEquals(msg, new String(result));
+        
+    }
+    
+    
+    public void testStringAndCharArrayEquivalence() throws Exception {
+        
+        // "A" + combining acute accent, which composes into U+00C1 in NFC
+        final String decomposed = "Jasypt A\u0301 \u00C1 e\u0301";
+        final String composed = "Jasypt \u00C1 \u00C1 \u00E9";
+        
+        Assert.assertEquals(composed, Normalizer.normalizeToNfc(decomposed));
+        Assert.assertEquals(composed, new String(Normalizer.normalizeToNfc(decomposed.toCharArray())));
+        Assert.assertEquals(composed, Normalizer.normalizeToNfc(composed));
+        
+    }
+    
+    
     
 }
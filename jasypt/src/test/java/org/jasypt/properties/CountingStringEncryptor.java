@@ -0,0 +1,47 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.properties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jasypt.encryption.StringEncryptor;
+
+/*
+ * Reversible (not secure) encryptor which counts the number of decryption
+ * operations performed.
+ */
+final class CountingStringEncryptor implements StringEncryptor {
+
+    private final AtomicInteger decryptionCount = new AtomicInteger(0);
+    
+    public String encrypt(final String message) {
+        return new StringBuilder(message).reverse().toString();
+    }
+
+    public String decrypt(final String encryptedMessage) {
+        this.decryptionCount.incrementAndGet();
+        return new StringBuilder(encryptedMessage).reverse().toString();
+    }
+    
+    int getDecryptionCount() {
+        return this.decryptionCount.get();
+    }
+    
+}
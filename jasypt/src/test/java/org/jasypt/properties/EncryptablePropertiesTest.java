@@ -25,6 +25,7 @@ import junit.framework.Assert;
 import junit.framework.TestCase;
 
 import org.apache.commons.lang.SerializationUtils;
+import org.jasypt.encryption.StringEncryptor;
 import org.jasypt.util.text.BasicTextEncryptor;
 
 public class EncryptablePropertiesTest extends TestCase {
@@ -95,4 +96,61 @@ public class EncryptablePropertiesTest extends TestCase {
     }
     
     
+    public void testDecryptedValueCache() throws Exception {
+        
+        final BasicTextEncryptor textEncryptor = new BasicTextEncryptor();
+        textEncryptor.setPassword("jasypt");
+        final int[] decryptions = new int[1];
+        final StringEncryptor countingEncryptor = new StringEncryptor() {
+            public String encrypt(final String message) {
+                return textEncryptor.encrypt(message);
+            }
+            public String decrypt(final String encryptedMessage) {
+                decryptions[0]++;
+                return textEncryptor.decrypt(encryptedMessage);
+            }
+        };
+        
+        final Properties defaults = new Properties();
+        defaults.setProperty("p3", "ENC(" + textEncryptor.encrypt("Default") + ")");
+        
+        final EncryptableProperties props = new EncryptableProperties(defaults, countingEncryptor);
+        props.setDecryptedValueCacheEnabled(true);
+        props.setProperty("p1", "ENC(" + textEncryptor.encrypt("Message one") + ")");
+        props.setProperty("p2", "Plain");
+        
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("Message one", props.getProperty("p1"));
+            Assert.assertEquals("Message one", props.get("p1"));
+            Assert.assertEquals("Plain", props.getProperty("p2"));
+            Assert.assertEquals("Default", props.getProperty("p3"));
+        }
+        Assert.assertEquals(2, decryptions[0]);
+        
+        // Changing a value discards the cached one
+        props.setProperty("p1", "ENC(" + textEncryptor.encrypt("Message two") + ")");
+        Assert.assertEquals("Message two", props.getProperty("p1"));
+        Assert.assertEquals(3, decryptions[0]);
+        
+        // Changes in the defaults are also detected
+        defaults.setProperty("p3", "ENC(" + textEncryptor.encrypt("Other default") + ")");
+        Assert.assertEquals("Other default", props.getProperty("p3"));
+        Assert.assertEquals(4, decryptions[0]);
+        
+        props.remove("p1");
+        Assert.assertNull(props.getProperty("p1"));
+        
+        props.clearDecryptedValueCache();
+        Assert.assertEquals("Other default", props.getProperty("p3"));
+        Assert.assertEquals(5, decryptions[0]);
+        
+        // Without cache, every read decrypts
+        props.setDecryptedValueCacheEnabled(false);
+        props.getProperty("p3");
+        props.getProperty("p3");
+        Assert.assertEquals(7, decryptions[0]);
+        
+    }
+    
+    
 }
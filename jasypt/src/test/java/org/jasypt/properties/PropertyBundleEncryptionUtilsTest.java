@@ -0,0 +1,100 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.properties;
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class PropertyBundleEncryptionUtilsTest extends TestCase {
+
+    
+    public void testBundleAndUnbundle() throws Exception {
+        
+        final CountingStringEncryptor encryptor = new CountingStringEncryptor();
+        
+        final Properties props = new Properties();
+        props.setProperty("user", "jasypt");
+        for (int i = 0; i < 10; i++) {
+            props.setProperty("secret" + i, 
+                    PropertyValueEncryptionUtils.encrypt("value=" + i + " \u00e1", encryptor));
+        }
+        
+        final Properties bundled = PropertyBundleEncryptionUtils.bundle(props, "db", encryptor);
+        assertEquals(2, bundled.size());
+        assertEquals("jasypt", bundled.getProperty("user"));
+        assertTrue(PropertyValueEncryptionUtils.isEncryptedValue(bundled.getProperty("jasypt.bundle.db")));
+        
+        try {
+            PropertyBundleEncryptionUtils.bundle(bundled, "db", encryptor);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+        
+        final Properties unbundled = PropertyBundleEncryptionUtils.unbundle(bundled, encryptor);
+        assertEquals(props.size(), unbundled.size());
+        assertEquals("jasypt", unbundled.getProperty("user"));
+        for (int i = 0; i < 10; i++) {
+            assertEquals("value=" + i + " \u00e1",
+                    PropertyValueEncryptionUtils.decrypt(unbundled.getProperty("secret" + i), encryptor));
+        }
+        
+    }
+    
+    
+    public void testEncryptablePropertiesDecryptBundlesOnce() throws Exception {
+        
+        final Properties bundle = new Properties();
+        bundle.setProperty("password", "secret");
+        bundle.setProperty("token", "ENC(literal)");
+        
+        final CountingStringEncryptor encryptor = new CountingStringEncryptor();
+        final EncryptableProperties props = new EncryptableProperties(encryptor);
+        props.setProperty("user", "jasypt");
+        props.setProperty("token", "overridden");
+        props.setProperty("jasypt.bundle", PropertyBundleEncryptionUtils.encryptBundle(bundle, encryptor));
+        
+        assertEquals("jasypt", props.getProperty("user"));
+        assertEquals("secret", props.getProperty("password"));
+        assertEquals("secret", props.get("password"));
+        assertEquals("default", props.getProperty("nonexistent", "default"));
+        assertEquals(1, encryptor.getDecryptionCount());
+        // Bundled values take precedence, and can be encrypted themselves
+        assertEquals("laretil", props.getProperty("token"));
+        assertEquals(2, encryptor.getDecryptionCount());
+        
+        assertEquals(3, props.stringPropertyNames().size());
+        assertTrue(props.stringPropertyNames().contains("password"));
+        assertFalse(props.stringPropertyNames().contains("jasypt.bundle"));
+        
+        // Modifying the bundle discards its decrypted contents
+        bundle.setProperty("password", "rotated");
+        props.setProperty("jasypt.bundle", PropertyBundleEncryptionUtils.encryptBundle(bundle, encryptor));
+        assertEquals("rotated", props.getProperty("password"));
+        assertEquals(3, encryptor.getDecryptionCount());
+        
+        props.remove("jasypt.bundle");
+        assertNull(props.getProperty("password"));
+        assertEquals("overridden", props.getProperty("token"));
+        
+    }
+    
+}
@@ -0,0 +1,178 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.properties;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class ReloadableEncryptablePropertiesTest extends TestCase {
+
+    private File file;
+    
+    
+    @Override
+    protected void setUp() throws Exception {
+        this.file = File.createTempFile("jasypt-reloadable", ".properties");
+    }
+    
+    
+    @Override
+    protected void tearDown() throws Exception {
+        this.file.delete();
+    }
+    
+    
+    public void testReloadDecryptsOnlyChangedValues() throws Exception {
+        
+        final CountingStringEncryptor encryptor = new CountingStringEncryptor();
+        final Properties props = new Properties();
+        props.setProperty("user", "jasypt");
+        props.setProperty("password", PropertyValueEncryptionUtils.encrypt("first", encryptor));
+        props.setProperty("token", PropertyValueEncryptionUtils.encrypt("second", encryptor));
+        props.setProperty("removed", PropertyValueEncryptionUtils.encrypt("third", encryptor));
+        store(props, 1000000L);
+        
+        final ReloadableEncryptableProperties reloadable = 
+            new ReloadableEncryptableProperties(encryptor, this.file);
+        final RecordingListener listener = new RecordingListener();
+        reloadable.addListener(listener);
+        
+        assertEquals("jasypt", reloadable.getProperty("user"));
+        assertEquals("first", reloadable.getProperty("password"));
+        assertEquals("second", reloadable.getProperty("token"));
+        assertEquals("default", reloadable.getProperty("nonexistent", "default"));
+        assertEquals(3, encryptor.getDecryptionCount());
+        
+        // Nothing has changed
+        assertFalse(reloadable.reload());
+        assertEquals(3, encryptor.getDecryptionCount());
+        assertNull(listener.changedKeys);
+        
+        props.setProperty("password", PropertyValueEncryptionUtils.encrypt("fourth", encryptor));
+        props.remove("removed");
+        props.setProperty("added", "plain");
+        store(props, 2000000L);
+        
+        final Properties snapshot = reloadable.getProperties();
+        assertTrue(reloadable.reload());
+        assertEquals(4, encryptor.getDecryptionCount());
+        assertEquals("fourth", reloadable.getProperty("password"));
+        assertEquals("second", reloadable.getProperty("token"));
+        assertEquals("plain", reloadable.getProperty("added"));
+        assertNull(reloadable.getProperty("removed"));
+        assertEquals(3, listener.changedKeys.size());
+        assertTrue(listener.changedKeys.contains("password"));
+        assertTrue(listener.changedKeys.contains("removed"));
+        assertTrue(listener.changedKeys.contains("added"));
+        
+        // Previously obtained snapshots are not modified
+        assertEquals("first", snapshot.getProperty("password"));
+        
+    }
+    
+    
+    public void testReloadDetectsChangesWithSameDateAndSize() throws Exception {
+        
+        final CountingStringEncryptor encryptor = new CountingStringEncryptor();
+        final Properties props = new Properties();
+        props.setProperty("password", PropertyValueEncryptionUtils.encrypt("first", encryptor));
+        store(props, 1000000L);
+        final long length = this.file.length();
+        
+        final ReloadableEncryptableProperties reloadable = 
+            new ReloadableEncryptableProperties(encryptor, this.file);
+        assertEquals("first", reloadable.getProperty("password"));
+        
+        // A rotated value of the same length, with the date restored
+        props.setProperty("password", PropertyValueEncryptionUtils.encrypt("other", encryptor));
+        store(props, 1000000L);
+        assertEquals(length, this.file.length());
+        assertEquals(1000000L, this.file.lastModified());
+        
+        assertTrue(reloadable.reload());
+        assertEquals("other", reloadable.getProperty("password"));
+        assertFalse(reloadable.reload());
+        
+    }
+    
+    
+    public void testPolling() throws Exception {
+        
+        final CountingStringEncryptor encryptor = new CountingStringEncryptor();
+        final Properties props = new Properties();
+        props.setProperty("password", PropertyValueEncryptionUtils.encrypt("first", encryptor));
+        store(props, 1000000L);
+        
+        final ReloadableEncryptableProperties reloadable = 
+            new ReloadableEncryptableProperties(encryptor, this.file);
+        final RecordingListener listener = new RecordingListener();
+        reloadable.addListener(listener);
+        
+        reloadable.startPolling(10L);
+        try {
+            props.setProperty("password", PropertyValueEncryptionUtils.encrypt("second", encryptor));
+            store(props, 2000000L);
+            assertTrue(listener.reloaded.await(10, TimeUnit.SECONDS));
+            assertEquals("second", reloadable.getProperty("password"));
+        } finally {
+            reloadable.stopPolling();
+        }
+        
+    }
+    
+    
+    private void store(final Properties props, final long lastModified) throws IOException {
+        final FileOutputStream outputStream = new FileOutputStream(this.file);
+        try {
+            props.store(outputStream, null);
+        } finally {
+            outputStream.close();
+        }
+        this.file.setLastModified(lastModified);
+    }
+    
+    
+    
+    static class RecordingListener implements ReloadableEncryptablePropertiesListener {
+        
+        volatile Set<String> changedKeys = null;
+        final CountDownLatch reloaded = new CountDownLatch(1);
+        
+        public void propertiesReloaded(final ReloadableEncryptableProperties properties,
+                final Set<String> changedKeys) {
+            this.changedKeys = changedKeys;
+            this.reloaded.countDown();
+        }
+        
+        public void reloadFailed(final ReloadableEncryptableProperties properties,
+                final RuntimeException exception) {
+            // nothing to do
+        }
+        
+    }
+    
+}
@@ -0,0 +1,86 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2007-2010, The JASYPT team (http://www.jasypt.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.jasypt.salt;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.jasypt.commons.CommonUtils;
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import org.jasypt.iv.StripedRandomIvGenerator;
+
+public class StripedRandomSaltGeneratorTest extends TestCase {
+
+    
+    public void testGenerateSaltWithPrefetch() throws Exception {
+        
+        final StripedRandomSaltGenerator saltGenerator = 
+            new StripedRandomSaltGenerator(null, 2, 64);
+        
+        final Set<String> salts = Collections.synchronizedSet(new HashSet<String>());
+        final boolean[] failed = new boolean[1];
+        
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 500; j++) {
+                        final byte[] salt = saltGenerator.generateSalt(16);
+                        if (salt.length != 16 || !salts.add(CommonUtils.toHexadecimal(salt))) {
+                            failed[0] = true;
+                        }
+                    }
+                    // Larger than the prefetch buffer
+                    if (saltGenerator.generateSalt(100).length != 100) {
+                        failed[0] = true;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        
+        assertFalse(failed[0]);
+        assertEquals(2000, salts.size());
+        
+    }
+
+    
+    public void testEncryptWithStripedGenerators() throws Exception {
+        
+        StandardPBEStringEncryptor encryptor = new StandardPBEStringEncryptor();
+        encryptor.setAlgorithm("PBEWithHMACSHA512AndAES_256");
+        encryptor.setPassword("A PASSWORD BEING SET");
+        encryptor.setSaltGenerator(new StripedRandomSaltGenerator("SHA1PRNG", 4, 1024));
+        encryptor.setIvGenerator(new StripedRandomIvGenerator());
+        
+        for (int i = 0; i < 10; i++) {
+            assertEquals("This is a message", 
+                    encryptor.decrypt(encryptor.encrypt("This is a message")));
+        }
+        
+    }
+    
+}